@@ -0,0 +1 @@
+java -Djava.awt.headless=true -Xmx64m -cp coffeebombermen.jar com.braids.coffeebombermen.server.DedicatedServer %*
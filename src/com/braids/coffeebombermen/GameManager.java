@@ -16,11 +16,14 @@ import javax.swing.UIManager;
 import com.braids.coffeebombermen.MainMenuBar.GameStates;
 import com.braids.coffeebombermen.client.Client;
 import com.braids.coffeebombermen.client.ConnectingToServerFailedException;
+import com.braids.coffeebombermen.client.gamecore.GameEventListener;
+import com.braids.coffeebombermen.client.gamecore.GameSounds;
 import com.braids.coffeebombermen.client.gamecore.model.level.LevelModel;
 import com.braids.coffeebombermen.client.graphics.AnimationDatas;
 import com.braids.coffeebombermen.client.graphics.CorruptGraphicalThemeException;
 import com.braids.coffeebombermen.client.graphics.GraphicsManager;
 import com.braids.coffeebombermen.client.graphics.ImageHandler;
+import com.braids.coffeebombermen.client.sound.SoundEffect;
 import com.braids.coffeebombermen.client.sound.SoundManager;
 import com.braids.coffeebombermen.options.ClientComponentOptions;
 import com.braids.coffeebombermen.options.OptionsChangeListener;
@@ -29,6 +32,7 @@ import com.braids.coffeebombermen.options.ServerComponentOptions;
 import com.braids.coffeebombermen.options.model.ClientOptions;
 import com.braids.coffeebombermen.options.model.ServerOptions;
 import com.braids.coffeebombermen.server.Server;
+import com.braids.coffeebombermen.server.ServerHost;
 import com.braids.coffeebombermen.utils.DataTextFileReader;
 
 /**
@@ -42,7 +46,7 @@ import com.braids.coffeebombermen.utils.DataTextFileReader;
  * game core (game logic) (to each other)
  * </UL>
  */
-public class GameManager implements MainMenuHandler, OptionsChangeListener<ClientOptions> {
+public class GameManager implements MainMenuHandler, OptionsChangeListener<ClientOptions>, ServerHost, GameEventListener {
 
 	// public class GameManager implements MainMenuHandler,
 	// OptionsChangeListener< ClientOptions >, OptionsChangeListener<
@@ -333,6 +337,57 @@ public class GameManager implements MainMenuHandler, OptionsChangeListener<Clien
 		return level;
 	}
 
+	/**
+	 * Returns the server of the game.
+	 * 
+	 * @return the server of the game; null if we are not hosting a game
+	 */
+	public Server getServer() {
+		return server;
+	}
+
+	/**
+	 * Shows an error of the server in a message dialog.
+	 * 
+	 * @param messageLines
+	 *            lines of the error message
+	 */
+	public void showServerError(final String[] messageLines) {
+		// Server thread cannot be blocked (messages can arrive while this
+		// message is displayed), we show error message in a new thread
+		new Thread() {
+
+			public void run() {
+				JOptionPane.showMessageDialog(mainFrame, messageLines, "Error", JOptionPane.ERROR_MESSAGE);
+			}
+		}.start();
+	}
+
+	/**
+	 * Method to be called when the server has broadcasted a chat message. The
+	 * message is displayed by our client, nothing to do here.
+	 * 
+	 * @param message
+	 *            the broadcasted message
+	 */
+	public void messageBroadcasted(final String message) {}
+
+	/**
+	 * Method to be called when the server has detected that the game states
+	 * of the clients diverged. The server broadcasts it as a chat message too,
+	 * which is displayed by our client, so it is only logged here.
+	 * 
+	 * @param tick
+	 *            the first tick whose state hashes differ
+	 * @param clientName
+	 *            name of the client whose state hash differs
+	 * @param referenceClientName
+	 *            name of the client whose state hash it differs from
+	 */
+	public void gameDesynchronized(final int tick, final String clientName, final String referenceClientName) {
+		System.out.println("GameManager.gameDesynchronized() " + clientName + " differs from " + referenceClientName + " at tick " + tick);
+	}
+
 	// ******************************************************************************************//
 	// ************* SERVICES TO IMPLEMENT MenuHanler interface
 	// *************************//
@@ -348,7 +403,7 @@ public class GameManager implements MainMenuHandler, OptionsChangeListener<Clien
 			// causing invoking of this
 			// method is possible only when
 			// we're in IDLE state
-			server = new Server(serverOptionsManager, mainFrame, this);
+			server = new Server(serverOptionsManager, this);
 			server.start();
 			if (server.waitForAndCheckServerSocket()) {
 				mainMenuBar.setOurServerRunning(true);
@@ -522,6 +577,23 @@ public class GameManager implements MainMenuHandler, OptionsChangeListener<Clien
 		SoundManager.setEnableSounds(enableSounds);
 	}
 
+	public void playSound(final GameSounds sound) {
+		SoundEffect.valueOf(sound.name()).play();
+	}
+
+	public void showMessage(final String message) {
+		mainFrame.receiveMessage(message);
+	}
+
+	public void restartGame() {
+		endCurrentGame();
+		startCurrentGame();
+	}
+
+	public void replayingChanged(final boolean replaying) {
+		SoundManager.setMuted(replaying);
+	}
+
 	public boolean isServer() {
 		return server != null;
 	}
@@ -1,11 +1,17 @@
 package com.braids.coffeebombermen.client;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Map;
-import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import com.braids.coffeebombermen.AbstractAnimationMainComponentHandler;
 import com.braids.coffeebombermen.Consts;
@@ -17,6 +23,7 @@ import com.braids.coffeebombermen.MainMenuBar.GameStates;
 import com.braids.coffeebombermen.client.gamecore.control.GameCoreHandler;
 import com.braids.coffeebombermen.client.gamecore.control.Player;
 import com.braids.coffeebombermen.client.gamecore.model.level.LevelModel;
+import com.braids.coffeebombermen.client.gamecore.robot.RobotTypes;
 import com.braids.coffeebombermen.client.gamecore.view.GameSceneMainComponentHandler;
 import com.braids.coffeebombermen.client.graphics.AnimationDatas;
 import com.braids.coffeebombermen.client.graphics.GraphicsManager;
@@ -24,6 +31,7 @@ import com.braids.coffeebombermen.options.OptionsChangeListener;
 import com.braids.coffeebombermen.options.OptionsManager;
 import com.braids.coffeebombermen.options.ServerComponentOptions;
 import com.braids.coffeebombermen.options.OptConsts.NetworkLatencies;
+import com.braids.coffeebombermen.options.OptConsts.PlayerControlKeys;
 import com.braids.coffeebombermen.options.OptConsts.SceneRefreshModes;
 import com.braids.coffeebombermen.options.model.ClientOptions;
 import com.braids.coffeebombermen.options.model.PublicClientOptions;
@@ -32,8 +40,13 @@ import com.braids.coffeebombermen.server.PlayerCollector;
 import com.braids.coffeebombermen.server.Server;
 import com.braids.coffeebombermen.utils.ConnectionStub;
 import com.braids.coffeebombermen.utils.GeneralStringTokenizer;
+import com.braids.coffeebombermen.utils.IterationFrame;
+import com.braids.coffeebombermen.utils.LocalConnectionStub;
 import com.braids.coffeebombermen.utils.MathHelper;
+import com.braids.coffeebombermen.utils.RestorableRandom;
+import com.braids.coffeebombermen.utils.SocketConnectionStub;
 import com.braids.coffeebombermen.utils.TimedIterableControlledThread;
+import com.braids.coffeebombermen.utils.WakeUpSignal;
 
 /**
  * A client of the game.<br>
@@ -52,8 +65,21 @@ import com.braids.coffeebombermen.utils.TimedIterableControlledThread;
  * <br>
  * The client is also TimedIterableControlledThread, because in case of not low
  * network latency client times a few iterations by himself.<br>
+ * In case of rollback network mode the client times all the iterations by
+ * himself, and a RollbackSimulator corrects the game state when the actions
+ * arrive from the server. The server keeps us ahead of it just enough (so our
+ * actions arrive in time) by the Commands.ADJUSTING_TIME command.<br>
+ * If we lag behind, the server doesn't wait for us, the STARTING_NEXT_ITERATION
+ * frames are queued, and we process them one by one to catch up. If the server
+ * appoints us to control the players of a ghost (a client lagging too much),
+ * we send the actions of robots for its players.<br>
+ * If our connection to the server is lost during a game (except in rollback
+ * network mode or in our own game), we resume our session through a new
+ * connection: we get a snapshot of the game and the actions since the
+ * snapshot, and fast-forward the game until we catch up with the others.<br>
  * <br>
- * The joining protocol is described at the PlayerCollector javadoc.
+ * The joining and resuming protocols are described at the PlayerCollector
+ * javadoc.
  */
 public class Client extends TimedIterableControlledThread implements MessageHandler, OptionsChangeListener<ClientOptions> {
 
@@ -82,12 +108,63 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 		 * public client options, will be forwarded to us too.)
 		 */
 		SENDING_PUBLIC_CLIENT_OPTIONS,
-		/** Starting next iteration command. */
-		STARTING_NEXT_ITERATION
+		/**
+		 * Starting next iteration command. This command is sent as an
+		 * IterationFrame, not as text.
+		 */
+		STARTING_NEXT_ITERATION,
+		/**
+		 * Changing the gate period command (in case of adaptive network
+		 * latency). Parameters: the tick of the STARTING_NEXT_ITERATION frame
+		 * from which the new period is effective, and the new period.
+		 */
+		CHANGING_GATE_PERIOD,
+		/**
+		 * Adjusting the time command (in case of rollback network mode).
+		 * Parameter: the number of iterations to be simulated extra (negative
+		 * value means the number of timer ticks to be skipped). Replaces the
+		 * previous adjustment if it hasn't been done yet.
+		 */
+		ADJUSTING_TIME,
+		/**
+		 * A client has become a ghost command: it lags too much, its actions
+		 * are dropped by the server. Parameters: the index of the ghost, and
+		 * the index of the client whose robots control the players of the
+		 * ghost (-1 if none).
+		 */
+		A_CLIENT_HAS_BECOME_A_GHOST,
+		/**
+		 * Sending the session key command, the end of the joining protocol.
+		 * Parameter: the key we can resume our session with.
+		 */
+		SENDING_SESSION_KEY,
+		/**
+		 * Requesting a snapshot of the game command (for clients resuming their
+		 * sessions). Parameter: the id of the request.
+		 */
+		REQUESTING_GAME_SNAPSHOT,
+		/**
+		 * A client has resumed the game command: it is not a ghost any more.
+		 * Parameter: the index of the client.
+		 */
+		A_CLIENT_HAS_RESUMED_THE_GAME
 	}
 
 	/** Identification string of the Bombermen client. */
 	public static final String                   CLIENT_IDENTIFICATION_STRING = Consts.APPLICATION_NAME + " client";
+	/** Separator of the host and the room name in the server URL. */
+	public static final char                     ROOM_SEPARATOR_CHAR          = '/';
+	/**
+	 * Time without frames from the server after which the connection is
+	 * considered to be lost during a game in ns.
+	 */
+	private static final long                    CONNECTION_TIMEOUT           = 5000000000l;
+	/** Maximum time of trying to resume our session in ns. */
+	private static final long                    RESUMING_TIMEOUT             = 60000000000l;
+	/** Period time of the attempts to resume our session in ms. */
+	private static final long                    RECONNECTING_PERIOD          = 2000l;
+	/** Maximum size of a received game snapshot in bytes. */
+	private static final int                     MAX_SNAPSHOT_SIZE            = 4 * 1024 * 1024;
 
 	/** Reference to the game manager. */
 	private final GameManager                    gameManager;
@@ -103,6 +180,30 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 	private final ArrayList<PublicClientOptions> clientsPublicClientOptions   = new ArrayList<PublicClientOptions>();
 	/** Our index in the public client options vector. */
 	private int                                  ourIndex;
+	/**
+	 * Tells whether our session can be resumed (we are not connected to our
+	 * own game).
+	 */
+	private final boolean                        resumable;
+	/** Key of our session, 0 if we have none. */
+	private long                                 sessionKey;
+	/** Tells whether sending to the server has failed. */
+	private boolean                              connectionLost;
+	/** The time when the last frame has been received (System.nanoTime()). */
+	private long                                 lastFrameReceivedTime;
+	/** Tells whether a snapshot of the game has been requested. */
+	private boolean                              snapshotRequested;
+	/** Id of the last snapshot request. */
+	private int                                  snapshotRequestId;
+	/** Tells whether we are fast-forwarding the game after resuming. */
+	private boolean                              fastForwarding;
+	/** The tick of the frame we have caught up with when it is processed. */
+	private int                                  fastForwardTick;
+	/**
+	 * Tells whether the control keys of our players have to be released (the
+	 * robots of the ghost controller may have pressed them).
+	 */
+	private boolean                              releasingOurKeys;
 
 	/** Handler of the main component being the waiting animation component. */
 	private final WaitingAnimMainCompHandler     waitingAnimationMainComponentHandler;
@@ -119,11 +220,19 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 	 */
 	private int                                  iterationCounter;
 	/**
-	 * Iteration mask to determine whether next iteraion will be timed by us or
-	 * the server. Capital letters indicates that its value is constant for the
-	 * whole time of a game.
+	 * Number of iterations between two server timed iterations (1 means every
+	 * iteration is timed by the server).
+	 */
+	private int                                  gatePeriod;
+	/** Number of the next iteration which will be timed by the server. */
+	private int                                  nextGatedIteration;
+	/**
+	 * The tick of the server timed iteration from which the changed gate
+	 * period is effective, -1 if there is no pending change.
 	 */
-	private int                                  ITERATION_NETWORK_LATENCY_MASK;
+	private int                                  gatePeriodChangeTick;
+	/** The changed gate period effective from gatePeriodChangeTick. */
+	private int                                  changedGatePeriod;
 	/**
 	 * Iteration mask to determine whether we have to redraw the game scene
 	 * after calculating next iteration.
@@ -131,9 +240,32 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 	private int                                  iterationSceneRefreshMask;
 
 	/** New, unprocessed actions of all clients (including ours). */
-	public String                                newClientsActions;
+	private final IterationFrame                 newClientsActions            = new IterationFrame(IterationFrame.STARTING_NEXT_ITERATION_MARKER);
+	/** Tells whether new clients actions have arrived (and not processed yet). */
+	private boolean                              newClientsActionsArrived;
+	/** Frame of our READY_FOR_NEXT_ITERATION command (reused). */
+	private final IterationFrame                 readyFrame                   = new IterationFrame(IterationFrame.READY_FOR_NEXT_ITERATION_MARKER);
+	/** The rollback simulator in case of rollback network mode, else null. */
+	private RollbackSimulator                    rollbackSimulator;
+	/**
+	 * Number of iterations to be simulated extra (negative value means the
+	 * number of timer ticks to be skipped) in case of rollback network mode.
+	 */
+	private int                                  timeAdjustment;
+	/** The players of the ghosts controlled by our robots. */
+	private final ArrayList<Player[]>            controlledGhostsPlayers      = new ArrayList<Player[]>();
+	/**
+	 * The players of the ghosts whose control keys have to be released before
+	 * our robots take them over.
+	 */
+	private final ArrayList<Player[]>            takenOverGhostsPlayers       = new ArrayList<Player[]>();
 
 	private Map<String, Integer>                 previousRoundsPoints;
+	/**
+	 * Signal waking up the client thread: raised by the iteration timer, and
+	 * by the arrival of a message if the connection supports it.
+	 */
+	private final WakeUpSignal                   wakeUpSignal                 = new WakeUpSignal();
 
 	/**
 	 * Creates a new Client.
@@ -160,6 +292,7 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 		this.gameManager = gameManager;
 		this.mainFrame = mainFrame;
 		this.clientOptionsManager = clientOptionsManager;
+		resumable = serverOptions == null;
 		globalServerOptionsManager = new OptionsManager<ServerOptions>(new ServerComponentOptions(new ServerOptions(), true), "Global server options",
 		        this.mainFrame, true);
 
@@ -213,18 +346,28 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 	 */
 	private void connectToServer(final ServerOptions serverOptions) throws ConnectingToServerFailedException {
 		final ClientOptions clientOptions = clientOptionsManager.getOptions();
-		Socket socket;
-		try {
-			socket = serverOptions == null ? new Socket(clientOptions.serverURL, clientOptions.gamePort) : new Socket("localhost", serverOptions.getGamePort());
-		} catch (final UnknownHostException ue) {
-			throw new ConnectingToServerFailedException("Unknown server host!");
-		} catch (final IOException ie) {
-			throw new ConnectingToServerFailedException("Server not running on destination host!");
+		// The server URL can name a room of the server too: host/room
+		final int roomSeparatorIndex = clientOptions.serverURL.indexOf(ROOM_SEPARATOR_CHAR);
+		final String serverHost = roomSeparatorIndex < 0 ? clientOptions.serverURL : clientOptions.serverURL.substring(0, roomSeparatorIndex);
+		final String roomName = (serverOptions != null) || (roomSeparatorIndex < 0) ? "" : clientOptions.serverURL.substring(roomSeparatorIndex + 1);
+		Socket socket = null;
+		if (serverOptions == null) {
+			try {
+				socket = new Socket(serverHost, clientOptions.gamePort);
+			} catch (final UnknownHostException ue) {
+				throw new ConnectingToServerFailedException("Unknown server host!");
+			} catch (final IOException ie) {
+				throw new ConnectingToServerFailedException("Server not running on destination host!");
+			}
 		}
 
 		try {
 			try {
-				serverStub = new ConnectionStub(socket);
+				// Our own game is joined through an in-process connection
+				serverStub = socket == null ? gameManager.getServer().connectLocalClient() : new SocketConnectionStub(socket);
+				if (serverStub instanceof LocalConnectionStub) {
+					((LocalConnectionStub) serverStub).setMessageSignal(wakeUpSignal);
+				}
 				serverStub.sendMessage(CLIENT_IDENTIFICATION_STRING);
 				if (!serverStub.receiveMessage().equals(PlayerCollector.SERVER_IDENTIFICATION_STRING)) {
 					throw new ConnectingToServerFailedException("Destination server is not a " + Consts.APPLICATION_NAME + " server!");
@@ -234,8 +377,13 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 				if (!serverVersion.equals(Consts.APPLICATION_VERSION)) {
 					throw new ConnectingToServerFailedException("Incompatible " + Consts.APPLICATION_NAME + " server (ver. " + serverVersion + ")!");
 				}
+				serverStub.sendMessage(roomName);
 				serverStub.sendMessage(serverOptions == null ? clientOptions.password : serverOptions.getPassword());
-				if (!serverStub.receiveMessage().equals(PlayerCollector.PASSWORD_ACCEPTED)) {
+				final String passwordAnswer = serverStub.receiveMessage();
+				if (passwordAnswer.equals(PlayerCollector.ROOM_REJECTED)) {
+					throw new ConnectingToServerFailedException("The room is not available (too many rooms)!");
+				}
+				if (!passwordAnswer.equals(PlayerCollector.PASSWORD_ACCEPTED)) {
 					throw new ConnectingToServerFailedException("Incorrect game password!");
 				}
 
@@ -257,6 +405,15 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 		}
 	}
 
+	/**
+	 * Method to be called when the timeable object must be timed. Signs that
+	 * new iteration may begin now, and wakes up the client thread.
+	 */
+	public void signalingNextIteration() {
+		super.signalingNextIteration();
+		wakeUpSignal.signal();
+	}
+
 	/**
 	 * The run() method of the client controlled thread. Provides the services
 	 * of the client.
@@ -265,12 +422,20 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 		final MainMenuBar mainMenuBar = mainFrame.getMainMenuBar();
 		while (!requestedToCancel) {
 
+			if (mainMenuBar.getGameState() == GameStates.PLAYING) {
+				checkConnection();
+			}
 			if (mainMenuBar.getGameState() == GameStates.PLAYING) {
 				// If we playing, we check whether next iteration should begin
 				// now
-				if ((iterationCounter & ITERATION_NETWORK_LATENCY_MASK) == 0) {
+				if (fastForwarding) {
+					fastForward();
+				} else if (rollbackSimulator != null) {
+					// All iterations are timed by us
+					handleRollbackIterations();
+				} else if (iterationCounter == nextGatedIteration) {
 					// Next iteration is timed by the server now
-					if (newClientsActions != null) {
+					if (newClientsActionsArrived) {
 						startNextIteration();
 					}
 				} else {
@@ -284,7 +449,9 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 
 			checkForNewCommands();
 			try {
-				sleep(10l);
+				// Woken up by the timer (and by the messages of a local
+				// connection), the timeout is for the socket connections
+				wakeUpSignal.await(10l);
 			} catch (final InterruptedException ie) {}
 		}
 	}
@@ -293,19 +460,42 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 	 * Checks whether the server sent new messages, and process them if it did.
 	 */
 	private void checkForNewCommands() {
-		while (serverStub.hasNewMessage()) {
+		while (true) {
+			if (snapshotRequested) {
+				if (newClientsActionsArrived) {
+					break; // The snapshot is saved when the frames received
+					// before the request have been processed
+				}
+				sendGameSnapshot();
+			}
+			if (!serverStub.hasNewMessage()) {
+				break;
+			}
 			try {
+				if (serverStub.isNextMessageFrame()) {
+					// The STARTING_NEXT_ITERATION command is the most frequent
+					// command, it comes as an iteration frame
+					if (newClientsActionsArrived) {
+						break; // We are lagging, the previous frame hasn't
+						// been processed yet
+					}
+					serverStub.receiveFrame(newClientsActions);
+					lastFrameReceivedTime = System.nanoTime();
+					if (rollbackSimulator != null) {
+						rollbackSimulator.addAuthoritativeFrame(newClientsActions);
+					} else {
+						newClientsActionsArrived = true;
+					}
+					continue;
+				}
+
 				final GeneralStringTokenizer commandTokenizer = new GeneralStringTokenizer(serverStub.receiveMessage());
 
 				Commands command = Commands.values()[commandTokenizer.nextIntToken()];
 
 				switch (command) {
-					// The message loop checks Commands.STARTING_NEXT_ITERATION
-					// and Commands.MESSAGE first,
-					// because these are the most frequent commands.
-					case STARTING_NEXT_ITERATION:
-						newClientsActions = commandTokenizer.hasRemainingString() ? commandTokenizer.remainingString() : "";
-						break;
+					// The message loop checks Commands.MESSAGE first, because
+					// this is the most frequent text command.
 					case MESSAGE:
 						String messageText = commandTokenizer.remainingString();
 						mainFrame.receiveMessage(messageText);
@@ -333,6 +523,12 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 						break;
 					case STARTING_NEXT_ROUND:
 						gameCoreHandler.initNextRound();
+						final ServerOptions globalServerOptions = globalServerOptionsManager.getOptions();
+						if (globalServerOptions.getNetworkLatency() == NetworkLatencies.ROLLBACK) {
+							rollbackSimulator = new RollbackSimulator(gameCoreHandler, globalServerOptions.getRollbackWindow());
+							timeAdjustment = 0;
+							iterationTimer.setReadyForNextIteration();
+						}
 						break;
 					case A_CLIENT_HAS_JOINED_THE_GAME:
 						clientsPublicClientOptions.add(PublicClientOptions.parseFromString(commandTokenizer.remainingString()));
@@ -344,7 +540,13 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 						if (ourIndex > clientIndex) {
 							ourIndex--;
 						}
-						if (gameCoreHandler != null) {
+						if ((gameCoreHandler != null) && (clientIndex < gameCoreHandler.getPlayers().size())) {
+							controlledGhostsPlayers.remove(gameCoreHandler.getPlayers().get(clientIndex));
+							takenOverGhostsPlayers.remove(gameCoreHandler.getPlayers().get(clientIndex));
+						}
+						if (rollbackSimulator != null) {
+							rollbackSimulator.clientHasLeft(clientIndex);
+						} else if (gameCoreHandler != null) {
 							gameCoreHandler.aClientHasLeftTheGame(clientIndex);
 						}
 						break;
@@ -355,8 +557,33 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 						clientsPublicClientOptions.set(clientIndex_, PublicClientOptions.parseFromString(commandTokenizer.remainingString()));
 						break;
 					case SHUTDOWN:
+						sessionKey = 0l; // Nothing to resume
 						serverStub.close();
 						break;
+					case CHANGING_GATE_PERIOD:
+						gatePeriodChangeTick = commandTokenizer.nextIntToken();
+						changedGatePeriod = commandTokenizer.nextIntToken();
+						break;
+					case ADJUSTING_TIME:
+						timeAdjustment = commandTokenizer.nextIntToken();
+						break;
+					case A_CLIENT_HAS_BECOME_A_GHOST:
+						handleGhost(commandTokenizer.nextIntToken(), commandTokenizer.nextIntToken());
+						break;
+					case SENDING_SESSION_KEY:
+						sessionKey = Long.parseLong(commandTokenizer.nextStringToken());
+						break;
+					case REQUESTING_GAME_SNAPSHOT:
+						snapshotRequestId = commandTokenizer.nextIntToken();
+						snapshotRequested = true;
+						break;
+					case A_CLIENT_HAS_RESUMED_THE_GAME:
+						final int resumedClientIndex = commandTokenizer.nextIntToken();
+						handleGhost(resumedClientIndex, -1);
+						if (resumedClientIndex == ourIndex) {
+							releasingOurKeys = true;
+						}
+						break;
 				}
 			} catch (final Exception e) {
 				e.printStackTrace();
@@ -367,24 +594,256 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 	/**
 	 * Sends ready for next iteration command to the server. This includes
 	 * sending our client's new actions.
+	 * 
+	 * @param tick
+	 *            the tick of the iteration whose actions are sent
+	 * @param holdTime
+	 *            the time we held the answered STARTING_NEXT_ITERATION frame
+	 *            before processing it, in microseconds
 	 */
-	private void sendReadyForNextIterationCommand() {
+	private void sendReadyForNextIterationCommand(final int tick, final int holdTime) {
 		try {
-			String newClientActions = gameSceneMainComponentHandler.getGameSceneComponent().getAndClearNewActions();
+			readyFrame.clear(tick);
+			readyFrame.setHoldTime(holdTime);
+			if (rollbackSimulator == null) {
+				// In rollback network mode our state is predicted, it may
+				// differ from the others until it is corrected
+				readyFrame.setStateHash(gameCoreHandler.getStateHash());
+			}
+			readyFrame.beginSection(ourIndex);
+			if (releasingOurKeys) {
+				// Releasing the keys pressed by the robots of the ghost
+				// controller
+				releasingOurKeys = false;
+				final int ourPlayersCount = gameCoreHandler.getPlayers().get(gameCoreHandler.getOurClientIndex()).length;
+				for (int i = 0; i < ourPlayersCount; i++) {
+					for (final PlayerControlKeys playerControlKey : PlayerControlKeys.values()) {
+						readyFrame.addAction(i, playerControlKey, false);
+					}
+				}
+			}
+			gameSceneMainComponentHandler.getGameSceneComponent().getAndClearNewActions(readyFrame);
 
 			for (Player player : gameCoreHandler.getPlayers().get(gameCoreHandler.getOurClientIndex())) {
 				if (player.getRobot() != null) {
-					newClientActions += player.getRobot().getNextAction();
+					readyFrame.addActions(player.getRobot().getNextAction());
 				}
 			}
 
-			if (newClientActions.length() > 0) {
-				newClientActions += GeneralStringTokenizer.GENERAL_SEPARATOR_STRING;
+			for (final Player[] ghostPlayers : controlledGhostsPlayers) {
+				readyFrame.beginSection(gameCoreHandler.getPlayers().indexOf(ghostPlayers));
+				if (takenOverGhostsPlayers.remove(ghostPlayers)) {
+					// Releasing the keys pressed by the ghost
+					for (int i = 0; i < ghostPlayers.length; i++) {
+						for (final PlayerControlKeys playerControlKey : PlayerControlKeys.values()) {
+							readyFrame.addAction(i, playerControlKey, false);
+						}
+					}
+				}
+				for (final Player player : ghostPlayers) {
+					readyFrame.addActions(player.getRobot().getNextAction());
+				}
 			}
 
-			serverStub.sendMessage(Server.Commands.READY_FOR_NEXT_ITERATION.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING + newClientActions);
+			serverStub.sendFrame(readyFrame);
+		} catch (final IOException ie) {
+			ie.printStackTrace();
+			connectionLost = true;
+		}
+	}
+
+	/**
+	 * Sends the requested snapshot of the game to the server: our iteration
+	 * and gate state, and the snapshot of the game core, deflated and encoded
+	 * to text.
+	 */
+	private void sendGameSnapshot() {
+		snapshotRequested = false;
+		if (gameCoreHandler == null) {
+			return;
+		}
+		try {
+			final ByteArrayOutputStream buffer = new ByteArrayOutputStream(16384);
+			final DataOutputStream output = new DataOutputStream(new DeflaterOutputStream(buffer));
+			output.writeInt(iterationCounter);
+			output.writeInt(gatePeriod);
+			output.writeInt(nextGatedIteration);
+			output.writeInt(gatePeriodChangeTick);
+			output.writeInt(changedGatePeriod);
+			final byte[] snapshot = gameCoreHandler.saveSnapshot();
+			output.writeInt(snapshot.length);
+			output.write(snapshot);
+			output.close();
+			serverStub.sendMessage(Server.Commands.SENDING_GAME_SNAPSHOT.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING + snapshotRequestId
+			        + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING + Base64.getEncoder().encodeToString(buffer.toByteArray()));
 		} catch (final IOException ie) {
 			ie.printStackTrace();
+			connectionLost = true;
+		}
+	}
+
+	/**
+	 * Checks our connection to the server during a game, and resumes our
+	 * session if the connection has been lost: sending to the server has
+	 * failed, the connection has ended, or no frame has arrived for
+	 * CONNECTION_TIMEOUT.
+	 */
+	private void checkConnection() {
+		if (!resumable || (sessionKey == 0l) || (rollbackSimulator != null)) {
+			return;
+		}
+		if (!connectionLost && !serverStub.isEndOfStream()
+		        && (serverStub.hasNewMessage() || (System.nanoTime() - lastFrameReceivedTime < CONNECTION_TIMEOUT))) {
+			return;
+		}
+		resumeSession();
+	}
+
+	/**
+	 * Resumes our session through a new connection (see the resuming protocol
+	 * at the PlayerCollector javadoc). Tries again every RECONNECTING_PERIOD
+	 * for RESUMING_TIMEOUT, then gives up, and the game ends for us.
+	 */
+	private void resumeSession() {
+		mainFrame.receiveMessage("The connection to the server has been lost, resuming the session...");
+		serverStub.close();
+		connectionLost = false;
+		snapshotRequested = false;
+		final long startTime = System.nanoTime();
+		String failureMessage = null;
+		while (!requestedToCancel && (System.nanoTime() - startTime < RESUMING_TIMEOUT)) {
+			try {
+				connectToServer(null);
+				serverStub.sendMessage(Server.Commands.RESUMING_SESSION.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING + sessionKey
+				        + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING);
+				final String answer = serverStub.receiveMessage();
+				if (PlayerCollector.SESSION_RESUMED.equals(answer)) {
+					receiveResumedGame();
+					return;
+				}
+				serverStub.close();
+				if (PlayerCollector.SESSION_REJECTED.equals(answer)) {
+					break;
+				}
+				// Else the snapshot of the game couldn't be got
+			} catch (final ConnectingToServerFailedException ce) {
+				failureMessage = ce.getMessage();
+			} catch (final Exception e) {
+				e.printStackTrace();
+				serverStub.close();
+			}
+			try {
+				Thread.sleep(RECONNECTING_PERIOD);
+			} catch (final InterruptedException ie) {}
+		}
+		mainFrame.receiveMessage(failureMessage == null ? "The session can't be resumed." : "The session can't be resumed: " + failureMessage);
+		sessionKey = 0l;
+		handleGameEnding();
+	}
+
+	/**
+	 * Receives the game of our resumed session, and starts fast-forwarding it
+	 * from the snapshot.
+	 * 
+	 * @throws IOException
+	 *             if I/O error occurs during receiving the game
+	 */
+	private void receiveResumedGame() throws IOException {
+		clientsPublicClientOptions.clear();
+		final int publicClientOptionsCount = Integer.parseInt(serverStub.receiveMessage());
+		for (int i = 0; i < publicClientOptionsCount; i++) {
+			clientsPublicClientOptions.add(PublicClientOptions.parseFromString(serverStub.receiveMessage()));
+		}
+		ourIndex = Integer.parseInt(serverStub.receiveMessage());
+		final ServerOptions globalServerOptions = ServerOptions.parseFromString(serverStub.receiveMessage());
+		globalServerOptionsManager.setOptions(globalServerOptions);
+		LevelModel levelModel = null;
+		if (!globalServerOptions.getLevelName().equals(ServerComponentOptions.RANDOMLY_GENERATED_LEVEL_NAME)) {
+			levelModel = LevelModel.parseFromString(serverStub.receiveMessage());
+		}
+		fastForwardTick = Integer.parseInt(serverStub.receiveMessage());
+
+		final String encodedSnapshot = serverStub.receiveMessage();
+		final DataInputStream input = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(encodedSnapshot))));
+		iterationCounter = input.readInt();
+		gatePeriod = input.readInt();
+		nextGatedIteration = input.readInt();
+		gatePeriodChangeTick = input.readInt();
+		changedGatePeriod = input.readInt();
+		final int snapshotSize = input.readInt();
+		if ((snapshotSize < 0) || (snapshotSize > MAX_SNAPSHOT_SIZE)) {
+			throw new IOException("Invalid size of the game snapshot: " + snapshotSize);
+		}
+		final byte[] snapshot = new byte[snapshotSize];
+		input.readFully(snapshot);
+		input.close();
+
+		// The snapshot comes from another client: it is restored first, and the
+		// previous game core handler is only dropped if it is valid
+		final GameCoreHandler resumedGameCoreHandler = new GameCoreHandler(gameManager, globalServerOptions, levelModel, clientsPublicClientOptions, ourIndex);
+		resumedGameCoreHandler.restoreSnapshot(snapshot);
+		gameSceneMainComponentHandler.getGameSceneComponent().setGameCoreHandler(null);
+		gameCoreHandler = resumedGameCoreHandler;
+		gameCoreHandler.setReplaying(true);
+		gameSceneMainComponentHandler.getGameSceneComponent().setGameCoreHandler(gameCoreHandler);
+		gameSceneMainComponentHandler.getGameSceneComponent().handleGameStarting();
+
+		newClientsActionsArrived = false;
+		controlledGhostsPlayers.clear();
+		takenOverGhostsPlayers.clear();
+		nextIterationMayBegin = false;
+		iterationTimer.setFrequency(globalServerOptions.getGameCycleFrequency());
+		lastFrameReceivedTime = System.nanoTime();
+		fastForwarding = true;
+	}
+
+	/**
+	 * Fast-forwards the game after resuming our session: calculates the
+	 * iterations without waiting for the timer as long as the frames of the
+	 * action log are available, until the frame of fastForwardTick has been
+	 * processed. Sounds are suppressed meanwhile.
+	 */
+	private void fastForward() {
+		while (iterationCounter <= fastForwardTick) {
+			if ((iterationCounter == nextGatedIteration) && !newClientsActionsArrived) {
+				checkForNewCommands();
+				if (!newClientsActionsArrived || !fastForwarding) {
+					return; // We wait for the next frame
+				}
+			}
+			startNextIteration();
+		}
+
+		fastForwarding = false;
+		gameCoreHandler.setReplaying(false);
+		gameSceneMainComponentHandler.getGameSceneComponent().repaint();
+	}
+
+	/**
+	 * Handles that a client has become a ghost: if we control its players,
+	 * robots are set to them.
+	 * 
+	 * @param ghostIndex
+	 *            index of the ghost
+	 * @param controllerIndex
+	 *            index of the client controlling the players of the ghost
+	 */
+	private void handleGhost(final int ghostIndex, final int controllerIndex) {
+		if ((gameCoreHandler == null) || (rollbackSimulator != null)) {
+			return;
+		}
+		final Player[] ghostPlayers = gameCoreHandler.getPlayers().get(ghostIndex);
+		if (controllerIndex != ourIndex) {
+			controlledGhostsPlayers.remove(ghostPlayers);
+			takenOverGhostsPlayers.remove(ghostPlayers);
+			return;
+		}
+		if (!controlledGhostsPlayers.contains(ghostPlayers)) {
+			for (int i = 0; i < ghostPlayers.length; i++) {
+				ghostPlayers[i].setRobot(i, ghostPlayers[i].getModel(), RobotTypes.SIMPLE);
+			}
+			controlledGhostsPlayers.add(ghostPlayers);
+			takenOverGhostsPlayers.add(ghostPlayers);
 		}
 	}
 
@@ -441,10 +900,10 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 	 */
 	private void handleGameStarting() {
 		try {
-			newClientsActions = null;
+			newClientsActionsArrived = false;
 			// Receiving all required options and datas for a new game...
 			long seed = Long.parseLong(serverStub.receiveMessage());
-			final Random random = new Random(seed);
+			final RestorableRandom random = new RestorableRandom(seed);
 			MathHelper.setRandom(random);
 			System.out.println("Client.handleGameStarting() init random " + seed + " nextInt: " + random.nextInt());
 			final ServerOptions globalServerOptions = ServerOptions.parseFromString(serverStub.receiveMessage());
@@ -457,7 +916,7 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 			// We received all required informations... we can create game core
 			// handler now, and register that game is now in GameStates.PLAYING
 			// state
-			gameCoreHandler = new GameCoreHandler(gameManager, mainFrame, globalServerOptions, levelModel, clientsPublicClientOptions, ourIndex);
+			gameCoreHandler = new GameCoreHandler(gameManager, globalServerOptions, levelModel, clientsPublicClientOptions, ourIndex);
 			if (previousRoundsPoints != null) {
 				gameCoreHandler.setPoints(previousRoundsPoints);
 			}
@@ -467,12 +926,21 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 
 			// If network latency is LOW, we wait for STARTING_NEXT_ITERATION
 			// command in every iteration, if it's HIGH, we wait for it in every
-			// 2, and if it's EXTRA_HIGH, we wait for it in every 4.
-			ITERATION_NETWORK_LATENCY_MASK = globalServerOptions.getNetworkLatency() == NetworkLatencies.LOW ? 0
-			        : (globalServerOptions.getNetworkLatency() == NetworkLatencies.HIGH ? 1 : 3);
+			// 2, and if it's EXTRA_HIGH, we wait for it in every 4. If it's
+			// ADAPTIVE, we start with every iteration, and the server will tell
+			// when to change.
+			gatePeriod = globalServerOptions.getNetworkLatency() == NetworkLatencies.HIGH ? 2
+			        : (globalServerOptions.getNetworkLatency() == NetworkLatencies.EXTRA_HIGH ? 4 : 1);
+			gatePeriodChangeTick = -1;
+			nextGatedIteration = 0;
+			controlledGhostsPlayers.clear();
+			takenOverGhostsPlayers.clear();
 			iterationCounter = 0;
 			nextIterationMayBegin = false;
+			connectionLost = false;
+			lastFrameReceivedTime = System.nanoTime();
 			iterationTimer.setFrequency(globalServerOptions.getGameCycleFrequency());
+			iterationTimer.resetStatistics();
 
 			// We dont have to call iterationTimer.setReadyForNextIteration()
 			// here, because first iteration is always timed by the server
@@ -494,7 +962,16 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 	private void startNextIteration() {
 		if (gameCoreHandler != null) {
 
-			if (((iterationCounter + 1) & ITERATION_NETWORK_LATENCY_MASK) != 0) {
+			final boolean timedByServer = iterationCounter == nextGatedIteration;
+			if (timedByServer) {
+				if (iterationCounter == gatePeriodChangeTick) {
+					gatePeriod = changedGatePeriod;
+					gatePeriodChangeTick = -1;
+				}
+				nextGatedIteration = iterationCounter + gatePeriod;
+			}
+
+			if (iterationCounter + 1 != nextGatedIteration) {
 				nextIterationMayBegin = false;
 				iterationTimer.setReadyForNextIteration(); // The next iteration
 				// will NOT be timed
@@ -502,22 +979,16 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 				// our timer
 			}
 
-			if ((iterationCounter & ITERATION_NETWORK_LATENCY_MASK) == 0) { // This
-				// time
-				// we
-				// were
-				// timed
-				// by
-				// the
-				// server
+			if (timedByServer) { // This time we were timed by the server
+				final int holdTime = (int) ((System.nanoTime() - newClientsActions.getReceivedTime()) / 1000l);
 				gameCoreHandler.nextIteration(newClientsActions); // Timed by
 				// server:
 				// clients
 				// actions
 				// have to be
 				// passed
-				newClientsActions = null;
-				sendReadyForNextIterationCommand(); // Timed by server: we send
+				newClientsActionsArrived = false;
+				sendReadyForNextIterationCommand(iterationCounter, holdTime); // Timed by server: we send
 				// READY_FOR_NEXT_ITERATION
 				// command back
 			} else {
@@ -526,7 +997,7 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 				// passed
 			}
 
-			if ((iterationCounter & iterationSceneRefreshMask) == 0) {
+			if (!fastForwarding && ((iterationCounter & iterationSceneRefreshMask) == 0)) {
 				gameSceneMainComponentHandler.getGameSceneComponent().repaint();
 			}
 
@@ -534,15 +1005,62 @@ public class Client extends TimedIterableControlledThread implements MessageHand
 		}
 	}
 
+	/**
+	 * Handles the iterations in case of rollback network mode: starts the next
+	 * iteration if the timer ticked, and the extra iterations requested by the
+	 * server.
+	 */
+	private void handleRollbackIterations() {
+		if (nextIterationMayBegin) {
+			nextIterationMayBegin = false;
+			iterationTimer.setReadyForNextIteration();
+			if (timeAdjustment < 0) {
+				timeAdjustment++; // We're too far ahead of the server
+			} else {
+				startNextRollbackIteration();
+			}
+		}
+		while ((timeAdjustment > 0) && rollbackSimulator.canSimulateNext()) {
+			timeAdjustment--; // We're behind the server
+			startNextRollbackIteration();
+		}
+	}
+
+	/**
+	 * Starts the next iteration in case of rollback network mode: sends our
+	 * new actions to the server, and simulates the iteration with them. Does
+	 * nothing if we're too far ahead of the server (the iterations we would
+	 * have to roll back would exceed the rollback window).
+	 */
+	private void startNextRollbackIteration() {
+		if (!rollbackSimulator.canSimulateNext()) {
+			return;
+		}
+		sendReadyForNextIterationCommand(rollbackSimulator.getNextTick(), 0);
+		rollbackSimulator.simulateNext(readyFrame);
+
+		if ((iterationCounter & iterationSceneRefreshMask) == 0) {
+			gameSceneMainComponentHandler.getGameSceneComponent().repaint();
+		}
+
+		iterationCounter++;
+	}
+
 	/**
 	 * Handles ending of the game.
 	 */
 	private void handleGameEnding() {
+		if (fastForwarding) {
+			fastForwarding = false;
+			gameCoreHandler.setReplaying(false);
+		}
 		mainFrame.getMainMenuBar().setGameState(GameStates.PLAYER_COLLECTING_CONNECTED);
 		// This has to be done first
 		gameSceneMainComponentHandler.getGameSceneComponent().setGameCoreHandler(null);
 		previousRoundsPoints = gameCoreHandler.getPoints();
 		gameCoreHandler = null;
+		System.out.println("Client.handleGameEnding() " + iterationTimer.getStatistics());
+		rollbackSimulator = null;
 		gameManager.setMainComponentHandler(waitingAnimationMainComponentHandler);
 	}
 
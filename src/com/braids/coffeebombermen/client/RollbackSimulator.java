@@ -0,0 +1,209 @@
+package com.braids.coffeebombermen.client;
+
+import java.util.LinkedList;
+
+import com.braids.coffeebombermen.client.gamecore.control.GameCoreHandler;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
+import com.braids.coffeebombermen.utils.IterationFrame;
+
+/**
+ * Simulates the game in case of rollback network mode.<br>
+ * The client doesn't wait for the STARTING_NEXT_ITERATION frames of the
+ * server, it simulates the iterations with predicted actions: the actions of
+ * our players are known, and the other players are predicted to keep their
+ * control keys as they are (so the predicted frame holds only our section).
+ * Before simulating a predicted iteration the game state is saved. When the
+ * authoritative frame of an iteration arrives from the server, and its actions
+ * differ from the predicted ones, the saved state is restored, the iteration
+ * is simulated again with the authoritative actions, and the following
+ * iterations are simulated again with their predicted actions.<br>
+ * The number of not confirmed iterations is limited by the rollback window.
+ */
+class RollbackSimulator {
+
+	/** Reference to the game core handler. */
+	private final GameCoreHandler            gameCoreHandler;
+	/** The rollback window: the maximum number of not confirmed iterations. */
+	private final int                        rollbackWindow;
+	/**
+	 * The saved game states before the not confirmed iterations. The state
+	 * before the iteration of tick t is at index t % rollbackWindow. The
+	 * outputs are reused, so saving a state doesn't allocate.
+	 */
+	private final StateOutput[]              savedStates;
+	/**
+	 * The predicted frames of the not confirmed iterations. The frame of tick t
+	 * is at index t % rollbackWindow.
+	 */
+	private final IterationFrame[]           predictedFrames;
+	/** Authoritative frames of the iterations we haven't simulated yet. */
+	private final LinkedList<IterationFrame> aheadFrames       = new LinkedList<IterationFrame>();
+	/** Processed ahead frames which can be reused. */
+	private final LinkedList<IterationFrame> freeFrames        = new LinkedList<IterationFrame>();
+	/** The tick of the next iteration to be simulated. */
+	private int                              nextTick;
+	/**
+	 * The tick of the first not confirmed iteration (all the iterations before
+	 * this have been simulated with the authoritative actions).
+	 */
+	private int                              confirmedTick;
+	/** Number of the rollbacks. */
+	private int                              rollbacksCount;
+	/** Number of the iterations simulated again. */
+	private int                              resimulationsCount;
+
+	/**
+	 * Creates a new RollbackSimulator.
+	 * 
+	 * @param gameCoreHandler
+	 *            reference to the game core handler
+	 * @param rollbackWindow
+	 *            the maximum number of not confirmed iterations
+	 */
+	public RollbackSimulator(final GameCoreHandler gameCoreHandler, final int rollbackWindow) {
+		this.gameCoreHandler = gameCoreHandler;
+		this.rollbackWindow = rollbackWindow;
+		savedStates = new StateOutput[rollbackWindow];
+		predictedFrames = new IterationFrame[rollbackWindow];
+		for (int i = 0; i < rollbackWindow; i++) {
+			savedStates[i] = new StateOutput(16384);
+			predictedFrames[i] = new IterationFrame(IterationFrame.STARTING_NEXT_ITERATION_MARKER);
+		}
+	}
+
+	/**
+	 * Returns the tick of the next iteration to be simulated.
+	 * 
+	 * @return the tick of the next iteration to be simulated
+	 */
+	public int getNextTick() {
+		return nextTick;
+	}
+
+	/**
+	 * Tells whether the next iteration can be simulated: it is not too far
+	 * ahead of the last confirmed iteration.
+	 * 
+	 * @return true if the next iteration can be simulated; false if we have to
+	 *         wait for authoritative frames first
+	 */
+	public boolean canSimulateNext() {
+		return !aheadFrames.isEmpty() || (nextTick - confirmedTick < rollbackWindow);
+	}
+
+	/**
+	 * Simulates the next iteration. If its authoritative frame has already
+	 * arrived, that is used, else the iteration is predicted.
+	 * 
+	 * @param localActions
+	 *            the new actions of our players
+	 */
+	public void simulateNext(final IterationFrame localActions) {
+		if (aheadFrames.isEmpty()) {
+			final int index = nextTick % rollbackWindow;
+			gameCoreHandler.saveState(savedStates[index]);
+			predictedFrames[index].copyFrom(localActions);
+			predictedFrames[index].setTick(nextTick);
+			gameCoreHandler.nextIteration(predictedFrames[index]);
+		} else {
+			// We're behind the server: our actions will arrive late, and the
+			// server will send them in a later frame
+			final IterationFrame frame = aheadFrames.removeFirst();
+			gameCoreHandler.nextIteration(frame);
+			freeFrames.add(frame);
+			confirmedTick++;
+		}
+		nextTick++;
+	}
+
+	/**
+	 * Adds an authoritative frame received from the server. The frames must be
+	 * added in the order of their ticks. If the frame belongs to a predicted
+	 * iteration and the prediction was wrong, the game state is rolled back.
+	 * 
+	 * @param frame
+	 *            the authoritative frame
+	 */
+	public void addAuthoritativeFrame(final IterationFrame frame) {
+		if (frame.getTick() >= nextTick) {
+			final IterationFrame aheadFrame = freeFrames.isEmpty() ? new IterationFrame(frame.getMarker()) : freeFrames.removeFirst();
+			aheadFrame.copyFrom(frame);
+			aheadFrames.add(aheadFrame);
+			return;
+		}
+		if (frame.getTick() != confirmedTick) {
+			return; // Can't happen: frames arrive in order
+		}
+
+		if (!frame.hasSameActions(predictedFrames[confirmedTick % rollbackWindow])) {
+			rollbacksCount++;
+			gameCoreHandler.restoreState(savedStates[confirmedTick % rollbackWindow]);
+			gameCoreHandler.setReplaying(true);
+			gameCoreHandler.nextIteration(frame);
+			resimulate(confirmedTick + 1);
+			gameCoreHandler.setReplaying(false);
+		}
+		confirmedTick++;
+	}
+
+	/**
+	 * Handles a client leaving the game. The client has left after the last
+	 * received authoritative frame, so the leaving is effective from the
+	 * iteration following that, and the iterations predicted since are
+	 * simulated again.
+	 * 
+	 * @param clientIndex
+	 *            index of the client who has left
+	 */
+	public void clientHasLeft(final int clientIndex) {
+		while (!aheadFrames.isEmpty()) {
+			// Catching up with the server: the leaving comes after these
+			simulateNext(null);
+		}
+
+		if (nextTick == confirmedTick) {
+			gameCoreHandler.aClientHasLeftTheGame(clientIndex);
+			return;
+		}
+
+		gameCoreHandler.restoreState(savedStates[confirmedTick % rollbackWindow]);
+		gameCoreHandler.aClientHasLeftTheGame(clientIndex);
+		for (int tick = confirmedTick; tick < nextTick; tick++) {
+			final IterationFrame predictedFrame = predictedFrames[tick % rollbackWindow];
+			for (int i = 0; i < predictedFrame.getSectionsCount(); i++) {
+				if (predictedFrame.getSectionClientIndex(i) > clientIndex) {
+					predictedFrame.setSectionClientIndex(i, predictedFrame.getSectionClientIndex(i) - 1);
+				}
+			}
+		}
+		gameCoreHandler.setReplaying(true);
+		resimulate(confirmedTick);
+		gameCoreHandler.setReplaying(false);
+	}
+
+	/**
+	 * Simulates again the predicted iterations from a tick until the next
+	 * iteration. The saved states are replaced by the new ones.
+	 * 
+	 * @param fromTick
+	 *            tick of the first iteration to be simulated again
+	 */
+	private void resimulate(final int fromTick) {
+		for (int tick = fromTick; tick < nextTick; tick++) {
+			final int index = tick % rollbackWindow;
+			gameCoreHandler.saveState(savedStates[index]);
+			gameCoreHandler.nextIteration(predictedFrames[index]);
+			resimulationsCount++;
+		}
+	}
+
+	/**
+	 * Returns a one line summary of the rollbacks.
+	 * 
+	 * @return a one line summary of the rollbacks
+	 */
+	public String toString() {
+		return "Rollbacks: count=" + rollbacksCount + " resimulated iterations=" + resimulationsCount + " confirmed iterations=" + confirmedTick;
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.braids.coffeebombermen.client.gamecore;
+
+/**
+ * Listener of the game events having effects outside of the game core: sounds,
+ * messages and restarting the game.<br>
+ * The game core doesn't depend on the GUI or on the sound system, it only
+ * reports these events, so it can be run headless with a
+ * NullGameEventListener (for example on servers, by bots and by benchmarks).
+ */
+public interface GameEventListener {
+
+	/**
+	 * Called when a game event with a sound happens.
+	 * 
+	 * @param sound
+	 *            sound of the event
+	 */
+	void playSound(GameSounds sound);
+
+	/**
+	 * Called when a message is to be shown to the players.
+	 * 
+	 * @param message
+	 *            message to be shown
+	 */
+	void showMessage(String message);
+
+	/**
+	 * Called when a tray message is to be shown to the players.
+	 * 
+	 * @param message
+	 *            message to be shown
+	 */
+	void showTrayMessage(String message);
+
+	/**
+	 * Called when the game is to be restarted (the match is over and auto
+	 * restart is enabled).
+	 */
+	void restartGame();
+
+	/**
+	 * Called when already calculated iterations start or stop being
+	 * calculated again. The sounds of the replayed iterations have already
+	 * been played.
+	 * 
+	 * @param replaying
+	 *            true if iterations are about to be calculated again; false
+	 *            if replaying is over
+	 */
+	void replayingChanged(boolean replaying);
+
+}
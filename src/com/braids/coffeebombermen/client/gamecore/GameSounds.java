@@ -0,0 +1,30 @@
+package com.braids.coffeebombermen.client.gamecore;
+
+/**
+ * The sounds of the game events. The game core only tells which sound belongs
+ * to an event, playing it is up to the game event listener.
+ */
+public enum GameSounds {
+	/** A bomb detonates. */
+	BOOM,
+	/** A player picks up an item. */
+	PICKUP,
+	/** A player is wounded. */
+	WOUND,
+	/** A player kicks. */
+	KICK,
+	/** A player is healed. */
+	HEAL,
+	/** A player punches. */
+	THROW,
+	/** A player dies. */
+	DIE,
+	/** A bomb is placed. */
+	PLACE_BOMB,
+	/** A match starts. */
+	START_MATCH,
+	/** A death wall falls. */
+	DEATH_WALL,
+	/** A player builds a wall. */
+	PLACE_WALL
+}
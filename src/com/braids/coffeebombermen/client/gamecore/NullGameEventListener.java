@@ -0,0 +1,19 @@
+package com.braids.coffeebombermen.client.gamecore;
+
+/**
+ * A game event listener ignoring all the events, for running the game core
+ * headless.
+ */
+public class NullGameEventListener implements GameEventListener {
+
+	public void playSound(final GameSounds sound) {}
+
+	public void showMessage(final String message) {}
+
+	public void showTrayMessage(final String message) {}
+
+	public void restartGame() {}
+
+	public void replayingChanged(final boolean replaying) {}
+
+}
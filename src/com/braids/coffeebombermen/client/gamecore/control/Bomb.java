@@ -6,7 +6,6 @@ import com.braids.coffeebombermen.client.gamecore.CoreConsts;
 import com.braids.coffeebombermen.client.gamecore.Directions;
 import com.braids.coffeebombermen.client.gamecore.model.BombModel;
 import com.braids.coffeebombermen.client.gamecore.model.PlayerModel;
-import com.braids.coffeebombermen.client.gamecore.model.level.LevelComponent;
 import com.braids.coffeebombermen.client.gamecore.model.level.LevelModel;
 import com.braids.coffeebombermen.options.OptConsts.Walls;
 import com.braids.coffeebombermen.utils.MathHelper;
@@ -154,8 +153,8 @@ public class Bomb {
 
 				if (reachedPotentialTargetPosition) {
 					boolean permanentTargetPosition = true;
-					final LevelComponent levelComponent = levelModel.getComponent(model.getComponentPosX(), model.getComponentPosY());
-					if ((levelComponent.getWall() != Walls.EMPTY) || ((levelComponent.getWall() == Walls.EMPTY) && (levelComponent.getItem() != null))) {
+					final int cellIndex = levelModel.getCellIndex(model.getComponentPosX(), model.getComponentPosY());
+					if ((levelModel.getWall(cellIndex) != Walls.EMPTY) || (levelModel.getItem(cellIndex) != null)) {
 						permanentTargetPosition = false;
 					} else if (gameCoreHandler.isBombAtComponentPosition(model.getComponentPosX(), model.getComponentPosY())) {
 						permanentTargetPosition = false;
@@ -216,9 +215,9 @@ public class Bomb {
 					model.setPosX(model.getPosX() + CoreConsts.BOMB_ROLLING_SPEED * model.getDirectionXMultiplier());
 					model.setPosY(model.getPosY() + CoreConsts.BOMB_ROLLING_SPEED * model.getDirectionYMultiplier());
 
-					final LevelComponent levelComponent = levelModel.getComponent(model.getComponentPosX(), model.getComponentPosY());
-					if (levelComponent.getItem() != null) {
-						levelComponent.setItem(null);
+					final int cellIndex = levelModel.getCellIndex(model.getComponentPosX(), model.getComponentPosY());
+					if (levelModel.getItem(cellIndex) != null) {
+						levelModel.setItem(cellIndex, null);
 					}
 				} else {
 					if (model.isDetonatingOnHit()) {
@@ -0,0 +1,192 @@
+package com.braids.coffeebombermen.client.gamecore.control;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.braids.coffeebombermen.Consts;
+import com.braids.coffeebombermen.client.gamecore.BombTypes;
+import com.braids.coffeebombermen.client.gamecore.CoreConsts;
+import com.braids.coffeebombermen.client.gamecore.NullGameEventListener;
+import com.braids.coffeebombermen.client.gamecore.model.BombModel;
+import com.braids.coffeebombermen.client.gamecore.model.level.LevelComponent;
+import com.braids.coffeebombermen.client.gamecore.model.level.LevelModel;
+import com.braids.coffeebombermen.options.OptConsts.Walls;
+import com.braids.coffeebombermen.options.ServerComponentOptions;
+import com.braids.coffeebombermen.options.model.PublicClientOptions;
+import com.braids.coffeebombermen.options.model.ServerOptions;
+import com.braids.coffeebombermen.server.DedicatedServer;
+import com.braids.coffeebombermen.utils.MathHelper;
+import com.braids.coffeebombermen.utils.RestorableRandom;
+
+/**
+ * A headless benchmark of the mass detonations. A game core handler (without
+ * GUI and sounds) plays rounds on randomly generated levels. In each round
+ * every non-concrete component of the level gets a bomb, one of them is
+ * detonated, and the iteration of the chain reaction is measured, then the
+ * level burns out.<br>
+ * Reported: the number of the detonated bombs, the duration of the
+ * mass-detonation ticks, and the heap allocated by the mass-detonation ticks
+ * and by the burning ticks.
+ */
+public class DetonationBenchmark {
+
+	/** Usage of the command line arguments. */
+	private static final String[] USAGE               = { "Usage: DetonationBenchmark [options]", "  -config <file>     options file to read the server options from",
+	        "  -width <n>         level width", "  -height <n>        level height", "  -rounds <n>        number of the measured rounds",
+	        "  -range <n>         range of the bombs" };
+
+	/** Number of the bombs detonated in the last round. */
+	private static int            detonatedBombsCount;
+	/** Heap allocated by the mass-detonation tick of the last round. */
+	private static long           detonationAllocatedBytes;
+	/** Heap allocated by the burning ticks of the last round. */
+	private static long           burningAllocatedBytes;
+	/** Number of the burning ticks of the last round. */
+	private static int            burningTicksCount;
+
+	/**
+	 * Runs a round: fills the level with bombs, detonates one of them, and
+	 * measures the iteration of the chain reaction.
+	 * 
+	 * @param gameCoreHandler
+	 *            the game core handler
+	 * @param range
+	 *            range of the bombs
+	 * @return the duration of the mass-detonation tick in ns
+	 */
+	private static long runRound(final GameCoreHandler gameCoreHandler, final int range) {
+		gameCoreHandler.initNextRound();
+		final LevelModel levelModel = gameCoreHandler.getLevelModel();
+		for (int y = 0; y < levelModel.getHeight(); y++) {
+			for (int x = 0; x < levelModel.getWidth(); x++) {
+				final LevelComponent levelComponent = levelModel.getComponent(x, y);
+				if (levelComponent.getWall() == Walls.CONCRETE) {
+					continue;
+				}
+				levelComponent.setWall(Walls.EMPTY);
+				levelComponent.setItem(null);
+				final BombModel bombModel = new BombModel(null);
+				bombModel.setType(BombTypes.NORMAL);
+				bombModel.setRange(range);
+				bombModel.setPosX(x * CoreConsts.LEVEL_COMPONENT_GRANULARITY + CoreConsts.LEVEL_COMPONENT_GRANULARITY / 2);
+				bombModel.setPosY(y * CoreConsts.LEVEL_COMPONENT_GRANULARITY + CoreConsts.LEVEL_COMPONENT_GRANULARITY / 2);
+				gameCoreHandler.addNewBomb(new Bomb(bombModel, gameCoreHandler));
+			}
+		}
+		final int bombsCount = gameCoreHandler.getBombModels().size();
+		gameCoreHandler.getBombModels().get(0).setAboutToDetonate(true);
+
+		final long startAllocatedBytes = getAllocatedBytes();
+		final long startTime = System.nanoTime();
+		gameCoreHandler.nextIteration(null);
+		final long time = System.nanoTime() - startTime;
+		detonationAllocatedBytes = getAllocatedBytes() - startAllocatedBytes;
+		detonatedBombsCount = bombsCount - gameCoreHandler.getBombModels().size();
+
+		// The fires burn out
+		burningTicksCount = 0;
+		final long burningStartAllocatedBytes = getAllocatedBytes();
+		while (gameCoreHandler.getLevel().hasFire()) {
+			gameCoreHandler.nextIteration(null);
+			burningTicksCount++;
+		}
+		burningAllocatedBytes = getAllocatedBytes() - burningStartAllocatedBytes;
+		return time;
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread so far.
+	 * 
+	 * @return the number of bytes allocated by the current thread so far
+	 */
+	private static long getAllocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * The entry point of the benchmark.
+	 * 
+	 * @param arguments
+	 *            the command line arguments
+	 */
+	public static void main(final String[] arguments) {
+		String optionsFileName = Consts.OPTIONS_FILE_NAME;
+		for (int i = 0; i < arguments.length - 1; i++) {
+			if (arguments[i].equals("-config")) {
+				optionsFileName = arguments[i + 1];
+			}
+		}
+
+		final ServerOptions serverOptions;
+		int rounds = 20;
+		int range = 3;
+		try {
+			serverOptions = DedicatedServer.loadServerOptions(optionsFileName);
+			serverOptions.getLevelOptions().setLevelWidth(41);
+			serverOptions.getLevelOptions().setLevelHeight(31);
+
+			for (int i = 0; i < arguments.length; i += 2) {
+				if (i + 1 >= arguments.length) {
+					throw new IllegalArgumentException("Missing value of " + arguments[i]);
+				}
+				final String option = arguments[i];
+				final int value = option.equals("-config") ? 0 : Integer.parseInt(arguments[i + 1]);
+				if (option.equals("-config")) {
+					// Already processed
+				} else if (option.equals("-width")) {
+					serverOptions.getLevelOptions().setLevelWidth(value);
+				} else if (option.equals("-height")) {
+					serverOptions.getLevelOptions().setLevelHeight(value);
+				} else if (option.equals("-rounds")) {
+					rounds = value;
+				} else if (option.equals("-range")) {
+					range = value;
+				} else {
+					throw new IllegalArgumentException("Unknown option: " + option);
+				}
+			}
+		} catch (final Exception e) {
+			System.out.println("Error: " + e.getMessage());
+			DedicatedServer.printLines(USAGE);
+			System.exit(1);
+			return;
+		}
+		serverOptions.setLevelName(ServerComponentOptions.RANDOMLY_GENERATED_LEVEL_NAME);
+		// The same levels in every run
+		MathHelper.setRandom(new RestorableRandom(0l));
+
+		final List<PublicClientOptions> clientsPublicClientOptions = new ArrayList<PublicClientOptions>();
+		clientsPublicClientOptions.add(new PublicClientOptions());
+		clientsPublicClientOptions.add(new PublicClientOptions());
+		final GameCoreHandler gameCoreHandler = new GameCoreHandler(new NullGameEventListener(), serverOptions, null, clientsPublicClientOptions, 0);
+		gameCoreHandler.setReplaying(true);
+
+		// The first rounds warm up the JIT
+		for (int i = 0; i < rounds; i++) {
+			runRound(gameCoreHandler, range);
+		}
+		long totalTime = 0l;
+		long maxTime = 0l;
+		long totalDetonatedBombsCount = 0l;
+		long totalDetonationAllocatedBytes = 0l;
+		long totalBurningAllocatedBytes = 0l;
+		long totalBurningTicksCount = 0l;
+		for (int i = 0; i < rounds; i++) {
+			final long time = runRound(gameCoreHandler, range);
+			totalTime += time;
+			maxTime = Math.max(maxTime, time);
+			totalDetonatedBombsCount += detonatedBombsCount;
+			totalDetonationAllocatedBytes += detonationAllocatedBytes;
+			totalBurningAllocatedBytes += burningAllocatedBytes;
+			totalBurningTicksCount += burningTicksCount;
+		}
+		System.out.println("Mass detonation on a " + serverOptions.getLevelOptions().getLevelWidth() + "x" + serverOptions.getLevelOptions().getLevelHeight()
+		        + " level (range " + range + "): " + totalDetonatedBombsCount / rounds + " bombs detonated, avg " + totalTime / rounds / 1000l + " us, max "
+		        + maxTime / 1000l + " us per tick");
+		System.out.println("Allocated: " + totalDetonationAllocatedBytes / rounds + " bytes per mass-detonation tick, " + totalBurningAllocatedBytes
+		        / Math.max(1l, totalBurningTicksCount) + " bytes per burning tick");
+		System.exit(0);
+	}
+
+}
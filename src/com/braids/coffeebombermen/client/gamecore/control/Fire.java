@@ -6,16 +6,17 @@ import com.braids.coffeebombermen.client.gamecore.model.FireModel;
 /**
  * The control layer of the fire.<br>
  * Stores the x and y coordinates of the component this fire takes place on for
- * fast accessing the level component.
+ * fast accessing the level component.<br>
+ * Fires taken off the level are recycled by the FirePool.
  */
 public class Fire {
 
 	/** The model of the fire. */
 	private final FireModel       model;
 	/** X coordinate of the component where this fire takes place on. */
-	private final int             componentPosX;
+	private int                   componentPosX;
 	/** Y coordinate of the component where this fire takes place on. */
-	private final int             componentPosY;
+	private int                   componentPosY;
 
 	private final GameCoreHandler gameCoreHandler;
 
@@ -39,6 +40,21 @@ public class Fire {
 		model = new FireModel();
 	}
 
+	/**
+	 * Resets the fire to the state of a new fire on another component (for
+	 * recycling it).
+	 * 
+	 * @param componentPosX
+	 *            x coordinate of the component where this fire takes place on
+	 * @param componentPosY
+	 *            y coordinate of the component where this fire takes place on
+	 */
+	void reset(final int componentPosX, final int componentPosY) {
+		this.componentPosX = componentPosX;
+		this.componentPosY = componentPosY;
+		model.reset();
+	}
+
 	/**
 	 * Returns the model of the bomb.
 	 * 
@@ -48,11 +64,40 @@ public class Fire {
 		return model;
 	}
 
+	/**
+	 * Returns the x coordinate of the component where this fire takes place on.
+	 * 
+	 * @return the x coordinate of the component where this fire takes place on
+	 */
+	public int getComponentPosX() {
+		return componentPosX;
+	}
+
+	/**
+	 * Returns the y coordinate of the component where this fire takes place on.
+	 * 
+	 * @return the y coordinate of the component where this fire takes place on
+	 */
+	public int getComponentPosY() {
+		return componentPosY;
+	}
+
+	/**
+	 * Tells whether this fire burns out in the next iteration (it is removed
+	 * instead of being iterated).
+	 * 
+	 * @return true if this fire burns out in the next iteration; false
+	 *         otherwise
+	 */
+	public boolean isBurningOut() {
+		return model.getIterationCounter() + 1 >= CoreConsts.FIRE_ITERATIONS;
+	}
+
 	/**
 	 * Performs operations which are requried by passing the time.
 	 */
 	public void nextIteration() {
-		if (model.getIterationCounter() + 1 < CoreConsts.FIRE_ITERATIONS) {
+		if (!isBurningOut()) {
 			model.nextIteration();
 		} else {
 			gameCoreHandler.removeFireFromComponentPos(this, componentPosX, componentPosY);
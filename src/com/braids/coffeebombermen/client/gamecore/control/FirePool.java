@@ -0,0 +1,60 @@
+package com.braids.coffeebombermen.client.gamecore.control;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of the fires taken off the level, so the fires of the detonations and
+ * the shrinking are recycled instead of allocated.<br>
+ * The pool is not part of the game state: a fire obtained from the pool is
+ * reset completely, so it doesn't matter whether it is a new or a recycled
+ * one.
+ */
+public class FirePool {
+
+	/** Reference to the game core handler. */
+	private final GameCoreHandler gameCoreHandler;
+	/** The fires available for recycling. */
+	private final ArrayList<Fire> fires = new ArrayList<Fire>();
+
+	/**
+	 * Creates a new FirePool.
+	 * 
+	 * @param gameCoreHandler
+	 *            reference to the game core handler
+	 */
+	public FirePool(final GameCoreHandler gameCoreHandler) {
+		this.gameCoreHandler = gameCoreHandler;
+	}
+
+	/**
+	 * Returns a fire for a component: a recycled one if there is any, a new
+	 * one otherwise.
+	 * 
+	 * @param componentPosX
+	 *            x coordinate of the component where the fire takes place on
+	 * @param componentPosY
+	 *            y coordinate of the component where the fire takes place on
+	 * @return a fire with a reset model
+	 */
+	public Fire obtain(final int componentPosX, final int componentPosY) {
+		if (fires.isEmpty()) {
+			return new Fire(componentPosX, componentPosY, gameCoreHandler);
+		}
+
+		final Fire fire = fires.remove(fires.size() - 1);
+		fire.reset(componentPosX, componentPosY);
+		return fire;
+	}
+
+	/**
+	 * Gives back a fire taken off the level. The fire must not be referenced
+	 * by the level any more.
+	 * 
+	 * @param fire
+	 *            fire to be recycled
+	 */
+	public void release(final Fire fire) {
+		fires.add(fire);
+	}
+
+}
@@ -1,24 +1,28 @@
 package com.braids.coffeebombermen.client.gamecore.control;
 
-import java.awt.Rectangle;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
-import java.util.Map.Entry;
 
-import com.braids.coffeebombermen.GameManager;
-import com.braids.coffeebombermen.MainFrame;
 import com.braids.coffeebombermen.client.gamecore.Activities;
 import com.braids.coffeebombermen.client.gamecore.BombPhases;
 import com.braids.coffeebombermen.client.gamecore.CoreConsts;
 import com.braids.coffeebombermen.client.gamecore.Directions;
 import com.braids.coffeebombermen.client.gamecore.FireShapes;
+import com.braids.coffeebombermen.client.gamecore.GameEventListener;
+import com.braids.coffeebombermen.client.gamecore.GameSounds;
+import com.braids.coffeebombermen.client.gamecore.model.BombGrid;
 import com.braids.coffeebombermen.client.gamecore.model.BombModel;
+import com.braids.coffeebombermen.client.gamecore.model.DiseaseWheel;
 import com.braids.coffeebombermen.client.gamecore.model.FireModel;
+import com.braids.coffeebombermen.client.gamecore.model.InfectionGrid;
+import com.braids.coffeebombermen.client.gamecore.model.PlayerGrid;
 import com.braids.coffeebombermen.client.gamecore.model.PlayerModel;
+import com.braids.coffeebombermen.client.gamecore.model.StateInput;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
 import com.braids.coffeebombermen.client.gamecore.model.level.LevelComponent;
 import com.braids.coffeebombermen.client.gamecore.model.level.LevelModel;
 import com.braids.coffeebombermen.client.shrink.ArmageddonShrinkPerformer;
@@ -34,17 +38,15 @@ import com.braids.coffeebombermen.client.shrink.ExplodeOnHitShrinkPerformer;
 import com.braids.coffeebombermen.client.shrink.MassKillShrinkPerformer;
 import com.braids.coffeebombermen.client.shrink.ShrinkPerformer;
 import com.braids.coffeebombermen.client.shrink.SpiderBombShrinkPerformer;
-import com.braids.coffeebombermen.client.sound.SoundEffect;
-import com.braids.coffeebombermen.options.Diseases;
 import com.braids.coffeebombermen.options.ServerComponentOptions;
 import com.braids.coffeebombermen.options.Shrinkers;
 import com.braids.coffeebombermen.options.OptConsts.Items;
-import com.braids.coffeebombermen.options.OptConsts.PlayerControlKeys;
 import com.braids.coffeebombermen.options.OptConsts.Walls;
 import com.braids.coffeebombermen.options.model.PublicClientOptions;
 import com.braids.coffeebombermen.options.model.ServerOptions;
-import com.braids.coffeebombermen.utils.GeneralStringTokenizer;
+import com.braids.coffeebombermen.utils.IterationFrame;
 import com.braids.coffeebombermen.utils.MathHelper;
+import com.braids.coffeebombermen.utils.RestorableRandom;
 
 /**
  * The class which handles the core of the game: manages rounds and the running
@@ -61,10 +63,16 @@ public class GameCoreHandler {
 
 	private static final long               NUMBER_OF_TICKS_TO_AUTO_RESTART_GAME    = 90;
 
-	/** Reference to the game manager. */
-	private final GameManager               gameManager;
-	/** Reference to the main frame. */
-	private final MainFrame                 mainFrame;
+	/** The directions in the order the fire of the bombs spreads. */
+	private static final Directions[]       DETONATION_DIRECTIONS                   = Directions.values();
+	/**
+	 * The state hash is updated in every STATE_HASH_PERIOD tick only: hashing
+	 * the whole state costs the size of the level.
+	 */
+	private static final int                STATE_HASH_PERIOD                       = 16;
+
+	/** The listener of the game events (sounds, messages). */
+	private final GameEventListener         gameEventListener;
 	/** The global server options. */
 	private final ServerOptions             globalServerOptions;
 	/**
@@ -90,6 +98,33 @@ public class GameCoreHandler {
 	private List<Bomb>                      bombs;
 	/** Shortcut for the models of the bombs. */
 	private List<BombModel>                 bombModels;
+	/**
+	 * Occupancy index of the bombs in the level components. Not part of the
+	 * game state, rebuilt when a state is restored.
+	 */
+	private BombGrid                        bombGrid;
+	/**
+	 * Occupancy index of the players in the level components. Not part of the
+	 * game state, rebuilt when a state is restored.
+	 */
+	private PlayerGrid                      playerGrid;
+	/**
+	 * Broad phase of the infections between the players. Not part of the game
+	 * state, refilled in every tick.
+	 */
+	private InfectionGrid                   infectionGrid;
+	/**
+	 * Timing wheel of the disease expirations. Not part of the game state,
+	 * rebuilt when a state is restored.
+	 */
+	private DiseaseWheel                    diseaseWheel;
+	/**
+	 * Queue of the bombs being detonated in a chain reaction. Only used inside
+	 * checkAndHandleBombDetonations(), kept to avoid reallocating it.
+	 */
+	private final ArrayList<BombModel>      detonationQueue                         = new ArrayList<BombModel>();
+	/** Pool of the fires taken off the level. Not part of the game state. */
+	private final FirePool                  firePool                                = new FirePool(this);
 
 	// /** Handler of the main component being the draw game animation
 	// component. */
@@ -111,14 +146,40 @@ public class GameCoreHandler {
 
 	private int                             nofTickToRestart;
 
+	/**
+	 * Models of the players of the clients who have left the game. They are
+	 * not part of the game any more, but the bombs and the fires may still
+	 * refer to them.
+	 */
+	private final List<PlayerModel>         leftPlayerModels                        = new ArrayList<PlayerModel>();
+	/** Input for restoring the saved states, kept to avoid reallocating it. */
+	private final StateInput                stateInput                              = new StateInput();
+	/**
+	 * Tells whether already calculated iterations are being calculated again
+	 * (after restoring a saved state). Sounds and messages are suppressed
+	 * then.
+	 */
+	private boolean                         replaying;
+	/**
+	 * Hash of the game state, updated in every STATE_HASH_PERIOD iteration
+	 * from its previous value and computeStateHash(), so it depends on all the
+	 * previous hashed states. Equal on all the clients as long as they are
+	 * synchronized.
+	 */
+	private int                             stateHash;
+	/**
+	 * Seed of the random generators of the robots, taken from the game random
+	 * generator when the game core handler is created. The robots decide on
+	 * one client only, so they must not use the game random generator.
+	 */
+	private final long                      robotsSeed;
+
 	/**
 	 * Creates a new GameCoreHandler. A new GameCoreHandler is created for every
 	 * new game (but used only one for the rounds of a game).<br>
 	 * 
-	 * @param gameManager
-	 *            reference to the game manager
-	 * @param mainFrame
-	 *            reference to the main frame
+	 * @param gameEventListener
+	 *            the listener of the game events (sounds, messages)
 	 * @param globalServerOptions
 	 *            the global server options
 	 * @param levelModel
@@ -132,14 +193,14 @@ public class GameCoreHandler {
 	 * @param ourClientIndex
 	 *            our client index, our place among the clients
 	 */
-	public GameCoreHandler(final GameManager gameManager, final MainFrame mainFrame, final ServerOptions globalServerOptions, final LevelModel levelModel,
+	public GameCoreHandler(final GameEventListener gameEventListener, final ServerOptions globalServerOptions, final LevelModel levelModel,
 	        final List<PublicClientOptions> clientsPublicClientOptions, final int ourClientIndex) {
-		this.gameManager = gameManager;
-		this.mainFrame = mainFrame;
+		this.gameEventListener = gameEventListener;
 		this.globalServerOptions = globalServerOptions;
 		this.receivedLevelModel = levelModel;
 		this.clientsPublicClientOptions = clientsPublicClientOptions;
 		this.ourClientIndex = ourClientIndex;
+		robotsSeed = MathHelper.getRandom() == null ? 0l : MathHelper.getRandom().getState();
 		this.shrinkPerformers = new ShrinkPerformer[] { new DefaultShrinkPerformer(this), new BombShrinkPerformer(this), new BinaryShrinkPerformer(this),
 		        new BinaryWalkingShrinkPerformer(this), new SpiderBombShrinkPerformer(this), new MassKillShrinkPerformer(this),
 		        new DiseaseShrinkPerformer(this), new DrawWallShrinkPerformer(this), new BouncingWallShrinkPerformer(this),
@@ -156,6 +217,7 @@ public class GameCoreHandler {
 				players[j] = new Player(ourClientIndex == i, i, j, this, publicClientOptions.playerNames[j]);
 				playerModels[j] = players[j].getModel();
 				playerModels[j].setColor(publicClientOptions.playerColors[j]);
+				playerModels[j].setGameEventListener(gameEventListener);
 				players[j].setRobot(j, playerModels[j], publicClientOptions.playerRobots[j]);
 			}
 
@@ -197,7 +259,14 @@ public class GameCoreHandler {
 	 */
 	public void aClientHasLeftTheGame(final int clientIndex) {
 		clientsPlayers.remove(clientIndex);
-		clientsPlayerModels.remove(clientIndex);
+		final PlayerModel[] removedPlayerModels = clientsPlayerModels.remove(clientIndex);
+		for (final PlayerModel playerModel : removedPlayerModels) {
+			leftPlayerModels.add(playerModel);
+			if (playerGrid != null) {
+				playerGrid.remove(playerModel);
+				diseaseWheel.remove(playerModel);
+			}
+		}
 
 		if (ourClientIndex > clientIndex) {
 			ourClientIndex--;
@@ -308,11 +377,17 @@ public class GameCoreHandler {
 
 		bombs = new ArrayList<Bomb>();
 		bombModels = new ArrayList<BombModel>();
+		bombGrid = new BombGrid(levelModel.getWidth(), levelModel.getHeight());
+		playerGrid = new PlayerGrid(levelModel.getWidth(), levelModel.getHeight());
+		playerGrid.rebuild(clientsPlayerModels);
+		infectionGrid = new InfectionGrid(levelModel.getWidth(), levelModel.getHeight());
+		diseaseWheel = new DiseaseWheel();
+		diseaseWheel.rebuild(clientsPlayerModels);
 
 		shrinkPerformer = getRandomShrinkPerformer();
 
 		shrinkPerformer.initNextRound();
-		SoundEffect.START_MATCH.play();
+		gameEventListener.playSound(GameSounds.START_MATCH);
 	}
 
 	private ShrinkPerformer getRandomShrinkPerformer() {
@@ -326,29 +401,23 @@ public class GameCoreHandler {
 		throw new RuntimeException("this should never happen");
 	}
 
-	private void playerInfectPlayer(int noPlayers) {
-		List<Player> lstPlayer = new ArrayList<Player>(noPlayers);
-		List<Rectangle> lstPlayerBounds = new ArrayList<Rectangle>(noPlayers);
+	private void playerInfectPlayer() {
+		infectionGrid.clear();
+
+		// remove the expired diseases
+		diseaseWheel.expireDiseases(tick);
 
 		boolean hasInfectedPlayer = false;
 
-		for (final Player[] players : clientsPlayers) {
-			for (final Player player : players) {
-				PlayerModel model = player.getModel();
+		for (final PlayerModel[] playerModels : clientsPlayerModels) {
+			for (final PlayerModel model : playerModels) {
 				if (model.getActivity() == Activities.DYING) {
 					// dead player can't infect or get infected
 					continue;
 				}
 
-				lstPlayer.add(player);
-				lstPlayerBounds.add(new Rectangle(model.getPosX(), model.getPosY(), 900, 1300));
+				infectionGrid.add(model);
 
-				// remove the expired diseases
-				for (Entry<Diseases, Long> entry : new ArrayList<Entry<Diseases, Long>>(model.getOwnedDiseases().entrySet())) {
-					if (entry.getValue() < tick) {
-						model.expireDisease(entry.getKey());
-					}
-				}
 				if (!hasInfectedPlayer && model.hasDiseases()) {
 					hasInfectedPlayer = true;
 				}
@@ -357,23 +426,7 @@ public class GameCoreHandler {
 
 		if (hasInfectedPlayer) {
 			// who infect who?
-			for (int i = 0; i < lstPlayerBounds.size() - 1; i++) {
-				for (int j = i + 1; j < lstPlayerBounds.size(); j++) {
-					if (lstPlayerBounds.get(i).intersects(lstPlayerBounds.get(j))) {
-						Player player1 = lstPlayer.get(i);
-						Player player2 = lstPlayer.get(j);
-						PlayerModel playerModel1 = player1.getModel();
-						PlayerModel playerModel2 = player2.getModel();
-
-						for (Entry<Diseases, Long> entry : playerModel1.getOwnedDiseases().entrySet()) {
-							playerModel2.addDisease(entry.getKey(), entry.getValue());
-						}
-						for (Entry<Diseases, Long> entry : playerModel2.getOwnedDiseases().entrySet()) {
-							playerModel1.addDisease(entry.getKey(), entry.getValue());
-						}
-					}
-				}
-			}
+			infectionGrid.spreadDiseases();
 		}
 	}
 
@@ -385,7 +438,7 @@ public class GameCoreHandler {
 	 *            new, unprocess actions of all clients (including us), null
 	 *            means there are no new unprocessed actions
 	 */
-	public void nextIteration(final String newClientsActions) {
+	public void nextIteration(final IterationFrame newClientsActions) {
 		tick++;
 
 		boolean newHasMoreThanOneALivePlayer = hasMoreThanOneAlivePlayer;
@@ -405,15 +458,12 @@ public class GameCoreHandler {
 			processNewClientsActions(newClientsActions);
 		}
 
-		int noPlayers = 0;
-
 		for (final Player[] players : clientsPlayers) {
 			for (final Player player : players) {
 				player.nextIteration();
-				noPlayers++;
 			}
 		}
-		playerInfectPlayer(noPlayers);
+		playerInfectPlayer();
 
 		level.nextIteration();
 
@@ -425,10 +475,8 @@ public class GameCoreHandler {
 		for (int i = bombs.size() - 1; i >= 0; i--) {
 			final BombModel bombModel = bombModels.get(i);
 			if (bombModel.isDead()) {
-				bombModel.getOwnerPlayer().accumulateableItemQuantitiesMap.put(Items.BOMB, bombModel.getOwnerPlayer().accumulateableItemQuantitiesMap
-				        .get(Items.BOMB) + 1);
-				bombs.remove(i);
-				bombModels.remove(i);
+				bombModel.getOwnerPlayer().setAccumItemQuantity(Items.BOMB, bombModel.getOwnerPlayer().getAccumItemQuantity(Items.BOMB) + 1);
+				removeBombAtIndex(i);
 			}
 		}
 
@@ -439,11 +487,9 @@ public class GameCoreHandler {
 			final BombModel bombModel = bombModels.get(i);
 			if (bombModels.get(i).isDetonated()) {
 				if (bombModel.getOwnerPlayer() != null) {
-					bombModel.getOwnerPlayer().accumulateableItemQuantitiesMap.put(Items.BOMB, bombModel.getOwnerPlayer().accumulateableItemQuantitiesMap
-					        .get(Items.BOMB) + 1);
+					bombModel.getOwnerPlayer().setAccumItemQuantity(Items.BOMB, bombModel.getOwnerPlayer().getAccumItemQuantity(Items.BOMB) + 1);
 				}
-				bombs.remove(i);
-				bombModels.remove(i);
+				removeBombAtIndex(i);
 
 			}
 		}
@@ -452,10 +498,11 @@ public class GameCoreHandler {
 			shrinkPerformer.nextIteration();
 
 			// Now we damage players being in fire.
+			final LevelModel levelModel = getLevelModel();
 			for (PlayerModel playerModel : getAllPlayerModels()) {
 				if (playerModel.getActivity() != Activities.DYING) {
-					LevelComponent comp = getLevelModel().getComponent(playerModel.getComponentPosX(), playerModel.getComponentPosY());
-					int firesCount = comp.getFireCount();
+					final int cellIndex = levelModel.getCellIndex(playerModel.getComponentPosX(), playerModel.getComponentPosY());
+					int firesCount = levelModel.getFireCount(cellIndex);
 					if (!globalServerOptions.isMultipleFire() && (firesCount > 1)) {
 						firesCount = 1;
 					}
@@ -472,7 +519,7 @@ public class GameCoreHandler {
 					}
 
 					// the shrinking game area can cause the player die
-					if (comp.getWall() == Walls.DEATH) {
+					if (levelModel.getWall(cellIndex) == Walls.DEATH) {
 						killPlayer(playerModel);
 					}
 				}
@@ -480,9 +527,8 @@ public class GameCoreHandler {
 		} else {
 			if (getGlobalServerOptions().isAutoRestartGame()) {
 				nofTickToRestart++;
-				if (nofTickToRestart > NUMBER_OF_TICKS_TO_AUTO_RESTART_GAME) {
-					gameManager.endCurrentGame();
-					gameManager.startCurrentGame();
+				if ((nofTickToRestart > NUMBER_OF_TICKS_TO_AUTO_RESTART_GAME) && !replaying) {
+					gameEventListener.restartGame();
 				}
 			}
 			if (tick % MATCH_WON_HAPPY_PLAYER_ACTION_FREQUENCY == 0) {
@@ -492,6 +538,93 @@ public class GameCoreHandler {
 				}
 			}
 		}
+
+		if (tick % STATE_HASH_PERIOD == 0) {
+			// 0 means no state hash in the frames
+			final int hash = mixStateHash(stateHash, computeStateHash());
+			stateHash = hash == 0 ? 1 : hash;
+		}
+	}
+
+	/**
+	 * Computes a hash of the current state of the game: the players (with
+	 * their items and diseases), the bombs, the level and the game random
+	 * generator. Costs the size of the level, but doesn't allocate anything
+	 * (no iterators either).
+	 * 
+	 * @return a hash of the current state of the game
+	 */
+	public int computeStateHash() {
+		final long randomState = MathHelper.getRandom().getState();
+		int hash = mixStateHash(0x811c9dc5, (int) tick);
+		hash = mixStateHash(hash, (int) randomState);
+		hash = mixStateHash(hash, (int) (randomState >> 32));
+
+		for (int i = 0; i < clientsPlayerModels.size(); i++) {
+			final PlayerModel[] playerModels = clientsPlayerModels.get(i);
+			for (int j = 0; j < playerModels.length; j++) {
+				final PlayerModel playerModel = playerModels[j];
+				hash = mixStateHash(hash, playerModel.getPosX());
+				hash = mixStateHash(hash, playerModel.getPosY());
+				hash = mixStateHash(hash, playerModel.getDirection() == null ? -1 : playerModel.getDirection().ordinal());
+				hash = mixStateHash(hash, playerModel.getActivity() == null ? -1 : playerModel.getActivity().ordinal());
+				hash = mixStateHash(hash, playerModel.getIterationCounter());
+				hash = mixStateHash(hash, playerModel.getVitality());
+				hash = mixStateHash(hash, playerModel.getInventoryHash());
+			}
+		}
+
+		for (int i = 0; i < bombModels.size(); i++) {
+			final BombModel bombModel = bombModels.get(i);
+			hash = mixStateHash(hash, bombModel.getPosX());
+			hash = mixStateHash(hash, bombModel.getPosY());
+			hash = mixStateHash(hash, bombModel.getPhase().ordinal());
+			hash = mixStateHash(hash, bombModel.getTickingIterations());
+			hash = mixStateHash(hash, bombModel.getRange());
+		}
+
+		final LevelModel levelModel = getLevelModel();
+		for (int cellIndex = 0; cellIndex < levelModel.getCellsCount(); cellIndex++) {
+			final Items item = levelModel.getItem(cellIndex);
+			hash = mixStateHash(hash, levelModel.getWall(cellIndex).ordinal());
+			hash = mixStateHash(hash, item == null ? -1 : item.ordinal());
+			hash = mixStateHash(hash, levelModel.getFireCount(cellIndex));
+		}
+		return hash;
+	}
+
+	/**
+	 * Mixes a value into a hash (FNV-1a step on a whole int).
+	 * 
+	 * @param hash
+	 *            the hash
+	 * @param value
+	 *            value to be mixed
+	 * @return the new hash
+	 */
+	private static int mixStateHash(final int hash, final int value) {
+		return (hash ^ value) * 0x01000193;
+	}
+
+	/**
+	 * Returns the seed of the random generators of the robots.
+	 * 
+	 * @return the seed of the random generators of the robots
+	 */
+	public long getRobotsSeed() {
+		return robotsSeed;
+	}
+
+	/**
+	 * Returns the hash of the game state after the last iteration, if the
+	 * state hash has been updated in it (in every STATE_HASH_PERIOD tick).
+	 * Equal on all the clients as long as they are synchronized.
+	 * 
+	 * @return the hash of the game state; 0 if it has not been updated in the
+	 *         last iteration
+	 */
+	public int getStateHash() {
+		return tick % STATE_HASH_PERIOD == 0 ? stateHash : 0;
 	}
 
 	public List<PlayerModel> getAllPlayerModels() {
@@ -537,36 +670,38 @@ public class GameCoreHandler {
 
 	private void matchJustWon() {
 
-		gameManager.showTrayMessage("The match is over...");
+		if (!replaying) {
+			gameEventListener.showTrayMessage("The match is over...");
+		}
 		nofTickToRestart = 0;
 
 		PlayerModel lastPlayerModel = getTheLastRemainingPlyer();
 		if (lastPlayerModel == null) {
-			mainFrame.receiveMessage("Everyone died.");
+			if (!replaying) {
+				gameEventListener.showMessage("Everyone died.");
+			}
 		} else {
 			// playerModel.setSpiderBombEnabled(true);
 			// playerModel.setSpiderBombRounds(MATCH_WON_SPIDER_BOMB_ROUNDS);
 			lastPlayerModel.setPoints(lastPlayerModel.getPoints() + 1);
-			mainFrame.receiveMessage("Match is won by " + lastPlayerModel.getName() + " !");
+			if (!replaying) {
+				gameEventListener.showMessage("Match is won by " + lastPlayerModel.getName() + " !");
+			}
 		}
 
 		for (int i = bombs.size() - 1; i >= 0; i--) {
 			final BombModel bombModel = bombModels.get(i);
 			if (bombModel.getOwnerPlayer() != null) {
-				bombModel.getOwnerPlayer().accumulateableItemQuantitiesMap.put(Items.BOMB, bombModel.getOwnerPlayer().accumulateableItemQuantitiesMap
-				        .get(Items.BOMB) + 1);
+				bombModel.getOwnerPlayer().setAccumItemQuantity(Items.BOMB, bombModel.getOwnerPlayer().getAccumItemQuantity(Items.BOMB) + 1);
 			}
-			bombs.remove(i);
-			bombModels.remove(i);
+			removeBombAtIndex(i);
 		}
 
 		LevelModel levelModel = level.getModel();
-		for (int y = 0; y < levelModel.getHeight(); y++) {
-			for (int x = 0; x < levelModel.getWidth(); x++) {
-				LevelComponent comp = levelModel.getComponent(x, y);
-				if ((comp.getWall() != Walls.EMPTY) && (comp.getWall() != Walls.BRICK)) {
-					comp.setWall(Walls.DEATH_WARN);
-				}
+		for (int cellIndex = levelModel.getCellsCount() - 1; cellIndex >= 0; cellIndex--) {
+			final Walls wall = levelModel.getWall(cellIndex);
+			if ((wall != Walls.EMPTY) && (wall != Walls.BRICK)) {
+				levelModel.setWall(cellIndex, Walls.DEATH_WARN);
 			}
 		}
 
@@ -595,29 +730,13 @@ public class GameCoreHandler {
 	 * @param newClientsActions
 	 *            new clients actions to be processed
 	 */
-	private void processNewClientsActions(final String newClientsActions) {
-		if (newClientsActions.isEmpty()) {
-			return;
-		}
-		final GeneralStringTokenizer clientsActionsTokenizer = new GeneralStringTokenizer(newClientsActions);
-
-		while (clientsActionsTokenizer.hasRemainingString()) {
-			final StringTokenizer clientActionsTokenizer = new StringTokenizer(clientsActionsTokenizer.nextStringToken(), " ");
-
-			String commandTarget = clientActionsTokenizer.nextToken();
-
-			if ("player".equals(commandTarget)) {
-
-				final int clientIndex = Integer.parseInt(clientActionsTokenizer.nextToken());
-
-				do {
-					final int playerIndex = Integer.parseInt(clientActionsTokenizer.nextToken());
-					final PlayerControlKeys playerControlKey = PlayerControlKeys.values()[Integer.parseInt(clientActionsTokenizer.nextToken())];
-					final boolean playerControlKeyPressed = clientActionsTokenizer.nextToken().charAt(0) == 'p' ? true : false;
+	private void processNewClientsActions(final IterationFrame newClientsActions) {
+		for (int i = 0; i < newClientsActions.getSectionsCount(); i++) {
+			final Player[] players = clientsPlayers.get(newClientsActions.getSectionClientIndex(i));
 
-					clientsPlayers.get(clientIndex)[playerIndex].getModel().setControlKeyState(playerControlKey, playerControlKeyPressed);
-
-				} while (clientActionsTokenizer.hasMoreTokens());
+			for (int j = newClientsActions.getSectionActionsStart(i); j < newClientsActions.getSectionActionsEnd(i); j++) {
+				players[newClientsActions.getActionPlayerIndex(j)].getModel().setControlKeyState(newClientsActions.getActionControlKey(j),
+				        newClientsActions.isActionKeyPressed(j));
 			}
 		}
 	}
@@ -629,94 +748,99 @@ public class GameCoreHandler {
 	 */
 	private void checkAndHandleBombDetonations() {
 		LevelModel levelModel = getLevelModel();
-		final ArrayList<BombModel> detonatableBombModels = new ArrayList<BombModel>();
-		boolean checkedAllBombModels;
 
 		// First we check the fire triggered bombs...
 		for (final BombModel bombModel : bombModels) {
-			LevelComponent levelComp = levelModel.getComponent(bombModel.getComponentPosX(), bombModel.getComponentPosY());
-			if ((bombModel.getPhase() != BombPhases.FLYING) && !bombModel.isAboutToDetonate() && levelComp.hasFire()) {
-				bombModel.setAboutToDetonate(true);
-				bombModel.setTriggererPlayer(levelComp.getLastFire().getTriggererPlayer());
+			if ((bombModel.getPhase() != BombPhases.FLYING) && !bombModel.isAboutToDetonate()) {
+				final int cellIndex = levelModel.getCellIndex(bombModel.getComponentPosX(), bombModel.getComponentPosY());
+				if (levelModel.hasFire(cellIndex)) {
+					bombModel.setAboutToDetonate(true);
+					bombModel.setTriggererPlayer(levelModel.getLastFire(cellIndex).getTriggererPlayer());
+				}
 			}
 		}
-		do {
-			checkedAllBombModels = true;
-			// The fact that we didn't check all of 'em will be known if we find
-			// one that hasn't been checked out yet.
-
-			for (final BombModel bombModel : bombModels) {
-				if (!bombModel.isDetonated() && bombModel.isAboutToDetonate()) {
-					bombModel.setTriggererPlayer(bombModel.getOwnerPlayer());
-					detonatableBombModels.add(bombModel);
-					checkedAllBombModels = false;
-					break;
+
+		// ...then in one pass we detonate the bombs about to detonate together
+		// with the chain of the bombs reached by their fire. A bomb is marked
+		// detonated when it is queued, so it is queued only once.
+		for (int i = 0; i < bombModels.size(); i++) {
+			final BombModel bombModel = bombModels.get(i);
+			if (!bombModel.isDetonated() && bombModel.isAboutToDetonate()) {
+				bombModel.setTriggererPlayer(bombModel.getOwnerPlayer());
+				bombModel.setDetonated(true);
+				gameEventListener.playSound(GameSounds.BOOM);
+				detonationQueue.add(bombModel);
+
+				for (int j = 0; j < detonationQueue.size(); j++) {
+					// Not enhanced for: we may add new detonated bombs inside
+					// the cycle (so it must be upward)!
+					spreadBombFire(detonationQueue.get(j), levelModel);
 				}
+				detonationQueue.clear();
 			}
+		}
+	}
 
-			for (int i = 0; i < detonatableBombModels.size(); i++) {
-				// Not enhanced for: we may add new detonatable bombs inside the
-				// cycle (so it must be upward)!
-				final BombModel detonatedBombModel = detonatableBombModels.get(i);
-				final int detonatedBombComponentPosX = detonatedBombModel.getComponentPosX();
-				final int detonatedBombComponentPosY = detonatedBombModel.getComponentPosY();
-
-				for (final Directions direction : Directions.values()) {
-					for (int range = direction == Directions.values()[0] ? 0 : 1; range < detonatedBombModel.getRange(); range++) {
-						if ((range > 0) && detonatedBombModel.excludedDetonationDirections.contains(direction)) {
-							break;
-						}
+	/**
+	 * Sets the fire of a detonated bomb, and queues the not yet detonated
+	 * bombs reached by the fire.
+	 * 
+	 * @param detonatedBombModel
+	 *            model of the detonated bomb
+	 * @param levelModel
+	 *            model of the level
+	 */
+	private void spreadBombFire(final BombModel detonatedBombModel, final LevelModel levelModel) {
+		final int detonatedBombComponentPosX = detonatedBombModel.getComponentPosX();
+		final int detonatedBombComponentPosY = detonatedBombModel.getComponentPosY();
 
-						final int componentPosX = detonatedBombComponentPosX + direction.getXMultiplier() * range;
-						final int componentPosY = detonatedBombComponentPosY + direction.getYMultiplier() * range;
+		for (final Directions direction : DETONATION_DIRECTIONS) {
+			for (int range = direction == DETONATION_DIRECTIONS[0] ? 0 : 1; range < detonatedBombModel.getRange(); range++) {
+				if ((range > 0) && detonatedBombModel.excludedDetonationDirections.contains(direction)) {
+					break;
+				}
 
-						if ((componentPosX < 0) || (componentPosX > levelModel.getWidth() - 1) || (componentPosY < 0)
-						        || (componentPosY > levelModel.getHeight() - 1)) {
-							break;
-						}
-						LevelComponent levelComponent = levelModel.getComponent(componentPosX, componentPosY);
+				final int componentPosX = detonatedBombComponentPosX + direction.getXMultiplier() * range;
+				final int componentPosY = detonatedBombComponentPosY + direction.getYMultiplier() * range;
 
-						if ((levelComponent.getWall() == Walls.CONCRETE) || (levelComponent.getWall() == Walls.DEATH)
-						        || (levelComponent.getWall() == Walls.DEATH_WARN) || (levelComponent.getWall() == Walls.GATEWAY_ENTRANCE)
-						        || (levelComponent.getWall() == Walls.GATEWAY_EXIT)) {
-							break;
-						}
+				if ((componentPosX < 0) || (componentPosX > levelModel.getWidth() - 1) || (componentPosY < 0) || (componentPosY > levelModel.getHeight() - 1)) {
+					break;
+				}
+				final int cellIndex = levelModel.getCellIndex(componentPosX, componentPosY);
+				final Walls wall = levelModel.getWall(cellIndex);
 
-						final Integer bombIndexAtComponentPos = range == 0 ? null : getBombIndexAtComponentPosition(componentPosX, componentPosY);
+				if ((wall == Walls.CONCRETE) || (wall == Walls.DEATH) || (wall == Walls.DEATH_WARN) || (wall == Walls.GATEWAY_ENTRANCE) || (wall == Walls.GATEWAY_EXIT)) {
+					break;
+				}
 
-						if (bombIndexAtComponentPos != null) {
-							final BombModel bombModelAtComponentPos = bombModels.get(bombIndexAtComponentPos);
-							bombModelAtComponentPos.excludedDetonationDirections.add(direction.getOpposite());
-							if (!bombModelAtComponentPos.isDetonated() && !detonatableBombModels.contains(bombModelAtComponentPos)) {
-								bombModelAtComponentPos.setTriggererPlayer(detonatedBombModel.getTriggererPlayer());
-								detonatableBombModels.add(bombModelAtComponentPos);
-							}
-							break;
-						} else {
-							// Now here we can set the fire...
-							final Fire fire = new Fire(componentPosX, componentPosY, this);
-							final FireModel fireModel = fire.getModel();
+				final BombModel bombModelAtComponentPos = range == 0 ? null : getBombAtComponentPosition(componentPosX, componentPosY);
 
-							fireModel.setShape(range == 0 ? FireShapes.CROSSING : (direction.getXMultiplier() != 0 ? FireShapes.HORIZONTAL
-							        : FireShapes.VERTICAL));
-							fireModel.setOwnerPlayer(detonatedBombModel.getOwnerPlayer());
-							fireModel.setTriggererPlayer(detonatedBombModel.getTriggererPlayer());
+				if (bombModelAtComponentPos != null) {
+					bombModelAtComponentPos.excludedDetonationDirections.add(direction.getOpposite());
+					if (!bombModelAtComponentPos.isDetonated()) {
+						bombModelAtComponentPos.setTriggererPlayer(detonatedBombModel.getTriggererPlayer());
+						bombModelAtComponentPos.setDetonated(true);
+						gameEventListener.playSound(GameSounds.BOOM);
+						detonationQueue.add(bombModelAtComponentPos);
+					}
+					break;
+				} else {
+					// Now here we can set the fire...
+					final Fire fire = firePool.obtain(componentPosX, componentPosY);
+					final FireModel fireModel = fire.getModel();
 
-							level.addFireToComponentPos(fire, componentPosX, componentPosY);
+					fireModel.setShape(range == 0 ? FireShapes.CROSSING : (direction.getXMultiplier() != 0 ? FireShapes.HORIZONTAL : FireShapes.VERTICAL));
+					fireModel.setOwnerPlayer(detonatedBombModel.getOwnerPlayer());
+					fireModel.setTriggererPlayer(detonatedBombModel.getTriggererPlayer());
 
-							if ((levelComponent.getWall() == Walls.BRICK) || ((levelComponent.getWall() == Walls.EMPTY) && (levelComponent.getItem() != null))) {
-								break;
-							}
-						}
+					level.addFireToComponentPos(fire, componentPosX, componentPosY);
+
+					if ((wall == Walls.BRICK) || ((wall == Walls.EMPTY) && (levelModel.getItem(cellIndex) != null))) {
+						break;
 					}
 				}
-
-				detonatedBombModel.setDetonated(true);
 			}
-
-			detonatableBombModels.clear();
-
-		} while (!checkedAllBombModels);
+		}
 	}
 
 	/* ======================== MODEL PROVIDER =========================== */
@@ -730,6 +854,14 @@ public class GameCoreHandler {
 		return level == null ? null : level.getModel();
 	}
 
+	public GameEventListener getGameEventListener() {
+		return gameEventListener;
+	}
+
+	public FirePool getFirePool() {
+		return firePool;
+	}
+
 	public Level getLevel() {
 		return level;
 	}
@@ -773,8 +905,7 @@ public class GameCoreHandler {
 	/**
 	 * Tells whether there is a bomb at a component position or whether there is
 	 * one that hangs down into that component.<br>
-	 * Implementation simply calls getBombIndexAtComponentPosition() and
-	 * examines its return value.
+	 * Implementation simply looks up the component in the bomb grid.
 	 * 
 	 * @param componentPosX
 	 *            x coordinate of the component
@@ -784,26 +915,14 @@ public class GameCoreHandler {
 	 *         that hangs down into it; false otherwise
 	 */
 	public boolean isBombAtComponentPosition(final int componentPosX, final int componentPosY) {
-		return getBombIndexAtComponentPosition(componentPosX, componentPosY) != null;
-	}
-
-	public BombModel getBombAtComponentPosition(final int componentPosX, final int componentPosY) {
-		for (int i = bombModels.size() - 1; i >= 0; i--) {
-			final BombModel bombModel = bombModels.get(i);
-			if (bombModel.getPhase() != BombPhases.FLYING) {
-				// Flying bombs "aren't" in the level.
-				if ((bombModel.getComponentPosX() == componentPosX) && (bombModel.getComponentPosY() == componentPosY)) {
-					return bombModel;
-				}
-			}
-		}
-
-		return null;
+		return bombGrid.get(componentPosX, componentPosY) != null;
 	}
 
 	/**
 	 * Returns the bomb being at a component position or the one hanging down
-	 * into the component.
+	 * into the component.<br>
+	 * Flying bombs "aren't" in the level. If there are more bombs, the lastly
+	 * added one is returned.
 	 * 
 	 * @param componentPosX
 	 *            x coordinate of the component
@@ -812,18 +931,8 @@ public class GameCoreHandler {
 	 * @return the bomb being at a component position or the one hanging down
 	 *         into the component; or null if there is no bomb there
 	 */
-	public Integer getBombIndexAtComponentPosition(final int componentPosX, final int componentPosY) {
-		for (int i = bombModels.size() - 1; i >= 0; i--) {
-			final BombModel bombModel = bombModels.get(i);
-			if (bombModel.getPhase() != BombPhases.FLYING) {
-				// Flying bombs "aren't" in the level.
-				if ((bombModel.getComponentPosX() == componentPosX) && (bombModel.getComponentPosY() == componentPosY)) {
-					return i;
-				}
-			}
-		}
-
-		return null;
+	public BombModel getBombAtComponentPosition(final int componentPosX, final int componentPosY) {
+		return bombGrid.get(componentPosX, componentPosY);
 	}
 
 	/**
@@ -840,22 +949,8 @@ public class GameCoreHandler {
 	 *         one that hangs down into it; false otherwise
 	 */
 	public boolean isPlayerAtComponentPositionExcludePlayer(final int componentPosX, final int componentPosY, final PlayerModel playerModelToExclude) {
-		for (final PlayerModel[] playerModels : clientsPlayerModels) {
-			for (final PlayerModel playerModel : playerModels) {
-				if (playerModel != playerModelToExclude) {
-					if (playerModel.getActivity() != Activities.DYING) {
-						// players
-						// doesn't
-						// count...
-						if ((playerModel.getComponentPosX() == componentPosX) && (playerModel.getComponentPosY() == componentPosY)) {
-							return true;
-						}
-					}
-				}
-			}
-		}
-
-		return false;
+		// Dying players doesn't count, they aren't in the grid
+		return playerGrid.isPlayerAt(componentPosX, componentPosY, playerModelToExclude);
 	}
 
 	/* ======================== MODEL CONTROLLER ========================= */
@@ -876,9 +971,10 @@ public class GameCoreHandler {
 	 *            bomb to be added
 	 */
 	public void addNewBomb(final Bomb bomb) {
-		SoundEffect.PLACE_BOMB.play();
+		gameEventListener.playSound(GameSounds.PLACE_BOMB);
 		bombs.add(bomb);
 		bombModels.add(bomb.getModel());
+		bombGrid.add(bomb.getModel());
 	}
 
 	/**
@@ -889,7 +985,17 @@ public class GameCoreHandler {
 	 */
 	public void removeBombAtIndex(final int bombIndex) {
 		bombs.remove(bombIndex);
-		bombModels.remove(bombIndex);
+		bombGrid.remove(bombModels.remove(bombIndex));
+	}
+
+	/**
+	 * Removes a bomb specified by its model.
+	 * 
+	 * @param bombModel
+	 *            model of bomb to be removed
+	 */
+	public void removeBomb(final BombModel bombModel) {
+		removeBombAtIndex(bombModels.lastIndexOf(bombModel));
 	}
 
 	/**
@@ -955,32 +1061,23 @@ public class GameCoreHandler {
 			return false;
 		}
 
-		final LevelComponent levelComponentAheadAhead = levelModel.getComponent(componentPosX, componentPosY);
-		if (levelComponentAheadAhead.getWall() != Walls.EMPTY) {
+		final int cellIndexAheadAhead = levelModel.getCellIndex(componentPosX, componentPosY);
+		if (levelModel.getWall(cellIndexAheadAhead) != Walls.EMPTY) {
 			return false;
 		}
-		if ((levelComponentAheadAhead.getWall() == Walls.EMPTY) && (levelComponentAheadAhead.getItem() != null)
-		        && getGlobalServerOptions().isItemsStopRollingBombs()) {
+		if ((levelModel.getItem(cellIndexAheadAhead) != null) && getGlobalServerOptions().isItemsStopRollingBombs()) {
 			return false;
 		}
 
-		// Collision with players:
-		for (final PlayerModel[] playerModels : getClientsPlayerModels()) {
-			for (final PlayerModel playerModel : playerModels) {
-				if (playerModel.getActivity() != Activities.DYING) {
-					// "Dead" players doesn't count...
-					if ((playerModel.getComponentPosX() == componentPosX) && (playerModel.getComponentPosY() == componentPosY)) {
-						if ((playerModel.getComponentPosX() != bombModel.getComponentPosX())
-						        || (playerModel.getComponentPosY() != bombModel.getComponentPosY())) {
-							return false;
-						}
-					}
-				}
+		// Collision with players ("dead" players doesn't count):
+		if ((componentPosX != bombModel.getComponentPosX()) || (componentPosY != bombModel.getComponentPosY())) {
+			if (playerGrid.getPlayersCount(componentPosX, componentPosY) > 0) {
+				return false;
 			}
 		}
 
-		final Integer bombIndexAhead = getBombIndexAtComponentPosition(componentPosX, componentPosY);
-		if ((bombIndexAhead != null) && (getBombModels().get(bombIndexAhead) != bombModel)) {
+		final BombModel bombModelAhead = getBombAtComponentPosition(componentPosX, componentPosY);
+		if ((bombModelAhead != null) && (bombModelAhead != bombModel)) {
 			// another
 			// bomb
 			return false;
@@ -1014,9 +1111,9 @@ public class GameCoreHandler {
 				}
 			}
 
-			final LevelComponent levelComponent = levelModel.getComponent(componentPosX, componentPosY);
+			final int cellIndex = levelModel.getCellIndex(componentPosX, componentPosY);
 
-			if ((levelComponent.getWall() != Walls.EMPTY) || (levelComponent.getItem() != null)) {
+			if ((levelModel.getWall(cellIndex) != Walls.EMPTY) || (levelModel.getItem(cellIndex) != null)) {
 				continue;
 			}
 
@@ -1028,7 +1125,7 @@ public class GameCoreHandler {
 				continue;
 			}
 
-			levelComponent.setItem(item);
+			levelModel.setItem(cellIndex, item);
 			break;
 		}
 	}
@@ -1044,13 +1141,14 @@ public class GameCoreHandler {
 	 *            y coordinate of the component to remove the fire from
 	 */
 	public void removeFireFromComponentPos(final Fire fire, final int componentPosX, final int componentPosY) {
-		final LevelComponent levelComponent = getLevelModel().getComponent(componentPosX, componentPosY);
-
-		if (levelComponent.getWall() == Walls.BRICK) {
-			levelComponent.setWall(Walls.EMPTY);
-		} else if ((levelComponent.getWall() == Walls.EMPTY) && (levelComponent.getItem() != null)) {
-			final Items item = levelComponent.getItem();
-			levelComponent.setItem(null);
+		final LevelModel levelModel = getLevelModel();
+		final int cellIndex = levelModel.getCellIndex(componentPosX, componentPosY);
+
+		if (levelModel.getWall(cellIndex) == Walls.BRICK) {
+			levelModel.setWall(cellIndex, Walls.EMPTY);
+		} else if ((levelModel.getWall(cellIndex) == Walls.EMPTY) && (levelModel.getItem(cellIndex) != null)) {
+			final Items item = levelModel.getItem(cellIndex);
+			levelModel.setItem(cellIndex, null);
 			if (((item == Items.DISEASE) || (item == Items.SUPER_DISEASE)) && !getGlobalServerOptions().isExplosionAnnihilatesDiseases()) {
 				replaceItemOnLevel(item);
 			}
@@ -1089,14 +1187,227 @@ public class GameCoreHandler {
 		if (bomb != null) {
 			bomb.setAboutToDetonate(true);
 		}
-		getLevel().getModel().getComponent(x, y).setWall(wall);
+		final LevelModel levelModel = getLevelModel();
+		levelModel.setWall(levelModel.getCellIndex(x, y), wall);
 	}
 
 	public Walls getWall(int x, int y) {
-		return getLevel().getModel().getComponent(x, y).getWall();
+		final LevelModel levelModel = getLevelModel();
+		return levelModel.getWall(levelModel.getCellIndex(x, y));
 	}
 
 	public List<Player[]> getPlayers() {
 		return clientsPlayers;
 	}
+
+	/* ======================== STATE SAVING ============================= */
+
+	/**
+	 * Saves the state of the game: everything what is changed by the
+	 * iterations (including the random generator of MathHelper). The state can
+	 * be restored later by restoreState().
+	 * 
+	 * @param output
+	 *            output to save the state to, its previous content is dropped
+	 */
+	public void saveState(final StateOutput output) {
+		output.reset(clientsPlayerModels, leftPlayerModels);
+		output.writeLong(tick);
+		output.writeBoolean(hasMoreThanOneAlivePlayer);
+		output.writeLong(lastPlayerCountDownStartedAt);
+		output.writeInt(nofTickToRestart);
+		output.writeInt(stateHash);
+		output.writeLong(MathHelper.getRandom().getState());
+
+		output.writeInt(clientsPlayers.size());
+		for (final Player[] players : clientsPlayers) {
+			output.writeInt(players.length);
+		}
+		output.writeInt(leftPlayerModels.size());
+		for (final Player[] players : clientsPlayers) {
+			for (final Player player : players) {
+				player.writeState(output);
+			}
+		}
+		for (final PlayerModel playerModel : leftPlayerModels) {
+			playerModel.writeState(output);
+		}
+
+		level.writeState(output);
+
+		output.writeInt(bombModels.size());
+		for (final BombModel bombModel : bombModels) {
+			bombModel.writeState(output);
+		}
+
+		int shrinkPerformerIndex = -1;
+		for (int i = 0; i < shrinkPerformers.length; i++) {
+			if (shrinkPerformers[i] == shrinkPerformer) {
+				shrinkPerformerIndex = i;
+			}
+			shrinkPerformers[i].writeState(output);
+		}
+		output.writeInt(shrinkPerformerIndex);
+	}
+
+	/**
+	 * Restores a state of the game saved by saveState().
+	 * 
+	 * @param state
+	 *            the saved state to be restored
+	 */
+	public void restoreState(final StateOutput state) {
+		stateInput.reset(state.getBuffer(), state.size(), clientsPlayerModels, leftPlayerModels);
+		try {
+			readState(stateInput);
+		} catch (final IOException ie) {
+			throw new RuntimeException("Can't restore the game state!", ie);
+		}
+	}
+
+	/**
+	 * Saves a snapshot of the game: the state of the game like saveState(),
+	 * which can be restored by another client (by restoreSnapshot()).
+	 * 
+	 * @return the snapshot of the game
+	 */
+	public byte[] saveSnapshot() {
+		final StateOutput output = new StateOutput(16384);
+		saveState(output);
+		return output.toByteArray();
+	}
+
+	/**
+	 * Restores a snapshot of the game saved by saveSnapshot() of another
+	 * client. The game core handler must have been created with the public
+	 * client options of the clients at the time of the snapshot and our index
+	 * among them. Our players are marked as ours, and get the robots of our
+	 * public client options (the robots of a ghost controller may have
+	 * controlled them).<br>
+	 * The snapshot comes from another client, so it is checked: a malformed
+	 * snapshot, or one which doesn't fit the clients and the level causes an
+	 * IOException.
+	 * 
+	 * @param snapshot
+	 *            the snapshot to be restored
+	 * @throws IOException
+	 *             if the snapshot is malformed
+	 */
+	public void restoreSnapshot(final byte[] snapshot) throws IOException {
+		if (MathHelper.getRandom() == null) {
+			MathHelper.setRandom(new RestorableRandom(0l));
+		}
+		if (level == null) {
+			level = new Level(receivedLevelModel == null ? globalServerOptions.getLevelOptions() : receivedLevelModel.getLevelOptions(), this);
+		}
+		stateInput.reset(snapshot, snapshot.length, clientsPlayerModels, leftPlayerModels);
+		readState(stateInput);
+		if (stateInput.remaining() != 0) {
+			throw new IOException("Unexpected data after the game state!");
+		}
+		for (int i = 0; i < clientsPlayers.size(); i++) {
+			final Player[] players = clientsPlayers.get(i);
+			for (int j = 0; j < players.length; j++) {
+				players[j].setOurClient(i == ourClientIndex);
+				if (i == ourClientIndex) {
+					players[j].setRobot(j, players[j].getModel(), clientsPublicClientOptions.get(i).playerRobots[j]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads a state of the game written by saveState(), and rebuilds the
+	 * indices of the bombs, the players and the diseases.
+	 * 
+	 * @param input
+	 *            input of the state
+	 * @throws IOException
+	 *             if the state is malformed, or doesn't fit the clients and the
+	 *             level
+	 */
+	private void readState(final StateInput input) throws IOException {
+		tick = input.readLong();
+		hasMoreThanOneAlivePlayer = input.readBoolean();
+		lastPlayerCountDownStartedAt = input.readLong();
+		nofTickToRestart = input.readInt();
+		stateHash = input.readInt();
+		MathHelper.getRandom().setState(input.readLong());
+
+		if (input.readInt() != clientsPlayers.size()) {
+			throw new IOException("The clients of the game state differ!");
+		}
+		for (final Player[] players : clientsPlayers) {
+			if (input.readInt() != players.length) {
+				throw new IOException("The players of the game state differ!");
+			}
+		}
+		final int leftPlayersCount = input.readCount();
+		if (leftPlayersCount != leftPlayerModels.size()) {
+			if (!leftPlayerModels.isEmpty()) {
+				throw new IOException("The left players of the game state differ!");
+			}
+			// A restored snapshot: the players who had left are only referred
+			for (int i = 0; i < leftPlayersCount; i++) {
+				leftPlayerModels.add(new PlayerModel());
+			}
+		}
+		for (final Player[] players : clientsPlayers) {
+			for (final Player player : players) {
+				player.readState(input);
+			}
+		}
+		for (final PlayerModel playerModel : leftPlayerModels) {
+			playerModel.readState(input);
+		}
+
+		level.readState(input);
+
+		final int bombsCount = input.readCount();
+		bombs = new ArrayList<Bomb>(bombsCount);
+		bombModels = new ArrayList<BombModel>(bombsCount);
+		for (int i = 0; i < bombsCount; i++) {
+			final BombModel bombModel = new BombModel(null);
+			bombModel.readState(input);
+			bombs.add(new Bomb(bombModel, this));
+			bombModels.add(bombModel);
+		}
+
+		for (final ShrinkPerformer performer : shrinkPerformers) {
+			performer.readState(input);
+		}
+		final int shrinkPerformerIndex = input.readInt();
+		if ((shrinkPerformerIndex < -1) || (shrinkPerformerIndex >= shrinkPerformers.length)) {
+			throw new IOException("Invalid shrink performer in the game state!");
+		}
+		shrinkPerformer = shrinkPerformerIndex < 0 ? null : shrinkPerformers[shrinkPerformerIndex];
+
+		if (bombGrid == null) {
+			// A restored snapshot: the round hasn't been initialized here
+			final LevelModel levelModel = level.getModel();
+			bombGrid = new BombGrid(levelModel.getWidth(), levelModel.getHeight());
+			playerGrid = new PlayerGrid(levelModel.getWidth(), levelModel.getHeight());
+			infectionGrid = new InfectionGrid(levelModel.getWidth(), levelModel.getHeight());
+			diseaseWheel = new DiseaseWheel();
+		}
+		// The level of the state has the same size (checked by the level), so
+		// the indices are reused
+		bombGrid.rebuild(bombModels);
+		playerGrid.rebuild(clientsPlayerModels);
+		diseaseWheel.rebuild(clientsPlayerModels);
+	}
+
+	/**
+	 * Sets whether already calculated iterations are being calculated again.
+	 * Sounds and messages are suppressed while replaying.
+	 * 
+	 * @param replaying
+	 *            true if iterations are about to be calculated again; false
+	 *            if replaying is over
+	 */
+	public void setReplaying(final boolean replaying) {
+		this.replaying = replaying;
+		gameEventListener.replayingChanged(replaying);
+	}
+
 }
@@ -0,0 +1,299 @@
+package com.braids.coffeebombermen.client.gamecore.control;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.braids.coffeebombermen.Consts;
+import com.braids.coffeebombermen.client.gamecore.NullGameEventListener;
+import com.braids.coffeebombermen.client.gamecore.robot.RobotTypes;
+import com.braids.coffeebombermen.options.ServerComponentOptions;
+import com.braids.coffeebombermen.options.model.PublicClientOptions;
+import com.braids.coffeebombermen.options.model.ServerOptions;
+import com.braids.coffeebombermen.server.DedicatedServer;
+import com.braids.coffeebombermen.utils.DataTextFileReader;
+import com.braids.coffeebombermen.utils.GeneralStringTokenizer;
+import com.braids.coffeebombermen.utils.IterationFrame;
+import com.braids.coffeebombermen.utils.MathHelper;
+import com.braids.coffeebombermen.utils.RestorableRandom;
+
+/**
+ * A headless determinism check of the game core. Robot players play games on
+ * randomly generated levels from given random seeds, and the state hashes of
+ * the ticks are combined into a trace.<br>
+ * Reported: the trace of each seed. Running the same seeds with two builds of
+ * the game core tells whether they play the same games (for example before
+ * and after an optimization).<br>
+ * With -record the state hashes of every tick are written into a reference
+ * file together with the server options and the seeds. With -check the games
+ * of a reference file are replayed, and the check fails at the first tick
+ * whose state differs from the recorded one. The reference games of the game
+ * core are in traces/reference.txt, they have to be recorded again only if a
+ * change of the game core changes the games deliberately.
+ */
+public class GameTrace {
+
+	/** Usage of the command line arguments. */
+	private static final String[] USAGE           = { "Usage: GameTrace [options]", "  -config <file>     options file to read the server options from",
+	        "  -seeds <n,n,...>   random seeds of the games", "  -ticks <n>         number of the ticks of a game", "  -clients <n>       number of the robot clients",
+	        "  -record <file>     records the games into a reference file", "  -check <file>      replays the games of a reference file" };
+
+	/** Number of the state hashes in a line of a reference file. */
+	private static final int      HASHES_PER_LINE = 16;
+
+	/**
+	 * Plays a game, and returns the state hashes of its ticks. The game gets a
+	 * copy of the server options: the game can change them (the disease
+	 * shrinker forbids the ceasefire disease), and a game mustn't depend on the
+	 * games played before it.
+	 * 
+	 * @param serverOptions
+	 *            the server options
+	 * @param seed
+	 *            random seed of the game
+	 * @param ticks
+	 *            number of the ticks to play
+	 * @param clients
+	 *            number of the robot clients
+	 * @return the state hashes of the ticks of the game
+	 */
+	private static int[] playGame(final ServerOptions serverOptions, final long seed, final int ticks, final int clients) {
+		MathHelper.setRandom(new RestorableRandom(seed));
+
+		final List<PublicClientOptions> clientsPublicClientOptions = new ArrayList<PublicClientOptions>();
+		for (int i = 0; i < clients; i++) {
+			final PublicClientOptions publicClientOptions = new PublicClientOptions();
+			for (int j = 0; j < publicClientOptions.playerRobots.length; j++) {
+				publicClientOptions.playerNames[j] = "Robot " + i + "-" + j;
+				publicClientOptions.playerRobots[j] = RobotTypes.SIMPLE;
+			}
+			clientsPublicClientOptions.add(publicClientOptions);
+		}
+		final GameCoreHandler gameCoreHandler = new GameCoreHandler(new NullGameEventListener(), ServerOptions.parseFromString(serverOptions.packToString()), null,
+		        clientsPublicClientOptions, 0);
+		gameCoreHandler.setReplaying(true);
+		gameCoreHandler.initNextRound();
+
+		final IterationFrame frame = new IterationFrame(IterationFrame.STARTING_NEXT_ITERATION_MARKER);
+		final int[] stateHashes = new int[ticks];
+		for (int i = 0; i < ticks; i++) {
+			// The actions of the robots, as the clients would send them
+			frame.clear(i);
+			final List<Player[]> clientsPlayers = gameCoreHandler.getPlayers();
+			for (int j = 0; j < clientsPlayers.size(); j++) {
+				frame.beginSection(j);
+				for (final Player player : clientsPlayers.get(j)) {
+					if (player.getRobot() != null) {
+						frame.addActions(player.getRobot().getNextAction());
+					}
+				}
+			}
+			gameCoreHandler.nextIteration(frame);
+			stateHashes[i] = gameCoreHandler.computeStateHash();
+		}
+		return stateHashes;
+	}
+
+	/**
+	 * Combines the state hashes of the ticks of a game into a trace.
+	 * 
+	 * @param stateHashes
+	 *            the state hashes of the ticks
+	 * @return the trace of the game
+	 */
+	private static long getTrace(final int[] stateHashes) {
+		long trace = 0l;
+		for (final int stateHash : stateHashes) {
+			trace = trace * 31 + stateHash;
+		}
+		return trace;
+	}
+
+	/**
+	 * Plays the games, and records them into a reference file.
+	 * 
+	 * @param fileName
+	 *            name of the reference file
+	 * @param serverOptions
+	 *            the server options
+	 * @param seeds
+	 *            random seeds of the games
+	 * @param ticks
+	 *            number of the ticks of a game
+	 * @param clients
+	 *            number of the robot clients
+	 * @throws IOException
+	 *             if the reference file can't be written
+	 */
+	private static void recordGames(final String fileName, final ServerOptions serverOptions, final String[] seeds, final int ticks, final int clients)
+	        throws IOException {
+		final PrintWriter referenceFileWriter = new PrintWriter(new FileWriter(fileName));
+		try {
+			referenceFileWriter.println(DataTextFileReader.COMMENT_LINE_CHAR + " Reference games of the " + Consts.APPLICATION_NAME + " game core, recorded by GameTrace -record.");
+			referenceFileWriter.println(DataTextFileReader.COMMENT_LINE_CHAR + " Replay them with GameTrace -check " + fileName);
+			referenceFileWriter.println(DataTextFileReader.COMMENT_LINE_CHAR + " ");
+			referenceFileWriter.println(DataTextFileReader.COMMENT_LINE_CHAR + " Server options:");
+			referenceFileWriter.println(serverOptions.packToString());
+			for (final String seed : seeds) {
+				final int[] stateHashes = playGame(serverOptions, Long.parseLong(seed), ticks, clients);
+				referenceFileWriter.println(DataTextFileReader.COMMENT_LINE_CHAR + " Game (seed, ticks, clients) and the state hashes of its ticks:");
+				referenceFileWriter.println(seed + GeneralStringTokenizer.GENERAL_SEPARATOR_CHAR + ticks + GeneralStringTokenizer.GENERAL_SEPARATOR_CHAR + clients
+				        + GeneralStringTokenizer.GENERAL_SEPARATOR_CHAR);
+				final StringBuilder line = new StringBuilder();
+				for (int i = 0; i < stateHashes.length; i++) {
+					line.append(String.format("%08x", stateHashes[i]));
+					if (((i + 1) % HASHES_PER_LINE == 0) || (i + 1 == stateHashes.length)) {
+						referenceFileWriter.println(line);
+						line.setLength(0);
+					} else {
+						line.append(' ');
+					}
+				}
+				System.out.println("Seed " + seed + ": trace " + Long.toHexString(getTrace(stateHashes)));
+			}
+			referenceFileWriter.flush();
+		} finally {
+			referenceFileWriter.close();
+		}
+	}
+
+	/**
+	 * Replays the games of a reference file, and compares their state hashes
+	 * to the recorded ones.
+	 * 
+	 * @param fileName
+	 *            name of the reference file
+	 * @return true if all games are the same as the recorded ones; false if a
+	 *         game diverges
+	 * @throws IOException
+	 *             if the reference file can't be read or it is invalid
+	 */
+	private static boolean checkGames(final String fileName) throws IOException {
+		final DataTextFileReader referenceFileReader = new DataTextFileReader(fileName);
+		try {
+			final String serverOptionsLine = referenceFileReader.readNextDataLine();
+			if (serverOptionsLine == null) {
+				throw new IOException("Missing server options in " + fileName);
+			}
+			final ServerOptions serverOptions = ServerOptions.parseFromString(serverOptionsLine);
+			serverOptions.setLevelName(ServerComponentOptions.RANDOMLY_GENERATED_LEVEL_NAME);
+
+			String gameLine;
+			while ((gameLine = referenceFileReader.readNextDataLine()) != null) {
+				final GeneralStringTokenizer gameTokenizer = new GeneralStringTokenizer(gameLine);
+				final String seed = gameTokenizer.nextStringToken();
+				final int ticks = gameTokenizer.nextIntToken();
+				final int clients = gameTokenizer.nextIntToken();
+
+				final int[] recordedStateHashes = new int[ticks];
+				for (int i = 0; i < ticks; i += HASHES_PER_LINE) {
+					final String hashesLine = referenceFileReader.readNextDataLine();
+					final String[] hashes = hashesLine == null ? new String[0] : hashesLine.trim().split(" ");
+					if (hashes.length != Math.min(HASHES_PER_LINE, ticks - i)) {
+						throw new IOException("Invalid state hashes of seed " + seed + " in " + fileName);
+					}
+					for (int j = 0; j < hashes.length; j++) {
+						recordedStateHashes[i + j] = (int) Long.parseLong(hashes[j], 16);
+					}
+				}
+
+				final int[] stateHashes = playGame(serverOptions, Long.parseLong(seed), ticks, clients);
+				for (int i = 0; i < ticks; i++) {
+					if (stateHashes[i] != recordedStateHashes[i]) {
+						System.out.println("Seed " + seed + ": diverges at tick " + i + " (state hash " + String.format("%08x", stateHashes[i]) + " instead of "
+						        + String.format("%08x", recordedStateHashes[i]) + ")");
+						return false;
+					}
+				}
+				System.out.println("Seed " + seed + ": " + ticks + " ticks match, trace " + Long.toHexString(getTrace(stateHashes)));
+			}
+			return true;
+		} catch (final NumberFormatException nfe) {
+			throw new IOException("Invalid reference file: " + fileName);
+		} finally {
+			referenceFileReader.close();
+		}
+	}
+
+	/**
+	 * The entry point of the check.
+	 * 
+	 * @param arguments
+	 *            the command line arguments
+	 */
+	public static void main(final String[] arguments) {
+		String optionsFileName = Consts.OPTIONS_FILE_NAME;
+		String[] seeds = { "1", "2", "3", "4" };
+		int ticks = 5000;
+		int clients = 2;
+		String recordFileName = null;
+		String checkFileName = null;
+		try {
+			for (int i = 0; i < arguments.length; i += 2) {
+				if (i + 1 >= arguments.length) {
+					throw new IllegalArgumentException("Missing value of " + arguments[i]);
+				}
+				final String option = arguments[i];
+				final String value = arguments[i + 1];
+				if (option.equals("-config")) {
+					optionsFileName = value;
+				} else if (option.equals("-seeds")) {
+					seeds = value.split(",");
+				} else if (option.equals("-ticks")) {
+					ticks = Integer.parseInt(value);
+				} else if (option.equals("-clients")) {
+					clients = Integer.parseInt(value);
+				} else if (option.equals("-record")) {
+					recordFileName = value;
+				} else if (option.equals("-check")) {
+					checkFileName = value;
+				} else {
+					throw new IllegalArgumentException("Unknown option: " + option);
+				}
+			}
+		} catch (final Exception e) {
+			System.out.println("Error: " + e.getMessage());
+			DedicatedServer.printLines(USAGE);
+			System.exit(1);
+			return;
+		}
+
+		if (checkFileName != null) {
+			try {
+				System.exit(checkGames(checkFileName) ? 0 : 1);
+			} catch (final IOException ie) {
+				System.out.println("Error: " + ie.getMessage());
+				System.exit(1);
+			}
+			return;
+		}
+
+		final ServerOptions serverOptions;
+		try {
+			serverOptions = DedicatedServer.loadServerOptions(optionsFileName);
+		} catch (final Exception e) {
+			System.out.println("Error: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		serverOptions.setLevelName(ServerComponentOptions.RANDOMLY_GENERATED_LEVEL_NAME);
+
+		if (recordFileName != null) {
+			try {
+				recordGames(recordFileName, serverOptions, seeds, ticks, clients);
+			} catch (final IOException ie) {
+				System.out.println("Error: " + ie.getMessage());
+				System.exit(1);
+			}
+		} else {
+			for (final String seed : seeds) {
+				final long trace = getTrace(playGame(serverOptions, Long.parseLong(seed), ticks, clients));
+				System.out.println("Seed " + seed + ": trace " + Long.toHexString(trace));
+			}
+		}
+		System.exit(0);
+	}
+
+}
@@ -0,0 +1,231 @@
+package com.braids.coffeebombermen.client.gamecore.control;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.braids.coffeebombermen.Consts;
+import com.braids.coffeebombermen.client.gamecore.NullGameEventListener;
+import com.braids.coffeebombermen.client.gamecore.robot.RobotTypes;
+import com.braids.coffeebombermen.options.OptConsts;
+import com.braids.coffeebombermen.options.ServerComponentOptions;
+import com.braids.coffeebombermen.options.model.PublicClientOptions;
+import com.braids.coffeebombermen.options.model.ServerOptions;
+import com.braids.coffeebombermen.server.DedicatedServer;
+import com.braids.coffeebombermen.utils.IterationFrame;
+import com.braids.coffeebombermen.utils.MathHelper;
+import com.braids.coffeebombermen.utils.RestorableRandom;
+import com.sun.management.ThreadMXBean;
+
+/**
+ * A headless benchmark of the game core iteration. A game core handler
+ * (without GUI and sounds) with robot players plays rounds on randomly
+ * generated levels, and every tick (a full nextIteration()) is measured.<br>
+ * The robots play the rounds once, and their actions are recorded. The
+ * measured runs replay the recorded actions, so the (slow) decisions of the
+ * robots are made only once, and the runs play the same games.<br>
+ * Reported: the duration of the ticks and the heap allocated by the ticks.
+ */
+public class IterationBenchmark {
+
+	/**
+	 * The thread bean, kept because getting it allocates (and the heap is
+	 * measured at every tick).
+	 */
+	private static final ThreadMXBean THREAD_MX_BEAN = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+	/** Usage of the command line arguments. */
+	private static final String[]     USAGE          = { "Usage: IterationBenchmark [options]", "  -config <file>     options file to read the server options from",
+	        "  -width <n>         level width", "  -height <n>        level height", "  -players <n>       number of the robot players",
+	        "  -rounds <n>        number of the recorded rounds", "  -ticks <n>         number of the ticks of a round",
+	        "  -runs <n>          number of the measured replays of the rounds" };
+
+	/**
+	 * Creates the game core handler of a run. The random generator is reset
+	 * and the game core handler gets a copy of the server options (the game
+	 * can change them, the disease shrinker forbids the ceasefire disease), so
+	 * every run plays the same games.
+	 * 
+	 * @param serverOptions
+	 *            the server options
+	 * @param clientsPublicClientOptions
+	 *            the public client options of the clients
+	 * @return the game core handler of the run
+	 */
+	private static GameCoreHandler createGameCoreHandler(final ServerOptions serverOptions, final List<PublicClientOptions> clientsPublicClientOptions) {
+		MathHelper.setRandom(new RestorableRandom(0l));
+		final GameCoreHandler gameCoreHandler = new GameCoreHandler(new NullGameEventListener(), ServerOptions.parseFromString(serverOptions.packToString()), null,
+		        clientsPublicClientOptions, 0);
+		gameCoreHandler.setReplaying(true);
+		return gameCoreHandler;
+	}
+
+	/**
+	 * Plays rounds with the robots, and records their actions. The actions of
+	 * a tick are recorded in an iteration frame, as the clients would send
+	 * them.
+	 * 
+	 * @param serverOptions
+	 *            the server options
+	 * @param clientsPublicClientOptions
+	 *            the public client options of the clients
+	 * @param rounds
+	 *            number of the rounds to play
+	 * @param ticks
+	 *            number of the ticks of a round
+	 * @return the frames of the ticks of the rounds
+	 */
+	private static IterationFrame[][] recordRounds(final ServerOptions serverOptions, final List<PublicClientOptions> clientsPublicClientOptions,
+	        final int rounds, final int ticks) {
+		final GameCoreHandler gameCoreHandler = createGameCoreHandler(serverOptions, clientsPublicClientOptions);
+		final IterationFrame[][] frames = new IterationFrame[rounds][ticks];
+		for (int i = 0; i < rounds; i++) {
+			gameCoreHandler.initNextRound();
+
+			for (int j = 0; j < ticks; j++) {
+				final IterationFrame frame = new IterationFrame(IterationFrame.STARTING_NEXT_ITERATION_MARKER);
+				frame.clear(j);
+				final List<Player[]> clientsPlayers = gameCoreHandler.getPlayers();
+				for (int k = 0; k < clientsPlayers.size(); k++) {
+					frame.beginSection(k);
+					for (final Player player : clientsPlayers.get(k)) {
+						if (player.getRobot() != null) {
+							frame.addActions(player.getRobot().getNextAction());
+						}
+					}
+				}
+				frames[i][j] = frame;
+				gameCoreHandler.nextIteration(frame);
+			}
+		}
+		return frames;
+	}
+
+	/**
+	 * Replays recorded rounds, and measures their ticks. Only nextIteration()
+	 * is measured.
+	 * 
+	 * @param serverOptions
+	 *            the server options
+	 * @param clientsPublicClientOptions
+	 *            the public client options of the clients
+	 * @param frames
+	 *            the recorded frames of the ticks of the rounds
+	 * @return the duration of the ticks in ns and the heap allocated by the
+	 *         ticks in bytes
+	 */
+	private static long[] playRounds(final ServerOptions serverOptions, final List<PublicClientOptions> clientsPublicClientOptions,
+	        final IterationFrame[][] frames) {
+		final GameCoreHandler gameCoreHandler = createGameCoreHandler(serverOptions, clientsPublicClientOptions);
+		long time = 0l;
+		long allocatedBytes = 0l;
+		for (final IterationFrame[] roundFrames : frames) {
+			gameCoreHandler.initNextRound();
+
+			for (final IterationFrame frame : roundFrames) {
+				final long startAllocatedBytes = getAllocatedBytes();
+				final long startTime = System.nanoTime();
+				gameCoreHandler.nextIteration(frame);
+				time += System.nanoTime() - startTime;
+				allocatedBytes += getAllocatedBytes() - startAllocatedBytes;
+			}
+		}
+		return new long[] { time, allocatedBytes };
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread so far.
+	 * 
+	 * @return the number of bytes allocated by the current thread so far
+	 */
+	private static long getAllocatedBytes() {
+		return THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+	}
+
+	/**
+	 * The entry point of the benchmark.
+	 * 
+	 * @param arguments
+	 *            the command line arguments
+	 */
+	public static void main(final String[] arguments) {
+		String optionsFileName = Consts.OPTIONS_FILE_NAME;
+		for (int i = 0; i < arguments.length - 1; i++) {
+			if (arguments[i].equals("-config")) {
+				optionsFileName = arguments[i + 1];
+			}
+		}
+
+		final ServerOptions serverOptions;
+		int players = 16;
+		int rounds = 1;
+		int ticks = 2000;
+		int runs = 10;
+		try {
+			serverOptions = DedicatedServer.loadServerOptions(optionsFileName);
+			serverOptions.getLevelOptions().setLevelWidth(31);
+			serverOptions.getLevelOptions().setLevelHeight(23);
+
+			for (int i = 0; i < arguments.length; i += 2) {
+				if (i + 1 >= arguments.length) {
+					throw new IllegalArgumentException("Missing value of " + arguments[i]);
+				}
+				final String option = arguments[i];
+				final int value = option.equals("-config") ? 0 : Integer.parseInt(arguments[i + 1]);
+				if (option.equals("-config")) {
+					// Already processed
+				} else if (option.equals("-width")) {
+					serverOptions.getLevelOptions().setLevelWidth(value);
+				} else if (option.equals("-height")) {
+					serverOptions.getLevelOptions().setLevelHeight(value);
+				} else if (option.equals("-players")) {
+					players = value;
+				} else if (option.equals("-rounds")) {
+					rounds = value;
+				} else if (option.equals("-ticks")) {
+					ticks = value;
+				} else if (option.equals("-runs")) {
+					runs = value;
+				} else {
+					throw new IllegalArgumentException("Unknown option: " + option);
+				}
+			}
+		} catch (final Exception e) {
+			System.out.println("Error: " + e.getMessage());
+			DedicatedServer.printLines(USAGE);
+			System.exit(1);
+			return;
+		}
+		serverOptions.setLevelName(ServerComponentOptions.RANDOMLY_GENERATED_LEVEL_NAME);
+
+		// Every client has MAX_PLAYERS_FROM_A_COMPUTER players, the ones
+		// above the requested number are not controlled
+		final List<PublicClientOptions> clientsPublicClientOptions = new ArrayList<PublicClientOptions>();
+		for (int i = 0; i < players; i += OptConsts.MAX_PLAYERS_FROM_A_COMPUTER) {
+			final PublicClientOptions publicClientOptions = new PublicClientOptions();
+			for (int j = 0; (j < publicClientOptions.playerRobots.length) && (i + j < players); j++) {
+				publicClientOptions.playerNames[j] = "Robot " + (i + j);
+				publicClientOptions.playerRobots[j] = RobotTypes.SIMPLE;
+			}
+			clientsPublicClientOptions.add(publicClientOptions);
+		}
+		final IterationFrame[][] frames = recordRounds(serverOptions, clientsPublicClientOptions, rounds, ticks);
+
+		// The first runs warm up the JIT
+		for (int i = 0; i < runs; i++) {
+			playRounds(serverOptions, clientsPublicClientOptions, frames);
+		}
+		long time = 0l;
+		long allocatedBytes = 0l;
+		for (int i = 0; i < runs; i++) {
+			final long[] result = playRounds(serverOptions, clientsPublicClientOptions, frames);
+			time += result[0];
+			allocatedBytes += result[1];
+		}
+		final long ticksCount = (long) runs * rounds * ticks;
+		System.out.println("Iteration with " + players + " players on a " + serverOptions.getLevelOptions().getLevelWidth() + "x"
+		        + serverOptions.getLevelOptions().getLevelHeight() + " level: avg " + time / ticksCount + " ns, " + allocatedBytes / ticksCount
+		        + " bytes allocated per tick");
+		System.exit(0);
+	}
+
+}
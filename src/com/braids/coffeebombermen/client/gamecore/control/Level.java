@@ -1,9 +1,11 @@
 package com.braids.coffeebombermen.client.gamecore.control;
 
-import java.lang.reflect.Array;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.List;
 
+import com.braids.coffeebombermen.client.gamecore.model.FireModel;
+import com.braids.coffeebombermen.client.gamecore.model.StateInput;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
 import com.braids.coffeebombermen.client.gamecore.model.level.LevelComponent;
 import com.braids.coffeebombermen.client.gamecore.model.level.LevelModel;
 import com.braids.coffeebombermen.options.OptConsts.Items;
@@ -17,13 +19,19 @@ import com.braids.coffeebombermen.utils.MathHelper;
  */
 public class Level {
 
+	/** The items in the order of their ordinals. */
+	private static final Items[]  ITEMS           = Items.values();
+
 	/** The model of the level. */
 	private final LevelModel      model;
 	/**
-	 * References to the fires taking places on the level. There is a vector for
-	 * each component.
+	 * References to the fires taking place on the level in one compact list,
+	 * so passing the time costs the number of the fires instead of the size of
+	 * the level. A removed fire is replaced by the last one.
 	 */
-	private final List<Fire>[][]  fireVectorss;
+	private final ArrayList<Fire> activeFires    = new ArrayList<Fire>();
+	/** The fires burning out in the current iteration, in removing order. */
+	private final ArrayList<Fire> burningOutFires = new ArrayList<Fire>();
 
 	private final GameCoreHandler gameCoreHandler;
 
@@ -55,13 +63,6 @@ public class Level {
 	public Level(final LevelModel levelModel, final GameCoreHandler gameCoreHandler) {
 		model = levelModel;
 		this.gameCoreHandler = gameCoreHandler;
-
-		fireVectorss = (ArrayList<Fire>[][]) Array.newInstance(new ArrayList<Fire>().getClass(), new int[] { model.getHeight(), model.getWidth() });
-		for (final List<Fire>[] fireVectors : fireVectorss) {
-			for (int i = 0; i < fireVectors.length; i++) {
-				fireVectors[i] = new ArrayList<Fire>();
-			}
-		}
 	}
 
 	/**
@@ -84,18 +85,18 @@ public class Level {
 	 *            y coordinate of the component to set the fire on
 	 */
 	public void addFireToComponentPos(final Fire fire, final int componentPosX, final int componentPosY) {
-		fireVectorss[componentPosY][componentPosX].add(fire);
+		fire.getModel().setActiveFireIndex(activeFires.size());
+		activeFires.add(fire);
 
-		final LevelComponent levelComponent = gameCoreHandler.getLevelModel().getComponent(componentPosX, componentPosY);
-		levelComponent.addFire(fire.getModel());
+		final int cellIndex = model.getCellIndex(componentPosX, componentPosY);
+		model.addFire(cellIndex, fire.getModel());
 
 		// We decide what item and if there will be an item after the fire,
 		// cause it has to be appeared from the middle of the fire.
-		if ((levelComponent.getWall() == Walls.BRICK) && (levelComponent.getItem() == null)) {
+		if ((model.getWall(cellIndex) == Walls.BRICK) && (model.getItem(cellIndex) == null)) {
 			// Item has to be generated once (see: time delayed multiple fire).
 			if (gameCoreHandler.getGlobalServerOptions().getGettingItemProbability() > MathHelper.nextInt(100)) {
-				levelComponent.setItem(Items.values()[GeneralUtilities.pickWeightedRandom(gameCoreHandler.getGlobalServerOptions().getLevelOptions()
-				        .getItemWeights())]);
+				model.setItem(cellIndex, ITEMS[GeneralUtilities.pickWeightedRandom(gameCoreHandler.getGlobalServerOptions().getLevelOptions().getItemWeights())]);
 			}
 		}
 	}
@@ -111,25 +112,183 @@ public class Level {
 	 *            y coordinate of the component to remove the fire from
 	 */
 	public void removeFireFromComponentPos(final Fire fire, final int componentPosX, final int componentPosY) {
-		fireVectorss[componentPosY][componentPosX].remove(fire);
-		model.getComponent(componentPosX, componentPosY).removeFire(fire.getModel());
+		model.removeFire(model.getCellIndex(componentPosX, componentPosY), fire.getModel());
+		removeActiveFire(fire);
 	}
 
+	/**
+	 * Removes all fires from a specified component position.
+	 * 
+	 * @param componentPosX
+	 *            x coordinate of the component to remove the fires from
+	 * @param componentPosY
+	 *            y coordinate of the component to remove the fires from
+	 */
 	public void removeAllFireFromComponentPos(final int componentPosX, final int componentPosY) {
-		fireVectorss[componentPosY][componentPosX].clear();
-		model.getComponent(componentPosX, componentPosY).removeAllFire();
+		final int cellIndex = model.getCellIndex(componentPosX, componentPosY);
+		while (model.hasFire(cellIndex)) {
+			// Downward by active fire index, so the active fires are reordered
+			// the same way as by a downward scan of them
+			FireModel fireModel = model.getFire(cellIndex, 0);
+			for (int i = model.getFireCount(cellIndex) - 1; i > 0; i--) {
+				if (model.getFire(cellIndex, i).getActiveFireIndex() > fireModel.getActiveFireIndex()) {
+					fireModel = model.getFire(cellIndex, i);
+				}
+			}
+			model.removeFire(cellIndex, fireModel);
+			if (fireModel.getActiveFireIndex() >= 0) {
+				removeActiveFire(activeFires.get(fireModel.getActiveFireIndex()));
+			}
+		}
+	}
+
+	/**
+	 * Removes a fire from the active fires: the last active fire takes its
+	 * place. The removed fire is recycled.
+	 * 
+	 * @param fire
+	 *            fire to be removed
+	 */
+	private void removeActiveFire(final Fire fire) {
+		final int activeFireIndex = fire.getModel().getActiveFireIndex();
+		if (activeFireIndex < 0) {
+			return; // Already removed
+		}
+
+		final Fire lastFire = activeFires.remove(activeFires.size() - 1);
+		if (lastFire != fire) {
+			activeFires.set(activeFireIndex, lastFire);
+			lastFire.getModel().setActiveFireIndex(activeFireIndex);
+		}
+		fire.getModel().setActiveFireIndex(-1);
+		gameCoreHandler.getFirePool().release(fire);
+	}
+
+	/**
+	 * Tells whether there is fire on the level.
+	 * 
+	 * @return true if there is fire on the level; false otherwise
+	 */
+	public boolean hasFire() {
+		return !activeFires.isEmpty();
 	}
 
 	/**
-	 * Performs operations which are required by passing the time.
+	 * Performs operations which are required by passing the time.<br>
+	 * The burning out fires are removed in the order of their components (row
+	 * by row) and not in the order of the active fires: removing a fire can
+	 * replace a burnt item randomly, so the order of the removals is part of
+	 * the game.
 	 */
 	public void nextIteration() {
-		for (final List<Fire>[] fireVectors : fireVectorss) {
-			for (final List<Fire> fireVector : fireVectors) {
-				for (int i = fireVector.size() - 1; i >= 0; i--) {
-					// Cannot be enhanced: fire can remove itself. And because
-					// it can remove itself, cycle must be downward...
-					fireVector.get(i).nextIteration();
+		for (int i = activeFires.size() - 1; i >= 0; i--) {
+			final Fire fire = activeFires.get(i);
+			if (fire.isBurningOut()) {
+				final int cellIndex = model.getCellIndex(fire.getComponentPosX(), fire.getComponentPosY());
+				int position = burningOutFires.size();
+				while ((position > 0)
+				        && (model.getCellIndex(burningOutFires.get(position - 1).getComponentPosX(), burningOutFires.get(position - 1).getComponentPosY()) > cellIndex)) {
+					position--;
+				}
+				burningOutFires.add(position, fire);
+			} else {
+				fire.nextIteration();
+			}
+		}
+
+		for (int i = 0; i < burningOutFires.size(); i++) {
+			burningOutFires.get(i).nextIteration(); // Removes the fire
+		}
+		burningOutFires.clear();
+	}
+
+	/**
+	 * Writes the state of the level to a saved game state: the model, the
+	 * active fires, and the fires of the burning components. The fires of a
+	 * component are written as the indices of the active fires, or inline if
+	 * the fire isn't active any more (for example a fire moved away by
+	 * swapping components).
+	 * 
+	 * @param output
+	 *            output of the game state
+	 */
+	public void writeState(final StateOutput output) {
+		model.writeState(output);
+		output.writeInt(activeFires.size());
+		for (final Fire fire : activeFires) {
+			output.writeInt(fire.getComponentPosX());
+			output.writeInt(fire.getComponentPosY());
+			fire.getModel().writeState(output);
+		}
+		int burningCellsCount = 0;
+		for (int cellIndex = model.getCellsCount() - 1; cellIndex >= 0; cellIndex--) {
+			if (model.hasFire(cellIndex)) {
+				burningCellsCount++;
+			}
+		}
+		output.writeInt(burningCellsCount);
+		for (int cellIndex = 0; cellIndex < model.getCellsCount(); cellIndex++) {
+			final int fireCount = model.getFireCount(cellIndex);
+			if (fireCount == 0) {
+				continue;
+			}
+			output.writeInt(cellIndex);
+			output.writeInt(fireCount);
+			for (int i = 0; i < fireCount; i++) {
+				final FireModel fireModel = model.getFire(cellIndex, i);
+				final int activeFireIndex = fireModel.getActiveFireIndex();
+				if (activeFireIndex >= 0) {
+					output.writeInt(activeFireIndex);
+				} else {
+					output.writeInt(-1);
+					fireModel.writeState(output);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the state of the level written by writeState(). The current
+	 * active fires are recycled.
+	 * 
+	 * @param input
+	 *            input of the game state
+	 * @throws IOException
+	 *             if the game state is malformed
+	 */
+	public void readState(final StateInput input) throws IOException {
+		model.readState(input);
+		for (final Fire fire : activeFires) {
+			fire.getModel().setActiveFireIndex(-1);
+			gameCoreHandler.getFirePool().release(fire);
+		}
+		activeFires.clear();
+		for (int i = input.readCount(); i > 0; i--) {
+			final int componentPosX = input.readInt();
+			final int componentPosY = input.readInt();
+			if ((componentPosX < 0) || (componentPosX >= model.getWidth()) || (componentPosY < 0) || (componentPosY >= model.getHeight())) {
+				throw new IOException("Invalid fire position in the game state!");
+			}
+			final Fire fire = gameCoreHandler.getFirePool().obtain(componentPosX, componentPosY);
+			fire.getModel().readState(input);
+			fire.getModel().setActiveFireIndex(activeFires.size());
+			activeFires.add(fire);
+		}
+		for (int i = input.readCount(); i > 0; i--) {
+			final int cellIndex = input.readInt();
+			if ((cellIndex < 0) || (cellIndex >= model.getCellsCount())) {
+				throw new IOException("Invalid component in the game state!");
+			}
+			for (int j = input.readCount(); j > 0; j--) {
+				final int activeFireIndex = input.readInt();
+				if (activeFireIndex == -1) {
+					final FireModel fireModel = new FireModel();
+					fireModel.readState(input);
+					model.addFire(cellIndex, fireModel);
+				} else if ((activeFireIndex >= 0) && (activeFireIndex < activeFires.size())) {
+					model.addFire(cellIndex, activeFires.get(activeFireIndex).getModel());
+				} else {
+					throw new IOException("Invalid fire in the game state!");
 				}
 			}
 		}
@@ -1,5 +1,6 @@
 package com.braids.coffeebombermen.client.gamecore.control;
 
+import java.io.IOException;
 import java.util.EnumSet;
 import java.util.List;
 
@@ -8,14 +9,15 @@ import com.braids.coffeebombermen.client.gamecore.BombPhases;
 import com.braids.coffeebombermen.client.gamecore.BombTypes;
 import com.braids.coffeebombermen.client.gamecore.CoreConsts;
 import com.braids.coffeebombermen.client.gamecore.Directions;
+import com.braids.coffeebombermen.client.gamecore.GameSounds;
 import com.braids.coffeebombermen.client.gamecore.model.BombModel;
 import com.braids.coffeebombermen.client.gamecore.model.PlayerModel;
-import com.braids.coffeebombermen.client.gamecore.model.level.LevelComponent;
+import com.braids.coffeebombermen.client.gamecore.model.StateInput;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
 import com.braids.coffeebombermen.client.gamecore.model.level.LevelModel;
 import com.braids.coffeebombermen.client.gamecore.robot.IRobot;
 import com.braids.coffeebombermen.client.gamecore.robot.RobotTypes;
 import com.braids.coffeebombermen.client.gamecore.robot.SimpleRobot;
-import com.braids.coffeebombermen.client.sound.SoundEffect;
 import com.braids.coffeebombermen.options.Diseases;
 import com.braids.coffeebombermen.options.OptConsts;
 import com.braids.coffeebombermen.options.OptConsts.Items;
@@ -42,7 +44,7 @@ public class Player {
 	/** Reference to a model provider. */
 	private final GameCoreHandler gameCoreHandler;
 
-	private final boolean         ourClient;
+	private boolean               ourClient;
 	private long                  lastSpiderBomb;
 	private boolean               detonatingOnHit;
 	private boolean               useDeadBomb;
@@ -97,12 +99,27 @@ public class Player {
 		return robot;
 	}
 
+	/**
+	 * Sets whether this player belongs to our client (after restoring a
+	 * snapshot of the game saved by another client).
+	 * 
+	 * @param ourClient
+	 *            tells whether this player belongs to our client
+	 */
+	public void setOurClient(final boolean ourClient) {
+		this.ourClient = ourClient;
+	}
+
 	public void setRobot(int index, PlayerModel playerModel, RobotTypes type) {
 		switch (type) {
 			case SIMPLE:
-				robot = new SimpleRobot(gameCoreHandler, index, playerModel);
+				// Every robot has its own random generator: the robots of a
+				// player decide on one client only
+				robot = new SimpleRobot(gameCoreHandler, index, playerModel, gameCoreHandler.getRobotsSeed() + clientIndex
+				        * OptConsts.MAX_PLAYERS_FROM_A_COMPUTER + index);
 				break;
 			default:
+				robot = null;
 				break;
 		}
 	}
@@ -125,13 +142,13 @@ public class Player {
 		model.setVitality(CoreConsts.MAX_PLAYER_VITALITY);
 		model.setPickedUpBombModel(null);
 
-		model.accumulateableItemQuantitiesMap.putAll(gameCoreHandler.getLevelModel().getLevelOptions().getAccumulateableItemQuantitiesMap());
+		model.setAllAccumItemQuantities(gameCoreHandler.getLevelModel().getLevelOptions().getAccumulateableItemQuantitiesMap());
 		model.setAllNonAccumItems(gameCoreHandler.getLevelModel().getLevelOptions().getHasNonAccumulateableItemsMap());
 		model.pickedUpAccumulateableItems.clear();
 		model.pickedUpNonAccumulateableItems.clear();
 		model.setPlaceableWalls(0);
 
-		model.setPlacableTriggeredBombs(model.hasNonAccumItem(Items.TRIGGER) ? model.accumulateableItemQuantitiesMap.get(Items.BOMB) : 0);
+		model.setPlacableTriggeredBombs(model.hasNonAccumItem(Items.TRIGGER) ? model.getAccumItemQuantity(Items.BOMB) : 0);
 
 		for (final PlayerControlKeys playerControlKey : PlayerControlKeys.values()) {
 			// Twice, so we delete the last key state also
@@ -216,6 +233,38 @@ public class Player {
 		return explodingTimeMultiplier;
 	}
 
+	/**
+	 * Writes the state of the player (including its model) to a saved game
+	 * state. The robot is not part of the state: it only produces the actions
+	 * of the player.
+	 * 
+	 * @param output
+	 *            output of the game state
+	 */
+	public void writeState(final StateOutput output) {
+		output.writeLong(lastSpiderBomb);
+		output.writeBoolean(detonatingOnHit);
+		output.writeBoolean(useDeadBomb);
+		output.writeFloat(explodingTimeMultiplier);
+		model.writeState(output);
+	}
+
+	/**
+	 * Reads the state of the player written by writeState().
+	 * 
+	 * @param input
+	 *            input of the game state
+	 * @throws IOException
+	 *             if the game state is malformed
+	 */
+	public void readState(final StateInput input) throws IOException {
+		lastSpiderBomb = input.readLong();
+		detonatingOnHit = input.readBoolean();
+		useDeadBomb = input.readBoolean();
+		explodingTimeMultiplier = input.readFloat();
+		model.readState(input);
+	}
+
 	private void handleSpiderBomb(boolean useDeadBombs) {
 		long now = gameCoreHandler.getTick();
 		if (!model.isSpiderBombEnabled() || (lastSpiderBomb + SPIDER_BOMB_LATENCY > now)) {
@@ -257,7 +306,7 @@ public class Player {
 			}
 		}
 
-		model.accumulateableItemQuantitiesMap.put(Items.BOMB, Math.max(0, model.accumulateableItemQuantitiesMap.get(Items.BOMB) - 1));
+		model.setAccumItemQuantity(Items.BOMB, Math.max(0, model.getAccumItemQuantity(Items.BOMB) - 1));
 		final int playerComponentPosX = model.getComponentPosX();
 		final int playerComponentPosY = model.getComponentPosY();
 		int componentPosX = playerComponentPosX;
@@ -267,7 +316,7 @@ public class Player {
 		final BombModel newBombModel = newBomb.getModel();
 		newBombModel.setDeadBomb(useDeadBombs);
 		newBombModel
-		        .setRange(model.hasNonAccumItem(Items.SUPER_FIRE) ? CoreConsts.SUPER_FIRE_RANGE : model.accumulateableItemQuantitiesMap.get(Items.FIRE) + 1);
+		        .setRange(model.hasNonAccumItem(Items.SUPER_FIRE) ? CoreConsts.SUPER_FIRE_RANGE : model.getAccumItemQuantity(Items.FIRE) + 1);
 		newBombModel.setPosX(componentPosX * CoreConsts.LEVEL_COMPONENT_GRANULARITY + CoreConsts.LEVEL_COMPONENT_GRANULARITY / 2);
 		newBombModel.setPosY(componentPosY * CoreConsts.LEVEL_COMPONENT_GRANULARITY + CoreConsts.LEVEL_COMPONENT_GRANULARITY / 2);
 
@@ -387,41 +436,41 @@ public class Player {
 		final int playerComponentPosY = model.getComponentPosY();
 		int componentPosX = playerComponentPosX;
 		int componentPosY = playerComponentPosY;
-		int maxPlacableBombs = Math.min(1, model.accumulateableItemQuantitiesMap.get(Items.BOMB));
+		int maxPlacableBombs = Math.min(1, model.getAccumItemQuantity(Items.BOMB));
+
+		LevelModel levelModel = gameCoreHandler.getLevelModel();
 
-		if (gameCoreHandler.getLevelModel().getComponent(componentPosX, componentPosY).hasFire()) {
+		if (levelModel.hasFire(levelModel.getCellIndex(componentPosX, componentPosY))) {
 			return;
 		}
 
-		final Integer bombIndexAtComponentPosition = gameCoreHandler.getBombIndexAtComponentPosition(componentPosX, componentPosY);
+		final BombModel bombModelAtComponentPosition = gameCoreHandler.getBombAtComponentPosition(componentPosX, componentPosY);
 
-		if (bombIndexAtComponentPosition != null) {
+		if (bombModelAtComponentPosition != null) {
 			if (model.hasNonAccumItem(Items.BLUE_GLOVES)) {
-				if (gameCoreHandler.getBombModels().get(bombIndexAtComponentPosition).getOwnerPlayer() != model) {
+				if (bombModelAtComponentPosition.getOwnerPlayer() != model) {
 					return; // We can only pick up our own bombs
 				}
-				model.setPickedUpBombModel(gameCoreHandler.getBombModels().get(bombIndexAtComponentPosition));
-				gameCoreHandler.removeBombAtIndex(bombIndexAtComponentPosition);
+				model.setPickedUpBombModel(bombModelAtComponentPosition);
+				gameCoreHandler.removeBomb(bombModelAtComponentPosition);
 				model.setActivity(Activities.PICKING_UP);
 				return;
 			}
 			if (model.hasNonAccumItem(Items.BOMB_SPRINKLE)) {
-				maxPlacableBombs = model.accumulateableItemQuantitiesMap.get(Items.BOMB);
+				maxPlacableBombs = model.getAccumItemQuantity(Items.BOMB);
 				// The position of the first bomb is ahead of us.
 				componentPosX += model.getDirectionXMultiplier();
 				componentPosY += model.getDirectionYMultiplier();
 			}
 		}
 
-		LevelModel levelModel = gameCoreHandler.getLevelModel();
-
-		int bombsCount = model.accumulateableItemQuantitiesMap.get(Items.BOMB);
+		int bombsCount = model.getAccumItemQuantity(Items.BOMB);
 		for (int i = 0; i < maxPlacableBombs; i++) {
-			LevelComponent comp = levelModel.getComponent(componentPosX, componentPosY);
-			final Walls wallInPosition = comp.getWall();
+			final int cellIndex = levelModel.getCellIndex(componentPosX, componentPosY);
+			final Walls wallInPosition = levelModel.getWall(cellIndex);
 
 			if (gameCoreHandler.isBombAtComponentPosition(componentPosX, componentPosY) || (wallInPosition != Walls.EMPTY)
-			        || ((wallInPosition == Walls.EMPTY) && (comp.getItem() != null))) {
+			        || ((wallInPosition == Walls.EMPTY) && (levelModel.getItem(cellIndex) != null))) {
 				break;
 			}
 			if ((componentPosX != playerComponentPosX) || (componentPosY != playerComponentPosY)) {
@@ -430,16 +479,16 @@ public class Player {
 				}
 			}
 
-			model.accumulateableItemQuantitiesMap.put(Items.BOMB, --bombsCount);
+			model.setAccumItemQuantity(Items.BOMB, --bombsCount);
 			final Bomb newBomb = new Bomb(model, gameCoreHandler);
 			final BombModel newBombModel = newBomb.getModel();
 			newBombModel.setDetonatingOnHit(detonatingOnHit);
 			newBombModel.setDeadBomb(useDeadBomb);
 			newBombModel.setExplodingTimeMultiplier(explodingTimeMultiplier);
 
-			int bombRange = model.hasNonAccumItem(Items.SUPER_FIRE) ? CoreConsts.SUPER_FIRE_RANGE : model.accumulateableItemQuantitiesMap.get(Items.FIRE) + 1;
+			int bombRange = model.hasNonAccumItem(Items.SUPER_FIRE) ? CoreConsts.SUPER_FIRE_RANGE : model.getAccumItemQuantity(Items.FIRE) + 1;
 
-			if (model.getOwnedDiseases().containsKey(Diseases.SHORT_RANGE)) {
+			if (model.hasDisease(Diseases.SHORT_RANGE)) {
 				bombRange = 2;
 			}
 
@@ -456,7 +505,7 @@ public class Player {
 				newBombModel.setType(BombTypes.NORMAL);
 			}
 
-			if (model.getOwnedDiseases().containsKey(Diseases.FAST_DETONATION)) {
+			if (model.hasDisease(Diseases.FAST_DETONATION)) {
 				newBombModel.setExplodingTimeMultiplier(0.25f);
 			}
 
@@ -527,11 +576,10 @@ public class Player {
 		if (model.hasNonAccumItem(Items.BOXING_GLOVES)) {
 			model.setActivity(Activities.PUNCHING);
 
-			final Integer bombIndexAhead = gameCoreHandler.getBombIndexAtComponentPosition(model.getComponentPosX() + model.getDirectionXMultiplier(), model
+			final BombModel bombModel = gameCoreHandler.getBombAtComponentPosition(model.getComponentPosX() + model.getDirectionXMultiplier(), model
 			        .getComponentPosY()
 			        + model.getDirectionYMultiplier());
-			if (bombIndexAhead != null) {
-				final BombModel bombModel = gameCoreHandler.getBombModels().get(bombIndexAhead);
+			if (bombModel != null) {
 				bombModel.setDirection(model.getDirection()); // We punch in our
 				// direction
 				bombModel.setPosX(bombModel.getComponentPosX() * CoreConsts.LEVEL_COMPONENT_GRANULARITY + CoreConsts.LEVEL_COMPONENT_GRANULARITY / 2);
@@ -559,9 +607,10 @@ public class Player {
 			final int componentPosX = model.getComponentPosX() + model.getDirectionXMultiplier();
 			final int componentPosY = model.getComponentPosY() + model.getDirectionYMultiplier();
 			if (isComponentPositionFreeForWallBuilding(componentPosX, componentPosY) && (model.getPlaceableWalls() > 0)) {
-				gameCoreHandler.getLevelModel().getComponent(componentPosX, componentPosY).setWall(Walls.BRICK);
+				final LevelModel levelModel = gameCoreHandler.getLevelModel();
+				levelModel.setWall(levelModel.getCellIndex(componentPosX, componentPosY), Walls.BRICK);
 				model.setPlaceableWalls(model.getPlaceableWalls() - 1);
-				SoundEffect.PLACE_WALL.play();
+				gameCoreHandler.getGameEventListener().playSound(GameSounds.PLACE_WALL);
 				if (model.getPlaceableWalls() == 0) {
 					model.setNonAccumItem(Items.WALL_BUILDING, false);
 				}
@@ -583,9 +632,10 @@ public class Player {
 	 *         false otherwise
 	 */
 	private boolean isComponentPositionFreeForWallBuilding(final int componentPosX, final int componentPosY) {
-		final LevelComponent levelComponent = gameCoreHandler.getLevelModel().getComponent(componentPosX, componentPosY);
+		final LevelModel levelModel = gameCoreHandler.getLevelModel();
+		final int cellIndex = levelModel.getCellIndex(componentPosX, componentPosY);
 
-		if ((levelComponent.getWall() != Walls.EMPTY) || ((levelComponent.getWall() == Walls.EMPTY) && (levelComponent.getItem() != null))) {
+		if ((levelModel.getWall(cellIndex) != Walls.EMPTY) || (levelModel.getItem(cellIndex) != null)) {
 			return false;
 		}
 
@@ -693,8 +743,8 @@ public class Player {
 				checkAndHandleItemPickingUp();
 			} else
 			// ...else if there is a gateway ahead...
-			if (Walls.GATEWAY_ENTRANCE == levelModel.getComponent(posXAhead / CoreConsts.LEVEL_COMPONENT_GRANULARITY,
-			        posYAhead / CoreConsts.LEVEL_COMPONENT_GRANULARITY).getWall()) {
+			if (Walls.GATEWAY_ENTRANCE == levelModel.getWall(levelModel.getCellIndex(posXAhead / CoreConsts.LEVEL_COMPONENT_GRANULARITY,
+			        posYAhead / CoreConsts.LEVEL_COMPONENT_GRANULARITY))) {
 
 				int pos = MathHelper.randomInt(levelModel.getNofGatewayExit() - 1);
 				Integer posX = levelModel.getGatewayExitPositionX(pos);
@@ -721,7 +771,7 @@ public class Player {
 					direction = Directions.UP;
 				}
 
-				Walls wall = levelModel.getComponent(nextPosX, nextPosY).getWall();
+				Walls wall = levelModel.getWall(levelModel.getCellIndex(nextPosX, nextPosY));
 				if ((wall == Walls.EMPTY) || ((wall == Walls.BRICK) && model.hasNonAccumItem(Items.WALL_CLIMBING))) {
 					// move player to the other side
 					model.setPosY(nextPosY * CoreConsts.LEVEL_COMPONENT_GRANULARITY + CoreConsts.LEVEL_COMPONENT_GRANULARITY / 2);
@@ -747,18 +797,19 @@ public class Player {
 	 * Check whether we stand on an item, and handles the picking up.
 	 */
 	private void checkAndHandleItemPickingUp() {
-		final LevelComponent levelComponent = gameCoreHandler.getLevelModel().getComponent(model.getComponentPosX(), model.getComponentPosY());
+		final LevelModel levelModel = gameCoreHandler.getLevelModel();
+		final int cellIndex = levelModel.getCellIndex(model.getComponentPosX(), model.getComponentPosY());
 
-		if ((levelComponent.getWall() == Walls.EMPTY) && (levelComponent.getItem() != null) && !levelComponent.hasFire()) {
-			final Items item = levelComponent.getItem();
+		if ((levelModel.getWall(cellIndex) == Walls.EMPTY) && (levelModel.getItem(cellIndex) != null) && !levelModel.hasFire(cellIndex)) {
+			final Items item = levelModel.getItem(cellIndex);
 
 			if (ourClient) {
-				SoundEffect.PICKUP.play();
+				gameCoreHandler.getGameEventListener().playSound(GameSounds.PICKUP);
 			}
 
 			if (OptConsts.ACCUMULATEABLE_ITEMS.contains(item)) {
 				if (item != Items.HEART) { // We don't accumulate HEARTs.
-					model.accumulateableItemQuantitiesMap.put(item, model.accumulateableItemQuantitiesMap.get(item) + 1);
+					model.setAccumItemQuantity(item, model.getAccumItemQuantity(item) + 1);
 					model.pickedUpAccumulateableItems.add(item);
 				}
 			} else {
@@ -794,12 +845,12 @@ public class Player {
 				}
 			}
 
-			levelComponent.setItem(null);
+			levelModel.setItem(cellIndex, null);
 
 			// Special things to do when an item is picked up
 			switch (item) {
 				case TRIGGER:
-					model.setPlacableTriggeredBombs(model.accumulateableItemQuantitiesMap.get(Items.BOMB));
+					model.setPlacableTriggeredBombs(model.getAccumItemQuantity(Items.BOMB));
 					for (final BombModel bombModel : gameCoreHandler.getBombModels()) {
 						if (bombModel.getOwnerPlayer() == model) {
 							model.setPlacableTriggeredBombs(model.getPlacableTriggeredBombs() + 1);
@@ -1045,18 +1096,17 @@ public class Player {
 	}
 
 	private void pushWall(int cx, int cy, int wx, int wy, int dx, int dy) {
-		LevelComponent compToPush = gameCoreHandler.getLevelModel().getComponent(wx, wy);
+		LevelModel levelModel = gameCoreHandler.getLevelModel();
+		int cellIndexToPush = levelModel.getCellIndex(wx, wy);
 
-		boolean explosionsAtPos = compToPush.hasFire();
+		boolean explosionsAtPos = levelModel.hasFire(cellIndexToPush);
 		boolean bombAtPos = gameCoreHandler.isBombAtComponentPosition(wx, wy);
 		boolean playerAtPos = gameCoreHandler.isPlayerAtComponentPositionExcludePlayer(wx, wy, model);
 
 		if (!bombAtPos && !playerAtPos && !explosionsAtPos) {
-			if (compToPush.getWall() == Walls.EMPTY) {
-				LevelComponent oldComp = gameCoreHandler.getLevelModel().getComponent(cx, cy);
-				gameCoreHandler.getLevelModel().setComponent(oldComp, wx, wy);
-				gameCoreHandler.getLevelModel().setComponent(compToPush, cx, cy);
-			} else if (compToPush.getWall() == Walls.BRICK) {
+			if (levelModel.getWall(cellIndexToPush) == Walls.EMPTY) {
+				levelModel.swapComponents(cx, cy, wx, wy);
+			} else if (levelModel.getWall(cellIndexToPush) == Walls.BRICK) {
 				pushWall(cx, cy, wx + dx, wy + dy, dx, dy);
 			}
 		}
@@ -1079,7 +1129,8 @@ public class Player {
 		int componentPosX = posX / CoreConsts.LEVEL_COMPONENT_GRANULARITY;
 		int componentPosY = posY / CoreConsts.LEVEL_COMPONENT_GRANULARITY;
 
-		Walls wall = gameCoreHandler.getLevelModel().getComponent(componentPosX, componentPosY).getWall();
+		LevelModel levelModel = gameCoreHandler.getLevelModel();
+		Walls wall = levelModel.getWall(levelModel.getCellIndex(componentPosX, componentPosY));
 
 		if (model.hasDisease(Diseases.BODY_BUILDER)) {
 			int dx = componentPosX - model.getComponentPosX();
@@ -1119,13 +1170,11 @@ public class Player {
 		final int componentPosXAhead = model.getComponentPosX() + model.getDirectionXMultiplier();
 		final int componentPosYAhead = model.getComponentPosY() + model.getDirectionYMultiplier();
 
-		final Integer bombIndexAhead = gameCoreHandler.getBombIndexAtComponentPosition(componentPosXAhead, componentPosYAhead);
-		if (bombIndexAhead == null) {
+		final BombModel bombModel = gameCoreHandler.getBombAtComponentPosition(componentPosXAhead, componentPosYAhead);
+		if (bombModel == null) {
 			return;
 		}
 
-		final BombModel bombModel = gameCoreHandler.getBombModels().get(bombIndexAhead);
-
 		final int componentPosXAheadAhead = componentPosXAhead + model.getDirectionXMultiplier();
 		final int componentPosYAheadAhead = componentPosYAhead + model.getDirectionYMultiplier();
 
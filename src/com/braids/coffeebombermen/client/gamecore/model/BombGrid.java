@@ -0,0 +1,167 @@
+package com.braids.coffeebombermen.client.gamecore.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.braids.coffeebombermen.client.gamecore.BombPhases;
+
+/**
+ * Occupancy index of the bombs: a level-sized grid referring to the bombs
+ * being in the level components, so the bomb at a component position can be
+ * looked up without scanning all the bombs.<br>
+ * Flying bombs "aren't" in the level, they aren't in the grid either. The
+ * bombs added to the grid update it themselves when they move to another
+ * component or change their phase. If there are more bombs in a component,
+ * they are chained, the lastly added one first (like it was found by scanning
+ * the bombs from the last one).<br>
+ * The grid is not part of the game state, it is rebuilt from the bombs when a
+ * state is restored.
+ */
+public class BombGrid {
+
+	/** Width of the level. */
+	private final int         width;
+	/** Height of the level. */
+	private final int         height;
+	/** The first bomb of the chains of the components (row by row). */
+	private final BombModel[] components;
+	/** Number of the bombs added so far, the order of the next added bomb. */
+	private int               addedBombsCount;
+
+	/**
+	 * Creates a new BombGrid.
+	 * 
+	 * @param width
+	 *            width of the level
+	 * @param height
+	 *            height of the level
+	 */
+	public BombGrid(final int width, final int height) {
+		this.width = width;
+		this.height = height;
+		components = new BombModel[width * height];
+	}
+
+	/**
+	 * Adds a bomb to the grid.
+	 * 
+	 * @param bombModel
+	 *            model of the bomb to be added
+	 */
+	public void add(final BombModel bombModel) {
+		bombModel.grid = this;
+		bombModel.gridOrder = addedBombsCount++;
+		bombModel.gridComponentIndex = -1;
+		bombModel.nextBombInComponent = null;
+		update(bombModel);
+	}
+
+	/**
+	 * Removes a bomb from the grid.
+	 * 
+	 * @param bombModel
+	 *            model of the bomb to be removed
+	 */
+	public void remove(final BombModel bombModel) {
+		unlink(bombModel);
+		bombModel.grid = null;
+	}
+
+	/**
+	 * Clears the grid, and adds the bombs in their order.
+	 * 
+	 * @param bombModels
+	 *            models of the bombs to be added
+	 */
+	public void rebuild(final List<BombModel> bombModels) {
+		Arrays.fill(components, null);
+		addedBombsCount = 0;
+		for (int i = 0; i < bombModels.size(); i++) {
+			add(bombModels.get(i));
+		}
+	}
+
+	/**
+	 * Returns the bomb being at a component position.
+	 * 
+	 * @param componentPosX
+	 *            x coordinate of the component
+	 * @param componentPosY
+	 *            y coordinate of the component
+	 * @return the bomb being at the component position (the lastly added one
+	 *         if there are more); null if there is no bomb there
+	 */
+	public BombModel get(final int componentPosX, final int componentPosY) {
+		if ((componentPosX < 0) || (componentPosX >= width) || (componentPosY < 0) || (componentPosY >= height)) {
+			return null;
+		}
+		return components[componentPosY * width + componentPosX];
+	}
+
+	/**
+	 * Updates the component of a bomb after its position or phase has been
+	 * changed.
+	 * 
+	 * @param bombModel
+	 *            model of the bomb
+	 */
+	void update(final BombModel bombModel) {
+		int componentIndex = -1;
+		if (bombModel.getPhase() != BombPhases.FLYING) {
+			final int componentPosX = bombModel.getComponentPosX();
+			final int componentPosY = bombModel.getComponentPosY();
+			if ((componentPosX >= 0) && (componentPosX < width) && (componentPosY >= 0) && (componentPosY < height)) {
+				componentIndex = componentPosY * width + componentPosX;
+			}
+		}
+		if (componentIndex == bombModel.gridComponentIndex) {
+			return;
+		}
+
+		unlink(bombModel);
+		if (componentIndex >= 0) {
+			// The chain is kept in descending order of adding
+			BombModel previousBombModel = null;
+			BombModel nextBombModel = components[componentIndex];
+			while ((nextBombModel != null) && (nextBombModel.gridOrder > bombModel.gridOrder)) {
+				previousBombModel = nextBombModel;
+				nextBombModel = nextBombModel.nextBombInComponent;
+			}
+			bombModel.nextBombInComponent = nextBombModel;
+			if (previousBombModel == null) {
+				components[componentIndex] = bombModel;
+			} else {
+				previousBombModel.nextBombInComponent = bombModel;
+			}
+			bombModel.gridComponentIndex = componentIndex;
+		}
+	}
+
+	/**
+	 * Removes a bomb from the chain of its component.
+	 * 
+	 * @param bombModel
+	 *            model of the bomb
+	 */
+	private void unlink(final BombModel bombModel) {
+		final int componentIndex = bombModel.gridComponentIndex;
+		if (componentIndex < 0) {
+			return;
+		}
+
+		BombModel previousBombModel = null;
+		BombModel currentBombModel = components[componentIndex];
+		while (currentBombModel != bombModel) {
+			previousBombModel = currentBombModel;
+			currentBombModel = currentBombModel.nextBombInComponent;
+		}
+		if (previousBombModel == null) {
+			components[componentIndex] = bombModel.nextBombInComponent;
+		} else {
+			previousBombModel.nextBombInComponent = bombModel.nextBombInComponent;
+		}
+		bombModel.nextBombInComponent = null;
+		bombModel.gridComponentIndex = -1;
+	}
+
+}
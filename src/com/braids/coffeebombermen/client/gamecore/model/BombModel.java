@@ -1,11 +1,11 @@
 package com.braids.coffeebombermen.client.gamecore.model;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 import com.braids.coffeebombermen.client.gamecore.BombPhases;
 import com.braids.coffeebombermen.client.gamecore.BombTypes;
 import com.braids.coffeebombermen.client.gamecore.Directions;
-import com.braids.coffeebombermen.client.sound.SoundEffect;
 
 /**
  * The class represents the model of a bomb.<br>
@@ -17,10 +17,20 @@ import com.braids.coffeebombermen.client.sound.SoundEffect;
  */
 public class BombModel extends PositionedIterableObject {
 
+	/** The bomb types in the order of their ordinals. */
+	private static final BombTypes[]   TYPES                        = BombTypes.values();
+	/** The bomb phases in the order of their ordinals. */
+	private static final BombPhases[]  PHASES                       = BombPhases.values();
+	/** The directions in the order of their ordinals. */
+	private static final Directions[]  DIRECTIONS                   = Directions.values();
+
 	/** Type of the bomb. */
 	private BombTypes                  type;
-	/** The owner player of the bomb. */
-	private final PlayerModel          ownerPlayer;
+	/**
+	 * The owner player of the bomb. Only changed when a saved state is
+	 * restored.
+	 */
+	private PlayerModel                ownerPlayer;
 	/** The phase of the bomb. */
 	private BombPhases                 phase;
 	/** Number of iterations during the current phase. */
@@ -69,6 +79,18 @@ public class BombModel extends PositionedIterableObject {
 	private float                      crazyPercent;
 	private float                      explodingTimeMultiplier;
 
+	// The following attributes are maintained by the bomb grid, they are not
+	// part of the game state
+
+	/** The bomb grid this bomb is added to, null if none. */
+	BombGrid                           grid;
+	/** Order of adding this bomb to the grid. */
+	int                                gridOrder;
+	/** Index of the grid component this bomb is registered in, -1 if none. */
+	int                                gridComponentIndex = -1;
+	/** The next bomb registered in the same grid component. */
+	BombModel                          nextBombInComponent;
+
 	/**
 	 * Creates a new Bomb.
 	 * 
@@ -133,6 +155,37 @@ public class BombModel extends PositionedIterableObject {
 			setIterationCounter(0); // Flying bombs has the first picture of the
 			// phase pictures.
 		}
+		if (grid != null) {
+			grid.update(this);
+		}
+	}
+
+	/**
+	 * Sets the x coordinate of the position of the bomb, and updates the bomb
+	 * grid.
+	 * 
+	 * @param posX
+	 *            the x coordinate of the position to be set
+	 */
+	public void setPosX(final int posX) {
+		super.setPosX(posX);
+		if (grid != null) {
+			grid.update(this);
+		}
+	}
+
+	/**
+	 * Sets the y coordinate of the position of the bomb, and updates the bomb
+	 * grid.
+	 * 
+	 * @param posY
+	 *            the y coordinate of the position to be set
+	 */
+	public void setPosY(final int posY) {
+		super.setPosY(posY);
+		if (grid != null) {
+			grid.update(this);
+		}
 	}
 
 	/**
@@ -265,7 +318,6 @@ public class BombModel extends PositionedIterableObject {
 	 */
 	public void setDetonated(final boolean detonated) {
 		this.detonated = detonated;
-		SoundEffect.BOOM.play();
 	}
 
 	/**
@@ -345,4 +397,61 @@ public class BombModel extends PositionedIterableObject {
 	public float getExplodingTimeMultiplier() {
 		return explodingTimeMultiplier;
 	}
+
+	public void writeState(final StateOutput output) {
+		super.writeState(output);
+		output.writeEnum(type);
+		output.writePlayerModel(ownerPlayer);
+		output.writeEnum(phase);
+		output.writeInt(iterationsDuringPhase);
+		output.writeInt(tickingIterations);
+		output.writeInt(flyingTargetPosX);
+		output.writeInt(flyingTargetPosY);
+		output.writeBoolean(dead);
+		output.writeBoolean(deadBomb);
+		output.writeBoolean(aboutToDetonate);
+		output.writeBoolean(detonated);
+		output.writeInt(range);
+		output.writeInt(excludedDetonationDirections.size());
+		for (final Directions direction : excludedDetonationDirections) {
+			output.writeEnum(direction);
+		}
+		output.writePlayerModel(triggererPlayer);
+		output.writeBoolean(detonatingOnHit);
+		output.writeFloat(crazyPercent);
+		output.writeFloat(explodingTimeMultiplier);
+	}
+
+	/**
+	 * Reads the state of the bomb written by writeState(). The bomb must not
+	 * be added to a bomb grid.
+	 * 
+	 * @param input
+	 *            input of the game state
+	 * @throws IOException
+	 *             if the game state is malformed
+	 */
+	public void readState(final StateInput input) throws IOException {
+		super.readState(input);
+		type = input.readEnum(TYPES);
+		ownerPlayer = input.readPlayerModel();
+		phase = input.readEnum(PHASES);
+		iterationsDuringPhase = input.readInt();
+		tickingIterations = input.readInt();
+		flyingTargetPosX = input.readInt();
+		flyingTargetPosY = input.readInt();
+		dead = input.readBoolean();
+		deadBomb = input.readBoolean();
+		aboutToDetonate = input.readBoolean();
+		detonated = input.readBoolean();
+		range = input.readInt();
+		excludedDetonationDirections.clear();
+		for (int i = input.readCount(); i > 0; i--) {
+			excludedDetonationDirections.add(input.readEnum(DIRECTIONS));
+		}
+		triggererPlayer = input.readPlayerModel();
+		detonatingOnHit = input.readBoolean();
+		crazyPercent = input.readFloat();
+		explodingTimeMultiplier = input.readFloat();
+	}
 }
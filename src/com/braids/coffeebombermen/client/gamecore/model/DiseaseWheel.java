@@ -0,0 +1,171 @@
+package com.braids.coffeebombermen.client.gamecore.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.braids.coffeebombermen.client.gamecore.Activities;
+import com.braids.coffeebombermen.options.Diseases;
+
+/**
+ * Timing wheel of the disease expirations: the diseases of the players are
+ * registered in the slot of their expiration tick, so expiring the diseases
+ * of a tick only touches the diseases ending at that tick.<br>
+ * The players added to the wheel register their diseases themselves when they
+ * get or prolong one. An entry whose disease has been prolonged or removed
+ * since is dropped when its slot comes. Expirations farther than a turn of the
+ * wheel stay in their slot for the next turns.<br>
+ * The wheel is not part of the game state, it is rebuilt from the players when
+ * a state is restored.
+ */
+public class DiseaseWheel {
+
+	/**
+	 * Number of the slots of the wheel (a power of 2, larger than the disease
+	 * durations).
+	 */
+	private static final int        WHEEL_SIZE        = 512;
+	/** The diseases. */
+	private static final Diseases[] DISEASES          = Diseases.values();
+
+	/** The first entry of the slots, -1 if a slot is empty. */
+	private final int[]             slotFirstEntries  = new int[WHEEL_SIZE];
+
+	/** Number of the used entries (including the free ones). */
+	private int                     entriesCount;
+	/** The first free entry, -1 if there is none. */
+	private int                     firstFreeEntry    = -1;
+	/** The players of the entries. */
+	private PlayerModel[]           entryPlayerModels = new PlayerModel[0];
+	/** The diseases of the entries. */
+	private Diseases[]              entryDiseases     = new Diseases[0];
+	/** The expiration ticks of the entries. */
+	private long[]                  entryExpirations  = new long[0];
+	/** The next entry of the slot (or of the free entries), -1 if no more. */
+	private int[]                   nextEntries       = new int[0];
+
+	/**
+	 * Creates a new DiseaseWheel.
+	 */
+	public DiseaseWheel() {
+		Arrays.fill(slotFirstEntries, -1);
+	}
+
+	/**
+	 * Adds a player to the wheel, and registers its diseases.
+	 * 
+	 * @param playerModel
+	 *            model of the player to be added
+	 */
+	public void add(final PlayerModel playerModel) {
+		playerModel.diseaseWheel = this;
+		for (final Diseases disease : DISEASES) {
+			if (playerModel.hasDisease(disease)) {
+				register(playerModel, disease, playerModel.getDiseaseExpiration(disease));
+			}
+		}
+	}
+
+	/**
+	 * Removes a player from the wheel. Its entries are dropped when their slot
+	 * comes.
+	 * 
+	 * @param playerModel
+	 *            model of the player to be removed
+	 */
+	public void remove(final PlayerModel playerModel) {
+		if (playerModel.diseaseWheel == this) {
+			playerModel.diseaseWheel = null;
+		}
+	}
+
+	/**
+	 * Clears the wheel, and adds the players of all clients.
+	 * 
+	 * @param clientsPlayerModels
+	 *            models of the players of all clients
+	 */
+	public void rebuild(final List<PlayerModel[]> clientsPlayerModels) {
+		Arrays.fill(slotFirstEntries, -1);
+		Arrays.fill(entryPlayerModels, 0, entriesCount, null);
+		entriesCount = 0;
+		firstFreeEntry = -1;
+		for (final PlayerModel[] playerModels : clientsPlayerModels) {
+			for (final PlayerModel playerModel : playerModels) {
+				add(playerModel);
+			}
+		}
+	}
+
+	/**
+	 * Removes the diseases expired before a tick. Has to be called in every
+	 * tick.
+	 * 
+	 * @param tick
+	 *            the current tick
+	 */
+	public void expireDiseases(final long tick) {
+		final int slot = (int) ((tick - 1) & (WHEEL_SIZE - 1));
+		int previousEntry = -1;
+		int entry = slotFirstEntries[slot];
+		while (entry >= 0) {
+			final int nextEntry = nextEntries[entry];
+			if (entryExpirations[entry] < tick) {
+				final PlayerModel playerModel = entryPlayerModels[entry];
+				final Diseases disease = entryDiseases[entry];
+				// Stale entries (prolonged or removed diseases, removed or
+				// dying players) are just dropped
+				if ((playerModel.diseaseWheel == this) && playerModel.hasDisease(disease)
+				        && (playerModel.getDiseaseExpiration(disease) == entryExpirations[entry]) && (playerModel.getActivity() != Activities.DYING)) {
+					playerModel.expireDisease(disease);
+				}
+
+				if (previousEntry < 0) {
+					slotFirstEntries[slot] = nextEntry;
+				} else {
+					nextEntries[previousEntry] = nextEntry;
+				}
+				entryPlayerModels[entry] = null;
+				nextEntries[entry] = firstFreeEntry;
+				firstFreeEntry = entry;
+			} else {
+				previousEntry = entry;
+			}
+			entry = nextEntry;
+		}
+	}
+
+	/**
+	 * Registers the expiration of a disease of a player.
+	 * 
+	 * @param playerModel
+	 *            model of the player
+	 * @param disease
+	 *            the disease
+	 * @param expire
+	 *            tick when the disease expires
+	 */
+	void register(final PlayerModel playerModel, final Diseases disease, final long expire) {
+		final int entry;
+		if (firstFreeEntry >= 0) {
+			entry = firstFreeEntry;
+			firstFreeEntry = nextEntries[entry];
+		} else {
+			if (entriesCount == entryPlayerModels.length) {
+				final int capacity = Math.max(16, entriesCount * 2);
+				entryPlayerModels = Arrays.copyOf(entryPlayerModels, capacity);
+				entryDiseases = Arrays.copyOf(entryDiseases, capacity);
+				entryExpirations = Arrays.copyOf(entryExpirations, capacity);
+				nextEntries = Arrays.copyOf(nextEntries, capacity);
+			}
+			entry = entriesCount++;
+		}
+
+		final int slot = (int) (expire & (WHEEL_SIZE - 1));
+		entryPlayerModels[entry] = playerModel;
+		entryDiseases[entry] = disease;
+		entryExpirations[entry] = expire;
+		nextEntries[entry] = slotFirstEntries[slot];
+		slotFirstEntries[slot] = entry;
+	}
+
+}
@@ -1,5 +1,7 @@
 package com.braids.coffeebombermen.client.gamecore.model;
 
+import java.io.IOException;
+
 import com.braids.coffeebombermen.client.gamecore.FireShapes;
 
 /**
@@ -7,12 +9,21 @@ import com.braids.coffeebombermen.client.gamecore.FireShapes;
  */
 public class FireModel extends IterableObject {
 
+	/** The fire shapes in the order of their ordinals. */
+	private static final FireShapes[] SHAPES          = FireShapes.values();
+
 	/** Shape of the fire. */
-	private FireShapes  shape;
+	private FireShapes                shape;
 	/** The owner player of the fire. */
-	private PlayerModel ownerPlayer;
+	private PlayerModel               ownerPlayer;
 	/** The triggerer player of the fire. */
-	private PlayerModel triggererPlayer;
+	private PlayerModel               triggererPlayer;
+
+	/**
+	 * Index of the fire in the active fires of the level, -1 if it isn't
+	 * there. Maintained by the level, not part of the state of the fire.
+	 */
+	private int                       activeFireIndex = -1;
 
 	/**
 	 * Returns the shape of the fire.
@@ -71,4 +82,50 @@ public class FireModel extends IterableObject {
 		this.triggererPlayer = triggererPlayer;
 	}
 
+	/**
+	 * Returns the index of the fire in the active fires of the level.
+	 * 
+	 * @return the index of the fire in the active fires of the level, -1 if
+	 *         it isn't there
+	 */
+	public int getActiveFireIndex() {
+		return activeFireIndex;
+	}
+
+	/**
+	 * Sets the index of the fire in the active fires of the level.
+	 * 
+	 * @param activeFireIndex
+	 *            index of the fire in the active fires of the level, -1 if it
+	 *            isn't there
+	 */
+	public void setActiveFireIndex(final int activeFireIndex) {
+		this.activeFireIndex = activeFireIndex;
+	}
+
+	/**
+	 * Resets the fire to the state of a new fire (for recycling it).
+	 */
+	public void reset() {
+		setIterationCounter(0);
+		shape = null;
+		ownerPlayer = null;
+		triggererPlayer = null;
+		activeFireIndex = -1;
+	}
+
+	public void writeState(final StateOutput output) {
+		super.writeState(output);
+		output.writeEnum(shape);
+		output.writePlayerModel(ownerPlayer);
+		output.writePlayerModel(triggererPlayer);
+	}
+
+	public void readState(final StateInput input) throws IOException {
+		super.readState(input);
+		shape = input.readEnum(SHAPES);
+		ownerPlayer = input.readPlayerModel();
+		triggererPlayer = input.readPlayerModel();
+	}
+
 }
@@ -0,0 +1,174 @@
+package com.braids.coffeebombermen.client.gamecore.model;
+
+import java.util.Arrays;
+
+import com.braids.coffeebombermen.client.gamecore.CoreConsts;
+
+/**
+ * Broad phase of the infections: a grid bucketing the players by their
+ * position, so only the players in the same or in adjacent cells are tested
+ * whether they touch each other.<br>
+ * The cells are not smaller than the bounds of the players, so touching
+ * players are always in the same or in adjacent cells. The touching pairs are
+ * handled in the same order as by testing all the pairs (the infections of a
+ * tick can pass on from player to player).<br>
+ * The grid is refilled in every tick, and it doesn't allocate once its arrays
+ * have grown to the number of the players. It is not part of the game state.
+ */
+public class InfectionGrid {
+
+	/** Width of the bounds of a player used by the infections. */
+	public static final int  BOUNDS_WIDTH     = 900;
+	/** Height of the bounds of a player used by the infections. */
+	public static final int  BOUNDS_HEIGHT    = 1300;
+	/** Size of a cell of the grid. */
+	private static final int CELL_SIZE        = Math.max(BOUNDS_WIDTH, BOUNDS_HEIGHT);
+
+	/** Number of the columns of the grid. */
+	private final int        columnsCount;
+	/** Number of the rows of the grid. */
+	private final int        rowsCount;
+	/** The first player of the cells (row by row), -1 if a cell is empty. */
+	private final int[]      cellFirstPlayers;
+
+	/** Number of the players added to the grid. */
+	private int              playersCount;
+	/** The players added to the grid. */
+	private PlayerModel[]    playerModels     = new PlayerModel[0];
+	/** The cell of the added players. */
+	private int[]            playerCells      = new int[0];
+	/** The next player of the cell of the added players, -1 if no more. */
+	private int[]            nextPlayers      = new int[0];
+	/** The touching players found for a player. */
+	private int[]            touchingPlayers  = new int[0];
+
+	/**
+	 * Creates a new InfectionGrid.
+	 * 
+	 * @param width
+	 *            width of the level in components
+	 * @param height
+	 *            height of the level in components
+	 */
+	public InfectionGrid(final int width, final int height) {
+		columnsCount = width * CoreConsts.LEVEL_COMPONENT_GRANULARITY / CELL_SIZE + 1;
+		rowsCount = height * CoreConsts.LEVEL_COMPONENT_GRANULARITY / CELL_SIZE + 1;
+		cellFirstPlayers = new int[columnsCount * rowsCount];
+		Arrays.fill(cellFirstPlayers, -1);
+	}
+
+	/**
+	 * Removes all the players from the grid.
+	 */
+	public void clear() {
+		for (int i = 0; i < playersCount; i++) {
+			cellFirstPlayers[playerCells[i]] = -1;
+			playerModels[i] = null;
+		}
+		playersCount = 0;
+	}
+
+	/**
+	 * Adds a player to the grid. The players are handled in the order of
+	 * adding.
+	 * 
+	 * @param playerModel
+	 *            model of the player to be added
+	 */
+	public void add(final PlayerModel playerModel) {
+		if (playersCount == playerModels.length) {
+			final int capacity = Math.max(8, playersCount * 2);
+			playerModels = Arrays.copyOf(playerModels, capacity);
+			playerCells = Arrays.copyOf(playerCells, capacity);
+			nextPlayers = Arrays.copyOf(nextPlayers, capacity);
+			touchingPlayers = new int[capacity];
+		}
+
+		final int cell = getRow(playerModel.getPosY()) * columnsCount + getColumn(playerModel.getPosX());
+		playerModels[playersCount] = playerModel;
+		playerCells[playersCount] = cell;
+		nextPlayers[playersCount] = cellFirstPlayers[cell];
+		cellFirstPlayers[cell] = playersCount;
+		playersCount++;
+	}
+
+	/**
+	 * Spreads the diseases between the touching players: both players of a
+	 * touching pair get the diseases of the other.
+	 */
+	public void spreadDiseases() {
+		for (int i = 0; i < playersCount - 1; i++) {
+			final int touchingPlayersCount = findTouchingPlayers(i);
+			for (int j = 0; j < touchingPlayersCount; j++) {
+				final PlayerModel playerModel1 = playerModels[i];
+				final PlayerModel playerModel2 = playerModels[touchingPlayers[j]];
+				playerModel2.addDiseases(playerModel1);
+				playerModel1.addDiseases(playerModel2);
+			}
+		}
+	}
+
+	/**
+	 * Finds the players added after a player and touching it.
+	 * 
+	 * @param playerIndex
+	 *            index of the player
+	 * @return the number of the touching players found (stored into
+	 *         touchingPlayers in the order of adding)
+	 */
+	private int findTouchingPlayers(final int playerIndex) {
+		final PlayerModel playerModel = playerModels[playerIndex];
+		final int column = playerCells[playerIndex] % columnsCount;
+		final int row = playerCells[playerIndex] / columnsCount;
+
+		int touchingPlayersCount = 0;
+		for (int y = Math.max(0, row - 1); y <= Math.min(rowsCount - 1, row + 1); y++) {
+			for (int x = Math.max(0, column - 1); x <= Math.min(columnsCount - 1, column + 1); x++) {
+				for (int i = cellFirstPlayers[y * columnsCount + x]; i >= 0; i = nextPlayers[i]) {
+					if ((i > playerIndex) && areTouching(playerModel, playerModels[i])) {
+						touchingPlayers[touchingPlayersCount++] = i;
+					}
+				}
+			}
+		}
+		Arrays.sort(touchingPlayers, 0, touchingPlayersCount);
+		return touchingPlayersCount;
+	}
+
+	/**
+	 * Tells whether the bounds of two players intersect.
+	 * 
+	 * @param playerModel1
+	 *            model of the first player
+	 * @param playerModel2
+	 *            model of the second player
+	 * @return true if the bounds of the players intersect; false otherwise
+	 */
+	private static boolean areTouching(final PlayerModel playerModel1, final PlayerModel playerModel2) {
+		return (Math.abs(playerModel1.getPosX() - playerModel2.getPosX()) < BOUNDS_WIDTH)
+		        && (Math.abs(playerModel1.getPosY() - playerModel2.getPosY()) < BOUNDS_HEIGHT);
+	}
+
+	/**
+	 * Returns the column of the cell of a position.
+	 * 
+	 * @param posX
+	 *            x coordinate of the position
+	 * @return the column of the cell of the position
+	 */
+	private int getColumn(final int posX) {
+		return Math.max(0, Math.min(columnsCount - 1, posX / CELL_SIZE));
+	}
+
+	/**
+	 * Returns the row of the cell of a position.
+	 * 
+	 * @param posY
+	 *            y coordinate of the position
+	 * @return the row of the cell of the position
+	 */
+	private int getRow(final int posY) {
+		return Math.max(0, Math.min(rowsCount - 1, posY / CELL_SIZE));
+	}
+
+}
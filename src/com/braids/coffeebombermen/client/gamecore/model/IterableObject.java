@@ -1,5 +1,7 @@
 package com.braids.coffeebombermen.client.gamecore.model;
 
+import java.io.IOException;
+
 /**
  * This class represents an iterable object. An iterable object can be stepped
  * to the next iteration, and we can access and modify its iteration counter.
@@ -36,4 +38,27 @@ public class IterableObject {
 		iterationCounter++;
 	}
 
+	/**
+	 * Writes the state of this object to a saved game state.
+	 * 
+	 * @param output
+	 *            output of the game state
+	 */
+	public void writeState(final StateOutput output) {
+		output.writeInt(iterationCounter);
+	}
+
+	/**
+	 * Reads the state of this object written by writeState(). The fields are
+	 * set directly, without the side effects of the setters.
+	 * 
+	 * @param input
+	 *            input of the game state
+	 * @throws IOException
+	 *             if the game state is malformed
+	 */
+	public void readState(final StateInput input) throws IOException {
+		iterationCounter = input.readInt();
+	}
+
 }
@@ -0,0 +1,151 @@
+package com.braids.coffeebombermen.client.gamecore.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.braids.coffeebombermen.client.gamecore.Activities;
+
+/**
+ * Occupancy index of the players: a level-sized grid counting the players
+ * being in the level components, so whether there is a player at a component
+ * position can be told without scanning all the players.<br>
+ * Dying players don't count, they aren't in the grid. The players added to the
+ * grid update it themselves when they move to another component or change
+ * their activity.<br>
+ * The grid is not part of the game state, it is rebuilt from the players when
+ * a state is restored.
+ */
+public class PlayerGrid {
+
+	/** Width of the level. */
+	private final int   width;
+	/** Height of the level. */
+	private final int   height;
+	/** The number of the players in the components (row by row). */
+	private final int[] playersCounts;
+
+	/**
+	 * Creates a new PlayerGrid.
+	 * 
+	 * @param width
+	 *            width of the level
+	 * @param height
+	 *            height of the level
+	 */
+	public PlayerGrid(final int width, final int height) {
+		this.width = width;
+		this.height = height;
+		playersCounts = new int[width * height];
+	}
+
+	/**
+	 * Adds a player to the grid.
+	 * 
+	 * @param playerModel
+	 *            model of the player to be added
+	 */
+	public void add(final PlayerModel playerModel) {
+		playerModel.grid = this;
+		playerModel.gridComponentIndex = -1;
+		update(playerModel);
+	}
+
+	/**
+	 * Removes a player from the grid.
+	 * 
+	 * @param playerModel
+	 *            model of the player to be removed
+	 */
+	public void remove(final PlayerModel playerModel) {
+		if (playerModel.grid != this) {
+			return;
+		}
+		if (playerModel.gridComponentIndex >= 0) {
+			playersCounts[playerModel.gridComponentIndex]--;
+			playerModel.gridComponentIndex = -1;
+		}
+		playerModel.grid = null;
+	}
+
+	/**
+	 * Clears the grid, and adds the players of all clients.
+	 * 
+	 * @param clientsPlayerModels
+	 *            models of the players of all clients
+	 */
+	public void rebuild(final List<PlayerModel[]> clientsPlayerModels) {
+		Arrays.fill(playersCounts, 0);
+		for (final PlayerModel[] playerModels : clientsPlayerModels) {
+			for (final PlayerModel playerModel : playerModels) {
+				add(playerModel);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of the players being at a component position.
+	 * 
+	 * @param componentPosX
+	 *            x coordinate of the component
+	 * @param componentPosY
+	 *            y coordinate of the component
+	 * @return the number of the players being at the component position
+	 */
+	public int getPlayersCount(final int componentPosX, final int componentPosY) {
+		if ((componentPosX < 0) || (componentPosX >= width) || (componentPosY < 0) || (componentPosY >= height)) {
+			return 0;
+		}
+		return playersCounts[componentPosY * width + componentPosX];
+	}
+
+	/**
+	 * Tells whether there is a player at a component position.
+	 * 
+	 * @param componentPosX
+	 *            x coordinate of the component
+	 * @param componentPosY
+	 *            y coordinate of the component
+	 * @param playerModelToExclude
+	 *            model of player to be excluded, can be null
+	 * @return true if there is a player other than the excluded one at the
+	 *         component position; false otherwise
+	 */
+	public boolean isPlayerAt(final int componentPosX, final int componentPosY, final PlayerModel playerModelToExclude) {
+		int playersCount = getPlayersCount(componentPosX, componentPosY);
+		if ((playersCount > 0) && (playerModelToExclude != null) && (playerModelToExclude.grid == this)
+		        && (playerModelToExclude.gridComponentIndex == componentPosY * width + componentPosX)) {
+			playersCount--;
+		}
+		return playersCount > 0;
+	}
+
+	/**
+	 * Updates the component of a player after its position or activity has
+	 * been changed.
+	 * 
+	 * @param playerModel
+	 *            model of the player
+	 */
+	void update(final PlayerModel playerModel) {
+		int componentIndex = -1;
+		if (playerModel.getActivity() != Activities.DYING) {
+			final int componentPosX = playerModel.getComponentPosX();
+			final int componentPosY = playerModel.getComponentPosY();
+			if ((componentPosX >= 0) && (componentPosX < width) && (componentPosY >= 0) && (componentPosY < height)) {
+				componentIndex = componentPosY * width + componentPosX;
+			}
+		}
+		if (componentIndex == playerModel.gridComponentIndex) {
+			return;
+		}
+
+		if (playerModel.gridComponentIndex >= 0) {
+			playersCounts[playerModel.gridComponentIndex]--;
+		}
+		if (componentIndex >= 0) {
+			playersCounts[componentIndex]++;
+		}
+		playerModel.gridComponentIndex = componentIndex;
+	}
+
+}
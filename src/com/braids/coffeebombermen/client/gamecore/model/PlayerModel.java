@@ -1,11 +1,13 @@
 package com.braids.coffeebombermen.client.gamecore.model;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.EnumMap;
-import java.util.HashMap;
+import java.util.Map.Entry;
 
 import com.braids.coffeebombermen.client.gamecore.Activities;
-import com.braids.coffeebombermen.client.sound.SoundEffect;
+import com.braids.coffeebombermen.client.gamecore.GameEventListener;
+import com.braids.coffeebombermen.client.gamecore.GameSounds;
 import com.braids.coffeebombermen.options.Diseases;
 import com.braids.coffeebombermen.options.LevelComponentOptions;
 import com.braids.coffeebombermen.options.OptConsts.Items;
@@ -27,6 +29,13 @@ public class PlayerModel extends PositionedIterableObject {
 
 	private static final int              SPIDER_BOMB_ROUNDS              = 4;
 
+	/** The diseases in the order of their ordinals. */
+	private static final Diseases[]       DISEASES                        = Diseases.values();
+	/** The activities in the order of their ordinals. */
+	private static final Activities[]     ACTIVITIES                      = Activities.values();
+	/** The items in the order of their ordinals. */
+	private static final Items[]          ITEMS                           = Items.values();
+
 	private String                        name;
 
 	/** Vitality of the player. */
@@ -40,10 +49,16 @@ public class PlayerModel extends PositionedIterableObject {
 	/** Model of the picked up bomb, or null, if there is no picked up bomb. */
 	private BombModel                     pickedUpBombModel;
 
-	/** Quantities of the accumulateable items owned by the player. */
-	public final EnumMap<Items, Integer>  accumulateableItemQuantitiesMap = new EnumMap<Items, Integer>(Items.class);
-	/** Tells whether we have the non-accumulateable items owned by the player. */
-	private final EnumMap<Items, Boolean> hasNonAccumulateableItemsMap    = new EnumMap<Items, Boolean>(Items.class);
+	/**
+	 * Quantities of the accumulateable items owned by the player, indexed by
+	 * the ordinal of the item.
+	 */
+	private final int[]                   accumulateableItemQuantities    = new int[Items.values().length];
+	/**
+	 * Tells whether we have the non-accumulateable items owned by the player,
+	 * indexed by the ordinal of the item.
+	 */
+	private final boolean[]               hasNonAccumulateableItems       = new boolean[Items.values().length];
 
 	// I seperate the next two entity in order to determine fast whether we
 	// picked up a non accumulateable item and in order to be able to remove it
@@ -56,8 +71,13 @@ public class PlayerModel extends PositionedIterableObject {
 	 */
 	public final ArrayList<Items>         pickedUpNonAccumulateableItems  = new ArrayList<Items>();
 
-	/** disease - when will it expire */
-	public final HashMap<Diseases, Long>  mapOwnedDiseases                = new HashMap<Diseases, Long>();
+	/** Bits of the owned diseases, the bit of a disease is 1 << its ordinal. */
+	private int                           ownedDiseasesMask;
+	/**
+	 * When will the owned diseases expire, indexed by the ordinal of the
+	 * disease.
+	 */
+	private final long[]                  diseaseExpirations              = new long[DISEASES.length];
 
 	/** The states of the control keys of the player. */
 	private boolean[]                     controlKeyStates                = new boolean[PlayerControlKeys.values().length];
@@ -71,6 +91,19 @@ public class PlayerModel extends PositionedIterableObject {
 
 	private PlayerColors                  color;
 
+	// The following attributes are maintained by the game core handler, the
+	// player grid and the disease wheel, they are not part of the game state
+
+	/** The listener of the game events of the player, null if none. */
+	private GameEventListener             gameEventListener;
+
+	/** The player grid this player is added to, null if none. */
+	PlayerGrid                            grid;
+	/** Index of the grid component this player is counted in, -1 if none. */
+	int                                   gridComponentIndex              = -1;
+	/** The disease wheel this player is added to, null if none. */
+	DiseaseWheel                          diseaseWheel;
+
 	/**
 	 * Returns the vitality of the player.
 	 * 
@@ -90,10 +123,10 @@ public class PlayerModel extends PositionedIterableObject {
 		if (vitality > this.vitality) {
 			// no sound for regenerate
 			if (vitality > this.vitality + 100) {
-				SoundEffect.HEAL.play();
+				playSound(GameSounds.HEAL);
 			}
 		} else {
-			SoundEffect.WOUND.play();
+			playSound(GameSounds.WOUND);
 		}
 		this.vitality = vitality;
 	}
@@ -118,16 +151,47 @@ public class PlayerModel extends PositionedIterableObject {
 		setIterationCounter(0);
 		switch (activity) {
 			case KICKING:
-				SoundEffect.KICK.play();
+				playSound(GameSounds.KICK);
 				break;
 			case PUNCHING:
-				SoundEffect.THROW.play();
+				playSound(GameSounds.THROW);
 				break;
 			case DYING:
-				SoundEffect.DIE.play();
-				mapOwnedDiseases.clear();
+				playSound(GameSounds.DIE);
+				ownedDiseasesMask = 0;
 				break;
 		}
+		if (grid != null) {
+			grid.update(this);
+		}
+	}
+
+	/**
+	 * Sets the x coordinate of the position of the player, and updates the
+	 * player grid.
+	 * 
+	 * @param posX
+	 *            the x coordinate of the position to be set
+	 */
+	public void setPosX(final int posX) {
+		super.setPosX(posX);
+		if (grid != null) {
+			grid.update(this);
+		}
+	}
+
+	/**
+	 * Sets the y coordinate of the position of the player, and updates the
+	 * player grid.
+	 * 
+	 * @param posY
+	 *            the y coordinate of the position to be set
+	 */
+	public void setPosY(final int posY) {
+		super.setPosY(posY);
+		if (grid != null) {
+			grid.update(this);
+		}
 	}
 
 	/**
@@ -194,7 +258,7 @@ public class PlayerModel extends PositionedIterableObject {
 	 * @return the state of a player control key
 	 */
 	public boolean getControlKeyState(PlayerControlKeys playerControlKey) {
-		if (mapOwnedDiseases.containsKey(Diseases.REVERSE)) {
+		if (hasDisease(Diseases.REVERSE)) {
 			switch (playerControlKey) {
 				case DOWN:
 					playerControlKey = PlayerControlKeys.UP;
@@ -256,53 +320,151 @@ public class PlayerModel extends PositionedIterableObject {
 		this.spiderBombRounds = spyderBombRounds;
 	}
 
+	/**
+	 * Returns the quantity of an accumulateable item owned by the player.
+	 * 
+	 * @param item
+	 *            accumulateable item whose quantity to be returned
+	 * @return the quantity of the accumulateable item owned by the player
+	 */
+	public int getAccumItemQuantity(final Items item) {
+		return accumulateableItemQuantities[item.ordinal()];
+	}
+
+	/**
+	 * Sets the quantity of an accumulateable item owned by the player.
+	 * 
+	 * @param item
+	 *            accumulateable item whose quantity to be set
+	 * @param quantity
+	 *            quantity to be set
+	 */
+	public void setAccumItemQuantity(final Items item, final int quantity) {
+		accumulateableItemQuantities[item.ordinal()] = quantity;
+	}
+
+	/**
+	 * Sets the quantities of the accumulateable items contained by a map (for
+	 * example the starting quantities of the level options).
+	 * 
+	 * @param accumItemQuantities
+	 *            quantities of the accumulateable items to be set
+	 */
+	public void setAllAccumItemQuantities(final EnumMap<Items, Integer> accumItemQuantities) {
+		for (final Entry<Items, Integer> entry : accumItemQuantities.entrySet()) {
+			accumulateableItemQuantities[entry.getKey().ordinal()] = entry.getValue();
+		}
+	}
+
 	public boolean hasNonAccumItem(Items i) {
-		return hasNonAccumulateableItemsMap.get(i);
+		return hasNonAccumulateableItems[i.ordinal()];
 	}
 
 	public void setAllNonAccumItems(EnumMap<Items, Boolean> allNonAccumItems) {
-		hasNonAccumulateableItemsMap.putAll(allNonAccumItems);
+		for (final Entry<Items, Boolean> entry : allNonAccumItems.entrySet()) {
+			hasNonAccumulateableItems[entry.getKey().ordinal()] = entry.getValue();
+		}
 	}
 
 	public void setNonAccumItem(Items wallBuilding, boolean b) {
-		hasNonAccumulateableItemsMap.put(wallBuilding, b);
+		hasNonAccumulateableItems[wallBuilding.ordinal()] = b;
+	}
+
+	/**
+	 * Adds a disease to the player. If the player already has the disease,
+	 * the later expiration is kept.
+	 * 
+	 * @param disease
+	 *            disease to be added
+	 * @param expire
+	 *            tick when the disease expires
+	 */
+	public void addDisease(final Diseases disease, final long expire) {
+		final int ordinal = disease.ordinal();
+		if (((ownedDiseasesMask & (1 << ordinal)) == 0) || (diseaseExpirations[ordinal] < expire)) {
+			ownedDiseasesMask |= 1 << ordinal;
+			diseaseExpirations[ordinal] = expire;
+			if (diseaseWheel != null) {
+				diseaseWheel.register(this, disease, expire);
+			}
+		}
 	}
 
-	public void addDisease(Diseases disease, Long expire) {
-		if (!mapOwnedDiseases.containsKey(disease) || (mapOwnedDiseases.get(disease) < expire)) {
-			mapOwnedDiseases.put(disease, expire);
+	/**
+	 * Adds the diseases of another player to this player (infection).
+	 * 
+	 * @param playerModel
+	 *            model of the player whose diseases to be added
+	 */
+	public void addDiseases(final PlayerModel playerModel) {
+		for (int mask = playerModel.ownedDiseasesMask; mask != 0; mask &= mask - 1) {
+			final int ordinal = Integer.numberOfTrailingZeros(mask);
+			addDisease(DISEASES[ordinal], playerModel.diseaseExpirations[ordinal]);
 		}
 	}
 
 	public boolean hasDiseases() {
-		return !mapOwnedDiseases.isEmpty();
+		return ownedDiseasesMask != 0;
 	}
 
 	public boolean hasDisease(Diseases disease) {
-		return mapOwnedDiseases.containsKey(disease);
+		return (ownedDiseasesMask & (1 << disease.ordinal())) != 0;
 	}
 
-	public HashMap<Diseases, Long> getOwnedDiseases() {
-		return mapOwnedDiseases;
+	/**
+	 * Returns the bits of the owned diseases: the bit of a disease is 1 << its
+	 * ordinal.
+	 * 
+	 * @return the bits of the owned diseases
+	 */
+	public int getOwnedDiseasesMask() {
+		return ownedDiseasesMask;
+	}
+
+	/**
+	 * Returns a hash of the items and the diseases owned by the player, a
+	 * part of the state hash of the game.
+	 * 
+	 * @return a hash of the items and the diseases owned by the player
+	 */
+	public int getInventoryHash() {
+		int hash = ownedDiseasesMask;
+		for (int i = 0; i < ITEMS.length; i++) {
+			hash = hash * 31 + accumulateableItemQuantities[i];
+			hash = hash * 31 + (hasNonAccumulateableItems[i] ? 1 : 0);
+		}
+		for (int i = 0; i < DISEASES.length; i++) {
+			if ((ownedDiseasesMask & (1 << i)) != 0) {
+				hash = hash * 31 + (int) diseaseExpirations[i];
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns when an owned disease will expire.
+	 * 
+	 * @param disease
+	 *            owned disease whose expiration to be returned
+	 * @return the tick when the disease expires
+	 */
+	public long getDiseaseExpiration(final Diseases disease) {
+		return diseaseExpirations[disease.ordinal()];
 	}
 
 	public void expireDisease(Diseases key) {
-		mapOwnedDiseases.remove(key);
+		ownedDiseasesMask &= ~(1 << key.ordinal());
 	}
 
 	/** picked up rollerskates +- diseases */
-	public Integer getEffectiveRollerSkates() {
-		Integer rollerSkates = accumulateableItemQuantitiesMap.get(Items.ROLLER_SKATES);
-		if (rollerSkates == null) {
-			rollerSkates = 0;
-		}
-		if (mapOwnedDiseases.containsKey(Diseases.SCUDING)) {
-			rollerSkates = LevelComponentOptions.MAXIMUM_ROLLER_SKATES_QUANTITY;
+	public int getEffectiveRollerSkates() {
+		if (hasDisease(Diseases.TODDLING)) {
+			return -5;
 		}
-		if (mapOwnedDiseases.containsKey(Diseases.TODDLING)) {
-			rollerSkates = -5;
+		if (hasDisease(Diseases.SCUDING)) {
+			return LevelComponentOptions.MAXIMUM_ROLLER_SKATES_QUANTITY;
 		}
-		return rollerSkates;
+		return accumulateableItemQuantities[Items.ROLLER_SKATES.ordinal()];
 	}
 
 	public String getName() {
@@ -325,6 +487,28 @@ public class PlayerModel extends PositionedIterableObject {
 		this.points = points;
 	}
 
+	/**
+	 * Sets the listener of the game events of the player.
+	 * 
+	 * @param gameEventListener
+	 *            the listener of the game events, null if none
+	 */
+	public void setGameEventListener(final GameEventListener gameEventListener) {
+		this.gameEventListener = gameEventListener;
+	}
+
+	/**
+	 * Reports a sound of the player to the game event listener.
+	 * 
+	 * @param sound
+	 *            sound to be reported
+	 */
+	private void playSound(final GameSounds sound) {
+		if (gameEventListener != null) {
+			gameEventListener.playSound(sound);
+		}
+	}
+
 	public PlayerColors getColor() {
 		return color;
 	}
@@ -333,4 +517,121 @@ public class PlayerModel extends PositionedIterableObject {
 		this.color = color;
 	}
 
+	/**
+	 * Writes the state of the player to a saved game state. The name and the
+	 * color are not part of the state, they don't change during the game.
+	 * 
+	 * @param output
+	 *            output of the game state
+	 */
+	public void writeState(final StateOutput output) {
+		super.writeState(output);
+		output.writeInt(vitality);
+		output.writeEnum(activity);
+		output.writeInt(placableTriggeredBombs);
+		output.writeInt(placableWalls);
+		output.writeBoolean(pickedUpBombModel != null);
+		if (pickedUpBombModel != null) {
+			pickedUpBombModel.writeState(output);
+		}
+		for (final int quantity : accumulateableItemQuantities) {
+			output.writeInt(quantity);
+		}
+		for (final boolean hasItem : hasNonAccumulateableItems) {
+			output.writeBoolean(hasItem);
+		}
+		writeItems(output, pickedUpAccumulateableItems);
+		writeItems(output, pickedUpNonAccumulateableItems);
+		output.writeInt(ownedDiseasesMask);
+		for (final long expiration : diseaseExpirations) {
+			output.writeLong(expiration);
+		}
+		for (int i = 0; i < controlKeyStates.length; i++) {
+			output.writeBoolean(controlKeyStates[i]);
+			output.writeBoolean(lastControlKeyStates[i]);
+		}
+		output.writeInt(regenerateWeight);
+		output.writeBoolean(autoDropBombEnabled);
+		output.writeBoolean(spiderBombEnabled);
+		output.writeInt(spiderBombRounds);
+		output.writeInt(points);
+	}
+
+	/**
+	 * Reads the state of the player written by writeState(). The fields are
+	 * set directly: no sounds are played, and the player grid and the disease
+	 * wheel are not updated (they have to be rebuilt).
+	 * 
+	 * @param input
+	 *            input of the game state
+	 * @throws IOException
+	 *             if the game state is malformed
+	 */
+	public void readState(final StateInput input) throws IOException {
+		super.readState(input);
+		vitality = input.readInt();
+		activity = input.readEnum(ACTIVITIES);
+		placableTriggeredBombs = input.readInt();
+		placableWalls = input.readInt();
+		if (input.readBoolean()) {
+			pickedUpBombModel = new BombModel(null);
+			pickedUpBombModel.readState(input);
+		} else {
+			pickedUpBombModel = null;
+		}
+		for (int i = 0; i < accumulateableItemQuantities.length; i++) {
+			accumulateableItemQuantities[i] = input.readInt();
+		}
+		for (int i = 0; i < hasNonAccumulateableItems.length; i++) {
+			hasNonAccumulateableItems[i] = input.readBoolean();
+		}
+		readItems(input, pickedUpAccumulateableItems);
+		readItems(input, pickedUpNonAccumulateableItems);
+		ownedDiseasesMask = input.readInt();
+		for (int i = 0; i < diseaseExpirations.length; i++) {
+			diseaseExpirations[i] = input.readLong();
+		}
+		for (int i = 0; i < controlKeyStates.length; i++) {
+			controlKeyStates[i] = input.readBoolean();
+			lastControlKeyStates[i] = input.readBoolean();
+		}
+		regenerateWeight = input.readInt();
+		autoDropBombEnabled = input.readBoolean();
+		spiderBombEnabled = input.readBoolean();
+		spiderBombRounds = input.readInt();
+		points = input.readInt();
+	}
+
+	/**
+	 * Writes a list of items to a saved game state.
+	 * 
+	 * @param output
+	 *            output of the game state
+	 * @param items
+	 *            items to be written
+	 */
+	private static void writeItems(final StateOutput output, final ArrayList<Items> items) {
+		output.writeInt(items.size());
+		for (final Items item : items) {
+			output.writeEnum(item);
+		}
+	}
+
+	/**
+	 * Reads a list of items written by writeItems().
+	 * 
+	 * @param input
+	 *            input of the game state
+	 * @param items
+	 *            list to be filled with the items
+	 * @throws IOException
+	 *             if the game state is malformed
+	 */
+	private static void readItems(final StateInput input, final ArrayList<Items> items) throws IOException {
+		items.clear();
+		for (int i = input.readCount(); i > 0; i--) {
+			items.add(input.readEnum(ITEMS));
+		}
+	}
+
 }
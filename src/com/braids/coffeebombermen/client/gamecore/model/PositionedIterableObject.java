@@ -1,5 +1,7 @@
 package com.braids.coffeebombermen.client.gamecore.model;
 
+import java.io.IOException;
+
 import com.braids.coffeebombermen.client.gamecore.CoreConsts;
 import com.braids.coffeebombermen.client.gamecore.Directions;
 
@@ -8,6 +10,9 @@ import com.braids.coffeebombermen.client.gamecore.Directions;
  */
 public class PositionedIterableObject extends IterableObject {
 
+	/** The directions in the order of their ordinals. */
+	private static final Directions[] DIRECTIONS = Directions.values();
+
 	/** The horizontal position of the center point of the object. */
 	private int        posX;
 	/** The vertical position of the center point of the object. */
@@ -136,4 +141,18 @@ public class PositionedIterableObject extends IterableObject {
 		posY += CoreConsts.LEVEL_COMPONENT_GRANULARITY / 2 - posY % CoreConsts.LEVEL_COMPONENT_GRANULARITY;
 	}
 
+	public void writeState(final StateOutput output) {
+		super.writeState(output);
+		output.writeInt(posX);
+		output.writeInt(posY);
+		output.writeEnum(direction);
+	}
+
+	public void readState(final StateInput input) throws IOException {
+		super.readState(input);
+		posX = input.readInt();
+		posY = input.readInt();
+		direction = input.readEnum(DIRECTIONS);
+	}
+
 }
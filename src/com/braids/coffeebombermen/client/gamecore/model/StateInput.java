@@ -0,0 +1,178 @@
+package com.braids.coffeebombermen.client.gamecore.model;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Input of a saved game state written by StateOutput.<br>
+ * Every read is checked against the end of the state, and the enum ordinals,
+ * the counts and the player references against their ranges, so a malformed
+ * state (for example a snapshot received from another client) causes an
+ * IOException instead of allocating or referring anything invalid.
+ */
+public class StateInput {
+
+	/** The bytes of the state. */
+	private byte[]              buffer;
+	/** Position of the next byte to be read. */
+	private int                 position;
+	/** End of the state in the buffer. */
+	private int                 end;
+	/** Models of the players of the clients. */
+	private List<PlayerModel[]> clientsPlayerModels;
+	/** Models of the players of the clients who have left the game. */
+	private List<PlayerModel>   leftPlayerModels;
+
+	/**
+	 * Sets the state to be read, so the input can be reused.
+	 * 
+	 * @param buffer
+	 *            buffer holding the state
+	 * @param length
+	 *            length of the state (from the beginning of the buffer)
+	 * @param clientsPlayerModels
+	 *            models of the players of the clients
+	 * @param leftPlayerModels
+	 *            models of the players of the clients who have left the game
+	 */
+	public void reset(final byte[] buffer, final int length, final List<PlayerModel[]> clientsPlayerModels, final List<PlayerModel> leftPlayerModels) {
+		this.buffer = buffer;
+		this.clientsPlayerModels = clientsPlayerModels;
+		this.leftPlayerModels = leftPlayerModels;
+		position = 0;
+		end = length;
+	}
+
+	/**
+	 * Returns the number of the bytes not read yet.
+	 * 
+	 * @return the number of the bytes not read yet
+	 */
+	public int remaining() {
+		return end - position;
+	}
+
+	/**
+	 * Checks whether some bytes are available.
+	 * 
+	 * @param length
+	 *            number of bytes to be read
+	 * @throws IOException
+	 *             if the state ends before
+	 */
+	private void require(final int length) throws IOException {
+		if (end - position < length) {
+			throw new IOException("Unexpected end of the game state!");
+		}
+	}
+
+	public int readByte() throws IOException {
+		require(1);
+		return buffer[position++];
+	}
+
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	public int readShort() throws IOException {
+		require(2);
+		final int value = (buffer[position] << 8) | (buffer[position + 1] & 0xff);
+		position += 2;
+		return value;
+	}
+
+	public int readInt() throws IOException {
+		require(4);
+		final int value = (buffer[position] << 24) | ((buffer[position + 1] & 0xff) << 16) | ((buffer[position + 2] & 0xff) << 8)
+		        | (buffer[position + 3] & 0xff);
+		position += 4;
+		return value;
+	}
+
+	public long readLong() throws IOException {
+		return ((long) readInt() << 32) | (readInt() & 0xffffffffl);
+	}
+
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	/**
+	 * Reads bytes into an array, as many as its length.
+	 * 
+	 * @param values
+	 *            the array to be filled
+	 * @throws IOException
+	 *             if the state ends before
+	 */
+	public void readBytes(final byte[] values) throws IOException {
+		require(values.length);
+		System.arraycopy(buffer, position, values, 0, values.length);
+		position += values.length;
+	}
+
+	/**
+	 * Reads a count of elements. Each element takes at least one byte, so the
+	 * count can't be more than the remaining bytes.
+	 * 
+	 * @return the count
+	 * @throws IOException
+	 *             if the count is negative or more than the remaining bytes
+	 */
+	public int readCount() throws IOException {
+		final int count = readInt();
+		if ((count < 0) || (count > remaining())) {
+			throw new IOException("Invalid count in the game state: " + count);
+		}
+		return count;
+	}
+
+	/**
+	 * Reads an enum constant written by StateOutput.writeEnum().
+	 * 
+	 * @param values
+	 *            the constants of the enum
+	 * @return the enum constant, can be null
+	 * @throws IOException
+	 *             if the ordinal is out of the range of the constants
+	 */
+	public <E extends Enum<E>> E readEnum(final E[] values) throws IOException {
+		final int ordinal = readByte();
+		if (ordinal == -1) {
+			return null;
+		}
+		if ((ordinal < 0) || (ordinal >= values.length)) {
+			throw new IOException("Invalid enum ordinal in the game state: " + ordinal);
+		}
+		return values[ordinal];
+	}
+
+	/**
+	 * Reads a reference to a player written by
+	 * StateOutput.writePlayerModel().
+	 * 
+	 * @return model of the referred player, can be null
+	 * @throws IOException
+	 *             if the index doesn't refer to a player
+	 */
+	public PlayerModel readPlayerModel() throws IOException {
+		int index = readShort();
+		if (index == -1) {
+			return null;
+		}
+		if (index >= 0) {
+			for (final PlayerModel[] playerModels : clientsPlayerModels) {
+				if (index < playerModels.length) {
+					return playerModels[index];
+				}
+				index -= playerModels.length;
+			}
+			if (index < leftPlayerModels.size()) {
+				return leftPlayerModels.get(index);
+			}
+		}
+		throw new IOException("Invalid player reference in the game state!");
+	}
+
+}
@@ -0,0 +1,171 @@
+package com.braids.coffeebombermen.client.gamecore.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Output of a saved game state: the state is written field by field into a
+ * growable byte array, which can be reused for the next state.<br>
+ * The players are written as their index among the players of the clients
+ * followed by the players of the clients who have left the game, so the
+ * players to be referred have to be set before writing.<br>
+ * Read back by StateInput.
+ */
+public class StateOutput {
+
+	/** The written bytes. */
+	private byte[]              buffer;
+	/** Number of the written bytes. */
+	private int                 size;
+	/** Models of the players of the clients. */
+	private List<PlayerModel[]> clientsPlayerModels;
+	/** Models of the players of the clients who have left the game. */
+	private List<PlayerModel>   leftPlayerModels;
+
+	/**
+	 * Creates a new StateOutput.
+	 * 
+	 * @param initialCapacity
+	 *            initial capacity of the buffer
+	 */
+	public StateOutput(final int initialCapacity) {
+		buffer = new byte[initialCapacity];
+	}
+
+	/**
+	 * Drops the written bytes, so the output can be reused.
+	 * 
+	 * @param clientsPlayerModels
+	 *            models of the players of the clients
+	 * @param leftPlayerModels
+	 *            models of the players of the clients who have left the game
+	 */
+	public void reset(final List<PlayerModel[]> clientsPlayerModels, final List<PlayerModel> leftPlayerModels) {
+		this.clientsPlayerModels = clientsPlayerModels;
+		this.leftPlayerModels = leftPlayerModels;
+		size = 0;
+	}
+
+	/**
+	 * Returns the buffer holding the written bytes. Only the first size()
+	 * bytes are valid.
+	 * 
+	 * @return the buffer holding the written bytes
+	 */
+	public byte[] getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Returns the number of the written bytes.
+	 * 
+	 * @return the number of the written bytes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a copy of the written bytes.
+	 * 
+	 * @return a copy of the written bytes
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buffer, size);
+	}
+
+	/**
+	 * Makes room for some bytes.
+	 * 
+	 * @param length
+	 *            number of bytes to be written
+	 */
+	private void ensureCapacity(final int length) {
+		if (size + length > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+		}
+	}
+
+	public void writeByte(final int value) {
+		ensureCapacity(1);
+		buffer[size++] = (byte) value;
+	}
+
+	public void writeBoolean(final boolean value) {
+		writeByte(value ? 1 : 0);
+	}
+
+	public void writeShort(final int value) {
+		ensureCapacity(2);
+		buffer[size++] = (byte) (value >> 8);
+		buffer[size++] = (byte) value;
+	}
+
+	public void writeInt(final int value) {
+		ensureCapacity(4);
+		buffer[size++] = (byte) (value >> 24);
+		buffer[size++] = (byte) (value >> 16);
+		buffer[size++] = (byte) (value >> 8);
+		buffer[size++] = (byte) value;
+	}
+
+	public void writeLong(final long value) {
+		writeInt((int) (value >> 32));
+		writeInt((int) value);
+	}
+
+	public void writeFloat(final float value) {
+		writeInt(Float.floatToRawIntBits(value));
+	}
+
+	/**
+	 * Writes an array of bytes (without its length).
+	 * 
+	 * @param values
+	 *            the bytes to be written
+	 */
+	public void writeBytes(final byte[] values) {
+		ensureCapacity(values.length);
+		System.arraycopy(values, 0, buffer, size, values.length);
+		size += values.length;
+	}
+
+	/**
+	 * Writes an enum constant as its ordinal, -1 in case of null.
+	 * 
+	 * @param value
+	 *            the enum constant to be written, can be null
+	 */
+	public void writeEnum(final Enum<?> value) {
+		writeByte(value == null ? -1 : value.ordinal());
+	}
+
+	/**
+	 * Writes a reference to a player as its index among the players of the
+	 * clients and the players who have left, -1 in case of null.
+	 * 
+	 * @param playerModel
+	 *            model of the player to be written, can be null
+	 */
+	public void writePlayerModel(final PlayerModel playerModel) {
+		if (playerModel != null) {
+			int index = 0;
+			for (final PlayerModel[] playerModels : clientsPlayerModels) {
+				for (final PlayerModel model : playerModels) {
+					if (model == playerModel) {
+						writeShort(index);
+						return;
+					}
+					index++;
+				}
+			}
+			final int leftIndex = leftPlayerModels.indexOf(playerModel);
+			if (leftIndex >= 0) {
+				writeShort(index + leftIndex);
+				return;
+			}
+		}
+		writeShort(-1);
+	}
+
+}
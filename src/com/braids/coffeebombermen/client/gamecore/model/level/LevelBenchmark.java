@@ -0,0 +1,200 @@
+package com.braids.coffeebombermen.client.gamecore.model.level;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import com.braids.coffeebombermen.client.gamecore.model.FireModel;
+import com.braids.coffeebombermen.options.OptConsts.Items;
+import com.braids.coffeebombermen.options.OptConsts.Walls;
+import com.braids.coffeebombermen.options.model.LevelOptions;
+
+/**
+ * A benchmark of the level models. Levels of different sizes are filled
+ * randomly with walls, items and fires, then measured:
+ * <ul>
+ * <li>the heap retained by a level model,
+ * <li>the size of a serialized level model (a part of every saved game state),
+ * <li>the throughput of scanning all the components, through the
+ * getComponent() API and through the cell index API.
+ * </ul>
+ */
+public class LevelBenchmark {
+
+	/** The sizes of the measured levels. */
+	private static final int[][] LEVEL_SIZES    = { { 15, 13 }, { 255, 255 } };
+	/** Number of the components scanned in a throughput measurement. */
+	private static final long    SCANNED_CELLS  = 200000000l;
+	/** Number of the level models retained in a memory measurement. */
+	private static final int     RETAINED_CELLS = 2000000;
+
+	/** Result of the scans, printed so the JIT cannot drop them. */
+	private static long          checksum;
+
+	/**
+	 * Object output stream which leaves out the level options (like the saved
+	 * game states do).
+	 */
+	private static class LevelOutputStream extends ObjectOutputStream {
+
+		/**
+		 * Creates a new LevelOutputStream.
+		 * 
+		 * @param outputStream
+		 *            output stream to write to
+		 * @throws IOException
+		 *             if writing the stream header fails
+		 */
+		public LevelOutputStream(final OutputStream outputStream) throws IOException {
+			super(outputStream);
+			enableReplaceObject(true);
+		}
+
+		protected Object replaceObject(final Object object) {
+			return object instanceof LevelOptions ? null : object;
+		}
+
+	}
+
+	/**
+	 * Creates a level model filled randomly with walls, items and fires.
+	 * 
+	 * @param width
+	 *            width of the level
+	 * @param height
+	 *            height of the level
+	 * @param random
+	 *            random generator to be used
+	 * @return the new level model
+	 */
+	private static LevelModel createLevelModel(final int width, final int height, final Random random) {
+		final LevelOptions levelOptions = new LevelOptions();
+		levelOptions.setLevelWidth(width);
+		levelOptions.setLevelHeight(height);
+		final LevelModel levelModel = new LevelModel(levelOptions);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				final LevelComponent levelComponent = levelModel.getComponent(x, y);
+				final int kind = random.nextInt(100);
+				if (kind < 30) {
+					levelComponent.setWall(Walls.CONCRETE);
+				} else if (kind < 70) {
+					levelComponent.setWall(Walls.BRICK);
+				} else if (kind < 80) {
+					levelComponent.setItem(Items.values()[random.nextInt(Items.values().length)]);
+				} else if (kind < 85) {
+					levelComponent.addFire(new FireModel());
+				}
+			}
+		}
+		return levelModel;
+	}
+
+	/**
+	 * Returns the heap used after garbage collections.
+	 * 
+	 * @return the heap used after garbage collections
+	 */
+	private static long getUsedMemory() {
+		final Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Scans the components through the getComponent() API.
+	 * 
+	 * @param levelModel
+	 *            level model to be scanned
+	 * @return a value depending on the components
+	 */
+	private static long scanByComponents(final LevelModel levelModel) {
+		long sum = 0;
+		for (int y = 0; y < levelModel.getHeight(); y++) {
+			for (int x = 0; x < levelModel.getWidth(); x++) {
+				final LevelComponent levelComponent = levelModel.getComponent(x, y);
+				sum += levelComponent.getWall().ordinal() + levelComponent.getFireCount() + (levelComponent.getItem() == null ? 0 : 1);
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Scans the components through the cell index API.
+	 * 
+	 * @param levelModel
+	 *            level model to be scanned
+	 * @return a value depending on the components
+	 */
+	private static long scanByCellIndices(final LevelModel levelModel) {
+		long sum = 0;
+		for (int cellIndex = levelModel.getCellsCount() - 1; cellIndex >= 0; cellIndex--) {
+			sum += levelModel.getWall(cellIndex).ordinal() + levelModel.getFireCount(cellIndex) + (levelModel.getItem(cellIndex) == null ? 0 : 1);
+		}
+		return sum;
+	}
+
+	/**
+	 * Measures the throughput of scanning a level model.
+	 * 
+	 * @param levelModel
+	 *            level model to be scanned
+	 * @param byCellIndices
+	 *            tells whether to scan through the cell index API
+	 * @return the number of the scanned components per microsecond
+	 */
+	private static long measureScans(final LevelModel levelModel, final boolean byCellIndices) {
+		final long cellsCount = levelModel.getWidth() * levelModel.getHeight();
+		final long scansCount = SCANNED_CELLS / cellsCount;
+		for (int round = 0; round < 2; round++) {
+			// The first round warms up the JIT
+			final long startTime = System.nanoTime();
+			for (long i = 0; i < scansCount; i++) {
+				checksum += byCellIndices ? scanByCellIndices(levelModel) : scanByComponents(levelModel);
+			}
+			final long time = System.nanoTime() - startTime;
+			if (round == 1) {
+				return scansCount * cellsCount * 1000l / time;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * The entry point of the benchmark.
+	 * 
+	 * @param arguments
+	 *            the command line arguments (not used)
+	 * @throws IOException
+	 *             if serializing a level model fails
+	 */
+	public static void main(final String[] arguments) throws IOException {
+		final Random random = new Random(0l);
+		for (final int[] levelSize : LEVEL_SIZES) {
+			final int width = levelSize[0];
+			final int height = levelSize[1];
+
+			final LevelModel[] levelModels = new LevelModel[Math.max(1, RETAINED_CELLS / (width * height))];
+			final long usedMemory = getUsedMemory();
+			for (int i = 0; i < levelModels.length; i++) {
+				levelModels[i] = createLevelModel(width, height, random);
+			}
+			final long retainedMemory = (getUsedMemory() - usedMemory) / levelModels.length;
+
+			final ByteArrayOutputStream serializedLevelModel = new ByteArrayOutputStream();
+			final ObjectOutputStream output = new LevelOutputStream(serializedLevelModel);
+			output.writeObject(levelModels[0]);
+			output.close();
+
+			System.out.println("Level " + width + "x" + height + ": " + retainedMemory + " bytes retained, " + serializedLevelModel.size() + " bytes serialized, "
+			        + measureScans(levelModels[0], false) + " components/us by getComponent(), " + measureScans(levelModels[0], true)
+			        + " components/us by cell index");
+		}
+		System.out.println("(Checksum: " + checksum + ")");
+	}
+
+}
@@ -1,26 +1,42 @@
 package com.braids.coffeebombermen.client.gamecore.model.level;
 
-import java.util.ArrayList;
-
 import com.braids.coffeebombermen.client.gamecore.model.FireModel;
-import com.braids.coffeebombermen.client.gamecore.model.IterableObject;
 import com.braids.coffeebombermen.options.OptConsts.Items;
 import com.braids.coffeebombermen.options.OptConsts.Walls;
 
 /**
- * A component of the level (the level consists of level components).
+ * A component of the level (the level consists of level components).<br>
+ * This is a view of a cell of the level model: the component data is stored in
+ * the arrays of the level model, the view only refers to its cell.
  */
-public class LevelComponent extends IterableObject {
+public class LevelComponent {
+
+	/** The level model this component belongs to. */
+	private final LevelModel levelModel;
+	/** Index of the cell of this component in the level model. */
+	private final int        cellIndex;
 
-	/** What kind of wall is associated to the component. */
-	private Walls                wall         = Walls.EMPTY;
 	/**
-	 * What kind of item is optionally contained by the component. Accessible
-	 * only if wall is Walls.EMPTY (null means no item is on the component).
+	 * Creates a new LevelComponent.
+	 * 
+	 * @param levelModel
+	 *            the level model the component belongs to
+	 * @param cellIndex
+	 *            index of the cell of the component in the level model
 	 */
-	private Items                item;
-	/** The vector of fire models taking place on this component. */
-	private ArrayList<FireModel> lstFireModel = new ArrayList<FireModel>();
+	LevelComponent(final LevelModel levelModel, final int cellIndex) {
+		this.levelModel = levelModel;
+		this.cellIndex = cellIndex;
+	}
+
+	/**
+	 * Returns the index of the cell of this component in the level model.
+	 * 
+	 * @return the index of the cell of this component
+	 */
+	public int getCellIndex() {
+		return cellIndex;
+	}
 
 	/**
 	 * Sets the wall of the component.
@@ -29,7 +45,7 @@ public class LevelComponent extends IterableObject {
 	 *            the wall to be set
 	 */
 	public void setWall(final Walls wall) {
-		this.wall = wall;
+		levelModel.setWall(cellIndex, wall);
 	}
 
 	/**
@@ -39,7 +55,7 @@ public class LevelComponent extends IterableObject {
 	 *            the item to be set
 	 */
 	public void setItem(final Items item) {
-		this.item = item;
+		levelModel.setItem(cellIndex, item);
 	}
 
 	/**
@@ -48,44 +64,45 @@ public class LevelComponent extends IterableObject {
 	 * @return the wall of the component
 	 */
 	public Walls getWall() {
-		return wall;
+		return levelModel.getWall(cellIndex);
 	}
 
 	/**
-	 * Returns the item of the component.
+	 * Returns the item of the component. Accessible only if wall is
+	 * Walls.EMPTY (null means no item is on the component).
 	 * 
 	 * @return the item of the component
 	 */
 	public Items getItem() {
-		return item;
+		return levelModel.getItem(cellIndex);
 	}
 
 	public boolean hasFire() {
-		return !lstFireModel.isEmpty();
+		return levelModel.hasFire(cellIndex);
 	}
 
 	public int getFireCount() {
-		return lstFireModel.size();
+		return levelModel.getFireCount(cellIndex);
 	}
 
 	public void addFire(FireModel fire) {
-		lstFireModel.add(fire);
+		levelModel.addFire(cellIndex, fire);
 	}
 
 	public void removeFire(FireModel fire) {
-		lstFireModel.remove(fire);
+		levelModel.removeFire(cellIndex, fire);
 	}
 
 	public void removeAllFire() {
-		lstFireModel.clear();
+		levelModel.removeAllFire(cellIndex);
 	}
 
 	public FireModel getLastFire() {
-		return lstFireModel.get(lstFireModel.size() - 1);
+		return levelModel.getLastFire(cellIndex);
 	}
 
 	public FireModel getFire(int index) {
-		return lstFireModel.get(index);
+		return levelModel.getFire(cellIndex, index);
 	}
 
 }
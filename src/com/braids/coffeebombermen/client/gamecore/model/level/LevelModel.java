@@ -1,19 +1,55 @@
 package com.braids.coffeebombermen.client.gamecore.model.level;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import com.braids.coffeebombermen.client.gamecore.model.FireModel;
+import com.braids.coffeebombermen.client.gamecore.model.StateInput;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
+import com.braids.coffeebombermen.options.OptConsts.Items;
+import com.braids.coffeebombermen.options.OptConsts.Walls;
 import com.braids.coffeebombermen.options.model.LevelOptions;
 
 /**
- * The model of the level where bombermen take their fight.
+ * The model of the level where bombermen take their fight.<br>
+ * The components of the level are stored in flat arrays indexed by the cell
+ * index (y * width + x): the walls and the items as bytes, the fires as counts
+ * and the fire models of the burning components. They can be accessed through
+ * the cell index API, or through LevelComponent views returned by
+ * getComponent().
  */
 public class LevelModel {
 
+	/** The walls in the order of their ordinals. */
+	private static final Walls[]     WALLS   = Walls.values();
+	/** The items in the order of their ordinals. */
+	private static final Items[]     ITEMS   = Items.values();
+	/** Value of the items array telling that there is no item. */
+	private static final byte        NO_ITEM = -1;
+
 	/** Options of this level. */
 	private final LevelOptions       levelOptions;
-	/** The components of the level. */
-	private final LevelComponent[][] components;
+	/** Width of the level. */
+	private final int                width;
+	/** Height of the level. */
+	private final int                height;
+	/** The ordinals of the walls of the components. */
+	private final byte[]             walls;
+	/**
+	 * The ordinals of the items of the components, NO_ITEM if there is no item.
+	 * Accessible only if the wall is Walls.EMPTY.
+	 */
+	private final byte[]             items;
+	/** The number of the fires taking place on the components. */
+	private final short[]            fireCounts;
+	/**
+	 * The fire models taking place on the components (the first fireCounts
+	 * elements), null if the component has never burnt. The arrays are kept
+	 * when the fires burn out, so burning again doesn't allocate.
+	 */
+	private final FireModel[][]      fireModelss;
 	/** X position for the gateway. */
 	private final List<Integer>      gatewayExitPositionX;
 	/** Y position for the gateway. */
@@ -27,12 +63,14 @@ public class LevelModel {
 	 */
 	public LevelModel(final LevelOptions levelOptions) {
 		this.levelOptions = levelOptions;
-		components = new LevelComponent[levelOptions.getLevelHeight()][levelOptions.getLevelWidth()];
-		for (final LevelComponent[] componentRow : components) {
-			for (int i = 0; i < componentRow.length; i++) {
-				componentRow[i] = new LevelComponent();
-			}
-		}
+		width = levelOptions.getLevelWidth();
+		height = levelOptions.getLevelHeight();
+		walls = new byte[width * height];
+		items = new byte[width * height];
+		fireCounts = new short[width * height];
+		fireModelss = new FireModel[width * height][];
+		Arrays.fill(walls, (byte) Walls.EMPTY.ordinal());
+		Arrays.fill(items, NO_ITEM);
 		gatewayExitPositionX = new ArrayList<Integer>();
 		gatewayExitPositionY = new ArrayList<Integer>();
 	}
@@ -47,21 +85,234 @@ public class LevelModel {
 	}
 
 	public int getWidth() {
-		return levelOptions.getLevelWidth();
+		return width;
 	}
 
 	public int getHeight() {
-		return levelOptions.getLevelHeight();
+		return height;
 	}
 
+	/**
+	 * Returns a view of a component of the level. The view reads and writes
+	 * the arrays of the level, it is cheap to create but hot loops should rather
+	 * use the cell index API.
+	 * 
+	 * @param x
+	 *            x coordinate of the component
+	 * @param y
+	 *            y coordinate of the component
+	 * @return a view of the component
+	 */
 	public LevelComponent getComponent(int x, int y) {
-		return components[y][x];
+		return new LevelComponent(this, y * width + x);
 	}
 
-	public void setComponent(LevelComponent component, int x, int y) {
-		components[y][x] = component;
+	/**
+	 * Swaps the contents (wall, item and fires) of two components.
+	 * 
+	 * @param x1
+	 *            x coordinate of the first component
+	 * @param y1
+	 *            y coordinate of the first component
+	 * @param x2
+	 *            x coordinate of the second component
+	 * @param y2
+	 *            y coordinate of the second component
+	 */
+	public void swapComponents(int x1, int y1, int x2, int y2) {
+		final int cellIndex1 = y1 * width + x1;
+		final int cellIndex2 = y2 * width + x2;
+
+		final byte wall = walls[cellIndex1];
+		walls[cellIndex1] = walls[cellIndex2];
+		walls[cellIndex2] = wall;
+		final byte item = items[cellIndex1];
+		items[cellIndex1] = items[cellIndex2];
+		items[cellIndex2] = item;
+		final short fireCount = fireCounts[cellIndex1];
+		fireCounts[cellIndex1] = fireCounts[cellIndex2];
+		fireCounts[cellIndex2] = fireCount;
+		final FireModel[] fireModels = fireModelss[cellIndex1];
+		fireModelss[cellIndex1] = fireModelss[cellIndex2];
+		fireModelss[cellIndex2] = fireModels;
+	}
+
+	/* ========================= CELL INDEX API ========================= */
+
+	/**
+	 * Returns the number of the cells (components) of the level.
+	 * 
+	 * @return the number of the cells of the level
+	 */
+	public int getCellsCount() {
+		return walls.length;
 	}
 
+	/**
+	 * Returns the cell index of a component.
+	 * 
+	 * @param x
+	 *            x coordinate of the component
+	 * @param y
+	 *            y coordinate of the component
+	 * @return the cell index of the component
+	 */
+	public int getCellIndex(int x, int y) {
+		return y * width + x;
+	}
+
+	/**
+	 * Returns the wall of a cell.
+	 * 
+	 * @param cellIndex
+	 *            index of the cell
+	 * @return the wall of the cell
+	 */
+	public Walls getWall(int cellIndex) {
+		return WALLS[walls[cellIndex]];
+	}
+
+	/**
+	 * Sets the wall of a cell.
+	 * 
+	 * @param cellIndex
+	 *            index of the cell
+	 * @param wall
+	 *            the wall to be set
+	 */
+	public void setWall(int cellIndex, Walls wall) {
+		walls[cellIndex] = (byte) wall.ordinal();
+	}
+
+	/**
+	 * Returns the item of a cell.
+	 * 
+	 * @param cellIndex
+	 *            index of the cell
+	 * @return the item of the cell, null if there is no item
+	 */
+	public Items getItem(int cellIndex) {
+		final byte item = items[cellIndex];
+		return item == NO_ITEM ? null : ITEMS[item];
+	}
+
+	/**
+	 * Sets the item of a cell.
+	 * 
+	 * @param cellIndex
+	 *            index of the cell
+	 * @param item
+	 *            the item to be set, null to remove the item
+	 */
+	public void setItem(int cellIndex, Items item) {
+		items[cellIndex] = item == null ? NO_ITEM : (byte) item.ordinal();
+	}
+
+	public boolean hasFire(int cellIndex) {
+		return fireCounts[cellIndex] != 0;
+	}
+
+	public int getFireCount(int cellIndex) {
+		return fireCounts[cellIndex];
+	}
+
+	public void addFire(int cellIndex, FireModel fire) {
+		FireModel[] fireModels = fireModelss[cellIndex];
+		final int fireCount = fireCounts[cellIndex];
+		if (fireModels == null) {
+			fireModels = fireModelss[cellIndex] = new FireModel[2];
+		} else if (fireCount == fireModels.length) {
+			fireModels = fireModelss[cellIndex] = Arrays.copyOf(fireModels, fireCount * 2);
+		}
+		fireModels[fireCount] = fire;
+		fireCounts[cellIndex]++;
+	}
+
+	public void removeFire(int cellIndex, FireModel fire) {
+		final FireModel[] fireModels = fireModelss[cellIndex];
+		final int fireCount = fireCounts[cellIndex];
+		for (int i = 0; i < fireCount; i++) {
+			if (fireModels[i] == fire) {
+				// The order of the fires is kept: the last one is visible
+				System.arraycopy(fireModels, i + 1, fireModels, i, fireCount - i - 1);
+				fireModels[fireCount - 1] = null;
+				fireCounts[cellIndex]--;
+				return;
+			}
+		}
+	}
+
+	public void removeAllFire(int cellIndex) {
+		if (fireModelss[cellIndex] != null) {
+			Arrays.fill(fireModelss[cellIndex], null);
+		}
+		fireCounts[cellIndex] = 0;
+	}
+
+	public FireModel getLastFire(int cellIndex) {
+		return getFire(cellIndex, fireCounts[cellIndex] - 1);
+	}
+
+	public FireModel getFire(int cellIndex, int index) {
+		if ((index < 0) || (index >= fireCounts[cellIndex])) {
+			throw new IndexOutOfBoundsException("Fire index: " + index + ", fire count: " + fireCounts[cellIndex]);
+		}
+		return fireModelss[cellIndex][index];
+	}
+
+	/* ========================== STATE SAVING ========================== */
+
+	/**
+	 * Writes the walls, the items and the gateway exits of the level to a
+	 * saved game state. The fires are saved by the control layer of the
+	 * level.
+	 * 
+	 * @param output
+	 *            output of the game state
+	 */
+	public void writeState(final StateOutput output) {
+		output.writeInt(width);
+		output.writeInt(height);
+		output.writeBytes(walls);
+		output.writeBytes(items);
+		output.writeInt(gatewayExitPositionX.size());
+		for (int i = 0; i < gatewayExitPositionX.size(); i++) {
+			output.writeInt(gatewayExitPositionX.get(i));
+			output.writeInt(gatewayExitPositionY.get(i));
+		}
+	}
+
+	/**
+	 * Reads the walls, the items and the gateway exits of the level written by
+	 * writeState(). The fires of the level are removed.
+	 * 
+	 * @param input
+	 *            input of the game state
+	 * @throws IOException
+	 *             if the game state is malformed, or its level has different
+	 *             size
+	 */
+	public void readState(final StateInput input) throws IOException {
+		if ((input.readInt() != width) || (input.readInt() != height)) {
+			throw new IOException("The level of the game state has different size!");
+		}
+		input.readBytes(walls);
+		input.readBytes(items);
+		for (int cellIndex = 0; cellIndex < walls.length; cellIndex++) {
+			if ((walls[cellIndex] < 0) || (walls[cellIndex] >= WALLS.length) || (items[cellIndex] < NO_ITEM) || (items[cellIndex] >= ITEMS.length)) {
+				throw new IOException("Invalid level component in the game state!");
+			}
+			removeAllFire(cellIndex);
+		}
+		gatewayExitPositionX.clear();
+		gatewayExitPositionY.clear();
+		for (int i = input.readCount(); i > 0; i--) {
+			addGatewayExitPosition(input.readInt(), input.readInt());
+		}
+	}
+
+	/* ================================================================== */
+
 	/**
 	 * Packs this object to a String so it can be transferred or stored.
 	 * 
@@ -8,6 +8,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.Random;
 import java.util.Stack;
 
 import com.braids.coffeebombermen.client.gamecore.Activities;
@@ -23,7 +24,6 @@ import com.braids.coffeebombermen.client.gamecore.model.level.LevelModel;
 import com.braids.coffeebombermen.options.Diseases;
 import com.braids.coffeebombermen.options.OptConsts.Items;
 import com.braids.coffeebombermen.options.OptConsts.Walls;
-import com.braids.coffeebombermen.utils.MathHelper;
 
 public class SimpleRobot implements IRobot {
 
@@ -47,14 +47,20 @@ public class SimpleRobot implements IRobot {
 
 	private boolean[]            reverseDisease;
 	private int                  iteration;
+	/**
+	 * Random generator of the decisions. Not the game random generator: the
+	 * robot decides on one client only.
+	 */
+	private final Random         random;
 
 	private FileWriter           logger;
 	private static final boolean logging          = false;
 
-	public SimpleRobot(GameCoreHandler gameCoreHandler, int index, PlayerModel playerModel) {
+	public SimpleRobot(GameCoreHandler gameCoreHandler, int index, PlayerModel playerModel, long seed) {
 		this.gameCoreHandler = gameCoreHandler;
 		this.index = index;
 		this.playerModel = playerModel;
+		random = new Random(seed);
 
 		reverseDisease = new boolean[25];
 
@@ -83,7 +89,7 @@ public class SimpleRobot implements IRobot {
 	public String getNextAction() {
 
 		iteration++;
-		reverseDisease[iteration % reverseDisease.length] = playerModel.getOwnedDiseases().containsKey(Diseases.REVERSE);
+		reverseDisease[iteration % reverseDisease.length] = playerModel.hasDisease(Diseases.REVERSE);
 
 		if (iteration < FIRST_MOVE_DELAY) {
 			return "";
@@ -392,7 +398,7 @@ public class SimpleRobot implements IRobot {
 
 	private boolean isReverseDisease() {
 		boolean actualReverse = reverseDisease[iteration % reverseDisease.length];
-		if (actualReverse && MathHelper.randomInt(100) > 10) {
+		if (actualReverse && random.nextInt(101) > 10) {
 			return reverseDisease[(iteration + 1) % reverseDisease.length];
 		}
 
@@ -405,7 +411,7 @@ public class SimpleRobot implements IRobot {
 	private String getKey(AStarNode source, AStarNode target) {
 		if (source.x == target.x) {
 			if (source.y == target.y) {
-				return Integer.valueOf(MathHelper.randomInt(5)).toString();
+				return Integer.valueOf(random.nextInt(6)).toString();
 			} else if (source.y < target.y) {
 				return isReverseDisease() ? "0" : "1";
 			} else {
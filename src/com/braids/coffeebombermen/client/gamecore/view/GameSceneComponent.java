@@ -30,17 +30,19 @@ import com.braids.coffeebombermen.options.Diseases;
 import com.braids.coffeebombermen.options.OptionsChangeListener;
 import com.braids.coffeebombermen.options.OptionsManager;
 import com.braids.coffeebombermen.options.OptConsts.Items;
+import com.braids.coffeebombermen.options.OptConsts.PlayerControlKeys;
 import com.braids.coffeebombermen.options.OptConsts.Walls;
 import com.braids.coffeebombermen.options.model.ClientOptions;
 import com.braids.coffeebombermen.options.model.PublicClientOptions;
+import com.braids.coffeebombermen.utils.IterationFrame;
 
 /**
  * This is the game scene. Game will be displayed on this component.
  */
 public class GameSceneComponent extends JComponent implements KeyListener, OptionsChangeListener<ClientOptions> {
 
-	/** A string containing only a space. Used several times on keyboard events. */
-	private static final String                 SPACE_STRING           = " ";
+	/** Cached values of the control keys. Used several times on keyboard events. */
+	private static final PlayerControlKeys[]    PLAYER_CONTROL_KEYS    = PlayerControlKeys.values();
 
 	private static final Color                  PLAYER_GFX_FLASH_1     = Color.WHITE;
 	private static final Color                  PLAYER_GFX_FLASH_2     = Color.BLACK;
@@ -78,9 +80,10 @@ public class GameSceneComponent extends JComponent implements KeyListener, Optio
 	private GameCoreHandler                     gameCoreHandler;
 	/**
 	 * The sequence of actions made by the users on this component required for
-	 * the game.
+	 * the game. Accessed by the event dispatching thread and the client, so
+	 * access must be synchronized on it.
 	 */
-	private String                              actions;
+	private final IterationFrame                actions                = new IterationFrame(IterationFrame.READY_FOR_NEXT_ITERATION_MARKER);
 
 	// Working parameters:
 	/** Displayable size of the level components. */
@@ -135,6 +138,7 @@ public class GameSceneComponent extends JComponent implements KeyListener, Optio
 		playersControlKeyStates = new boolean[0][playersControlKeys[0].length];
 		// The 2nd dimension could be 0 size as well, but this is the proper
 		// solution.
+		clearActions();
 
 		this.clientOptionsManager.registerOptionsChangeListener(this);
 
@@ -184,7 +188,7 @@ public class GameSceneComponent extends JComponent implements KeyListener, Optio
 					if (playerModel.hasDisease(Diseases.FOG_OF_WAR)) {
 						fogOfWar = true;
 					}
-					if (playerModel.getOwnedDiseases().containsKey(Diseases.COLOR_BLIND)) {
+					if (playerModel.hasDisease(Diseases.COLOR_BLIND)) {
 						colorBlind = true;
 					}
 				}
@@ -462,18 +466,7 @@ public class GameSceneComponent extends JComponent implements KeyListener, Optio
 	}
 
 	private boolean hasActualDetonation() {
-		LevelModel levelModel = gameCoreHandler.getLevelModel();
-
-		for (int i = 0, y = 0; i < levelModel.getHeight(); i++, y += levelComponentSize) {
-			for (int j = 0, x = 0; j < levelModel.getWidth(); j++, x += levelComponentSize) {
-
-				if (levelModel.getComponent(j, i).hasFire()) {
-					return true;
-				}
-			}
-		}
-
-		return false;
+		return gameCoreHandler.getLevel().hasFire();
 	}
 
 	/**
@@ -637,7 +630,7 @@ public class GameSceneComponent extends JComponent implements KeyListener, Optio
 			PlayerModel ownerPlayer = bombModel.getOwnerPlayer();
 			Color color;
 			if (ownerPlayer != null) {
-				color = bombModel.getOwnerPlayer().getColor().value;
+				color = bombModel.getOwnerPlayer().getColor().getValue();
 			} else {
 				color = Color.BLACK;
 			}
@@ -710,7 +703,7 @@ public class GameSceneComponent extends JComponent implements KeyListener, Optio
 				continue;
 			}
 
-			Color effectivePlayerColor = playerModel.getColor().value;
+			Color effectivePlayerColor = playerModel.getColor().getValue();
 
 			if (colorBlind) {
 				effectivePlayerColor = PLAYER_GFX_COLOR_BLIND;
@@ -744,7 +737,7 @@ public class GameSceneComponent extends JComponent implements KeyListener, Optio
 
 				graphics.setColor(Color.BLACK);
 				graphics.drawString(playerName, stringPosX, stringPosY);
-				graphics.setColor(playerModel.getColor().value);
+				graphics.setColor(playerModel.getColor().getValue());
 				graphics.drawString(playerName, stringPosX - 1, stringPosY - 1);
 			}
 			if (clientOptions.showBombermenLives) {
@@ -811,15 +804,25 @@ public class GameSceneComponent extends JComponent implements KeyListener, Optio
 	}
 
 	/**
-	 * Returns and clears before that the new actions since the last call of
-	 * this method.
+	 * Adds the new actions since the last call of this method to an iteration
+	 * frame, and clears them.
 	 * 
-	 * @return the new actions since the last call of this method.
+	 * @param frame
+	 *            frame to add the new actions to (to its last section)
 	 */
-	public String getAndClearNewActions() {
-		final String actions_ = actions;
-		actions = "";
-		return actions_;
+	public void getAndClearNewActions(final IterationFrame frame) {
+		synchronized (actions) {
+			frame.addActionsOf(actions);
+			clearActions();
+		}
+	}
+
+	/**
+	 * Clears the new actions. Must be called holding the lock of actions.
+	 */
+	private void clearActions() {
+		actions.clear(0);
+		actions.beginSection(0);
 	}
 
 	/**
@@ -853,10 +856,9 @@ public class GameSceneComponent extends JComponent implements KeyListener, Optio
 			for (int j = 0; j < playersControlKeys[i].length; j++) {
 				if ((keyCode == playersControlKeys[i][j]) && (playersControlKeyStates[i][j] == false)) {
 					playersControlKeyStates[i][j] = true;
-					if (actions.length() > 0) {
-						actions += SPACE_STRING;
+					synchronized (actions) {
+						actions.addAction(i, PLAYER_CONTROL_KEYS[j], true);
 					}
-					actions += i + SPACE_STRING + j + SPACE_STRING + 'p';
 				}
 			}
 		}
@@ -883,10 +885,9 @@ public class GameSceneComponent extends JComponent implements KeyListener, Optio
 			for (int j = 0; j < playersControlKeys[i].length; j++) {
 				if ((keyCode == playersControlKeys[i][j]) && (playersControlKeyStates[i][j] == true)) {
 					playersControlKeyStates[i][j] = false;
-					if (actions.length() > 0) {
-						actions += SPACE_STRING;
+					synchronized (actions) {
+						actions.addAction(i, PLAYER_CONTROL_KEYS[j], false);
 					}
-					actions += i + SPACE_STRING + j + SPACE_STRING + 'r';
 				}
 			}
 		}
@@ -923,7 +924,9 @@ public class GameSceneComponent extends JComponent implements KeyListener, Optio
 		// Number of players from host cannot (must not) be change during a
 		// game, but can be changed between games.
 		playersControlKeyStates = new boolean[playersFromHost][playersControlKeys[0].length];
-		actions = "";
+		synchronized (actions) {
+			clearActions();
+		}
 		mVisibility = null;
 	}
 
@@ -932,7 +935,7 @@ public class GameSceneComponent extends JComponent implements KeyListener, Optio
 		PlayerModel ownerPlayer = fireModel.getOwnerPlayer();
 		Color color;
 		if (ownerPlayer != null) {
-			color = fireModel.getOwnerPlayer().getColor().value;
+			color = fireModel.getOwnerPlayer().getColor().getValue();
 		} else {
 			color = Color.BLACK;
 		}
@@ -1,5 +1,7 @@
 package com.braids.coffeebombermen.client.shrink;
 
+import java.io.IOException;
+
 import com.braids.coffeebombermen.client.gamecore.BombPhases;
 import com.braids.coffeebombermen.client.gamecore.BombTypes;
 import com.braids.coffeebombermen.client.gamecore.CoreConsts;
@@ -11,6 +13,8 @@ import com.braids.coffeebombermen.client.gamecore.control.GameCoreHandler;
 import com.braids.coffeebombermen.client.gamecore.control.Level;
 import com.braids.coffeebombermen.client.gamecore.model.BombModel;
 import com.braids.coffeebombermen.client.gamecore.model.FireModel;
+import com.braids.coffeebombermen.client.gamecore.model.StateInput;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
 import com.braids.coffeebombermen.client.gamecore.model.level.LevelComponent;
 import com.braids.coffeebombermen.client.gamecore.model.level.LevelModel;
 import com.braids.coffeebombermen.options.OptConsts.Items;
@@ -36,6 +40,16 @@ public abstract class AbstractShrinkPerformer implements ShrinkPerformer {
 		nextIterationImpl();
 	}
 
+	public void writeState(StateOutput output) {
+		output.writeLong(lastShrinkOperationAt);
+		writeStateImpl(output);
+	}
+
+	public void readState(StateInput input) throws IOException {
+		lastShrinkOperationAt = input.readLong();
+		readStateImpl(input);
+	}
+
 	protected void setLastShrinkOperationAt() {
 		lastShrinkOperationAt = getTick();
 	}
@@ -85,6 +99,10 @@ public abstract class AbstractShrinkPerformer implements ShrinkPerformer {
 
 	protected abstract void initNextRoundImpl();
 
+	protected abstract void writeStateImpl(StateOutput output);
+
+	protected abstract void readStateImpl(StateInput input) throws IOException;
+
 	protected void addDeathWall(int x, int y) {
 		addWall(x, y, Walls.DEATH);
 	}
@@ -198,7 +216,7 @@ public abstract class AbstractShrinkPerformer implements ShrinkPerformer {
 
 	protected void addFire(int x, int y, FireShapes shape) {
 		GameCoreHandler gch = getGameCoreHandler();
-		final Fire fire = new Fire(x, y, gch);
+		final Fire fire = gch.getFirePool().obtain(x, y);
 		final FireModel fireModel = fire.getModel();
 		fireModel.setIterationCounter(Integer.MIN_VALUE);
 		fireModel.setShape(shape);
@@ -1,9 +1,12 @@
 package com.braids.coffeebombermen.client.shrink;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 import com.braids.coffeebombermen.client.gamecore.FireShapes;
 import com.braids.coffeebombermen.client.gamecore.control.GameCoreHandler;
+import com.braids.coffeebombermen.client.gamecore.model.StateInput;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
 import com.braids.coffeebombermen.client.gamecore.model.level.LevelComponent;
 import com.braids.coffeebombermen.options.Shrinkers;
 import com.braids.coffeebombermen.options.OptConsts.Walls;
@@ -26,6 +29,23 @@ public class ArmageddonShrinkPerformer extends AbstractShrinkPerformer {
 		lstOpen = new ArrayList<Position>();
 	}
 
+	protected void writeStateImpl(StateOutput output) {
+		output.writeInt(lstOpen == null ? 0 : lstOpen.size());
+		if (lstOpen != null) {
+			for (Position p : lstOpen) {
+				output.writeInt(p.getX());
+				output.writeInt(p.getY());
+			}
+		}
+	}
+
+	protected void readStateImpl(StateInput input) throws IOException {
+		lstOpen = new ArrayList<Position>();
+		for (int i = input.readCount(); i > 0; i--) {
+			lstOpen.add(new Position(input.readInt(), input.readInt()));
+		}
+	}
+
 	protected void nextIterationImpl() {
 		if (isTimeToShrink()) {
 			if (isTimeToFirstShrink()) {
@@ -1,9 +1,12 @@
 package com.braids.coffeebombermen.client.shrink;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedList;
 
 import com.braids.coffeebombermen.client.gamecore.control.GameCoreHandler;
+import com.braids.coffeebombermen.client.gamecore.model.StateInput;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
 import com.braids.coffeebombermen.options.Shrinkers;
 import com.braids.coffeebombermen.utils.MathHelper;
 
@@ -25,6 +28,25 @@ public class BinaryShrinkPerformer extends AbstractShrinkPerformer {
 		lstArea = new LinkedList<Area>();
 	}
 
+	protected void writeStateImpl(StateOutput output) {
+		output.writeInt(lstArea == null ? 0 : lstArea.size());
+		if (lstArea != null) {
+			for (Area a : lstArea) {
+				output.writeInt(a.x);
+				output.writeInt(a.y);
+				output.writeInt(a.width);
+				output.writeInt(a.height);
+			}
+		}
+	}
+
+	protected void readStateImpl(StateInput input) throws IOException {
+		lstArea = new LinkedList<Area>();
+		for (int i = input.readCount(); i > 0; i--) {
+			lstArea.add(new Area(input.readInt(), input.readInt(), input.readInt(), input.readInt()));
+		}
+	}
+
 	protected void nextIterationImpl() {
 		if (isTimeToShrink()) {
 			if (isTimeToFirstShrink() || isTimeToNextShrink(getGlobalServerOptions().getGameCycleFrequency() * GAME_CYCLE_FREQUENCY_MULTIPLIER)) {
@@ -1,9 +1,12 @@
 package com.braids.coffeebombermen.client.shrink;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedList;
 
 import com.braids.coffeebombermen.client.gamecore.control.GameCoreHandler;
+import com.braids.coffeebombermen.client.gamecore.model.StateInput;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
 import com.braids.coffeebombermen.options.Shrinkers;
 import com.braids.coffeebombermen.utils.MathHelper;
 
@@ -28,6 +31,38 @@ public class BinaryWalkingShrinkPerformer extends AbstractShrinkPerformer {
 		lstWalkingLine = new LinkedList<WalkingLine>();
 	}
 
+	protected void writeStateImpl(StateOutput output) {
+		output.writeInt(lstArea == null ? 0 : lstArea.size());
+		if (lstArea != null) {
+			for (Area a : lstArea) {
+				output.writeInt(a.x);
+				output.writeInt(a.y);
+				output.writeInt(a.width);
+				output.writeInt(a.height);
+			}
+		}
+		output.writeInt(lstWalkingLine == null ? 0 : lstWalkingLine.size());
+		if (lstWalkingLine != null) {
+			for (WalkingLine line : lstWalkingLine) {
+				output.writeInt(line.x);
+				output.writeInt(line.y);
+				output.writeInt(line.size);
+				output.writeBoolean(line.horizontal);
+			}
+		}
+	}
+
+	protected void readStateImpl(StateInput input) throws IOException {
+		lstArea = new LinkedList<Area>();
+		for (int i = input.readCount(); i > 0; i--) {
+			lstArea.add(new Area(input.readInt(), input.readInt(), input.readInt(), input.readInt()));
+		}
+		lstWalkingLine = new LinkedList<WalkingLine>();
+		for (int i = input.readCount(); i > 0; i--) {
+			lstWalkingLine.add(new WalkingLine(input.readInt(), input.readInt(), input.readInt(), input.readBoolean()));
+		}
+	}
+
 	protected void nextIterationImpl() {
 		if (isTimeToShrink()) {
 			if ((getTick() % WALKING_SPEED_DIVIDER) == 0) {
@@ -1,10 +1,13 @@
 package com.braids.coffeebombermen.client.shrink;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import com.braids.coffeebombermen.client.gamecore.Directions;
 import com.braids.coffeebombermen.client.gamecore.control.GameCoreHandler;
+import com.braids.coffeebombermen.client.gamecore.model.StateInput;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
 import com.braids.coffeebombermen.client.gamecore.model.level.LevelModel;
 import com.braids.coffeebombermen.options.Shrinkers;
 import com.braids.coffeebombermen.options.OptConsts.Walls;
@@ -36,6 +39,34 @@ public class BombShrinkPerformer extends AbstractShrinkPerformer {
 		preSpeedupWarn = 0;
 	}
 
+	protected void writeStateImpl(StateOutput output) {
+		output.writeFloat(numberOfBombs);
+		output.writeInt(maxRange);
+		output.writeInt(preSpeedupWarn);
+		output.writeInt(lstBombsToAppear == null ? 0 : lstBombsToAppear.size());
+		if (lstBombsToAppear != null) {
+			for (NewBombSlot slot : lstBombsToAppear) {
+				output.writeInt(slot.x);
+				output.writeInt(slot.y);
+				output.writeEnum(slot.direction);
+			}
+		}
+	}
+
+	protected void readStateImpl(StateInput input) throws IOException {
+		numberOfBombs = input.readFloat();
+		maxRange = input.readInt();
+		preSpeedupWarn = input.readInt();
+		lstBombsToAppear = new ArrayList<NewBombSlot>();
+		for (int i = input.readCount(); i > 0; i--) {
+			NewBombSlot slot = new NewBombSlot();
+			slot.x = input.readInt();
+			slot.y = input.readInt();
+			slot.direction = input.readEnum(Directions.values());
+			lstBombsToAppear.add(slot);
+		}
+	}
+
 	protected void nextIterationImpl() {
 		if (isTimeToShrink()) {
 
@@ -1,9 +1,12 @@
 package com.braids.coffeebombermen.client.shrink;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 import com.braids.coffeebombermen.client.gamecore.FireShapes;
 import com.braids.coffeebombermen.client.gamecore.control.GameCoreHandler;
+import com.braids.coffeebombermen.client.gamecore.model.StateInput;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
 import com.braids.coffeebombermen.options.Shrinkers;
 import com.braids.coffeebombermen.utils.Position;
 
@@ -24,6 +27,27 @@ public class BouncingFireShrinkPerformer extends AbstractShrinkPerformer {
 		lstSlot = new ArrayList<Slot>();
 	}
 
+	protected void writeStateImpl(StateOutput output) {
+		output.writeInt(nextWallLatency);
+		output.writeInt(lstSlot == null ? 0 : lstSlot.size());
+		if (lstSlot != null) {
+			for (Slot s : lstSlot) {
+				output.writeInt(s.xMove);
+				output.writeInt(s.yMove);
+				output.writeInt(s.position.getX());
+				output.writeInt(s.position.getY());
+			}
+		}
+	}
+
+	protected void readStateImpl(StateInput input) throws IOException {
+		nextWallLatency = input.readInt();
+		lstSlot = new ArrayList<Slot>();
+		for (int i = input.readCount(); i > 0; i--) {
+			lstSlot.add(new Slot(input.readInt(), input.readInt(), new Position(input.readInt(), input.readInt())));
+		}
+	}
+
 	protected void nextIterationImpl() {
 		if (isTimeToShrink()) {
 			if (isTimeToFirstShrink() || isTimeToNextShrink(getGlobalServerOptions().getGameCycleFrequency())) {
@@ -56,6 +80,12 @@ public class BouncingFireShrinkPerformer extends AbstractShrinkPerformer {
 		private int      yMove;
 		private Position position;
 
+		private Slot(int xMove, int yMove, Position position) {
+			this.xMove = xMove;
+			this.yMove = yMove;
+			this.position = position;
+		}
+
 		private Slot(int index) {
 			this.position = new Position(1 + index % (BouncingFireShrinkPerformer.this.getWidth() - 2), 1);
 			this.xMove = 1;
@@ -1,6 +1,10 @@
 package com.braids.coffeebombermen.client.shrink;
 
+import java.io.IOException;
+
 import com.braids.coffeebombermen.client.gamecore.control.GameCoreHandler;
+import com.braids.coffeebombermen.client.gamecore.model.StateInput;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
 import com.braids.coffeebombermen.options.Shrinkers;
 import com.braids.coffeebombermen.options.OptConsts.Walls;
 import com.braids.coffeebombermen.options.model.ServerOptions;
@@ -54,6 +58,32 @@ public class DefaultShrinkPerformer extends AbstractShrinkPerformer {
 		preSpeedupWarn = -1;
 	}
 
+	protected void writeStateImpl(StateOutput output) {
+		output.writeEnum(lastShrinkDirection);
+		output.writeInt(lastNewWallX);
+		output.writeInt(lastNewWallY);
+		output.writeInt(shrinkMinX);
+		output.writeInt(shrinkMinY);
+		output.writeInt(shrinkMaxX);
+		output.writeInt(shrinkMaxY);
+		output.writeEnum(shrinkType);
+		output.writeInt(speedupSteps);
+		output.writeInt(preSpeedupWarn);
+	}
+
+	protected void readStateImpl(StateInput input) throws IOException {
+		lastShrinkDirection = input.readEnum(ShrinkDirection.values());
+		lastNewWallX = input.readInt();
+		lastNewWallY = input.readInt();
+		shrinkMinX = input.readInt();
+		shrinkMinY = input.readInt();
+		shrinkMaxX = input.readInt();
+		shrinkMaxY = input.readInt();
+		shrinkType = input.readEnum(ShrinkType.values());
+		speedupSteps = input.readInt();
+		preSpeedupWarn = input.readInt();
+	}
+
 	protected void nextIterationImpl() {
 		ServerOptions gso = getGlobalServerOptions();
 		// return getTick() > gso.roundTimeLimit * gso.gameCycleFrequency;
@@ -1,5 +1,6 @@
 package com.braids.coffeebombermen.client.shrink;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -9,6 +10,8 @@ import com.braids.coffeebombermen.client.gamecore.control.Fire;
 import com.braids.coffeebombermen.client.gamecore.control.GameCoreHandler;
 import com.braids.coffeebombermen.client.gamecore.model.FireModel;
 import com.braids.coffeebombermen.client.gamecore.model.PlayerModel;
+import com.braids.coffeebombermen.client.gamecore.model.StateInput;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
 import com.braids.coffeebombermen.options.OptConsts.Walls;
 import com.braids.coffeebombermen.options.model.ServerOptions;
 import com.braids.coffeebombermen.options.Shrinkers;
@@ -32,6 +35,24 @@ public class DrawWallShrinkPerformer extends AbstractShrinkPerformer {
 		lstSimpleWall = new ArrayList<SimpleWallSlot>();
 	}
 
+	protected void writeStateImpl(StateOutput output) {
+		output.writeInt(lstSimpleWall == null ? 0 : lstSimpleWall.size());
+		if (lstSimpleWall != null) {
+			for (SimpleWallSlot s : lstSimpleWall) {
+				output.writeInt(s.p.getX());
+				output.writeInt(s.p.getY());
+				output.writeLong(s.tick);
+			}
+		}
+	}
+
+	protected void readStateImpl(StateInput input) throws IOException {
+		lstSimpleWall = new ArrayList<SimpleWallSlot>();
+		for (int i = input.readCount(); i > 0; i--) {
+			lstSimpleWall.add(new SimpleWallSlot(new Position(input.readInt(), input.readInt()), input.readLong()));
+		}
+	}
+
 	protected void nextIterationImpl() {
 		if (isTimeToShrink()) {
 			GameCoreHandler gch = getGameCoreHandler();
@@ -48,7 +69,7 @@ public class DrawWallShrinkPerformer extends AbstractShrinkPerformer {
 								concrateWallFound = true;
 							}
 						} else if (Walls.BRICK.equals(wall)) {
-							final Fire fire = new Fire(x, y, gch);
+							final Fire fire = gch.getFirePool().obtain(x, y);
 							final FireModel fireModel = fire.getModel();
 
 							fireModel.setShape(FireShapes.CROSSING);
@@ -1,7 +1,11 @@
 package com.braids.coffeebombermen.client.shrink;
 
+import java.io.IOException;
+
 import com.braids.coffeebombermen.client.gamecore.control.GameCoreHandler;
 import com.braids.coffeebombermen.client.gamecore.control.Player;
+import com.braids.coffeebombermen.client.gamecore.model.StateInput;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
 import com.braids.coffeebombermen.options.Shrinkers;
 import com.braids.coffeebombermen.options.OptConsts.Items;
 
@@ -21,13 +25,21 @@ public class ExplodeOnHitShrinkPerformer extends AbstractShrinkPerformer {
 		started = false;
 	}
 
+	protected void writeStateImpl(StateOutput output) {
+		output.writeBoolean(started);
+	}
+
+	protected void readStateImpl(StateInput input) throws IOException {
+		started = input.readBoolean();
+	}
+
 	protected void nextIterationImpl() {
 		if (isTimeToShrink() && !started) {
 			started = true;
 			for (Player player : getGameCoreHandler().getPlayers().get(getGameCoreHandler().getOurClientIndex())) {
 				player.setDetonatingOnHit(true);
 				player.setExplodingTimeMultiplier(10);
-				player.getModel().accumulateableItemQuantitiesMap.put(Items.BOMB, 25);
+				player.getModel().setAccumItemQuantity(Items.BOMB, 25);
 			}
 		}
 	}
@@ -1,11 +1,14 @@
 package com.braids.coffeebombermen.client.shrink;
 
+import java.io.IOException;
 import java.util.List;
 
+import com.braids.coffeebombermen.client.gamecore.GameSounds;
 import com.braids.coffeebombermen.client.gamecore.control.GameCoreHandler;
 import com.braids.coffeebombermen.client.gamecore.model.PlayerModel;
+import com.braids.coffeebombermen.client.gamecore.model.StateInput;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
 import com.braids.coffeebombermen.client.gamecore.model.level.LevelModel;
-import com.braids.coffeebombermen.client.sound.SoundEffect;
 import com.braids.coffeebombermen.options.Shrinkers;
 import com.braids.coffeebombermen.options.OptConsts.Walls;
 import com.braids.coffeebombermen.options.model.ServerOptions;
@@ -43,6 +46,22 @@ public class MassKillShrinkPerformer extends AbstractShrinkPerformer {
 		survivorY = -1;
 	}
 
+	protected void writeStateImpl(StateOutput output) {
+		output.writeBoolean(preWarning);
+		output.writeBoolean(firstTimeMassKill);
+		output.writeInt(survivingPossibility);
+		output.writeInt(survivorX);
+		output.writeInt(survivorY);
+	}
+
+	protected void readStateImpl(StateInput input) throws IOException {
+		preWarning = input.readBoolean();
+		firstTimeMassKill = input.readBoolean();
+		survivingPossibility = input.readInt();
+		survivorX = input.readInt();
+		survivorY = input.readInt();
+	}
+
 	protected void nextIterationImpl() {
 		if (isTimeToShrink()) {
 			if (isTimeToFirstShrink()) {
@@ -75,7 +94,7 @@ public class MassKillShrinkPerformer extends AbstractShrinkPerformer {
 			} else if (isTimeToNextShrink(getGlobalServerOptions().getGameCycleFrequency() / GAME_CYCLE_FREQUENCY_MULTIPLIER)) {
 				Walls wall;
 				if (preWarning) {
-					SoundEffect.DEATH_WALL.play();
+					getGameCoreHandler().getGameEventListener().playSound(GameSounds.DEATH_WALL);
 					wall = Walls.DEATH_WARN;
 				} else {
 					wall = Walls.DEATH;
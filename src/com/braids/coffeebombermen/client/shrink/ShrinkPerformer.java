@@ -1,5 +1,9 @@
 package com.braids.coffeebombermen.client.shrink;
 
+import java.io.IOException;
+
+import com.braids.coffeebombermen.client.gamecore.model.StateInput;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
 import com.braids.coffeebombermen.options.Shrinkers;
 
 public interface ShrinkPerformer {
@@ -9,4 +13,22 @@ public interface ShrinkPerformer {
 	void initNextRound();
 
 	void nextIteration();
+
+	/**
+	 * Writes the state of the shrink performer to a saved game state.
+	 * 
+	 * @param output
+	 *            output of the game state
+	 */
+	void writeState(StateOutput output);
+
+	/**
+	 * Reads the state of the shrink performer written by writeState().
+	 * 
+	 * @param input
+	 *            input of the game state
+	 * @throws IOException
+	 *             if the game state is malformed
+	 */
+	void readState(StateInput input) throws IOException;
 }
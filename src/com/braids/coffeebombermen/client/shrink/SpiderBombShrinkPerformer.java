@@ -1,6 +1,10 @@
 package com.braids.coffeebombermen.client.shrink;
 
+import java.io.IOException;
+
 import com.braids.coffeebombermen.client.gamecore.control.GameCoreHandler;
+import com.braids.coffeebombermen.client.gamecore.model.StateInput;
+import com.braids.coffeebombermen.client.gamecore.model.StateOutput;
 import com.braids.coffeebombermen.options.OptConsts.Items;
 import com.braids.coffeebombermen.options.Shrinkers;
 import com.braids.coffeebombermen.utils.MathHelper;
@@ -23,6 +27,14 @@ public class SpiderBombShrinkPerformer extends AbstractShrinkPerformer {
 		chance = PLACE_SPIDER_CHANCE;
 	}
 
+	protected void writeStateImpl(StateOutput output) {
+		output.writeFloat(chance);
+	}
+
+	protected void readStateImpl(StateInput input) throws IOException {
+		chance = input.readFloat();
+	}
+
 	protected void nextIterationImpl() {
 		if (isTimeToShrink()) {
 			if (isTimeToFirstShrink() || isTimeToNextShrink(getGlobalServerOptions().getGameCycleFrequency() * GAME_CYCLE_FREQUENCY_MULTIPLIER)) {
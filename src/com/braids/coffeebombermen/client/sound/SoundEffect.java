@@ -71,7 +71,7 @@ public enum SoundEffect {
 
 	// Play or Re-play the sound effect from the beginning, by rewinding.
 	public void play() {
-		if (!SoundManager.isEnableSounds()) {
+		if (!SoundManager.isEnableSounds() || SoundManager.isMuted()) {
 			return;
 		}
 		if (!allowParalell && (lastPlayTime + MIN_LATENCY > System.nanoTime())) {
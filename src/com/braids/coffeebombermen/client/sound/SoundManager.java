@@ -12,8 +12,13 @@ import com.braids.coffeebombermen.utils.GeneralUtilities;
  */
 public class SoundManager {
 
-	private static boolean         enableSounds = true;
-	private static ExecutorService exSounds     = Executors.newCachedThreadPool();
+	private static boolean          enableSounds = true;
+	/**
+	 * Tells whether the sounds are muted temporarily (for example while
+	 * iterations are simulated again after a rollback).
+	 */
+	private static volatile boolean muted;
+	private static ExecutorService  exSounds     = Executors.newCachedThreadPool();
 
 	/**
 	 * This private SoundManager constructor disables the creation of instances.
@@ -43,6 +48,14 @@ public class SoundManager {
 		return enableSounds;
 	}
 
+	public static void setMuted(boolean muted) {
+		SoundManager.muted = muted;
+	}
+
+	public static boolean isMuted() {
+		return muted;
+	}
+
 	public static void sound() {
 
 	}
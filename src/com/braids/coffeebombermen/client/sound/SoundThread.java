@@ -2,6 +2,8 @@ package com.braids.coffeebombermen.client.sound;
 
 import java.util.concurrent.LinkedBlockingQueue;
 
+import com.braids.coffeebombermen.utils.ControlledThread;
+
 public class SoundThread implements Runnable {
 
 	private static SoundThread               singleton;
@@ -11,8 +13,7 @@ public class SoundThread implements Runnable {
 	public SoundThread() {
 		queue = new LinkedBlockingQueue<SoundEffect>();
 
-		Thread thSound = new Thread(this);
-		thSound.setDaemon(true);
+		Thread thSound = ControlledThread.newThread(this, "Sound", true);
 		thSound.start();
 	}
 
@@ -181,7 +181,7 @@ public class ClientComponentOptions extends ComponentOptions<ClientOptions> impl
 			        final boolean cellHasFocus) {
 				final Component component = super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
 				if (component instanceof JLabel) {
-					((JLabel) component).setIcon(new ColorIcon(((PlayerColors) value).value));
+					((JLabel) component).setIcon(new ColorIcon(((PlayerColors) value).getValue()));
 				}
 				return component;
 			}
@@ -219,6 +219,7 @@ public class ClientComponentOptions extends ComponentOptions<ClientOptions> impl
 		box = Box.createVerticalBox();
 		panel = new JPanel();
 		panel.add(new JLabel("Server URL:"));
+		serverURL_c.setToolTipText("host or host/room to join a room of a multi-room server");
 		panel.add(serverURL_c);
 		box.add(panel);
 		panel = new JPanel();
@@ -24,68 +24,95 @@ public class OptConsts {
 	/** The available player colors in the game. */
 	public enum PlayerColors {
 		/** The Black player color. */
-		BLACK("Black", new Color(0, 0, 0)),
+		BLACK("Black", 0, 0, 0),
 		/** The Navy player color. */
-		NAVY("Navy", new Color(0, 0, 128)),
+		NAVY("Navy", 0, 0, 128),
 		/** The Blue player color. */
-		BLUE("Blue", new Color(0, 0, 255)),
+		BLUE("Blue", 0, 0, 255),
 		/** The Royal Blue player color. */
-		ROLAY_BLUE("Royal Blue", new Color(65, 105, 225)),
+		ROLAY_BLUE("Royal Blue", 65, 105, 225),
 		/** The Teal player color. */
-		TEAL("Teal", new Color(0, 128, 128)),
+		TEAL("Teal", 0, 128, 128),
 		/** The Cyan/Aqua player color. */
-		CYAN("Cyan/Aqua", new Color(0, 255, 255)),
+		CYAN("Cyan/Aqua", 0, 255, 255),
 		/** The Lime player color. */
-		LIME("Lime", new Color(0, 255, 0)),
+		LIME("Lime", 0, 255, 0),
 		/** The Green player color. */
-		GREEN("Green", new Color(0, 128, 0)),
+		GREEN("Green", 0, 128, 0),
 		/** The Red player color. */
-		RED("Red", new Color(255, 0, 0)),
+		RED("Red", 255, 0, 0),
 		/** The Tomato player color. */
-		TOMATO("Tomato", new Color(255, 99, 71)),
+		TOMATO("Tomato", 255, 99, 71),
 		/** The Maroon player color. */
-		MAROON("Maroon", new Color(128, 0, 0)),
+		MAROON("Maroon", 128, 0, 0),
 		/** The Brown player color. */
-		BROWN("Brown", new Color(165, 42, 42)),
+		BROWN("Brown", 165, 42, 42),
 		/** The Purple player color. */
-		PURPLE("Purple", new Color(128, 0, 128)),
+		PURPLE("Purple", 128, 0, 128),
 		/** The Fuchsia player color. */
-		MAGENTA("Magenta/Fuchsia", new Color(255, 0, 255)),
+		MAGENTA("Magenta/Fuchsia", 255, 0, 255),
 		/** The Violet player color. */
-		VIOLET("Violet", new Color(233, 130, 233)),
+		VIOLET("Violet", 233, 130, 233),
 		/** The Pink player color. */
-		PINK("Pink", new Color(255, 192, 203)),
+		PINK("Pink", 255, 192, 203),
 		/** The Olive player color. */
-		OLIVE("Olive", new Color(128, 128, 0)),
+		OLIVE("Olive", 128, 128, 0),
 		/** The Orange player color. */
-		ORANGE("Orange", new Color(255, 165, 0)),
+		ORANGE("Orange", 255, 165, 0),
 		/** The Gold player color. */
-		GOLD("Gold", new Color(255, 215, 0)),
+		GOLD("Gold", 255, 215, 0),
 		/** The Yellow player color. */
-		YELLOW("Yellow", new Color(255, 255, 0)),
+		YELLOW("Yellow", 255, 255, 0),
 		/** The White player color. */
-		WHITE("White", new Color(255, 255, 255)),
+		WHITE("White", 255, 255, 255),
 		/** The Silver player color. */
-		SILVER("Silver", new Color(192, 192, 192)),
+		SILVER("Silver", 192, 192, 192),
 		/** The Gray player color. */
-		GRAY("Gray", new Color(128, 128, 128));
+		GRAY("Gray", 128, 128, 128);
 
 		/** Name of the player color. */
 		public final String name;
-		/** Value of the player color. */
-		public final Color  value;
+		/** Red component of the player color. */
+		public final int    red;
+		/** Green component of the player color. */
+		public final int    green;
+		/** Blue component of the player color. */
+		public final int    blue;
+		/**
+		 * Value of the player color. Created when first needed, so the
+		 * dedicated server doesn't load AWT.
+		 */
+		private Color       value;
 
 		/**
 		 * Creates a new PlayerColors.
 		 * 
 		 * @param name
 		 *            name of the player color
-		 * @param value
-		 *            value of the player color
+		 * @param red
+		 *            red component of the player color
+		 * @param green
+		 *            green component of the player color
+		 * @param blue
+		 *            blue component of the player color
 		 */
-		private PlayerColors(final String name, final Color value) {
+		private PlayerColors(final String name, final int red, final int green, final int blue) {
 			this.name = name;
-			this.value = value;
+			this.red = red;
+			this.green = green;
+			this.blue = blue;
+		}
+
+		/**
+		 * Returns the value of the player color.
+		 * 
+		 * @return the value of the player color
+		 */
+		public Color getValue() {
+			if (value == null) {
+				value = new Color(red, green, blue);
+			}
+			return value;
 		}
 
 		/**
@@ -419,6 +446,28 @@ public class OptConsts {
 			public String toString() {
 				return "extra high";
 			}
+		},
+		/**
+		 * Adaptive network latency: the server measures the round trip times of
+		 * the clients and adjusts the number of client timed iterations during
+		 * the game.
+		 */
+		ADAPTIVE {
+
+			public String toString() {
+				return "adaptive";
+			}
+		},
+		/**
+		 * Rollback network mode: the clients don't wait for the server, they
+		 * predict the actions of the other clients, and correct the game state
+		 * when the actions arrive from the server.
+		 */
+		ROLLBACK {
+
+			public String toString() {
+				return "rollback";
+			}
 		}
 	}
 
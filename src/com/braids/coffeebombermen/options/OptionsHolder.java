@@ -0,0 +1,88 @@
+package com.braids.coffeebombermen.options;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.braids.coffeebombermen.options.model.Options;
+
+/**
+ * This class holds an options object and the listeners of its changes. It
+ * doesn't depend on any GUI component, so it can be used by the headless
+ * dedicated server; OptionsManager extends it with the options dialog.
+ * 
+ * @param <OptionsType>
+ *            tells what kind of options is held by this holder
+ */
+public class OptionsHolder<OptionsType extends Options<OptionsType>> {
+
+	/** The held options. */
+	private OptionsType                                    options;
+
+	/** Vector of registered options change listeners. */
+	private final List<OptionsChangeListener<OptionsType>> optionsChangeListeners = new ArrayList<OptionsChangeListener<OptionsType>>();
+
+	/**
+	 * Creates a new OptionsHolder.
+	 * 
+	 * @param options
+	 *            the options to be held
+	 */
+	public OptionsHolder(final OptionsType options) {
+		this.options = options;
+	}
+
+	/**
+	 * Returns the held options object.
+	 * 
+	 * @return the held options object
+	 */
+	public OptionsType getOptions() {
+		return options;
+	}
+
+	/**
+	 * Sets the held options object.
+	 * 
+	 * @param options
+	 *            the options object to be held
+	 */
+	public void setOptions(final OptionsType options) {
+		this.options = options;
+	}
+
+	/**
+	 * Registers an options change listener.
+	 * 
+	 * @param optionsChangeListener
+	 *            options change listener to be registered
+	 */
+	public void registerOptionsChangeListener(final OptionsChangeListener<OptionsType> optionsChangeListener) {
+		optionsChangeListeners.add(optionsChangeListener);
+	}
+
+	/**
+	 * Unregisters an options change listener.
+	 * 
+	 * @param optionsChangeListener
+	 *            options change listener to be unregistered
+	 */
+	public void unregisterOptionsChangeListener(final OptionsChangeListener<OptionsType> optionsChangeListener) {
+		optionsChangeListeners.remove(optionsChangeListener);
+	}
+
+	/**
+	 * Notifies the registered listeners that the options may have been
+	 * changed.
+	 * 
+	 * @param oldOptions
+	 *            the old options before the change
+	 * @param newOptions
+	 *            the new options are about to become effective
+	 */
+	protected void fireOptionsChanged(final OptionsType oldOptions, final OptionsType newOptions) {
+		for (final OptionsChangeListener<OptionsType> optionsChangeListener : optionsChangeListeners) {
+			optionsChangeListener.optionsChanged(oldOptions, newOptions);
+		}
+	}
+
+}
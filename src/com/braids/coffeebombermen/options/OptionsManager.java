@@ -3,8 +3,6 @@ package com.braids.coffeebombermen.options;
 import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.ArrayList;
-import java.util.List;
 
 import javax.swing.JButton;
 import javax.swing.JDialog;
@@ -17,12 +15,13 @@ import com.braids.coffeebombermen.utils.GeneralUtilities;
 
 /**
  * This class manages the options belonging together. The manageable component
- * options object must be passed to the constructor.
+ * options object must be passed to the constructor. The options are stored by
+ * the component options, and can be changed in the options dialog.
  * 
  * @param <OptionsType>
  *            tells what kind of options is managed by this manager
  */
-public class OptionsManager<OptionsType extends Options<OptionsType>> implements ActionListener {
+public class OptionsManager<OptionsType extends Options<OptionsType>> extends OptionsHolder<OptionsType> implements ActionListener {
 
 	/** Label of the Ok button. */
 	private static final String                            OK_BUTTON_LABEL               = "Ok";
@@ -44,9 +43,6 @@ public class OptionsManager<OptionsType extends Options<OptionsType>> implements
 	/** Tells whether we just want to view the options but not to modify. */
 	private final boolean                                  viewOnly;
 
-	/** Vector of registered options change listeners. */
-	private final List<OptionsChangeListener<OptionsType>> optionsChangeListeners        = new ArrayList<OptionsChangeListener<OptionsType>>();
-
 	/**
 	 * Creates a new OptionsManager.<br>
 	 * The new options manager will be able to change the options.
@@ -76,6 +72,7 @@ public class OptionsManager<OptionsType extends Options<OptionsType>> implements
 	 *            modify
 	 */
 	public OptionsManager(final ComponentOptions<OptionsType> componentOptions, final String optionsDialogTitle, final JFrame mainFrame, final boolean viewOnly) {
+		super(null); // The options are stored by the component options
 		this.componentOptions = componentOptions;
 		this.optionsDialogTitle = optionsDialogTitle;
 		this.mainFrame = mainFrame;
@@ -144,9 +141,7 @@ public class OptionsManager<OptionsType extends Options<OptionsType>> implements
 			componentOptions.setOptions(componentOptions.getOptionsFromComponents());
 			final OptionsType newOptions = getOptions();
 
-			for (final OptionsChangeListener<OptionsType> optionsChangeListener : optionsChangeListeners) {
-				optionsChangeListener.optionsChanged(oldOptions, newOptions);
-			}
+			fireOptionsChanged(oldOptions, newOptions);
 
 			optionsDialog.dispose();
 		}
@@ -159,24 +154,4 @@ public class OptionsManager<OptionsType extends Options<OptionsType>> implements
 		}
 	}
 
-	/**
-	 * Registers an options change listener.
-	 * 
-	 * @param optionsChangeListener
-	 *            options change listener to be registered
-	 */
-	public void registerOptionsChangeListener(final OptionsChangeListener<OptionsType> optionsChangeListener) {
-		optionsChangeListeners.add(optionsChangeListener);
-	}
-
-	/**
-	 * Unregisters an options change listener.
-	 * 
-	 * @param optionsChangeListener
-	 *            options change listener to be unregistered
-	 */
-	public void unregisterOptionsChangeListener(final OptionsChangeListener<OptionsType> optionsChangeListener) {
-		optionsChangeListeners.remove(optionsChangeListener);
-	}
-
 }
@@ -129,6 +129,12 @@ public class ServerComponentOptions extends ComponentOptions<ServerOptions> {
 	private static final int              MAXIMUM_GAME_CYCLE_FREQUENCY                        = 100;
 	/** Default value of network latency. */
 	private static final NetworkLatencies DEFAULT_NETWORK_LATENCY                             = NetworkLatencies.LOW;
+	/** Minimum value of rollback window option in iterations. */
+	private static final int              MINIMUM_ROLLBACK_WINDOW                             = 1;
+	/** Default value of rollback window option in iterations. */
+	private static final int              DEFAULT_ROLLBACK_WINDOW                             = 8;
+	/** Maximum value of rollback window option in iterations. */
+	private static final int              MAXIMUM_ROLLBACK_WINDOW                             = 30;
 
 	// Port constants are imported from classes.options.Consts!
 
@@ -206,6 +212,9 @@ public class ServerComponentOptions extends ComponentOptions<ServerOptions> {
 	                                                                                                  OptConsts.MAXIMUM_GAME_PORT, 1));
 	/** Component for network latency. */
 	private final JComboBox               networkLatency_c                                    = new JComboBox(NetworkLatencies.values());
+	/** Component for rollback window option. */
+	private final JSpinner                rollbackWindow_c                                    = new JSpinner(new SpinnerNumberModel(DEFAULT_ROLLBACK_WINDOW,
+	                                                                                                  MINIMUM_ROLLBACK_WINDOW, MAXIMUM_ROLLBACK_WINDOW, 1));
 
 	/**
 	 * Level component options to handle the level options of the server options
@@ -403,6 +412,13 @@ public class ServerComponentOptions extends ComponentOptions<ServerOptions> {
 		panel.add(networkLatency_c);
 		box.add(panel);
 		panel = new JPanel();
+		panel.add(createLabel("Rollback window:", componentsEnabled));
+		rollbackWindow_c.setEnabled(componentsEnabled);
+		rollbackWindow_c.setToolTipText("In case of rollback network mode this determines how many iterations the clients may run ahead of the server.");
+		panel.add(rollbackWindow_c);
+		panel.add(createLabel("iterations.", componentsEnabled));
+		box.add(panel);
+		panel = new JPanel();
 		panel.add(box);
 		optionsTabbedPane.addTab("Extra", panel);
 	}
@@ -445,6 +461,7 @@ public class ServerComponentOptions extends ComponentOptions<ServerOptions> {
 		gameCycleFrequency_c.setValue(DEFAULT_GAME_CYCLE_FREQUENCY);
 		gamePort_c.setValue(OptConsts.DEFAULT_GAME_PORT);
 		networkLatency_c.setSelectedItem(DEFAULT_NETWORK_LATENCY);
+		rollbackWindow_c.setValue(DEFAULT_ROLLBACK_WINDOW);
 	}
 
 	/**
@@ -484,6 +501,7 @@ public class ServerComponentOptions extends ComponentOptions<ServerOptions> {
 		serverOptions.setGameCycleFrequency((Integer) gameCycleFrequency_c.getValue());
 		serverOptions.setGamePort((Integer) gamePort_c.getValue());
 		serverOptions.setNetworkLatency((NetworkLatencies) networkLatency_c.getSelectedItem());
+		serverOptions.setRollbackWindow((Integer) rollbackWindow_c.getValue());
 
 		return serverOptions;
 	}
@@ -526,6 +544,7 @@ public class ServerComponentOptions extends ComponentOptions<ServerOptions> {
 		gameCycleFrequency_c.setValue(options.getGameCycleFrequency());
 		gamePort_c.setValue(options.getGamePort());
 		networkLatency_c.setSelectedItem(options.getNetworkLatency());
+		rollbackWindow_c.setValue(options.getRollbackWindow());
 	}
 
 	/**
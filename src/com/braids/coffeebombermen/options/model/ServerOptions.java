@@ -80,6 +80,11 @@ public class ServerOptions extends Options<ServerOptions> {
 	private int              gamePort;
 	/** The network latency. */
 	private NetworkLatencies networkLatency;
+	/**
+	 * The rollback window: the maximum number of iterations a client may run
+	 * ahead of the server in case of rollback network mode.
+	 */
+	private int              rollbackWindow;
 
 	private int              spiderBombOnDeath;
 
@@ -117,6 +122,7 @@ public class ServerOptions extends Options<ServerOptions> {
 		buffer.append(getGameCycleFrequency()).append(GeneralStringTokenizer.GENERAL_SEPARATOR_CHAR);
 		buffer.append(getGamePort()).append(GeneralStringTokenizer.GENERAL_SEPARATOR_CHAR);
 		buffer.append(getNetworkLatency().ordinal()).append(GeneralStringTokenizer.GENERAL_SEPARATOR_CHAR);
+		buffer.append(getRollbackWindow()).append(GeneralStringTokenizer.GENERAL_SEPARATOR_CHAR);
 
 		buffer.append(getLevelOptions().packToString()); // This ends with
 		// GENERAL_SEPARATOR_CHAR
@@ -160,6 +166,7 @@ public class ServerOptions extends Options<ServerOptions> {
 		serverOptions.setGameCycleFrequency(optionsTokenizer.nextIntToken());
 		serverOptions.setGamePort(optionsTokenizer.nextIntToken());
 		serverOptions.setNetworkLatency(NetworkLatencies.values()[optionsTokenizer.nextIntToken()]);
+		serverOptions.setRollbackWindow(optionsTokenizer.nextIntToken());
 
 		serverOptions.setLevelOptions(LevelOptions.parseFromString(optionsTokenizer.remainingString()));
 
@@ -362,6 +369,14 @@ public class ServerOptions extends Options<ServerOptions> {
 		return networkLatency;
 	}
 
+	public void setRollbackWindow(int rollbackWindow) {
+		this.rollbackWindow = rollbackWindow;
+	}
+
+	public int getRollbackWindow() {
+		return rollbackWindow;
+	}
+
 	public int getThrowSpiderOnDeath() {
 		return getSpiderBombOnDeath();
 	}
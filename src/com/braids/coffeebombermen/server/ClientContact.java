@@ -1,7 +1,10 @@
 package com.braids.coffeebombermen.server;
 
+import java.util.LinkedList;
+
 import com.braids.coffeebombermen.options.model.PublicClientOptions;
 import com.braids.coffeebombermen.utils.ConnectionStub;
+import com.braids.coffeebombermen.utils.IterationFrame;
 
 /**
  * Represents a contact with a client. This includes storing the connection stub
@@ -11,17 +14,95 @@ import com.braids.coffeebombermen.utils.ConnectionStub;
  */
 class ClientContact {
 
-	/** The connection stub to the client. */
-	public final ConnectionStub connectionStub;
-	/** The public client options of the cilent. */
-	public PublicClientOptions  publicClientOptions;
 	/**
-	 * Own index of this client at the client machines. We have to store this,
-	 * clients later may be removed when they leave.
+	 * The connection stub to the client (replaced when the client resumes its
+	 * session through a new connection).
 	 */
-	public int                  ownIndex;
+	public ConnectionStub                   connectionStub;
+	/** The public client options of the cilent. */
+	public PublicClientOptions              publicClientOptions;
+	/** Tells whether the client is ready for the next iteration. */
+	public boolean                          readyForNextIteration;
 	/** New, unprocessed client actions. */
-	public String               newClientActions;
+	public final IterationFrame             newClientActions  = new IterationFrame(IterationFrame.READY_FOR_NEXT_ITERATION_MARKER);
+	/**
+	 * Frame receiving a READY_FOR_NEXT_ITERATION frame which arrived while the
+	 * new client actions haven't been broadcasted yet (a late frame), its
+	 * actions are added to the new client actions.
+	 */
+	public final IterationFrame             lateClientActions = new IterationFrame(IterationFrame.READY_FOR_NEXT_ITERATION_MARKER);
+	/** Number of the ready deadlines missed by the client in the game. */
+	public int                              missedDeadlinesCount;
+	/** Number of the successive ready deadlines missed by the client. */
+	public int                              successiveMissedDeadlinesCount;
+	/** The total time the server timed iterations waited for the client in ns. */
+	public long                             stallTime;
+	/**
+	 * Tells whether the client is a ghost: it missed too many successive ready
+	 * deadlines, its players are controlled by robots of another client, and
+	 * the server doesn't wait for it.
+	 */
+	public boolean                          ghost;
+	/** Estimator of the round trip time of the client. */
+	public final RoundTripTimeEstimator     roundTripTime     = new RoundTripTimeEstimator();
+	/**
+	 * Received, not yet broadcasted READY_FOR_NEXT_ITERATION frames in case of
+	 * rollback network mode.
+	 */
+	public final LinkedList<IterationFrame> pendingFrames     = new LinkedList<IterationFrame>();
+	/**
+	 * The minimum time margin (how many iterations the frames arrived before
+	 * they were due) since the last time synchronization.
+	 */
+	public int                              minTimeMargin;
+	/** Number of the time margin samples since the last time synchronization. */
+	public int                              timeMarginSamples;
+	/**
+	 * The time margin samples are ignored until this tick after adjusting the
+	 * time of the client (the effect of the adjustment hasn't arrived yet).
+	 */
+	public int                              timeSyncResumeTick;
+	/**
+	 * The time when the client passed the handshake of the joining protocol
+	 * (System.nanoTime()).
+	 */
+	public long                             joiningStartTime;
+	/**
+	 * Key of the session of the client, a client resuming its session through
+	 * a new connection identifies itself by it.
+	 */
+	public long                             sessionKey;
+	/**
+	 * Tells whether the connection of the client has been lost during the
+	 * game, and its slot is kept for it to resume the session.
+	 */
+	public boolean                          disconnected;
+	/** The time when the connection has been lost (System.nanoTime()). */
+	public long                             disconnectionTime;
+	/**
+	 * The new connection of the client while it is waiting for the snapshot
+	 * of the game to resume its session, else null.
+	 */
+	public ConnectionStub                   resumingConnectionStub;
+	/**
+	 * Tells whether the client is catching up after resuming its session: it
+	 * is still a ghost until it answers the frame of catchUpTick.
+	 */
+	public boolean                          catchingUp;
+	/** The tick of the first frame sent to the resumed client live. */
+	public int                              catchUpTick;
+	/**
+	 * The tick from which the client controls its players again after
+	 * resuming its session. The actions of the robots controlling its players
+	 * as a ghost which answer earlier frames are dropped.
+	 */
+	public int                              resumedTick;
+	/**
+	 * Number of the players of the client in the game (the game core handlers
+	 * of the clients are created with this many players of the client).
+	 * Actions of players above this are dropped.
+	 */
+	public int                              gamePlayersCount;
 
 	/**
 	 * Creates a new ClientContact.
@@ -0,0 +1,347 @@
+package com.braids.coffeebombermen.server;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import com.braids.coffeebombermen.Consts;
+import com.braids.coffeebombermen.client.gamecore.model.level.LevelModel;
+import com.braids.coffeebombermen.options.OptConsts.NetworkLatencies;
+import com.braids.coffeebombermen.options.OptionsHolder;
+import com.braids.coffeebombermen.options.ServerComponentOptions;
+import com.braids.coffeebombermen.options.model.ServerOptions;
+import com.braids.coffeebombermen.utils.ControlledThread;
+import com.braids.coffeebombermen.utils.DataTextFileReader;
+
+/**
+ * The dedicated server: runs a server without GUI. Doesn't load AWT, graphical
+ * themes or sounds, so it can run on a host without display.<br>
+ * The server options are read from the options file (the server options line
+ * of it), and can be overridden by command line arguments. The chat messages
+ * and the errors are logged to the standard output, and the server is
+ * administrated by commands read from the standard input.<br>
+ * If the number of rooms is given, a RoomServer is run hosting many games in
+ * rooms, and the administration commands name the room too.
+ */
+public class DedicatedServer implements ServerHost {
+
+	/** Usage of the command line arguments. */
+	private static final String[] USAGE              = { "Usage: DedicatedServer [options]", "  -config <file>     options file to read the server options from",
+	        "  -port <port>       game port", "  -password <pass>   game password", "  -level <name>      level name",
+	        "  -frequency <n>     game cycle frequency", "  -latency <latency> network latency (low, high, extra high, adaptive, rollback)",
+	        "  -rooms <n>         hosts at most n games in rooms", "  -threads <n>       number of the threads running the rooms",
+	        "  -virtual <on|off>  runs the server threads as virtual threads (Java 21+)" };
+	/** Help of the administration commands. */
+	private static final String[] COMMANDS_HELP      = { "Commands:", "  clients       lists the clients with their statistics",
+	        "  start         starts the game", "  end           ends the game", "  kick <name>   kicks a client", "  say <message> sends a chat message",
+	        "  quit          shuts down the server" };
+	/** Help of the administration commands in case of rooms. */
+	private static final String[] ROOM_COMMANDS_HELP = { "Commands:", "  rooms                lists the rooms",
+	        "  clients <room>       lists the clients of a room with their statistics",
+	        "  start <room>         starts the game of a room", "  end <room>           ends the game of a room", "  kick <room> <name>   kicks a client",
+	        "  say <room> <message> sends a chat message to a room", "  quit                 shuts down the server" };
+
+	/** The server options holder. */
+	private final OptionsHolder<ServerOptions> serverOptionsHolder;
+	/**
+	 * The level where game will be played on (null means randomly generated
+	 * level).
+	 */
+	private final LevelModel                   level;
+	/** The server, or null in case of rooms. */
+	private final Server                       server;
+	/** The room server in case of rooms, else null. */
+	private final RoomServer                   roomServer;
+
+	/**
+	 * Creates a new DedicatedServer, and starts the server.
+	 * 
+	 * @param serverOptions
+	 *            the server options
+	 * @param level
+	 *            the level where game will be played on (null means randomly
+	 *            generated level)
+	 * @param maxRoomsCount
+	 *            maximum number of the rooms; 0 means one game is hosted
+	 *            without rooms
+	 * @param threadsCount
+	 *            number of the threads running the rooms
+	 * @throws IOException
+	 *             if the server socket of the rooms can't be created
+	 */
+	public DedicatedServer(final ServerOptions serverOptions, final LevelModel level, final int maxRoomsCount, final int threadsCount) throws IOException {
+		this.serverOptionsHolder = new OptionsHolder<ServerOptions>(serverOptions);
+		this.level = level;
+		if (maxRoomsCount > 0) {
+			server = null;
+			roomServer = new RoomServer(serverOptionsHolder, this, maxRoomsCount, threadsCount);
+		} else {
+			server = new Server(serverOptionsHolder, this);
+			roomServer = null;
+			server.start();
+		}
+	}
+
+	/**
+	 * Returns the level where game will be played on.
+	 * 
+	 * @return the level where game will be played on; null if randomly
+	 *         generated level is selected
+	 */
+	public LevelModel getLevel() {
+		return level;
+	}
+
+	/**
+	 * Logs an error of the server to the standard output.
+	 * 
+	 * @param messageLines
+	 *            lines of the error message
+	 */
+	public void showServerError(final String[] messageLines) {
+		for (final String messageLine : messageLines) {
+			System.out.println("Error: " + messageLine);
+		}
+	}
+
+	/**
+	 * Logs a broadcasted chat message to the standard output.
+	 * 
+	 * @param message
+	 *            the broadcasted message
+	 */
+	public void messageBroadcasted(final String message) {
+		System.out.println(message);
+	}
+
+	/**
+	 * Logs the desynchronization of a game to the standard output.
+	 * 
+	 * @param tick
+	 *            the first tick whose state hashes differ
+	 * @param clientName
+	 *            name of the client whose state hash differs
+	 * @param referenceClientName
+	 *            name of the client whose state hash it differs from
+	 */
+	public void gameDesynchronized(final int tick, final String clientName, final String referenceClientName) {
+		System.out.println("Desync: the state of " + clientName + " differs from the state of " + referenceClientName + " at tick " + tick);
+	}
+
+	/**
+	 * Executes the administration commands read from the standard input until
+	 * the quit command or the end of the input.
+	 * 
+	 * @throws IOException
+	 *             if reading the standard input fails
+	 */
+	public void processCommands() throws IOException {
+		final BufferedReader input = new BufferedReader(new InputStreamReader(System.in));
+		String line;
+		while ((line = input.readLine()) != null) {
+			line = line.trim();
+			int separatorIndex = line.indexOf(' ');
+			final String command = separatorIndex < 0 ? line : line.substring(0, separatorIndex);
+			String parameter = separatorIndex < 0 ? "" : line.substring(separatorIndex + 1).trim();
+
+			Server server = this.server;
+			if ((roomServer != null) && (command.equals("clients") || command.equals("start") || command.equals("end") || command.equals("kick")
+			        || command.equals("say"))) {
+				// The first parameter is the room
+				separatorIndex = parameter.indexOf(' ');
+				final String roomName = separatorIndex < 0 ? parameter : parameter.substring(0, separatorIndex);
+				parameter = separatorIndex < 0 ? "" : parameter.substring(separatorIndex + 1).trim();
+				server = roomServer.getRoom(roomName);
+				if (server == null) {
+					System.out.println("No such room: " + roomName);
+					continue;
+				}
+			}
+
+			if ((roomServer != null) && command.equals("rooms")) {
+				for (final String roomDescription : roomServer.getRoomDescriptions()) {
+					System.out.println(roomDescription);
+				}
+			} else if (command.equals("clients")) {
+				for (final String clientDescription : server.getClientDescriptions()) {
+					System.out.println(clientDescription);
+				}
+			} else if (command.equals("start")) {
+				server.startCurrentGame();
+			} else if (command.equals("end")) {
+				server.endCurrentGame();
+			} else if (command.equals("kick")) {
+				server.kickClient(parameter);
+			} else if (command.equals("say")) {
+				server.requestMessageBroadcast(parameter);
+			} else if (command.equals("quit") || command.equals("exit")) {
+				break;
+			} else if (command.length() > 0) {
+				printLines(roomServer == null ? COMMANDS_HELP : ROOM_COMMANDS_HELP);
+			}
+		}
+		if (roomServer == null) {
+			server.shutDown();
+		} else {
+			roomServer.shutDown();
+		}
+	}
+
+	/**
+	 * Loads the server options from an options file.
+	 * 
+	 * @param optionsFileName
+	 *            name of the options file
+	 * @return the server options
+	 * @throws IOException
+	 *             if the options file can't be read
+	 */
+	public static ServerOptions loadServerOptions(final String optionsFileName) throws IOException {
+		final DataTextFileReader optionsFileReader = new DataTextFileReader(optionsFileName);
+		try {
+			optionsFileReader.readNextDataLine(); // Client options
+			final String serverOptionsLine = optionsFileReader.readNextDataLine();
+			if (serverOptionsLine == null) {
+				throw new IOException("Missing server options in " + optionsFileName);
+			}
+			return ServerOptions.parseFromString(serverOptionsLine);
+		} finally {
+			optionsFileReader.close();
+		}
+	}
+
+	/**
+	 * Loads a level.
+	 * 
+	 * @param levelName
+	 *            name of the level
+	 * @return the loaded level
+	 * @throws IOException
+	 *             if the level file can't be read
+	 */
+	static LevelModel loadLevel(final String levelName) throws IOException {
+		final BufferedReader levelFile = new BufferedReader(new FileReader(Consts.LEVELS_DIRECTORY_NAME + levelName + Consts.LEVEL_FILE_EXTENSION));
+		try {
+			return LevelModel.parseFromString(levelFile.readLine());
+		} finally {
+			levelFile.close();
+		}
+	}
+
+	/**
+	 * Returns the network latency with the given name.
+	 * 
+	 * @param name
+	 *            name of the network latency (its displayed or its constant
+	 *            name)
+	 * @return the network latency with the given name
+	 */
+	private static NetworkLatencies parseNetworkLatency(final String name) {
+		for (final NetworkLatencies networkLatency : NetworkLatencies.values()) {
+			if (networkLatency.toString().equalsIgnoreCase(name) || networkLatency.name().equalsIgnoreCase(name)) {
+				return networkLatency;
+			}
+		}
+		throw new IllegalArgumentException("Unknown network latency: " + name);
+	}
+
+	/**
+	 * Prints lines to the standard output.
+	 * 
+	 * @param lines
+	 *            lines to be printed
+	 */
+	public static void printLines(final String[] lines) {
+		for (final String line : lines) {
+			System.out.println(line);
+		}
+	}
+
+	/**
+	 * The entry point of the dedicated server.
+	 * 
+	 * @param arguments
+	 *            the command line arguments
+	 */
+	public static void main(final String[] arguments) {
+		String optionsFileName = Consts.OPTIONS_FILE_NAME;
+		for (int i = 0; i < arguments.length - 1; i++) {
+			if (arguments[i].equals("-config")) {
+				optionsFileName = arguments[i + 1];
+			}
+		}
+
+		final ServerOptions serverOptions;
+		LevelModel level = null;
+		int maxRoomsCount = 0;
+		int threadsCount = Runtime.getRuntime().availableProcessors();
+		try {
+			serverOptions = loadServerOptions(optionsFileName);
+
+			for (int i = 0; i < arguments.length; i += 2) {
+				if (i + 1 >= arguments.length) {
+					throw new IllegalArgumentException("Missing value of " + arguments[i]);
+				}
+				final String option = arguments[i];
+				final String value = arguments[i + 1];
+				if (option.equals("-config")) {
+					// Already processed
+				} else if (option.equals("-port")) {
+					serverOptions.setGamePort(Integer.parseInt(value));
+				} else if (option.equals("-password")) {
+					serverOptions.setPassword(value);
+				} else if (option.equals("-level")) {
+					serverOptions.setLevelName(value);
+				} else if (option.equals("-frequency")) {
+					serverOptions.setGameCycleFrequency(Integer.parseInt(value));
+				} else if (option.equals("-latency")) {
+					serverOptions.setNetworkLatency(parseNetworkLatency(value));
+				} else if (option.equals("-rooms")) {
+					maxRoomsCount = Integer.parseInt(value);
+				} else if (option.equals("-threads")) {
+					threadsCount = Integer.parseInt(value);
+				} else if (option.equals("-virtual")) {
+					ControlledThread.setVirtualThreadsUsed(value.equals("on"));
+				} else {
+					throw new IllegalArgumentException("Unknown option: " + option);
+				}
+			}
+
+			if (!serverOptions.getLevelName().equals(ServerComponentOptions.RANDOMLY_GENERATED_LEVEL_NAME)) {
+				level = loadLevel(serverOptions.getLevelName());
+			}
+		} catch (final Exception e) {
+			System.out.println("Error: " + e.getMessage());
+			printLines(USAGE);
+			System.exit(1);
+			return;
+		}
+
+		final DedicatedServer dedicatedServer;
+		try {
+			dedicatedServer = new DedicatedServer(serverOptions, level, maxRoomsCount, threadsCount);
+		} catch (final IOException ie) {
+			System.out.println("Error: Can't create server socket on port " + serverOptions.getGamePort() + "!");
+			System.exit(1);
+			return;
+		}
+		if ((dedicatedServer.server != null) && !dedicatedServer.server.waitForAndCheckServerSocket()) {
+			dedicatedServer.server.shutDown();
+			System.exit(1);
+		}
+		System.out.println(Consts.APPLICATION_NAME + " " + Consts.APPLICATION_VERSION + " dedicated server is running on port "
+		        + serverOptions.getGamePort() + (maxRoomsCount > 0 ? " with at most " + maxRoomsCount + " rooms." : "."));
+		if (ControlledThread.isVirtualThreadsUsed()) {
+			System.out.println("The server threads are virtual threads.");
+		}
+		printLines(maxRoomsCount > 0 ? ROOM_COMMANDS_HELP : COMMANDS_HELP);
+		try {
+			dedicatedServer.processCommands();
+		} catch (final IOException ie) {
+			ie.printStackTrace();
+		}
+		System.exit(0);
+	}
+
+}
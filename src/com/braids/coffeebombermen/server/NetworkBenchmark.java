@@ -0,0 +1,513 @@
+package com.braids.coffeebombermen.server;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import com.braids.coffeebombermen.Consts;
+import com.braids.coffeebombermen.client.Client;
+import com.braids.coffeebombermen.client.gamecore.model.level.LevelModel;
+import com.braids.coffeebombermen.options.OptConsts.NetworkLatencies;
+import com.braids.coffeebombermen.options.OptConsts.PlayerColors;
+import com.braids.coffeebombermen.options.OptConsts.PlayerControlKeys;
+import com.braids.coffeebombermen.options.OptionsHolder;
+import com.braids.coffeebombermen.options.ServerComponentOptions;
+import com.braids.coffeebombermen.options.model.PublicClientOptions;
+import com.braids.coffeebombermen.options.model.ServerOptions;
+import com.braids.coffeebombermen.utils.ConnectionStub;
+import com.braids.coffeebombermen.utils.GeneralStringTokenizer;
+import com.braids.coffeebombermen.utils.ImpairmentProxy;
+import com.braids.coffeebombermen.utils.IterationFrame;
+import com.braids.coffeebombermen.utils.LatencyHistogram;
+import com.braids.coffeebombermen.utils.SocketConnectionStub;
+
+/**
+ * A headless benchmark of the iteration protocol under impaired network
+ * conditions. For each network latency setting it runs a server, and a game
+ * of bot clients connected through an ImpairmentProxy. The bots speak the
+ * iteration protocol like the real clients (including the time adjustments of
+ * the rollback network mode), but don't simulate the game; they press and
+ * release a key in every few iterations.<br>
+ * Reported for each network latency setting:
+ * <ul>
+ * <li>the effective ticks per second: how fast the ticks of the
+ * STARTING_NEXT_ITERATION frames advance at the bots (the clients can't
+ * simulate beyond them)
+ * <li>the input to simulation latency: the time from sending an action in a
+ * READY_FOR_NEXT_ITERATION frame until it arrives back in a
+ * STARTING_NEXT_ITERATION frame (when all the clients simulate it)
+ * </ul>
+ */
+public class NetworkBenchmark implements ServerHost {
+
+	/** Usage of the command line arguments. */
+	private static final String[] USAGE          = { "Usage: NetworkBenchmark [options]", "  -config <file>     options file to read the server options from",
+	        "  -port <port>       first port to use (the server and the proxy of a run use two)", "  -clients <n>       number of the bot clients",
+	        "  -seconds <n>       measuring time of a network latency setting", "  -frequency <n>     game cycle frequency",
+	        "  -latency <ms>      latency of the proxy", "  -jitter <ms>       maximum jitter of the proxy",
+	        "  -bandwidth <n>     bandwidth of the proxy in bytes per second (0 means unlimited)",
+	        "  -reorder <n>       percent of the chunks reordered by the proxy" };
+	/** Time between starting the game and starting the measuring in ms. */
+	private static final long     WARM_UP_TIME   = 2000l;
+	/** Number of READY_FOR_NEXT_ITERATION frames between two actions of a bot. */
+	private static final int      ACTION_PERIOD  = 4;
+	/** Maximum number of the actions of a bot waiting to arrive back. */
+	private static final int      MAX_SENT_TIMES = 64;
+
+	/**
+	 * A bot client: joins the game, answers the STARTING_NEXT_ITERATION frames
+	 * (or times its iterations in rollback network mode), and measures.
+	 */
+	private class BenchmarkClient extends Thread {
+
+		/** Connection stub to the server (through the proxy). */
+		private final SocketConnectionStub connectionStub;
+		/** Our client index. */
+		private final int                  ourIndex;
+		/** The frame of the STARTING_NEXT_ITERATION commands (reused). */
+		private final IterationFrame       startingFrame  = new IterationFrame(IterationFrame.STARTING_NEXT_ITERATION_MARKER);
+		/** The frame of the READY_FOR_NEXT_ITERATION commands (reused). */
+		private final IterationFrame       readyFrame     = new IterationFrame(IterationFrame.READY_FOR_NEXT_ITERATION_MARKER);
+		/** Sending times of the actions waiting to arrive back (a ring). */
+		private final long[]               sentTimes      = new long[MAX_SENT_TIMES];
+		/** Index of the oldest sending time. */
+		private int                        firstSentTime;
+		/** Number of the sending times. */
+		private int                        sentTimesCount;
+		/** Number of the READY_FOR_NEXT_ITERATION frames sent. */
+		private int                        sentFramesCount;
+		/** Tells whether our key is pressed. */
+		private boolean                    keyPressed;
+		/** Tells whether the game is in rollback network mode. */
+		private boolean                    rollbackMode;
+		/** The rollback window in case of rollback network mode. */
+		private int                        rollbackWindow;
+		/** The period time of the iterations in ns. */
+		private long                       iterationPeriodTime;
+		/** The time of our next iteration in rollback network mode. */
+		private long                       nextIterationTime;
+		/** The tick of our next iteration in rollback network mode. */
+		private int                        nextTick;
+		/** Extra iterations requested by the server in rollback network mode. */
+		private int                        timeAdjustment;
+		/** Tells whether the iterations are timed by us. */
+		private boolean                    timingIterations;
+		/** The tick of the last received frame, -1 if there is no such. */
+		private volatile int               lastFrameTick  = -1;
+		/** The tick of the last received frame when measuring started. */
+		private volatile int               measuringStartTick;
+		/** The tick of the last received frame when measuring ended. */
+		private volatile int               measuringEndTick;
+
+		/**
+		 * Creates a new BenchmarkClient: connects to the server and performs
+		 * the joining protocol.
+		 * 
+		 * @param port
+		 *            the port to connect to
+		 * @param name
+		 *            name of the client
+		 * @throws IOException
+		 *             if I/O error occurs or the server rejects us
+		 */
+		private BenchmarkClient(final int port, final String name) throws IOException {
+			setDaemon(true);
+			connectionStub = new SocketConnectionStub(new Socket("localhost", port));
+			ourIndex = joinBot(connectionStub, serverOptions.getPassword(), name);
+		}
+
+		/**
+		 * Runs the bot until the connection is closed.
+		 */
+		public void run() {
+			try {
+				while (!connectionStub.isEndOfStream()) {
+					while (connectionStub.hasNewMessage()) {
+						if (connectionStub.isNextMessageFrame()) {
+							connectionStub.receiveFrame(startingFrame);
+							handleStartingFrame();
+						} else if (!handleCommand(connectionStub.receiveMessage())) {
+							return;
+						}
+					}
+					if (timingIterations) {
+						handleRollbackIterations();
+					}
+					sleep(1l);
+				}
+			} catch (final IOException ie) {
+				// The server has been shut down
+			} catch (final InterruptedException ie) {
+				ie.printStackTrace();
+			} finally {
+				connectionStub.close();
+			}
+		}
+
+		/**
+		 * Handles a text command of the server.
+		 * 
+		 * @param message
+		 *            the received message
+		 * @return false if the connection has been closed; true otherwise
+		 * @throws IOException
+		 *             if I/O error occurs
+		 */
+		private boolean handleCommand(final String message) throws IOException {
+			if (message == null) {
+				return false;
+			}
+			final GeneralStringTokenizer commandTokenizer = new GeneralStringTokenizer(message);
+			switch (Client.Commands.values()[commandTokenizer.nextIntToken()]) {
+				case SHUTDOWN:
+					return false;
+				case STARTING_GAME:
+					// The rest of the game starting protocol: the random seed,
+					// the server options and the level
+					connectionStub.receiveMessage();
+					final ServerOptions gameServerOptions = ServerOptions.parseFromString(connectionStub.receiveMessage());
+					if (!gameServerOptions.getLevelName().equals(ServerComponentOptions.RANDOMLY_GENERATED_LEVEL_NAME)) {
+						connectionStub.receiveMessage();
+					}
+					rollbackMode = gameServerOptions.getNetworkLatency() == NetworkLatencies.ROLLBACK;
+					rollbackWindow = gameServerOptions.getRollbackWindow();
+					iterationPeriodTime = 1000000000l / gameServerOptions.getGameCycleFrequency();
+					break;
+				case STARTING_NEXT_ROUND:
+					if (rollbackMode) {
+						timingIterations = true;
+						nextIterationTime = System.nanoTime();
+						nextTick = lastFrameTick + 1;
+						timeAdjustment = 0;
+					}
+					break;
+				case ENDING_GAME:
+					timingIterations = false;
+					break;
+				case ADJUSTING_TIME:
+					timeAdjustment = commandTokenizer.nextIntToken();
+					break;
+				default:
+					break;
+			}
+			return true;
+		}
+
+		/**
+		 * Handles a received STARTING_NEXT_ITERATION frame: measures the
+		 * latencies of our actions in it, and answers it (except in rollback
+		 * network mode).
+		 * 
+		 * @throws IOException
+		 *             if I/O error occurs during answering
+		 */
+		private void handleStartingFrame() throws IOException {
+			lastFrameTick = startingFrame.getTick();
+			for (int section = 0; section < startingFrame.getSectionsCount(); section++) {
+				if (startingFrame.getSectionClientIndex(section) == ourIndex) {
+					final int actionsCount = startingFrame.getSectionActionsEnd(section) - startingFrame.getSectionActionsStart(section);
+					for (int i = 0; (i < actionsCount) && (sentTimesCount > 0); i++) {
+						inputLatencyHistogram.record(startingFrame.getReceivedTime() - sentTimes[firstSentTime]);
+						firstSentTime = (firstSentTime + 1) % MAX_SENT_TIMES;
+						sentTimesCount--;
+					}
+				}
+			}
+			if (!rollbackMode) {
+				sendReadyFrame(lastFrameTick);
+			}
+		}
+
+		/**
+		 * Handles the iterations in case of rollback network mode like the
+		 * real clients: an iteration in every period time (or skipping it if
+		 * we are ahead of the server), extra iterations if the server asks,
+		 * and none beyond the rollback window.
+		 * 
+		 * @throws IOException
+		 *             if I/O error occurs during sending
+		 */
+		private void handleRollbackIterations() throws IOException {
+			if (System.nanoTime() - nextIterationTime >= 0) {
+				nextIterationTime += iterationPeriodTime;
+				if (timeAdjustment < 0) {
+					timeAdjustment++;
+				} else if (nextTick - lastFrameTick <= rollbackWindow) {
+					sendReadyFrame(nextTick++);
+				}
+			}
+			while ((timeAdjustment > 0) && (nextTick - lastFrameTick <= rollbackWindow)) {
+				timeAdjustment--;
+				sendReadyFrame(nextTick++);
+			}
+		}
+
+		/**
+		 * Sends a READY_FOR_NEXT_ITERATION frame, with an action in every
+		 * ACTION_PERIOD frames.
+		 * 
+		 * @param tick
+		 *            tick of the frame
+		 * @throws IOException
+		 *             if I/O error occurs during sending
+		 */
+		private void sendReadyFrame(final int tick) throws IOException {
+			readyFrame.clear(tick);
+			readyFrame.beginSection(ourIndex);
+			if ((++sentFramesCount % ACTION_PERIOD == 0) && (sentTimesCount < MAX_SENT_TIMES)) {
+				keyPressed = !keyPressed;
+				readyFrame.addAction(0, PlayerControlKeys.UP, keyPressed);
+				sentTimes[(firstSentTime + sentTimesCount) % MAX_SENT_TIMES] = System.nanoTime();
+				sentTimesCount++;
+			}
+			connectionStub.sendFrame(readyFrame);
+		}
+
+	}
+
+	/** The server options of the runs (the network latency is overwritten). */
+	private final ServerOptions    serverOptions;
+	/** The level of the games, null means randomly generated level. */
+	private final LevelModel       level;
+	/** Latencies between sending the actions and receiving them back. */
+	private final LatencyHistogram inputLatencyHistogram = new LatencyHistogram("input to simulation latency");
+
+	/**
+	 * Creates a new NetworkBenchmark.
+	 * 
+	 * @param serverOptions
+	 *            the server options of the runs
+	 * @param level
+	 *            the level of the games, null means randomly generated level
+	 */
+	public NetworkBenchmark(final ServerOptions serverOptions, final LevelModel level) {
+		this.serverOptions = serverOptions;
+		this.level = level;
+	}
+
+	/**
+	 * Returns the level where game will be played on.
+	 * 
+	 * @return the level where game will be played on; null if randomly
+	 *         generated level is selected
+	 */
+	public LevelModel getLevel() {
+		return level;
+	}
+
+	/**
+	 * Logs an error of the server to the standard output.
+	 * 
+	 * @param messageLines
+	 *            lines of the error message
+	 */
+	public void showServerError(final String[] messageLines) {
+		for (final String messageLine : messageLines) {
+			System.out.println("Error: " + messageLine);
+		}
+	}
+
+	/**
+	 * Method to be called when the server has broadcasted a chat message.
+	 * Nothing to do.
+	 * 
+	 * @param message
+	 *            the broadcasted message
+	 */
+	public void messageBroadcasted(final String message) {}
+
+	/**
+	 * Method to be called when the server has detected a desynchronization.
+	 * The bots don't send state hashes, nothing to do.
+	 * 
+	 * @param tick
+	 *            the first tick whose state hashes differ
+	 * @param clientName
+	 *            name of the client whose state hash differs
+	 * @param referenceClientName
+	 *            name of the client whose state hash it differs from
+	 */
+	public void gameDesynchronized(final int tick, final String clientName, final String referenceClientName) {}
+
+	/**
+	 * Performs the joining protocol of a bot client (with one player).
+	 * 
+	 * @param connectionStub
+	 *            connection stub to the server
+	 * @param password
+	 *            the game password
+	 * @param name
+	 *            name of the bot client
+	 * @return the client index of the bot
+	 * @throws IOException
+	 *             if I/O error occurs or the server rejects the bot
+	 */
+	static int joinBot(final ConnectionStub connectionStub, final String password, final String name) throws IOException {
+		connectionStub.sendMessage(Client.CLIENT_IDENTIFICATION_STRING);
+		connectionStub.receiveMessage();
+		connectionStub.sendMessage(Consts.APPLICATION_VERSION);
+		connectionStub.receiveMessage();
+		connectionStub.sendMessage(""); // Room
+		connectionStub.sendMessage(password);
+		if (!PlayerCollector.PASSWORD_ACCEPTED.equals(connectionStub.receiveMessage())) {
+			connectionStub.close();
+			throw new IOException("Joining has been rejected!");
+		}
+
+		final PublicClientOptions publicClientOptions = new PublicClientOptions();
+		publicClientOptions.clientName = name;
+		publicClientOptions.playerNames[0] = name;
+		publicClientOptions.playerColors[0] = PlayerColors.values()[0];
+		publicClientOptions.movementCorrectionSensitivities[0] = 1;
+		connectionStub.sendMessage(Server.Commands.SENDING_PUBLIC_CLIENT_OPTIONS.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING
+		        + publicClientOptions.packToString(1));
+		final int publicClientOptionsCount = Integer.parseInt(connectionStub.receiveMessage());
+		for (int i = 0; i < publicClientOptionsCount; i++) {
+			connectionStub.receiveMessage();
+		}
+		return publicClientOptionsCount - 1;
+	}
+
+	/**
+	 * Runs the benchmark of a network latency setting, and prints its results.
+	 * 
+	 * @param networkLatency
+	 *            the network latency setting
+	 * @param port
+	 *            port of the server (the proxy uses the next one)
+	 * @param clientsCount
+	 *            number of the bot clients
+	 * @param seconds
+	 *            measuring time in seconds
+	 * @param proxyArguments
+	 *            latency, jitter, bandwidth and reorder percent of the proxy
+	 * @throws IOException
+	 *             if the server, the proxy or a bot can't be created
+	 * @throws InterruptedException
+	 *             if we're interrupted during the measuring
+	 */
+	private void run(final NetworkLatencies networkLatency, final int port, final int clientsCount, final int seconds, final int[] proxyArguments)
+	        throws IOException, InterruptedException {
+		serverOptions.setNetworkLatency(networkLatency);
+		serverOptions.setGamePort(port);
+		final Server server = new Server(new OptionsHolder<ServerOptions>(serverOptions), this);
+		server.start();
+		if (!server.waitForAndCheckServerSocket()) {
+			server.shutDown();
+			throw new IOException("Can't create server socket on port " + port + "!");
+		}
+		final ImpairmentProxy proxy = new ImpairmentProxy(port + 1, "localhost", port, proxyArguments[0], proxyArguments[1], proxyArguments[2],
+		        proxyArguments[3]);
+
+		final BenchmarkClient[] clients = new BenchmarkClient[clientsCount];
+		try {
+			for (int i = 0; i < clientsCount; i++) {
+				clients[i] = new BenchmarkClient(port + 1, "bot" + i);
+				clients[i].start();
+			}
+			while (server.getClientsCount() < clientsCount) {
+				Thread.sleep(10l);
+			}
+
+			server.startCurrentGame();
+			Thread.sleep(WARM_UP_TIME);
+			inputLatencyHistogram.reset();
+			for (final BenchmarkClient client : clients) {
+				client.measuringStartTick = client.lastFrameTick;
+			}
+			Thread.sleep(seconds * 1000l);
+			for (final BenchmarkClient client : clients) {
+				client.measuringEndTick = client.lastFrameTick;
+			}
+			server.endCurrentGame();
+		} finally {
+			server.shutDown();
+			proxy.shutDown();
+		}
+
+		long ticks = 0;
+		for (final BenchmarkClient client : clients) {
+			ticks += client.measuringEndTick - client.measuringStartTick;
+		}
+		System.out.println(networkLatency + ": " + (float) ticks / clientsCount / seconds + " ticks/s, " + inputLatencyHistogram);
+	}
+
+	/**
+	 * The entry point of the benchmark.
+	 * 
+	 * @param arguments
+	 *            the command line arguments
+	 */
+	public static void main(final String[] arguments) {
+		String optionsFileName = Consts.OPTIONS_FILE_NAME;
+		for (int i = 0; i < arguments.length - 1; i++) {
+			if (arguments[i].equals("-config")) {
+				optionsFileName = arguments[i + 1];
+			}
+		}
+
+		final ServerOptions serverOptions;
+		LevelModel level = null;
+		int port = 53000;
+		int clientsCount = 2;
+		int seconds = 10;
+		// Latency, jitter, bandwidth and reorder percent of the proxy
+		final int[] proxyArguments = { 50, 10, 0, 0 };
+		try {
+			serverOptions = DedicatedServer.loadServerOptions(optionsFileName);
+
+			for (int i = 0; i < arguments.length; i += 2) {
+				if (i + 1 >= arguments.length) {
+					throw new IllegalArgumentException("Missing value of " + arguments[i]);
+				}
+				final String option = arguments[i];
+				final int value = option.equals("-config") ? 0 : Integer.parseInt(arguments[i + 1]);
+				if (option.equals("-config")) {
+					// Already processed
+				} else if (option.equals("-port")) {
+					port = value;
+				} else if (option.equals("-clients")) {
+					clientsCount = value;
+				} else if (option.equals("-seconds")) {
+					seconds = value;
+				} else if (option.equals("-frequency")) {
+					serverOptions.setGameCycleFrequency(value);
+				} else if (option.equals("-latency")) {
+					proxyArguments[0] = value;
+				} else if (option.equals("-jitter")) {
+					proxyArguments[1] = value;
+				} else if (option.equals("-bandwidth")) {
+					proxyArguments[2] = value;
+				} else if (option.equals("-reorder")) {
+					proxyArguments[3] = value;
+				} else {
+					throw new IllegalArgumentException("Unknown option: " + option);
+				}
+			}
+
+			if (!serverOptions.getLevelName().equals(ServerComponentOptions.RANDOMLY_GENERATED_LEVEL_NAME)) {
+				level = DedicatedServer.loadLevel(serverOptions.getLevelName());
+			}
+		} catch (final Exception e) {
+			System.out.println("Error: " + e.getMessage());
+			DedicatedServer.printLines(USAGE);
+			System.exit(1);
+			return;
+		}
+
+		System.out.println(clientsCount + " clients at " + serverOptions.getGameCycleFrequency() + " Hz through a proxy with " + proxyArguments[0]
+		        + " ms latency, " + proxyArguments[1] + " ms jitter, " + (proxyArguments[2] == 0 ? "unlimited" : proxyArguments[2] + " B/s")
+		        + " bandwidth and " + proxyArguments[3] + "% reordering:");
+		final NetworkBenchmark networkBenchmark = new NetworkBenchmark(serverOptions, level);
+		try {
+			for (final NetworkLatencies networkLatency : NetworkLatencies.values()) {
+				networkBenchmark.run(networkLatency, port, clientsCount, seconds, proxyArguments);
+				port += 2;
+			}
+		} catch (final Exception e) {
+			System.out.println("Error: " + e.getMessage());
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+
+}
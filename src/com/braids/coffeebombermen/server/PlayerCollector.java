@@ -1,20 +1,18 @@
 package com.braids.coffeebombermen.server;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.util.List;
-
-import javax.swing.JFrame;
-import javax.swing.JOptionPane;
+import java.nio.channels.ServerSocketChannel;
 
 import com.braids.coffeebombermen.Consts;
 import com.braids.coffeebombermen.client.Client;
 import com.braids.coffeebombermen.options.OptionsChangeListener;
-import com.braids.coffeebombermen.options.OptionsManager;
-import com.braids.coffeebombermen.options.model.PublicClientOptions;
+import com.braids.coffeebombermen.options.OptionsHolder;
 import com.braids.coffeebombermen.options.model.ServerOptions;
+import com.braids.coffeebombermen.utils.ConnectionSelector;
 import com.braids.coffeebombermen.utils.ConnectionStub;
-import com.braids.coffeebombermen.utils.GeneralStringTokenizer;
+import com.braids.coffeebombermen.utils.ControlledThread;
+import com.braids.coffeebombermen.utils.LocalConnectionStub;
+import com.braids.coffeebombermen.utils.SelectorConnectionStub;
 
 /**
  * The Player collector of the server. Handles player collecting.<br>
@@ -29,19 +27,56 @@ import com.braids.coffeebombermen.utils.GeneralStringTokenizer;
  * <li>The server sends the servers application version.
  * <li>The server waits for the clients application version. If it is missing or
  * it is not the expected value (our version), closes the connection.
+ * <li>The server waits for the name of the room the client wants to join. A
+ * server hosting one game ignores it. A RoomServer checks whether the room is
+ * available (it is created if it doesn't exist yet), and if it is not, the
+ * server sends the PlayerCollector.ROOM_REJECTED message instead of answering
+ * the password, and closes the connection.
  * <li>The server waits for the game password. If there is a game password, and
  * we receive an unmatching game password, the server sends the
  * PlayerCollector.PASSWORD_REJECTED message and closes the connection.
  * Otherwise the server sends the PlayerCollector.PASSWORD_ACCEPTED message.
  * <li>The server waits for the public client options of the new client
- * (Server.Commands.SENDING_PUBLIC_CLIENT_OPTIONS command).
+ * (Server.Commands.SENDING_PUBLIC_CLIENT_OPTIONS command). If a game is in
+ * progress, the client waits until it ends.
  * <li>The server sends the number of the clients connected including the new
  * client.
  * <li>The server sends the public client options of all clients including the
  * new client on the last place. Each line is a clients public client options.
+ * <li>The server sends the key of the session of the client
+ * (Client.Commands.SENDING_SESSION_KEY command).
  * <li>The client is now officially an accepted Bombermen client of the game.
  * Can send and receive commands, messages and can participate in games.
  * </ol>
+ * A client whose connection has been lost during a game can resume its session
+ * through a new connection. The resuming protocol is the following:<br>
+ * <ol>
+ * <li>The steps of the joining protocol until the password is accepted.
+ * <li>The client sends the Server.Commands.RESUMING_SESSION command with its
+ * session key instead of its public client options.
+ * <li>If the session can't be resumed (unknown key, no game in progress or
+ * rollback network mode), the server sends the
+ * PlayerCollector.SESSION_REJECTED message and closes the connection. If the
+ * old connection of the client hasn't ended yet, or the snapshot of the game
+ * can't be got, the server closes the connection, and the client may try
+ * again.
+ * <li>The server sends the PlayerCollector.SESSION_RESUMED message.
+ * <li>The server sends the number of the clients of the snapshot, their public
+ * client options (one line each), and the index of the resuming client among
+ * them.
+ * <li>The server sends the server options of the game, and the level if it is
+ * not randomly generated.
+ * <li>The server sends the tick of the first frame which has not been logged
+ * (the client has caught up when it has processed this frame).
+ * <li>The server sends the snapshot of the game.
+ * <li>The server sends the commands and frames broadcasted since the snapshot
+ * (the action log), then the client gets the broadcasted commands and frames
+ * again.
+ * </ol>
+ * The player collector performs the protocols until the password is accepted,
+ * the joining is finished by the server thread.<br>
+ * The client of the host joins through an in-process connection (see
+ * connectLocalClient()), with the same protocol.
  */
 public class PlayerCollector implements OptionsChangeListener<ServerOptions> {
 
@@ -51,25 +86,32 @@ public class PlayerCollector implements OptionsChangeListener<ServerOptions> {
 	public static final String                  PASSWORD_ACCEPTED            = "Password accepted";
 	/** Message to the client that the given password was rejected. */
 	public static final String                  PASSWORD_REJECTED            = "Password rejected";
+	/** Message to the client that the room it wants to join is not available. */
+	public static final String                  ROOM_REJECTED                = "Room rejected";
+	/** Message to the client that its session is being resumed. */
+	public static final String                  SESSION_RESUMED              = "Session resumed";
+	/** Message to the client that its session can't be resumed. */
+	public static final String                  SESSION_REJECTED             = "Session rejected";
+	/**
+	 * Maximum time of waiting for a message of the client during the
+	 * handshake in ms. The handshakes are performed one by one, so a silent
+	 * connection must not hold up the others for long.
+	 */
+	static final long                           HANDSHAKE_TIMEOUT            = 5000l;
 
 	/** Reference to the server. */
 	private final Server                        server;
-	/** Reference to the server options manager. */
-	private final OptionsManager<ServerOptions> serverOptionsManager;
-	/** Reference to the vector of client contacts. */
-	private final List<ClientContact>           clientContacts;
-	/** Reference to the main frame for displaying message dialogs. */
-	private final JFrame                        mainFrame;
+	/** Reference to the server options holder. */
+	private final OptionsHolder<ServerOptions>  serverOptionsHolder;
+	/** Reference to the server host for displaying error messages. */
+	private final ServerHost                    serverHost;
+	/** Connection selector which accepts and multiplexes the connections. */
+	private final ConnectionSelector            connectionSelector;
 
 	/** Server socket which through the players can connect. */
-	private volatile ServerSocket               serverSocket;
+	private volatile ServerSocketChannel        serverSocket;
 	/** Tells whether this player collector is closed. */
 	private volatile boolean                    closed                       = false;
-	/**
-	 * When a new client has been accepted, its contact object will be stored
-	 * here.
-	 */
-	private volatile ClientContact              newClientContact;
 
 	/**
 	 * Creates a new PalyerCollector. Creates the server socket which through
@@ -77,23 +119,22 @@ public class PlayerCollector implements OptionsChangeListener<ServerOptions> {
 	 * 
 	 * @param server
 	 *            reference to the server
-	 * @param serverOptionsManager
-	 *            reference to the server options manager
-	 * @param clientContacts
-	 *            vector of client contacts have already and to use to store new
-	 *            client contacts
-	 * @param mainFrame
-	 *            reference to the main frame
+	 * @param serverOptionsHolder
+	 *            reference to the server options holder
+	 * @param serverHost
+	 *            reference to the server host
+	 * @param connectionSelector
+	 *            connection selector to accept the connections with
 	 */
-	public PlayerCollector(final Server server, final OptionsManager<ServerOptions> serverOptionsManager, final List<ClientContact> clientContacts,
-	        final JFrame mainFrame) {
+	public PlayerCollector(final Server server, final OptionsHolder<ServerOptions> serverOptionsHolder, final ServerHost serverHost,
+	        final ConnectionSelector connectionSelector) {
 		this.server = server;
-		this.serverOptionsManager = serverOptionsManager;
-		this.clientContacts = clientContacts;
-		this.mainFrame = mainFrame;
-		createServerSocket(serverOptionsManager.getOptions().getGamePort());
+		this.serverOptionsHolder = serverOptionsHolder;
+		this.serverHost = serverHost;
+		this.connectionSelector = connectionSelector;
+		createServerSocket(serverOptionsHolder.getOptions().getGamePort());
 		startAcceptingClients();
-		this.serverOptionsManager.registerOptionsChangeListener(this);
+		this.serverOptionsHolder.registerOptionsChangeListener(this);
 	}
 
 	/**
@@ -104,17 +145,9 @@ public class PlayerCollector implements OptionsChangeListener<ServerOptions> {
 	 */
 	private void createServerSocket(final int port) {
 		try {
-			serverSocket = new ServerSocket(port);
+			serverSocket = connectionSelector.openServerSocket(port);
 		} catch (final IOException ie) {
-			// Server thread cannot be blocked (messages can arrive while this
-			// message is displayed), we show error message in a new thread
-			new Thread() {
-
-				public void run() {
-					JOptionPane.showMessageDialog(mainFrame, new String[] { "Player collector:", "Can't create server socket on port " + port + "!" }, "Error",
-					        JOptionPane.ERROR_MESSAGE);
-				}
-			}.start();
+			serverHost.showServerError(new String[] { "Player collector:", "Can't create server socket on port " + port + "!" });
 		}
 	}
 
@@ -124,17 +157,13 @@ public class PlayerCollector implements OptionsChangeListener<ServerOptions> {
 	 */
 	private void closeServerSocket() {
 		if (serverSocket != null) {
-			try {
-				final ServerSocket serverSocket_copy = serverSocket;
-				serverSocket = null; // First we have to set to null the
-				// reference, else NullPointerException
-				// can be occur!
-				// Because after closing server socket goes into a loop where
-				// the serverSocket != null can be true!
-				serverSocket_copy.close();
-			} catch (final IOException ie) {
-				ie.printStackTrace();
-			}
+			final ServerSocketChannel serverSocket_copy = serverSocket;
+			serverSocket = null; // First we have to set to null the
+			// reference, else NullPointerException
+			// can be occur!
+			// Because after closing server socket goes into a loop where
+			// the serverSocket != null can be true!
+			connectionSelector.closeServerSocket(serverSocket_copy);
 		}
 	}
 
@@ -148,96 +177,130 @@ public class PlayerCollector implements OptionsChangeListener<ServerOptions> {
 	}
 
 	/**
-	 * Called systematically, so it can check and watch the collection of
-	 * players.<br>
-	 * When this method is called, inserting to clientStubs is allowed, no
-	 * iterator is existing on it.
+	 * Performs the joining protocol until the room name: introduces the
+	 * server, and authenticates the client. Package-private because RoomServer
+	 * calls it.
+	 * 
+	 * @param connectionStub
+	 *            connection stub to the joining client
+	 * @return the name of the room the client wants to join
+	 * @throws AcceptingClientFailedException
+	 *             if the client is not a compatible client
+	 * @throws IOException
+	 *             if I/O error occurs during the communication
 	 */
-	public void nextIteration() {
-		if (newClientContact != null) {
-			try {
-				// Still part of the joining potocol
-				// Client must send
-				// Server.Commands.SENDING_PUBLIC_CLIENT_OPTIONS
-				final GeneralStringTokenizer commandTokenizer = new GeneralStringTokenizer(newClientContact.connectionStub.receiveMessage());
-				commandTokenizer.nextIntToken();
-				newClientContact.publicClientOptions = PublicClientOptions.parseFromString(commandTokenizer.remainingString());
-				server.broadcastCommand(Client.Commands.A_CLIENT_HAS_JOINED_THE_GAME.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING
-				        + newClientContact.publicClientOptions.packToString());
-				clientContacts.add(newClientContact);
-
-				newClientContact.connectionStub.sendMessage("" + clientContacts.size());
-				for (final ClientContact clientContact : clientContacts) {
-					newClientContact.connectionStub.sendMessage(clientContact.publicClientOptions.packToString());
-					// End of joining protocol
-				}
-
-				server.broadcastMessage(Server.SERVER_CHAT_NAME + newClientContact.publicClientOptions.clientName + " has joined the game.");
-			} catch (final IOException ie) {
-				ie.printStackTrace();
-			}
-			newClientContact = null;
+	static String receiveRoomName(final ConnectionStub connectionStub) throws AcceptingClientFailedException, IOException {
+		// Introducing ourself...
+		connectionStub.sendMessage(SERVER_IDENTIFICATION_STRING);
+		// Authentication of the client...
+		if (!Client.CLIENT_IDENTIFICATION_STRING.equals(connectionStub.receiveMessage())) {
+			throw new AcceptingClientFailedException("Client is not a " + Consts.APPLICATION_NAME + " cilent");
+		}
+		connectionStub.sendMessage(Consts.APPLICATION_VERSION);
+		if (!Consts.APPLICATION_VERSION.equals(connectionStub.receiveMessage())) {
+			throw new AcceptingClientFailedException("Incompatible versions");
+		}
+		final String roomName = connectionStub.receiveMessage();
+		if (roomName == null) {
+			throw new AcceptingClientFailedException("Missing room name");
 		}
+		return roomName;
 	}
 
 	/**
 	 * Starts accepting clients in a new trhead.<br>
-	 * Runs until server socket is opened.
+	 * Runs until server socket is opened. The connections are accepted by the
+	 * connection selector, this thread only performs the joining protocol.
+	 * Every message of the handshake has to arrive in HANDSHAKE_TIMEOUT, else
+	 * the connection is dropped.
 	 */
 	private void startAcceptingClients() {
-		new Thread() {
+		final ServerSocketChannel acceptingServerSocket = serverSocket;
+		if (acceptingServerSocket == null) {
+			closed = true;
+			return;
+		}
+
+		closed = false;
+		ControlledThread.newThread(new Runnable() {
 
 			public void run() {
-				closed = false;
-				while (serverSocket != null) {
-					if (newClientContact == null) {
-						ConnectionStub connectionStub_ = null;
-						try {
-							// Start of the joining protocol
-							final ConnectionStub connectionStub = new ConnectionStub(serverSocket.accept());
-							connectionStub_ = connectionStub; // We need this
-							// outside the
-							// try block but
-							// want it to be
-							// final here...
+				while (serverSocket == acceptingServerSocket) {
+					SelectorConnectionStub connectionStub_ = null;
+					try {
+						// Start of the joining protocol
+						final SelectorConnectionStub connectionStub = connectionSelector.acceptConnectionStub(acceptingServerSocket);
+						if (connectionStub == null) {
+							break; // Server socket has been closed
+						}
+						connectionStub_ = connectionStub; // We need this
+						// outside the
+						// try block but
+						// want it to be
+						// final here...
 
-							// Introducing ourself...
-							connectionStub.sendMessage(SERVER_IDENTIFICATION_STRING);
-							// Authentication of the client...
-							if (!connectionStub.receiveMessage().equals(Client.CLIENT_IDENTIFICATION_STRING)) {
-								throw new AcceptingClientFailedException("Client is not a " + Consts.APPLICATION_NAME + " cilent");
-							}
-							connectionStub.sendMessage(Consts.APPLICATION_VERSION);
-							if (!connectionStub.receiveMessage().equals(Consts.APPLICATION_VERSION)) {
-								throw new AcceptingClientFailedException("Incompatible versions");
-							}
-							final String gamePassword = serverOptionsManager.getOptions().getPassword();
-							final String receivedGamePassword = connectionStub.receiveMessage();
-							if (gamePassword.equals("") || gamePassword.equals(receivedGamePassword)) {
-								connectionStub.sendMessage(PASSWORD_ACCEPTED);
-								newClientContact = new ClientContact(connectionStub);
-							} else {
-								connectionStub.sendMessage(PASSWORD_REJECTED);
-								throw new AcceptingClientFailedException("Incorrect game password");
-							}
-							// The joining protocol is finished in the
-							// nextIteration() method
-						} catch (final AcceptingClientFailedException ae) {
-							if (connectionStub_ != null) {
-								connectionStub_.close();
-							}
-						} catch (final IOException ie) {}
-					} else {
-						try {
-							Thread.sleep(10l);
-						} catch (final InterruptedException ie) {
-							ie.printStackTrace();
+						connectionStub.setReceiveTimeout(HANDSHAKE_TIMEOUT);
+						receiveRoomName(connectionStub); // We host one game
+						final String gamePassword = serverOptionsHolder.getOptions().getPassword();
+						final String receivedGamePassword = connectionStub.receiveMessage();
+						if (gamePassword.equals("") || gamePassword.equals(receivedGamePassword)) {
+							connectionStub.setReceiveTimeout(0l);
+							connectionStub.sendMessage(PASSWORD_ACCEPTED);
+							server.addJoiningClient(connectionStub);
+						} else {
+							connectionStub.sendMessage(PASSWORD_REJECTED);
+							throw new AcceptingClientFailedException("Incorrect game password");
+						}
+						// The joining protocol is finished by the server
+					} catch (final AcceptingClientFailedException ae) {
+						if (connectionStub_ != null) {
+							connectionStub_.close();
 						}
+					} catch (final IOException ie) {
+						if (connectionStub_ != null) {
+							connectionStub_.close();
+						}
+					} catch (final InterruptedException ie) {
+						ie.printStackTrace();
 					}
 				}
 				closed = true;
 			}
-		}.start();
+		}, "Player collector", false).start();
+	}
+
+	/**
+	 * Connects a client running in our JVM (the client of the host) through
+	 * an in-process connection. The joining protocol is performed in a new
+	 * thread, like with the clients connecting through the server socket.
+	 * 
+	 * @return the client end of the connection
+	 */
+	public LocalConnectionStub connectLocalClient() {
+		final LocalConnectionStub clientConnectionStub = new LocalConnectionStub();
+		final LocalConnectionStub connectionStub = clientConnectionStub.getPeer();
+		ControlledThread.newThread(new Runnable() {
+
+			public void run() {
+				try {
+					receiveRoomName(connectionStub); // We host one game
+					final String gamePassword = serverOptionsHolder.getOptions().getPassword();
+					final String receivedGamePassword = connectionStub.receiveMessage();
+					if (gamePassword.equals("") || gamePassword.equals(receivedGamePassword)) {
+						connectionStub.sendMessage(PASSWORD_ACCEPTED);
+						server.addJoiningClient(connectionStub);
+					} else {
+						connectionStub.sendMessage(PASSWORD_REJECTED);
+						throw new AcceptingClientFailedException("Incorrect game password");
+					}
+				} catch (final AcceptingClientFailedException ae) {
+					connectionStub.close();
+				} catch (final IOException ie) {
+					connectionStub.close();
+				}
+			}
+		}, "Joining local client", false).start();
+		return clientConnectionStub;
 	}
 
 	/**
@@ -245,7 +308,7 @@ public class PlayerCollector implements OptionsChangeListener<ServerOptions> {
 	 * progress).
 	 */
 	public void close() {
-		serverOptionsManager.unregisterOptionsChangeListener(this);
+		serverOptionsHolder.unregisterOptionsChangeListener(this);
 		closeServerSocket();
 		try {
 			// Not join(), because PlayerCollector is not a thread!
@@ -0,0 +1,275 @@
+package com.braids.coffeebombermen.server;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.braids.coffeebombermen.client.gamecore.model.level.LevelModel;
+import com.braids.coffeebombermen.options.OptionsHolder;
+import com.braids.coffeebombermen.options.model.ServerOptions;
+import com.braids.coffeebombermen.utils.ConnectionSelector;
+import com.braids.coffeebombermen.utils.ControlledThread;
+import com.braids.coffeebombermen.utils.IterationScheduler;
+import com.braids.coffeebombermen.utils.SelectorConnectionStub;
+import com.braids.coffeebombermen.utils.WakeUpSignal;
+
+/**
+ * A server hosting many games in rooms.<br>
+ * The clients connect through one server socket, and name the room they want
+ * to join in the joining protocol (see PlayerCollector). A room is a Server
+ * which is created when the first client joins it, and closed when all of its
+ * clients have left. The rooms have no threads of their own: the connections
+ * of all the rooms are multiplexed by one ConnectionSelector, and the steps
+ * and timers of the rooms are run by a shared IterationScheduler with a
+ * bounded number of threads.
+ */
+public class RoomServer {
+
+	/** Name of the room joined by the clients which don't name a room. */
+	public static final String                  DEFAULT_ROOM_NAME     = "default";
+	/** Maximum length of a room name. */
+	private static final int                    MAX_ROOM_NAME_LENGTH  = 32;
+	/**
+	 * Period time of checking the rooms in ms. The empty rooms are closed, and
+	 * the others are woken up (safety net like the wake up timeout of a
+	 * server thread).
+	 */
+	private static final long                   ROOMS_CHECKING_PERIOD = 1000l;
+
+	/** Reference to the server options holder (shared by the rooms). */
+	private final OptionsHolder<ServerOptions>  serverOptionsHolder;
+	/** Reference to the server host. */
+	private final ServerHost                    serverHost;
+	/** Maximum number of the rooms. */
+	private final int                           maxRoomsCount;
+	/** The scheduler running the steps and timers of the rooms. */
+	private final IterationScheduler            iterationScheduler;
+	/** Connection selector multiplexing the connections of all the rooms. */
+	private final ConnectionSelector            connectionSelector;
+	/** Server socket which through the players can connect. */
+	private final ServerSocketChannel           serverSocket;
+	/** The rooms mapped by their names. */
+	private final Map<String, Server>           rooms                 = new HashMap<String, Server>();
+
+	/**
+	 * Creates a new RoomServer, and starts accepting clients.
+	 * 
+	 * @param serverOptionsHolder
+	 *            reference to the server options holder (game port and
+	 *            password, and the options of the games in the rooms)
+	 * @param serverHost
+	 *            reference to the server host
+	 * @param maxRoomsCount
+	 *            maximum number of the rooms
+	 * @param threadsCount
+	 *            number of the threads running the rooms
+	 * @throws IOException
+	 *             if the server socket can't be created
+	 */
+	public RoomServer(final OptionsHolder<ServerOptions> serverOptionsHolder, final ServerHost serverHost, final int maxRoomsCount, final int threadsCount)
+	        throws IOException {
+		this.serverOptionsHolder = serverOptionsHolder;
+		this.serverHost = serverHost;
+		this.maxRoomsCount = maxRoomsCount;
+		iterationScheduler = new IterationScheduler(threadsCount);
+		// Messages of the joining protocol are waited for by the accepting
+		// thread, messages of the rooms raise the signals of the rooms
+		connectionSelector = new ConnectionSelector(new WakeUpSignal());
+		connectionSelector.start();
+		try {
+			serverSocket = connectionSelector.openServerSocket(serverOptionsHolder.getOptions().getGamePort());
+		} catch (final IOException ie) {
+			connectionSelector.shutDown();
+			iterationScheduler.shutDown();
+			throw ie;
+		}
+
+		iterationScheduler.runPeriodically(new Runnable() {
+
+			public void run() {
+				checkRooms();
+			}
+		}, ROOMS_CHECKING_PERIOD);
+		startAcceptingClients();
+	}
+
+	/**
+	 * Starts accepting clients in a new thread. The thread performs the
+	 * joining protocol until the password is accepted, and routes the client
+	 * to its room. Every message of the handshake has to arrive in
+	 * PlayerCollector.HANDSHAKE_TIMEOUT, else the connection is dropped.
+	 */
+	private void startAcceptingClients() {
+		ControlledThread.newThread(new Runnable() {
+
+			public void run() {
+				while (serverSocket.isOpen()) {
+					SelectorConnectionStub connectionStub = null;
+					try {
+						connectionStub = connectionSelector.acceptConnectionStub(serverSocket);
+						if (connectionStub == null) {
+							break; // Server socket has been closed
+						}
+
+						connectionStub.setReceiveTimeout(PlayerCollector.HANDSHAKE_TIMEOUT);
+						String roomName = PlayerCollector.receiveRoomName(connectionStub).trim();
+						if (roomName.length() == 0) {
+							roomName = DEFAULT_ROOM_NAME;
+						}
+						final String gamePassword = serverOptionsHolder.getOptions().getPassword();
+						final String receivedGamePassword = connectionStub.receiveMessage();
+						if (!gamePassword.equals("") && !gamePassword.equals(receivedGamePassword)) {
+							connectionStub.sendMessage(PlayerCollector.PASSWORD_REJECTED);
+							throw new AcceptingClientFailedException("Incorrect game password");
+						}
+						connectionStub.setReceiveTimeout(0l);
+						if (!routeClient(connectionStub, roomName)) {
+							connectionStub.sendMessage(PlayerCollector.ROOM_REJECTED);
+							throw new AcceptingClientFailedException("Room is not available");
+						}
+					} catch (final AcceptingClientFailedException ae) {
+						if (connectionStub != null) {
+							connectionStub.close();
+						}
+					} catch (final IOException ie) {
+						if (connectionStub != null) {
+							connectionStub.close();
+						}
+					} catch (final InterruptedException ie) {
+						ie.printStackTrace();
+					}
+				}
+			}
+		}, "Room server", false).start();
+	}
+
+	/**
+	 * Routes a client to a room. The room is created if it doesn't exist yet.
+	 * 
+	 * @param connectionStub
+	 *            connection stub to the client whose password has been
+	 *            accepted
+	 * @param roomName
+	 *            name of the room the client wants to join
+	 * @return true if the client has been routed to the room; false if the
+	 *         room is not available
+	 * @throws IOException
+	 *             if I/O error occurs during sending the acceptance
+	 */
+	private boolean routeClient(final SelectorConnectionStub connectionStub, final String roomName) throws IOException {
+		synchronized (rooms) {
+			Server room = rooms.get(roomName);
+			if (room == null) {
+				if ((roomName.length() > MAX_ROOM_NAME_LENGTH) || (rooms.size() >= maxRoomsCount)) {
+					return false;
+				}
+				room = new Server(serverOptionsHolder, createRoomHost(roomName), iterationScheduler, connectionSelector);
+				rooms.put(roomName, room);
+				room.startAsRoom();
+			}
+
+			// The room can't be closed until the client is added
+			connectionStub.sendMessage(PlayerCollector.PASSWORD_ACCEPTED);
+			room.addJoiningClient(connectionStub);
+			return true;
+		}
+	}
+
+	/**
+	 * Creates the host of a room. Logs the messages of the room with the room
+	 * name.
+	 * 
+	 * @param roomName
+	 *            name of the room
+	 * @return the host of the room
+	 */
+	private ServerHost createRoomHost(final String roomName) {
+		return new ServerHost() {
+
+			public LevelModel getLevel() {
+				return serverHost.getLevel();
+			}
+
+			public void showServerError(final String[] messageLines) {
+				serverHost.showServerError(messageLines);
+			}
+
+			public void messageBroadcasted(final String message) {
+				serverHost.messageBroadcasted("[" + roomName + "] " + message);
+			}
+
+			public void gameDesynchronized(final int tick, final String clientName, final String referenceClientName) {
+				serverHost.gameDesynchronized(tick, "[" + roomName + "] " + clientName, referenceClientName);
+			}
+		};
+	}
+
+	/**
+	 * Checks the rooms: closes the empty ones and wakes up the others. Called
+	 * periodically by the iteration scheduler.
+	 */
+	private void checkRooms() {
+		synchronized (rooms) {
+			for (final Iterator<Server> roomIterator = rooms.values().iterator(); roomIterator.hasNext();) {
+				final Server room = roomIterator.next();
+				if (room.getClientsCount() == 0) {
+					roomIterator.remove();
+					room.shutDown();
+				} else {
+					room.wakeUp();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a room.
+	 * 
+	 * @param roomName
+	 *            name of the room
+	 * @return the room with the given name; null if there is no such room
+	 */
+	public Server getRoom(final String roomName) {
+		synchronized (rooms) {
+			return rooms.get(roomName);
+		}
+	}
+
+	/**
+	 * Returns a one line description of each room: its name, number of
+	 * clients and whether a game is in progress.
+	 * 
+	 * @return the descriptions of the rooms
+	 */
+	public List<String> getRoomDescriptions() {
+		final List<String> roomDescriptions = new ArrayList<String>();
+		synchronized (rooms) {
+			for (final Map.Entry<String, Server> roomEntry : rooms.entrySet()) {
+				roomDescriptions.add(roomEntry.getKey() + ": " + roomEntry.getValue().getClientsCount() + " client(s)"
+				        + (roomEntry.getValue().isPlaying() ? ", playing" : ""));
+			}
+		}
+		return roomDescriptions;
+	}
+
+	/**
+	 * Shuts down the room server: stops accepting clients and shuts down all
+	 * the rooms.
+	 */
+	public void shutDown() {
+		connectionSelector.closeServerSocket(serverSocket);
+		synchronized (rooms) {
+			for (final Server room : rooms.values()) {
+				room.shutDown();
+			}
+			rooms.clear();
+		}
+		iterationScheduler.shutDown();
+		connectionSelector.shutDown();
+	}
+
+}
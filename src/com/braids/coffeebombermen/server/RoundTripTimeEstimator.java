@@ -0,0 +1,81 @@
+package com.braids.coffeebombermen.server;
+
+/**
+ * Estimates the round trip time of a client connection from samples. Uses the
+ * smoothed mean and mean deviation like TCP does, so a single late sample does
+ * not change the estimation much, but a jittery connection gets a higher bound.
+ */
+class RoundTripTimeEstimator {
+
+	/** Weight of a new sample in the smoothed mean is 1/2^MEAN_SHIFT. */
+	private static final int MEAN_SHIFT      = 3;
+	/** Weight of a new sample in the mean deviation is 1/2^DEVIATION_SHIFT. */
+	private static final int DEVIATION_SHIFT = 2;
+	/** Multiplier of the mean deviation in the upper bound. */
+	private static final int DEVIATION_SCALE = 4;
+
+	/** The smoothed mean of the round trip time in ns. */
+	private long             mean;
+	/** The mean deviation of the round trip time in ns. */
+	private long             deviation;
+	/** Tells whether we have at least one sample. */
+	private boolean          hasSample;
+
+	/**
+	 * Clears the estimation.
+	 */
+	public void reset() {
+		mean = 0;
+		deviation = 0;
+		hasSample = false;
+	}
+
+	/**
+	 * Adds a new round trip time sample.
+	 * 
+	 * @param sample
+	 *            the measured round trip time in ns
+	 */
+	public void addSample(long sample) {
+		if (sample < 0) {
+			sample = 0;
+		}
+		if (!hasSample) {
+			mean = sample;
+			deviation = sample / 2;
+			hasSample = true;
+		} else {
+			deviation += (Math.abs(sample - mean) - deviation) >> DEVIATION_SHIFT;
+			mean += (sample - mean) >> MEAN_SHIFT;
+		}
+	}
+
+	/**
+	 * Tells whether we have at least one sample.
+	 * 
+	 * @return true if we have at least one sample; false otherwise
+	 */
+	public boolean hasSample() {
+		return hasSample;
+	}
+
+	/**
+	 * Returns the smoothed mean of the round trip time.
+	 * 
+	 * @return the smoothed mean of the round trip time in ns
+	 */
+	public long getMean() {
+		return mean;
+	}
+
+	/**
+	 * Returns the upper bound of the round trip time: the time in which the
+	 * answers almost always arrive.
+	 * 
+	 * @return the upper bound of the round trip time in ns
+	 */
+	public long getUpperBound() {
+		return mean + DEVIATION_SCALE * deviation;
+	}
+
+}
@@ -1,22 +1,31 @@
 package com.braids.coffeebombermen.server;
 
 import java.io.IOException;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 
-import com.braids.coffeebombermen.GameManager;
-import com.braids.coffeebombermen.MainFrame;
 import com.braids.coffeebombermen.MainMenuBar.GameStates;
 import com.braids.coffeebombermen.client.Client;
 import com.braids.coffeebombermen.options.OptConsts.NetworkLatencies;
 import com.braids.coffeebombermen.options.OptionsChangeListener;
-import com.braids.coffeebombermen.options.OptionsManager;
+import com.braids.coffeebombermen.options.OptionsHolder;
 import com.braids.coffeebombermen.options.ServerComponentOptions;
 import com.braids.coffeebombermen.options.model.PublicClientOptions;
 import com.braids.coffeebombermen.options.model.ServerOptions;
+import com.braids.coffeebombermen.utils.ConnectionSelector;
+import com.braids.coffeebombermen.utils.ConnectionStub;
 import com.braids.coffeebombermen.utils.GeneralStringTokenizer;
+import com.braids.coffeebombermen.utils.IterationFrame;
+import com.braids.coffeebombermen.utils.IterationScheduler;
+import com.braids.coffeebombermen.utils.LatencyHistogram;
+import com.braids.coffeebombermen.utils.LocalConnectionStub;
+import com.braids.coffeebombermen.utils.SelectorConnectionStub;
 import com.braids.coffeebombermen.utils.TimedIterableControlledThread;
+import com.braids.coffeebombermen.utils.WakeUpSignal;
 
 /**
  * The server of the game.<br>
@@ -38,6 +47,53 @@ import com.braids.coffeebombermen.utils.TimedIterableControlledThread;
  * based on TCP/IP.<br>
  * Each command is terminated with the new line character '\n'. Each line is a
  * command.<br>
+ * The exceptions are the most frequent commands,
+ * Client.Commands.STARTING_NEXT_ITERATION and
+ * Server.Commands.READY_FOR_NEXT_ITERATION: these are sent as binary frames
+ * (IterationFrame), which can be mixed with the text commands.<br>
+ * Only every few iterations are timed by the server (by sending
+ * STARTING_NEXT_ITERATION), the clients time the iterations between them by
+ * themselves. The number of iterations between two server timed iterations
+ * (the gate period) is determined by the network latency option. If it is
+ * NetworkLatencies.ADAPTIVE, the server measures the round trip times of the
+ * clients (READY_FOR_NEXT_ITERATION frames tell how long the clients held the
+ * answered frame), and changes the gate period during the game: the
+ * Client.Commands.CHANGING_GATE_PERIOD command is sent right before the
+ * STARTING_NEXT_ITERATION frame from which the new period is effective, so
+ * all the clients change it at the same iteration.<br>
+ * If the network latency is NetworkLatencies.ROLLBACK, the server doesn't wait
+ * for the clients: it broadcasts a STARTING_NEXT_ITERATION frame in every
+ * iteration with the actions which are due (the READY_FOR_NEXT_ITERATION
+ * frames carry the tick of the iteration their actions belong to; the late
+ * actions are sent in the next frame). The clients run ahead of the server,
+ * and the server keeps them just enough ahead (so their actions arrive in
+ * time) by the Client.Commands.ADJUSTING_TIME command.<br>
+ * A server timed iteration doesn't wait for a slow client forever: if its
+ * READY_FOR_NEXT_ITERATION frame hasn't arrived until the ready deadline, the
+ * iteration is started without its actions (they are sent in a later frame
+ * when they arrive). A client missing too many successive deadlines becomes a
+ * ghost: the server doesn't wait for it any more, drops its actions, and its
+ * players are controlled by robots of another client (see the
+ * Client.Commands.A_CLIENT_HAS_BECOME_A_GHOST command).<br>
+ * The READY_FOR_NEXT_ITERATION frames carry the hash of the game state of the
+ * clients after the answered iteration (except in rollback network mode). The
+ * server compares the hashes of the same tick, and the first tick whose hashes
+ * differ is reported to the server host and broadcasted as a desync.<br>
+ * If the connection of a client is lost during the game (except in rollback
+ * network mode), its slot is kept for RESUMING_GRACE_PERIOD: it becomes a
+ * ghost, and it can resume its session through a new connection (see the
+ * resuming protocol at the PlayerCollector javadoc). The server requests a
+ * snapshot of the game from another client, and sends it to the resuming
+ * client followed by the commands and frames broadcasted since the request
+ * (the action log), so the resuming client catches up by fast-forwarding from
+ * the snapshot instead of replaying the game from its beginning. The resumed
+ * client remains a ghost until it answers the first live frame. Clients
+ * joining during a game join when it ends.<br>
+ * The connections of the clients are multiplexed by a ConnectionSelector, the
+ * server thread is woken up as soon as a new command arrives.<br>
+ * A server can also be a room of a RoomServer: then it has no thread and timer
+ * of its own, its steps are run by the shared IterationScheduler of the rooms
+ * when it is woken up, and the clients are routed to it by the RoomServer.<br>
  * Each command sent by the server is one of Client.Commands.<br>
  * Each command sent to the server must be one of Server.Commands.<br>
  * Sending a command means sending its ordinal not its string representation.
@@ -72,11 +128,25 @@ public class Server extends TimedIterableControlledThread implements OptionsChan
 		REQUESTING_SERVER_OPTIONS,
 		/**
 		 * Signing that client is ready for next iteration, and sends the
-		 * actions of its players with the command.
+		 * actions of its players with the command. This command is sent as an
+		 * IterationFrame, not as text.
 		 */
 		READY_FOR_NEXT_ITERATION,
 
-		PLAYER_DIED
+		PLAYER_DIED,
+		/**
+		 * Resuming session command: sent instead of
+		 * SENDING_PUBLIC_CLIENT_OPTIONS at the end of the joining protocol by
+		 * a client whose connection has been lost during the game. Parameter:
+		 * the session key of the client.
+		 */
+		RESUMING_SESSION,
+		/**
+		 * Sending the snapshot of the game command, the answer of
+		 * Client.Commands.REQUESTING_GAME_SNAPSHOT. Parameters: the id of the
+		 * request, and the encoded snapshot.
+		 */
+		SENDING_GAME_SNAPSHOT
 	}
 
 	/** Name of the server as a chat client whithout extra signs. */
@@ -86,21 +156,110 @@ public class Server extends TimedIterableControlledThread implements OptionsChan
 	 * end.
 	 */
 	public static final String                  SERVER_CHAT_NAME      = BASE_SERVER_CHAT_NAME + ": ";
+	/**
+	 * Maximum time to wait for a wake up signal in ms. The server thread is
+	 * woken up by the signals (arriving commands, timer ticks, requests), this
+	 * is only a safety net.
+	 */
+	private static final long                   WAKE_UP_TIMEOUT       = 100l;
+	/** Maximum gate period in case of adaptive network latency. */
+	private static final int                    MAX_GATE_PERIOD       = 8;
+	/**
+	 * Number of the successive server timed iterations which have to allow a
+	 * shorter gate period to shorten it in case of adaptive network latency.
+	 */
+	private static final int                    SHORTENING_VOTES      = 16;
+	/**
+	 * The desired time margin of the clients in case of rollback network mode:
+	 * how many iterations their frames should arrive before they are due.
+	 */
+	private static final int                    TARGET_TIME_MARGIN    = 1;
+	/**
+	 * Number of the time margin samples whose minimum decides whether a client
+	 * is too far ahead in case of rollback network mode.
+	 */
+	private static final int                    TIME_MARGIN_SAMPLES   = 32;
+	/**
+	 * Maximum time for a joining client to send its public client options in
+	 * ns.
+	 */
+	private static final long                   JOINING_TIMEOUT       = 10000000000l;
+	/**
+	 * Maximum time to wait for the READY_FOR_NEXT_ITERATION frames of the
+	 * clients after the timer tick of a server timed iteration in ns.
+	 */
+	private static final long                   READY_DEADLINE_TIME   = 200000000l;
+	/**
+	 * Number of the successive ready deadlines a client may miss before it
+	 * becomes a ghost.
+	 */
+	private static final int                    GHOSTING_MISSES       = 20;
+	/**
+	 * Number of the recent ticks whose state hashes are stored to be compared
+	 * (a power of 2). The clients can't be further apart than this.
+	 */
+	private static final int                    STATE_HASH_TICKS      = 64;
+	/**
+	 * Time the slot of a client whose connection has been lost during the
+	 * game is kept for it to resume its session in ns.
+	 */
+	private static final long                   RESUMING_GRACE_PERIOD = 60000000000l;
+	/**
+	 * Maximum time to wait for the snapshot of the game requested for the
+	 * resuming clients in ns.
+	 */
+	private static final long                   SNAPSHOT_TIMEOUT      = 10000000000l;
+	/**
+	 * Maximum length of an encoded snapshot of the game, so the snapshot and
+	 * the action log fit in the output queue of a connection.
+	 */
+	private static final int                    MAX_SNAPSHOT_LENGTH   = 512 * 1024;
 
-	/** Reference to the server options manager. */
-	private final OptionsManager<ServerOptions> serverOptionsManager;
-	/** Reference to the main frame. */
-	private final MainFrame                     mainFrame;
-	/** Reference to the game manager. */
-	private final GameManager                   gameManager;
+	/** Reference to the server options holder. */
+	private final OptionsHolder<ServerOptions>  serverOptionsHolder;
+	/** Reference to the server host. */
+	private final ServerHost                    serverHost;
 	/** The player collector. */
 	private volatile PlayerCollector            playerCollector;
-	/** Vector of client contacts. */
+	/**
+	 * The task running the steps of the server in case of a room of a
+	 * RoomServer, else null (the steps are run by the server thread).
+	 */
+	private final IterationScheduler.Task       stepTask;
+	/** Signal raised when the server thread has something to do. */
+	private final WakeUpSignal                  wakeUpSignal;
+	/**
+	 * Connection selector multiplexing the connections of the clients (shared
+	 * in case of a room).
+	 */
+	private final ConnectionSelector            connectionSelector;
+	/**
+	 * Vector of client contacts. Modified only by the steps, holding its lock
+	 * (so it can be read by other threads holding its lock).
+	 */
 	private final List<ClientContact>           clientContacts        = new ArrayList<ClientContact>();
+	/**
+	 * Contacts of the clients who passed the handshake of the joining protocol,
+	 * but haven't finished joining yet.
+	 */
+	private final LinkedList<ClientContact>     joiningClientContacts = new LinkedList<ClientContact>();
+	/**
+	 * Contacts of the clients who sent their public client options during a
+	 * game, they join when the game ends.
+	 */
+	private final List<ClientContact>           waitingClientContacts = new ArrayList<ClientContact>();
+	/** Number of the joined and joining clients. */
+	private int                                 clientsCount;
+	/** Generator of the session keys. */
+	private final SecureRandom                  sessionKeyGenerator   = new SecureRandom();
 	/** Tells whether starting of game has been requested. */
 	private volatile boolean                    requestedToStartGame  = false;
 	/** Tells whether ending of game has been requested. */
 	private volatile boolean                    requestedToEndGame    = false;
+	/** Names of the clients whose kicking has been requested. */
+	private final List<String>                  clientNamesToKick     = new ArrayList<String>();
+	/** Chat messages of the server whose broadcasting has been requested. */
+	private final List<String>                  messagesToBroadcast   = new ArrayList<String>();
 	/**
 	 * The state of the game. The clients state (stored at MainMenuBar) will be
 	 * synchronized to this by commands.
@@ -113,24 +272,163 @@ public class Server extends TimedIterableControlledThread implements OptionsChan
 	 * based on the network latency.
 	 */
 	private int                                 iterationCounter;
+	/**
+	 * Number of iterations between two server timed iterations (1 means every
+	 * iteration is timed by us).
+	 */
+	private int                                 gatePeriod;
+	/** Tells whether the gate period is adapted to the round trip times. */
+	private boolean                             adaptiveGatePeriod;
+	/**
+	 * Number of the successive server timed iterations which would have allowed
+	 * a shorter gate period.
+	 */
+	private int                                 shorteningVotes;
+	/** Tells whether the network latency is rollback network mode. */
+	private boolean                             rollbackMode;
+	/**
+	 * The rollback window: the maximum number of iterations the clients may
+	 * run ahead in case of rollback network mode.
+	 */
+	private int                                 rollbackWindow;
+	/** The period time of the iterations in ns. */
+	private long                                iterationPeriodTime;
+	/**
+	 * The tick of the next STARTING_NEXT_ITERATION frame: the number of the
+	 * client iteration which will process it.
+	 */
+	private int                                 nextFrameTick;
+	/**
+	 * The tick of the last STARTING_NEXT_ITERATION frame. Our iteration with
+	 * this number waits for the clients to answer this frame.
+	 */
+	private int                                 lastFrameTick;
+	/** The time when the last frame has been broadcasted (System.nanoTime()). */
+	private long                                lastFrameSentTime;
+	/** The time of the last iteration timer tick (System.nanoTime()). */
+	private volatile long                       iterationTimerTickTime;
+	/**
+	 * The time when we have to be woken up (System.nanoTime()), 0 if there is
+	 * no such time.
+	 */
+	private long                                wakeUpTime;
+	/**
+	 * Latencies between opening the gate of a server timed iteration (the
+	 * arrival of the last READY_FOR_NEXT_ITERATION command or the timer tick,
+	 * whichever is later) and broadcasting the STARTING_NEXT_ITERATION command.
+	 */
+	private final LatencyHistogram              gateLatencyHistogram  = new LatencyHistogram("Last ready to broadcast latency");
+	/** Frame of the STARTING_NEXT_ITERATION command (reused). */
+	private final IterationFrame                startingFrame         = new IterationFrame(IterationFrame.STARTING_NEXT_ITERATION_MARKER);
+	/** Broadcasted pending frames which can be reused. */
+	private final LinkedList<IterationFrame>    freeFrames            = new LinkedList<IterationFrame>();
+	/**
+	 * Ticks of the stored state hashes, indexed by the tick modulo
+	 * STATE_HASH_TICKS.
+	 */
+	private final int[]                         stateHashTicks        = new int[STATE_HASH_TICKS];
+	/** The first received state hashes of the recent ticks. */
+	private final int[]                         stateHashes           = new int[STATE_HASH_TICKS];
+	/**
+	 * Client contacts of the clients who sent the stored state hashes (null if
+	 * no state hash is stored).
+	 */
+	private final ClientContact[]               stateHashClients      = new ClientContact[STATE_HASH_TICKS];
+	/** The first tick whose state hashes differ, -1 if there is no such tick. */
+	private int                                 desynchronizedTick;
+	/** The packed server options of the game (sent to the resuming clients). */
+	private String                              gameServerOptions;
+	/**
+	 * The packed level of the game (sent to the resuming clients), null if
+	 * the level is randomly generated.
+	 */
+	private String                              gameLevel;
+	/**
+	 * Contacts of the clients resuming their sessions, waiting for the
+	 * requested snapshot of the game.
+	 */
+	private final List<ClientContact>           resumingClientContacts = new ArrayList<ClientContact>();
+	/**
+	 * Contact of the client asked for the snapshot of the game, null if no
+	 * snapshot is requested.
+	 */
+	private ClientContact                       snapshotClientContact;
+	/** Id of the last snapshot request. */
+	private int                                 snapshotRequestId;
+	/** The time when the snapshot has been requested (System.nanoTime()). */
+	private long                                snapshotRequestTime;
+	/**
+	 * Contacts of the clients of the game when the snapshot has been
+	 * requested: the snapshot describes the game of these clients.
+	 */
+	private final List<ClientContact>           snapshotClientContacts = new ArrayList<ClientContact>();
+	/**
+	 * The commands (Strings) and frames (IterationFrames) broadcasted since
+	 * the snapshot has been requested, sent to the resuming clients after the
+	 * snapshot.
+	 */
+	private final List<Object>                  actionLog             = new ArrayList<Object>();
 
 	/**
 	 * Creates a new Server.
 	 * 
-	 * @param serverOptionsManager
-	 *            reference to the server options manager
-	 * @param mainFrame
-	 *            reference to the main frame
-	 * @param gameManager
-	 *            reference to the game manager
-	 */
-	public Server(final OptionsManager<ServerOptions> serverOptionsManager, final MainFrame mainFrame, final GameManager gameManager) {
-		super(20); // This frequency will not be used, will be overwritten when
-		// game starts
-		this.serverOptionsManager = serverOptionsManager;
-		this.mainFrame = mainFrame;
-		this.gameManager = gameManager;
-		this.serverOptionsManager.registerOptionsChangeListener(this);
+	 * @param serverOptionsHolder
+	 *            reference to the server options holder
+	 * @param serverHost
+	 *            reference to the server host
+	 */
+	public Server(final OptionsHolder<ServerOptions> serverOptionsHolder, final ServerHost serverHost) {
+		this(serverOptionsHolder, serverHost, null, null);
+	}
+
+	/**
+	 * Creates a new Server. Package-private because RoomServer creates its
+	 * rooms with it.
+	 * 
+	 * @param serverOptionsHolder
+	 *            reference to the server options holder
+	 * @param serverHost
+	 *            reference to the server host
+	 * @param iterationScheduler
+	 *            OPTIONAL iteration scheduler to run the steps of the server;
+	 *            null means the server is not a room, it runs in a thread of
+	 *            its own
+	 * @param connectionSelector
+	 *            the shared connection selector in case of a room (ignored if
+	 *            iterationScheduler is null)
+	 */
+	Server(final OptionsHolder<ServerOptions> serverOptionsHolder, final ServerHost serverHost, final IterationScheduler iterationScheduler,
+	        final ConnectionSelector connectionSelector) {
+		super(20, iterationScheduler); // This frequency will not be used, will
+		// be overwritten when game starts
+		this.serverOptionsHolder = serverOptionsHolder;
+		this.serverHost = serverHost;
+		gameState = GameStates.PLAYER_COLLECTING_NOT_CONNECTED;
+		if (iterationScheduler == null) {
+			stepTask = null;
+			wakeUpSignal = new WakeUpSignal();
+			try {
+				this.connectionSelector = new ConnectionSelector(wakeUpSignal);
+			} catch (final IOException ie) {
+				throw new RuntimeException("Can't open the connection selector!", ie);
+			}
+			this.connectionSelector.start();
+		} else {
+			stepTask = iterationScheduler.createTask(new Runnable() {
+
+				public void run() {
+					step();
+				}
+			});
+			wakeUpSignal = new WakeUpSignal(new Runnable() {
+
+				public void run() {
+					stepTask.schedule();
+				}
+			});
+			this.connectionSelector = connectionSelector;
+		}
+		this.serverOptionsHolder.registerOptionsChangeListener(this);
 		iterationTimer.start();
 	}
 
@@ -156,145 +454,740 @@ public class Server extends TimedIterableControlledThread implements OptionsChan
 		return false;
 	}
 
+	/**
+	 * Connects the client of the host through an in-process connection. The
+	 * joining protocol is the same as through the server socket.
+	 * 
+	 * @return the client end of the connection
+	 */
+	public ConnectionStub connectLocalClient() {
+		return playerCollector.connectLocalClient();
+	}
+
 	/**
 	 * The run() method of the server controlled thread. Provides the services
-	 * of the server.
+	 * of the server: runs the steps of the server whenever it is woken up.
 	 */
 	public void run() {
-		gameState = GameStates.PLAYER_COLLECTING_NOT_CONNECTED;
-		while (true) { // The game loop: every iteration of this loop is one
-			// game.
-
-			if (requestedToCancel) {
-				break;
+		startCollectingPlayers();
+		while (!requestedToCancel) {
+			step();
+			long timeout = WAKE_UP_TIMEOUT;
+			if (wakeUpTime != 0) {
+				timeout = Math.max(1l, Math.min(timeout, (wakeUpTime - System.nanoTime()) / 1000000l + 1));
+			}
+			try {
+				wakeUpSignal.await(timeout);
+			} catch (final InterruptedException ie) {
+				ie.printStackTrace();
 			}
-			collectPlayers();
+		}
+		stopSteps();
+	}
 
-			if (requestedToCancel) {
-				break;
+	/**
+	 * Starts the server as a room of a RoomServer: its steps will be run by
+	 * the iteration scheduler.
+	 */
+	void startAsRoom() {
+		startCollectingPlayers();
+		stepTask.schedule();
+	}
+
+	/**
+	 * Does the actual job of the server: collects players until game starting
+	 * is requested, and handles the game until it ends. Called whenever the
+	 * server is woken up, never by two threads at the same time.<br>
+	 * The commands sent in a step are coalesced, and written to each client by
+	 * one write at the end of the step.
+	 */
+	private void step() {
+		if (requestedToCancel) {
+			return;
+		}
+
+		if (gameState != GameStates.PLAYING) {
+			if (!requestedToStartGame) {
+				collectPlayers();
+			} else {
+				requestedToStartGame = false;
+				gameState = GameStates.PLAYING;
+				startGame();
+				handleGame();
 			}
-			gameState = GameStates.PLAYING;
-			handleGame();
+		} else if (requestedToEndGame) {
+			endGame();
 			gameState = GameStates.PLAYER_COLLECTING_CONNECTED;
+		} else {
+			handleGame();
+		}
+
+		flushClients();
+	}
+
+	/**
+	 * Finishes the steps when cancel has been requested: ends the game (if
+	 * any) and the collecting of players.
+	 */
+	private void stopSteps() {
+		if (gameState == GameStates.PLAYING) {
+			endGame();
+		}
+		stopCollectingPlayers();
+	}
 
+	/**
+	 * Starts collecting players. The player collector accepting the clients is
+	 * created if we are not a room (the clients of a room are accepted by the
+	 * RoomServer). The player collector keeps accepting during the games too:
+	 * the clients whose connection has been lost resume their sessions
+	 * through it.
+	 */
+	private void startCollectingPlayers() {
+		if ((stepTask == null) && (playerCollector == null)) {
+			playerCollector = new PlayerCollector(this, serverOptionsHolder, serverHost, connectionSelector);
 		}
 	}
 
 	/**
-	 * Collects players until game starting or cancel is requested.
+	 * Does a step of collecting players: finishes the joining of the new
+	 * clients and processes the commands.
 	 */
 	private void collectPlayers() {
-		playerCollector = new PlayerCollector(this, serverOptionsManager, clientContacts, mainFrame);
+		finishJoiningClients();
+		checkForNewCommands();
+	}
+
+	/**
+	 * Stops collecting players.
+	 */
+	private void stopCollectingPlayers() {
+		if (playerCollector != null) {
+			playerCollector.close();
+			playerCollector = null;
+		}
+	}
+
+	/**
+	 * Adds a client who passed the handshake of the joining protocol. The
+	 * joining will be finished while collecting players. Package-private
+	 * because PlayerCollector and RoomServer call it.
+	 * 
+	 * @param connectionStub
+	 *            the connection stub to the client
+	 */
+	void addJoiningClient(final SelectorConnectionStub connectionStub) {
+		if (stepTask != null) {
+			// The connection selector is shared, the messages of the client
+			// must wake up us
+			connectionStub.setMessageSignal(wakeUpSignal);
+		}
+		// The commands are flushed at the end of the steps
+		connectionStub.setAutoFlush(false);
+		addJoiningClientContact(new ClientContact(connectionStub));
+	}
+
+	/**
+	 * Adds a client connected through an in-process connection (the client of
+	 * the host) whose password has been accepted. Its joining will be
+	 * finished by the server thread.
+	 * 
+	 * @param connectionStub
+	 *            server end of the in-process connection to the client
+	 */
+	void addJoiningClient(final LocalConnectionStub connectionStub) {
+		// The messages of the client must wake up us
+		connectionStub.setMessageSignal(wakeUpSignal);
+		addJoiningClientContact(new ClientContact(connectionStub));
+	}
+
+	/**
+	 * Adds the contact of a joining client whose password has been accepted.
+	 * 
+	 * @param clientContact
+	 *            client contact of the joining client
+	 */
+	private void addJoiningClientContact(final ClientContact clientContact) {
+		clientContact.joiningStartTime = System.nanoTime();
+		synchronized (joiningClientContacts) {
+			joiningClientContacts.add(clientContact);
+			clientsCount++;
+		}
+		wakeUp();
+	}
+
+	/**
+	 * Finishes the joining of the clients who sent their public client
+	 * options. This is the end of the joining protocol. The clients joining
+	 * during a game join when it ends, the clients resuming their sessions
+	 * resume them.<br>
+	 * When this method is called, inserting to clientContacts is allowed, no
+	 * iterator is existing on it.
+	 */
+	private void finishJoiningClients() {
+		while (true) {
+			final ClientContact newClientContact;
+			synchronized (joiningClientContacts) {
+				if (joiningClientContacts.isEmpty()) {
+					return;
+				}
+				newClientContact = joiningClientContacts.getFirst();
+				if (!newClientContact.connectionStub.hasNewMessage()) {
+					if (System.nanoTime() - newClientContact.joiningStartTime < JOINING_TIMEOUT) {
+						return; // We wait for its public client options
+					}
+					joiningClientContacts.removeFirst();
+					clientsCount--;
+					newClientContact.connectionStub.close();
+					continue;
+				}
+				joiningClientContacts.removeFirst();
+			}
 
-		while (!requestedToCancel && !requestedToStartGame) {
-			playerCollector.nextIteration();
-			checkForNewCommands();
 			try {
-				sleep(1l);
-			} catch (final InterruptedException ie) {
-				ie.printStackTrace();
+				// Client must send
+				// Server.Commands.SENDING_PUBLIC_CLIENT_OPTIONS or
+				// Server.Commands.RESUMING_SESSION
+				final GeneralStringTokenizer commandTokenizer = new GeneralStringTokenizer(newClientContact.connectionStub.receiveMessage());
+				if (Commands.values()[commandTokenizer.nextIntToken()] == Commands.RESUMING_SESSION) {
+					final long sessionKey = Long.parseLong(commandTokenizer.nextStringToken());
+					synchronized (joiningClientContacts) {
+						clientsCount--; // The client is counted already
+					}
+					resumeSession(newClientContact.connectionStub, sessionKey);
+					continue;
+				}
+				newClientContact.publicClientOptions = PublicClientOptions.parseFromString(commandTokenizer.remainingString());
+			} catch (final Exception e) {
+				e.printStackTrace();
+				synchronized (joiningClientContacts) {
+					clientsCount--;
+				}
+				newClientContact.connectionStub.close();
+				continue;
+			}
+
+			if (gameState == GameStates.PLAYING) {
+				waitingClientContacts.add(newClientContact);
+			} else {
+				joinClient(newClientContact);
 			}
 		}
-		playerCollector.close();
-		playerCollector = null;
-		requestedToStartGame = false;
 	}
 
 	/**
-	 * Handles the game until it ends or cancel is requested.
+	 * Joins a client who sent its public client options: the end of the
+	 * joining protocol. The client gets the key of its session.
+	 * 
+	 * @param newClientContact
+	 *            client contact of the joining client
 	 */
-	private void handleGame() {
+	private void joinClient(final ClientContact newClientContact) {
+		try {
+			broadcastCommand(Client.Commands.A_CLIENT_HAS_JOINED_THE_GAME.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING
+			        + newClientContact.publicClientOptions.packToString());
+			synchronized (clientContacts) {
+				clientContacts.add(newClientContact);
+			}
+
+			newClientContact.connectionStub.sendMessage("" + clientContacts.size());
+			for (final ClientContact clientContact : clientContacts) {
+				newClientContact.connectionStub.sendMessage(clientContact.publicClientOptions.packToString());
+			}
+			do {
+				newClientContact.sessionKey = sessionKeyGenerator.nextLong();
+			} while (newClientContact.sessionKey == 0l);
+			newClientContact.connectionStub.sendMessage(Client.Commands.SENDING_SESSION_KEY.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING
+			        + newClientContact.sessionKey + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING);
+			// End of joining protocol
+
+			broadcastMessage(SERVER_CHAT_NAME + newClientContact.publicClientOptions.clientName + " has joined the game.");
+		} catch (final Exception e) {
+			e.printStackTrace();
+			if (!clientContacts.contains(newClientContact)) {
+				synchronized (joiningClientContacts) {
+					clientsCount--;
+				}
+				newClientContact.connectionStub.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of the joined and joining clients.
+	 * 
+	 * @return the number of the joined and joining clients
+	 */
+	int getClientsCount() {
+		synchronized (joiningClientContacts) {
+			return clientsCount;
+		}
+	}
+
+	/**
+	 * Tells whether a game is in progress.
+	 * 
+	 * @return true if a game is in progress; false otherwise
+	 */
+	boolean isPlaying() {
+		return gameState == GameStates.PLAYING;
+	}
+
+	/**
+	 * Starts a game: performs the game starting protocol.
+	 */
+	private void startGame() {
 
 		// Game starting protocol
 		broadcastCommand(Client.Commands.STARTING_GAME.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING);
 
 		// Sending all required options and datas for a new game...
 		broadcastCommand("" + new Random().nextLong());
-		final ServerOptions serverOptions = serverOptionsManager.getOptions();
-		broadcastCommand(serverOptions.packToString());
+		final ServerOptions serverOptions = serverOptionsHolder.getOptions();
+		gameServerOptions = serverOptions.packToString();
+		broadcastCommand(gameServerOptions);
+		gameLevel = null;
 		if (!serverOptions.getLevelName().equals(ServerComponentOptions.RANDOMLY_GENERATED_LEVEL_NAME)) {
-			broadcastCommand(gameManager.getLevel().packToString());
+			gameLevel = serverHost.getLevel().packToString();
+			broadcastCommand(gameLevel);
 		}
 
 		iterationTimer.setFrequency(serverOptions.getGameCycleFrequency());
+		iterationTimer.resetStatistics();
 		nextIterationMayBegin = false;
 		iterationTimer.setReadyForNextIteration();
 
 		for (final ClientContact clientContact : clientContacts) {
-			clientContact.newClientActions = ""; // Simulating that all the
-			// clients are ready for next
-			// iteration
+			clientContact.newClientActions.clear(0); // Simulating that all the
+			clientContact.newClientActions.setReceivedTime(0);
+			clientContact.readyForNextIteration = true; // clients are ready
+			// for next iteration
+			clientContact.missedDeadlinesCount = 0;
+			clientContact.successiveMissedDeadlinesCount = 0;
+			clientContact.stallTime = 0;
+			clientContact.ghost = false;
+			clientContact.catchingUp = false;
+			clientContact.resumedTick = 0;
+			clientContact.roundTripTime.reset();
+			freeFrames.addAll(clientContact.pendingFrames);
+			clientContact.pendingFrames.clear();
+			clientContact.minTimeMargin = Integer.MAX_VALUE;
+			clientContact.timeMarginSamples = 0;
+			clientContact.timeSyncResumeTick = 0;
+			clientContact.gamePlayersCount = clientContact.publicClientOptions.playerNames.length;
 		}
 
+		// If network latency is LOW, we send STARTING_NEXT_ITERATION command in
+		// every iteration, if it's HIGH, we send in every 2, and if it's
+		// EXTRA_HIGH, we send in every 4. If it's ADAPTIVE, we start with every
+		// iteration, and adapt it to the measured round trip times.
+		gatePeriod = serverOptions.getNetworkLatency() == NetworkLatencies.HIGH ? 2
+		        : (serverOptions.getNetworkLatency() == NetworkLatencies.EXTRA_HIGH ? 4 : 1);
+		adaptiveGatePeriod = serverOptions.getNetworkLatency() == NetworkLatencies.ADAPTIVE;
+		shorteningVotes = 0;
+		// In rollback network mode every iteration is timed by us, but we
+		// don't wait for the clients, and the first frame is sent when the
+		// timer ticks.
+		rollbackMode = serverOptions.getNetworkLatency() == NetworkLatencies.ROLLBACK;
+		rollbackWindow = serverOptions.getRollbackWindow();
+		iterationPeriodTime = 1000000000l / serverOptions.getGameCycleFrequency();
+		nextFrameTick = 0;
+		Arrays.fill(stateHashClients, null);
+		desynchronizedTick = -1;
+
 		startNextRound();
-		broadcastStartingNextIterationCommand();
+		if (!rollbackMode) {
+			broadcastStartingNextIterationCommand();
+		}
+
+		gateLatencyHistogram.reset();
+	}
+
+	/**
+	 * Does a step of handling the game: processes the commands, and times the
+	 * next iteration if it may begin.
+	 */
+	private void handleGame() {
+		// Commands are checked first: the arrival of the last ready
+		// command is what we're woken up for most of the time
+		checkForNewCommands();
+		finishJoiningClients();
+		checkResumingSessions();
+
+		if (nextIterationMayBegin) {
+			if (rollbackMode) {
+				broadcastRollbackFrame();
+				startNextIteration();
+			} else if (iterationCounter == lastFrameTick) { // We
+				// time
+				// the
+				// clients
+				if (areAllClientsReadyForNextIteration()) {
+					final long gateOpeningTime = getGateOpeningTime();
+					recordStallTimes();
+					broadcastStartingNextIterationCommand();
+					gateLatencyHistogram.record(System.nanoTime() - gateOpeningTime);
+					startNextIteration();
+				} else if (System.nanoTime() - (iterationTimerTickTime + READY_DEADLINE_TIME) >= 0) {
+					handleMissedDeadlines();
+					broadcastStartingNextIterationCommand();
+					startNextIteration();
+				} else {
+					wakeUpAt(iterationTimerTickTime + READY_DEADLINE_TIME);
+				}
+			} else {
+				// The clients time themselves
+				startNextIteration();
+			}
+		}
+	}
+
+	/**
+	 * Requests to be woken up at a given time (if we are not woken up by
+	 * something else earlier).
+	 * 
+	 * @param time
+	 *            the time when we have to be woken up (System.nanoTime())
+	 */
+	private void wakeUpAt(final long time) {
+		if (wakeUpTime == time) {
+			return; // Already requested
+		}
+		wakeUpTime = time;
+		if (stepTask != null) {
+			stepTask.scheduleAfter(time - System.nanoTime());
+		}
+	}
+
+	/**
+	 * Records the stall times when all the clients are ready: the time the
+	 * server timed iteration waited for each client after the timer tick.
+	 */
+	private void recordStallTimes() {
+		for (final ClientContact clientContact : clientContacts) {
+			if (!clientContact.ghost) {
+				recordStallTime(clientContact);
+			}
+		}
+	}
+
+	/**
+	 * Records the stall time of a client who is ready: the time the server
+	 * timed iteration waited for it after the timer tick. The client is not
+	 * lagging any more.
+	 * 
+	 * @param clientContact
+	 *            client contact of the client
+	 */
+	private void recordStallTime(final ClientContact clientContact) {
+		final long readyTime = clientContact.newClientActions.getReceivedTime();
+		if ((readyTime != 0) && (readyTime - iterationTimerTickTime > 0)) {
+			clientContact.stallTime += readyTime - iterationTimerTickTime;
+		}
+		clientContact.successiveMissedDeadlinesCount = 0;
+	}
+
+	/**
+	 * Handles the clients who missed the ready deadline: their missed
+	 * deadlines are counted, and they become ghosts if they missed too many
+	 * successive deadlines. The stall times of the ready clients are
+	 * recorded.
+	 */
+	private void handleMissedDeadlines() {
+		for (int i = 0; i < clientContacts.size(); i++) {
+			final ClientContact clientContact = clientContacts.get(i);
+			if (clientContact.ghost) {
+				continue;
+			}
+			if (clientContact.readyForNextIteration) {
+				recordStallTime(clientContact);
+				continue;
+			}
+			clientContact.stallTime += READY_DEADLINE_TIME;
+			clientContact.missedDeadlinesCount++;
+			if (++clientContact.successiveMissedDeadlinesCount == GHOSTING_MISSES) {
+				clientContact.ghost = true;
+				broadcastMessage(SERVER_CHAT_NAME + clientContact.publicClientOptions.clientName + " is lagging, robots have taken over the players.");
+				broadcastGhost(i);
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the client controlling the players of the ghosts:
+	 * the first client which is not a ghost.
+	 * 
+	 * @return the index of the client controlling the players of the ghosts;
+	 *         -1 if all the clients are ghosts
+	 */
+	private int getGhostControllerIndex() {
+		for (int i = 0; i < clientContacts.size(); i++) {
+			if (!clientContacts.get(i).ghost) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Broadcasts that a client is a ghost, and which client controls its
+	 * players.
+	 * 
+	 * @param clientIndex
+	 *            index of the ghost client
+	 */
+	private void broadcastGhost(final int clientIndex) {
+		broadcastCommand(Client.Commands.A_CLIENT_HAS_BECOME_A_GHOST.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING + clientIndex
+		        + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING + getGhostControllerIndex() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING);
+	}
+
+	/**
+	 * Ends the game.
+	 */
+	private void endGame() {
+		System.out.println("Server.endGame() " + iterationTimer.getStatistics());
+		System.out.println("Server.endGame() " + gateLatencyHistogram);
+		for (final ClientContact clientContact : clientContacts) {
+			System.out.println("Server.endGame() " + getClientStatistics(clientContact));
+		}
+
+		broadcastCommand(Client.Commands.ENDING_GAME.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING);
+		requestedToEndGame = false;
+
+		// The sessions can't be resumed after the game
+		dropResumingClients();
+		for (int i = clientContacts.size() - 1; i >= 0; i--) {
+			if (clientContacts.get(i).disconnected) {
+				handleClientLeaving(clientContacts.get(i));
+			}
+		}
+		for (final ClientContact clientContact : waitingClientContacts) {
+			joinClient(clientContact);
+		}
+		waitingClientContacts.clear();
+	}
+
+	/**
+	 * Starts next iteration which does not include sending
+	 * STARTING_NEXT_ITERATION command.
+	 */
+	private void startNextIteration() {
+		nextIterationMayBegin = false;
+		iterationTimer.setReadyForNextIteration();
+		iterationCounter++;
+	}
+
+	/**
+	 * Broadcasts the starting next iteration.<br>
+	 * This includes sending and clearing all the new client actions.
+	 */
+	private void broadcastStartingNextIterationCommand() {
+		if (adaptiveGatePeriod) {
+			adaptGatePeriod();
+		}
+		wakeUpTime = 0;
+		lastFrameTick = nextFrameTick;
+		startingFrame.clear(nextFrameTick);
+		nextFrameTick += gatePeriod;
+
+		final int ghostControllerIndex = getGhostControllerIndex();
+		for (int i = 0; i < clientContacts.size(); i++) {
+			final ClientContact clientContact = clientContacts.get(i);
+			// The actions of the ghosts and of the clients who missed the
+			// deadline are not sent (the latter are sent when they arrive)
+			if (clientContact.readyForNextIteration && !clientContact.ghost) {
+				addClientActions(i, i == ghostControllerIndex, clientContact.newClientActions);
+			}
+			clientContact.readyForNextIteration = false;
+		}
+
+		// We send ALL new clients actions
+		lastFrameSentTime = System.nanoTime();
+		broadcastFrame(startingFrame);
+	}
+
+	/**
+	 * Adds the actions of a client to the STARTING_NEXT_ITERATION frame. The
+	 * sections of the ghosts are kept if the client controls the ghosts, the
+	 * other actions belong to the client. The sections of a resumed client
+	 * sent by its former ghost controller before the client resumed the game
+	 * are dropped.
+	 * 
+	 * @param clientIndex
+	 *            index of the client
+	 * @param ghostController
+	 *            tells whether the client controls the players of the ghosts
+	 * @param clientActions
+	 *            the actions of the client
+	 */
+	private void addClientActions(final int clientIndex, final boolean ghostController, final IterationFrame clientActions) {
+		int sectionClientIndex = -1;
+		for (int section = 0; section < clientActions.getSectionsCount(); section++) {
+			if (clientActions.getSectionActionsStart(section) == clientActions.getSectionActionsEnd(section)) {
+				continue;
+			}
+			int actionsClientIndex = clientActions.getSectionClientIndex(section);
+			if (!ghostController || (actionsClientIndex < 0) || (actionsClientIndex >= clientContacts.size())
+			        || !clientContacts.get(actionsClientIndex).ghost) {
+				if ((actionsClientIndex != clientIndex) && (actionsClientIndex >= 0) && (actionsClientIndex < clientContacts.size())
+				        && (clientActions.getTick() < clientContacts.get(actionsClientIndex).resumedTick)) {
+					continue;
+				}
+				actionsClientIndex = clientIndex;
+			}
+			if (!clientActions.hasValidPlayerIndices(section, clientContacts.get(actionsClientIndex).gamePlayersCount)) {
+				// A malformed frame would crash the game of every client
+				continue;
+			}
+			if (actionsClientIndex != sectionClientIndex) {
+				startingFrame.beginSection(actionsClientIndex);
+				sectionClientIndex = actionsClientIndex;
+			}
+			startingFrame.addSectionActionsOf(clientActions, section);
+		}
+	}
+
+	/**
+	 * Broadcasts the starting next iteration in case of rollback network
+	 * mode.<br>
+	 * This includes sending the due actions of the pending frames of the
+	 * clients (the late ones too).
+	 */
+	private void broadcastRollbackFrame() {
+		startingFrame.clear(nextFrameTick);
 
-		// If network latency is LOW, we send STARTING_NEXT_ITERATION command in
-		// every iteration, if it's HIGH, we send in every 2, and if it's
-		// EXTRA_HIGH, we send in every 4.
-		final int ITERATION_NETWORK_LATENCY_MASK = serverOptions.getNetworkLatency() == NetworkLatencies.LOW ? 0
-		        : (serverOptions.getNetworkLatency() == NetworkLatencies.HIGH ? 1 : 3);
-		while (!requestedToCancel && !requestedToEndGame) {
-
-			if (nextIterationMayBegin) {
-				if ((iterationCounter & ITERATION_NETWORK_LATENCY_MASK) == 0) { // We
-					// time
-					// the
-					// clients
-					if (areAllClientsReadyForNextIteration()) {
-						broadcastStartingNextIterationCommand();
-						startNextIteration();
+		for (int i = 0; i < clientContacts.size(); i++) {
+			final LinkedList<IterationFrame> pendingFrames = clientContacts.get(i).pendingFrames;
+			boolean sectionBegun = false;
+			while (!pendingFrames.isEmpty() && (pendingFrames.getFirst().getTick() <= nextFrameTick)) {
+				final IterationFrame pendingFrame = pendingFrames.removeFirst();
+				if ((pendingFrame.getActionsCount() > 0) && pendingFrame.hasValidPlayerIndices(clientContacts.get(i).gamePlayersCount)) {
+					if (!sectionBegun) {
+						startingFrame.beginSection(i);
+						sectionBegun = true;
 					}
-				} else {
-					// The clients time themselves
-					startNextIteration();
+					startingFrame.addActionsOf(pendingFrame);
 				}
-			}
-
-			checkForNewCommands();
-			try {
-				sleep(10);
-			} catch (final InterruptedException ie) {
-				ie.printStackTrace();
+				freeFrames.add(pendingFrame);
 			}
 		}
 
-		broadcastCommand(Client.Commands.ENDING_GAME.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING);
-		requestedToEndGame = false;
+		nextFrameTick++;
+		broadcastFrame(startingFrame);
 	}
 
 	/**
-	 * Starts next iteration which does not include sending
-	 * STARTING_NEXT_ITERATION command.
+	 * Receives a READY_FOR_NEXT_ITERATION frame in case of rollback network
+	 * mode. The frame is stored until it is due, and its time margin is used
+	 * to synchronize the time of the client.
+	 * 
+	 * @param clientContact
+	 *            client contact of the client who sent the frame
+	 * @throws IOException
+	 *             if I/O error occurs during receiving the frame
 	 */
-	private void startNextIteration() {
-		nextIterationMayBegin = false;
-		iterationTimer.setReadyForNextIteration();
-		iterationCounter++;
+	private void receiveRollbackFrame(final ClientContact clientContact) throws IOException {
+		final IterationFrame frame = freeFrames.isEmpty() ? new IterationFrame(IterationFrame.READY_FOR_NEXT_ITERATION_MARKER) : freeFrames.removeFirst();
+		clientContact.connectionStub.receiveFrame(frame);
+		clientContact.pendingFrames.add(frame);
+		synchronizeTime(clientContact, frame.getTick() - nextFrameTick);
 	}
 
 	/**
-	 * Broadcasts the starting next iteration.<br>
-	 * This includes sending and clearing all the new client actions.
+	 * Synchronizes the time of a client in case of rollback network mode. If a
+	 * frame of the client arrives late, the client is told to simulate extra
+	 * iterations immediately. If the frames of TIME_MARGIN_SAMPLES arrived too
+	 * early, the client is told to skip timer ticks. After an adjustment the
+	 * samples are ignored for a rollback window (the answers of the old time
+	 * may still arrive).
+	 * 
+	 * @param clientContact
+	 *            client contact of the client
+	 * @param timeMargin
+	 *            time margin of the arrived frame: how many iterations it
+	 *            arrived before it was due (negative if it is late)
+	 * @throws IOException
+	 *             if I/O error occurs during sending the adjustment
 	 */
-	private void broadcastStartingNextIterationCommand() {
-		StringBuilder newClientsActions = new StringBuilder();
-		newClientsActions.append(Integer.toString(Client.Commands.STARTING_NEXT_ITERATION.ordinal()));
-		newClientsActions.append(GeneralStringTokenizer.GENERAL_SEPARATOR_STRING);
+	private void synchronizeTime(final ClientContact clientContact, final int timeMargin) throws IOException {
+		if (nextFrameTick < clientContact.timeSyncResumeTick) {
+			return;
+		}
 
-		for (int i = 0; i < clientContacts.size(); i++) {
-			final ClientContact clientContact = clientContacts.get(i);
-			if (!clientContact.newClientActions.isEmpty()) {
-				newClientsActions.append("player ");
-				newClientsActions.append(Integer.toString(i));
-				newClientsActions.append(' ');
-				newClientsActions.append(clientContact.newClientActions);
+		int timeAdjustment = 0;
+		if (timeMargin < 0) {
+			timeAdjustment = TARGET_TIME_MARGIN - timeMargin;
+		} else {
+			clientContact.minTimeMargin = Math.min(clientContact.minTimeMargin, timeMargin);
+			if (++clientContact.timeMarginSamples < TIME_MARGIN_SAMPLES) {
+				return;
+			}
+			// We allow one extra iteration, so a jittery client is not
+			// adjusted back and forth
+			if (clientContact.minTimeMargin > TARGET_TIME_MARGIN + 1) {
+				timeAdjustment = TARGET_TIME_MARGIN - clientContact.minTimeMargin;
+			}
+		}
+
+		clientContact.minTimeMargin = Integer.MAX_VALUE;
+		clientContact.timeMarginSamples = 0;
+		if (timeAdjustment != 0) {
+			clientContact.timeSyncResumeTick = nextFrameTick + rollbackWindow;
+			clientContact.connectionStub.sendMessage(Client.Commands.ADJUSTING_TIME.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING
+			        + timeAdjustment + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING);
+		}
+	}
+
+	/**
+	 * Adapts the gate period to the round trip times of the clients. The gate
+	 * period is chosen so that the answers of the clients arrive in time
+	 * (before the iteration which waits for them is due). A longer period is
+	 * effective immediately, a shorter one only if it has been allowed by
+	 * SHORTENING_VOTES successive server timed iterations.<br>
+	 * The change (if any) is effective from the frame being broadcasted, and
+	 * is sent right before it.
+	 */
+	private void adaptGatePeriod() {
+		long roundTripTimeBound = 0l;
+		for (final ClientContact clientContact : clientContacts) {
+			if (clientContact.roundTripTime.hasSample()) {
+				roundTripTimeBound = Math.max(roundTripTimeBound, clientContact.roundTripTime.getUpperBound());
+			}
+		}
+		final int requiredGatePeriod = (int) Math.max(1l, Math.min(MAX_GATE_PERIOD, (roundTripTimeBound + iterationPeriodTime - 1) / iterationPeriodTime));
+
+		if (requiredGatePeriod >= gatePeriod) {
+			shorteningVotes = 0;
+			if (requiredGatePeriod == gatePeriod) {
+				return;
 			}
-			clientContact.newClientActions = null;
+		} else if (++shorteningVotes < SHORTENING_VOTES) {
+			return;
 		}
 
-		// We append ALL new clients actions
-		broadcastCommand(newClientsActions.toString());
+		shorteningVotes = 0;
+		gatePeriod = requiredGatePeriod;
+		broadcastCommand(Client.Commands.CHANGING_GATE_PERIOD.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING + nextFrameTick
+		        + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING + gatePeriod + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING);
+	}
+
+	/**
+	 * Returns the time when the gate of the actual server timed iteration
+	 * opened: the arrival of the last ready command or the timer tick,
+	 * whichever is later.
+	 * 
+	 * @return the time when the gate of the actual iteration opened
+	 *         (System.nanoTime())
+	 */
+	private long getGateOpeningTime() {
+		long gateOpeningTime = iterationTimerTickTime;
+		for (final ClientContact clientContact : clientContacts) {
+			final long readyTime = clientContact.newClientActions.getReceivedTime();
+			if ((readyTime != 0) && (readyTime - gateOpeningTime > 0)) {
+				gateOpeningTime = readyTime;
+			}
+		}
+		return gateOpeningTime;
 	}
 
 	/**
@@ -305,7 +1198,7 @@ public class Server extends TimedIterableControlledThread implements OptionsChan
 	 */
 	private boolean areAllClientsReadyForNextIteration() {
 		for (final ClientContact clientContact : clientContacts) {
-			if (clientContact.newClientActions == null) {
+			if (!clientContact.readyForNextIteration && !clientContact.ghost) {
 				return false;
 			}
 		}
@@ -313,25 +1206,94 @@ public class Server extends TimedIterableControlledThread implements OptionsChan
 		return true;
 	}
 
+	/**
+	 * Checks the state hash of a READY_FOR_NEXT_ITERATION frame: compares it
+	 * to the first state hash received for the same tick, or stores it if it
+	 * is the first. The first difference is reported to the server host and
+	 * broadcasted, the later ones are not checked.
+	 * 
+	 * @param clientContact
+	 *            client contact of the client who sent the frame
+	 * @param frame
+	 *            the received frame
+	 */
+	private void checkStateHash(final ClientContact clientContact, final IterationFrame frame) {
+		if ((frame.getStateHash() == 0) || (desynchronizedTick >= 0)) {
+			return;
+		}
+		final int tick = frame.getTick();
+		final int index = tick & (STATE_HASH_TICKS - 1);
+		if ((stateHashClients[index] == null) || (stateHashTicks[index] != tick)) {
+			stateHashTicks[index] = tick;
+			stateHashes[index] = frame.getStateHash();
+			stateHashClients[index] = clientContact;
+		} else if (stateHashes[index] != frame.getStateHash()) {
+			desynchronizedTick = tick;
+			final String clientName = clientContact.publicClientOptions.clientName;
+			final String referenceClientName = stateHashClients[index].publicClientOptions.clientName;
+			serverHost.gameDesynchronized(tick, clientName, referenceClientName);
+			broadcastMessage(SERVER_CHAT_NAME + "Game desynchronized at tick " + tick + ": the state of " + clientName + " differs from the state of "
+			        + referenceClientName + "!");
+		}
+	}
+
 	/**
 	 * Checks all clients whether they sent new messages, and process them if
 	 * they did.
 	 */
 	private void checkForNewCommands() {
+		kickRequestedClients();
+		broadcastRequestedMessages();
+
 		for (int i = 0; i < clientContacts.size(); i++) {
 			// Can't use enhanced for because elements can be removed (QUIT)
 			final ClientContact clientContact = clientContacts.get(i);
+			if (clientContact.disconnected) {
+				continue;
+			}
 			messageLoop: while (clientContact.connectionStub.hasNewMessage()) {
 				try {
+					if (clientContact.connectionStub.isNextMessageFrame()) {
+						// The READY_FOR_NEXT_ITERATION command is the most
+						// frequent command, it comes as an iteration frame
+						if (rollbackMode) {
+							receiveRollbackFrame(clientContact);
+							continue;
+						}
+						if (clientContact.readyForNextIteration) {
+							// The previous frame hasn't been broadcasted yet
+							// (it was late)
+							clientContact.connectionStub.receiveFrame(clientContact.lateClientActions);
+							checkStateHash(clientContact, clientContact.lateClientActions);
+							if (clientContact.catchingUp) {
+								// The actions of a ghost are dropped anyway,
+								// only its progress matters
+								clientContact.newClientActions.copyFrom(clientContact.lateClientActions);
+								checkCatchingUp(i);
+							} else {
+								clientContact.newClientActions.addSectionsOf(clientContact.lateClientActions);
+							}
+							continue;
+						}
+						clientContact.connectionStub.receiveFrame(clientContact.newClientActions);
+						checkStateHash(clientContact, clientContact.newClientActions);
+						clientContact.readyForNextIteration = true;
+						if (clientContact.catchingUp) {
+							checkCatchingUp(i);
+						}
+						if (adaptiveGatePeriod && (lastFrameTick > 0) && (clientContact.newClientActions.getTick() == lastFrameTick)) {
+							// The answer of the first frame is delayed by the
+							// game starting, so it is not measured
+							clientContact.roundTripTime.addSample(clientContact.newClientActions.getReceivedTime() - lastFrameSentTime
+							        - clientContact.newClientActions.getHoldTime() * 1000l);
+						}
+						continue;
+					}
+
 					final GeneralStringTokenizer commandTokenizer = new GeneralStringTokenizer(clientContact.connectionStub.receiveMessage());
 					switch (Commands.values()[commandTokenizer.nextIntToken()]) {
-						// The message loop checks
-						// Commands.READY_FOR_NEXT_ITERATION and
-						// Commands.MESSAGE first, because these are the most
-						// frequent commands.
-						case READY_FOR_NEXT_ITERATION:
-							clientContact.newClientActions = commandTokenizer.hasRemainingString() ? commandTokenizer.remainingString() : "";
-							break;
+						// The message loop checks Commands.MESSAGE first,
+						// because this is the most frequent text command.
 						case MESSAGE:
 							broadcastMessage(clientContact.publicClientOptions.clientName + ": " + commandTokenizer.remainingString());
 							break;
@@ -349,40 +1311,91 @@ public class Server extends TimedIterableControlledThread implements OptionsChan
 							break;
 						case REQUESTING_SERVER_OPTIONS:
 							clientContact.connectionStub.sendMessage(Client.Commands.SENDING_SERVER_OPTIONS.ordinal()
-							        + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING + serverOptionsManager.getOptions().packToString());
+							        + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING + serverOptionsHolder.getOptions().packToString());
 							break;
 
 						case PLAYER_DIED:
 							// TODO clientContact.publicClientOptions.clientName
 							System.out.println("Server.checkForNewCommands() " + commandTokenizer.remainingString());
 							break;
+						case SENDING_GAME_SNAPSHOT:
+							// The answer of an old request is ignored
+							if ((clientContact == snapshotClientContact) && (commandTokenizer.nextIntToken() == snapshotRequestId)) {
+								sendGameSnapshot(commandTokenizer.remainingString());
+							}
+							break;
 					}
 				} catch (final Exception e) {
 					e.printStackTrace();
 				}
 			}
+			if (clientContact.connectionStub.isEndOfStream() && clientContacts.contains(clientContact) && !clientContact.disconnected) {
+				// The client has left without quitting (its connection has
+				// been lost): it may resume its session during a game, else
+				// it has left (or its room would never become empty)
+				if (isResumable()) {
+					handleClientDisconnection(clientContact);
+				} else {
+					handleClientLeaving(clientContact);
+				}
+			}
 		}
 	}
 
 	/**
-	 * Broadcasts a message to all the clients.
+	 * Broadcasts a message to all the clients. Chat messages are droppable:
+	 * they are not sent to the clients who are behind reading our commands.
 	 * 
 	 * @param message
 	 *            message to be broadcasted
 	 */
-	public void broadcastMessage(final String message) {
-		broadcastCommand(Client.Commands.MESSAGE.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING + message);
+	private void broadcastMessage(final String message) {
+		final String command = Client.Commands.MESSAGE.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING + message;
+		for (final ClientContact clientContact : clientContacts) {
+			if (clientContact.disconnected) {
+				continue;
+			}
+			try {
+				clientContact.connectionStub.sendDroppableMessage(command);
+			} catch (final IOException ie) {
+				ie.printStackTrace();
+			}
+		}
+		serverHost.messageBroadcasted(message);
+	}
+
+	/**
+	 * Writes the coalesced commands to the clients.
+	 */
+	private void flushClients() {
+		for (final ClientContact clientContact : clientContacts) {
+			if (clientContact.disconnected) {
+				continue;
+			}
+			try {
+				clientContact.connectionStub.flush();
+			} catch (final IOException ie) {
+				ie.printStackTrace();
+			}
+		}
 	}
 
 	/**
-	 * Broadcasts a command to all the clients. Protected because
-	 * PlayerCollector calls it.
+	 * Broadcasts a command to all the connected clients. The command is logged
+	 * for the resuming clients if a snapshot of the game is requested.
+	 * Protected because PlayerCollector calls it.
 	 * 
 	 * @param command
 	 *            command to be broadcasted
 	 */
 	protected void broadcastCommand(final String command) {
+		if (snapshotClientContact != null) {
+			actionLog.add(command);
+		}
 		for (final ClientContact clientContact : clientContacts) {
+			if (clientContact.disconnected) {
+				continue;
+			}
 			try {
 				clientContact.connectionStub.sendMessage(command);
 			} catch (final IOException ie) {
@@ -391,12 +1404,39 @@ public class Server extends TimedIterableControlledThread implements OptionsChan
 		}
 	}
 
+	/**
+	 * Broadcasts an iteration frame to all the connected clients. A copy of
+	 * the frame is logged for the resuming clients if a snapshot of the game
+	 * is requested.
+	 * 
+	 * @param frame
+	 *            frame to be broadcasted
+	 */
+	private void broadcastFrame(final IterationFrame frame) {
+		if (snapshotClientContact != null) {
+			final IterationFrame loggedFrame = new IterationFrame(frame.getMarker());
+			loggedFrame.copyFrom(frame);
+			actionLog.add(loggedFrame);
+		}
+		for (final ClientContact clientContact : clientContacts) {
+			if (clientContact.disconnected) {
+				continue;
+			}
+			try {
+				clientContact.connectionStub.sendFrame(frame);
+			} catch (final IOException ie) {
+				ie.printStackTrace();
+			}
+		}
+	}
+
 	/**
 	 * Starts current game.
 	 */
 	public void startCurrentGame() {
 		iterationCounter = 0;
 		requestedToStartGame = true;
+		wakeUp();
 		try {
 			while (gameState != GameStates.PLAYING) {
 				Thread.sleep(1l);
@@ -411,6 +1451,7 @@ public class Server extends TimedIterableControlledThread implements OptionsChan
 	 */
 	public void endCurrentGame() {
 		requestedToEndGame = true;
+		wakeUp();
 		try {
 			while (gameState == GameStates.PLAYING) {
 				Thread.sleep(1l);
@@ -418,6 +1459,99 @@ public class Server extends TimedIterableControlledThread implements OptionsChan
 		} catch (final InterruptedException ie) {}
 	}
 
+	/**
+	 * Requests to kick a client. The client will be kicked by the server
+	 * thread.
+	 * 
+	 * @param clientName
+	 *            name of the client to be kicked
+	 */
+	public void kickClient(final String clientName) {
+		synchronized (clientNamesToKick) {
+			clientNamesToKick.add(clientName);
+		}
+		wakeUp();
+	}
+
+	/**
+	 * Requests to broadcast a chat message of the server. The message will be
+	 * broadcasted by the server thread.
+	 * 
+	 * @param message
+	 *            message to be broadcasted (without the server chat name)
+	 */
+	public void requestMessageBroadcast(final String message) {
+		synchronized (messagesToBroadcast) {
+			messagesToBroadcast.add(message);
+		}
+		wakeUp();
+	}
+
+	/**
+	 * Broadcasts the chat messages whose broadcasting has been requested.
+	 */
+	private void broadcastRequestedMessages() {
+		synchronized (messagesToBroadcast) {
+			for (final String message : messagesToBroadcast) {
+				broadcastMessage(SERVER_CHAT_NAME + message);
+			}
+			messagesToBroadcast.clear();
+		}
+	}
+
+	/**
+	 * Kicks the clients whose kicking has been requested. The kicked clients
+	 * are told to shut down, and are handled as if they had left the game.
+	 */
+	private void kickRequestedClients() {
+		synchronized (clientNamesToKick) {
+			for (final String clientName : clientNamesToKick) {
+				for (int i = 0; i < clientContacts.size(); i++) {
+					final ClientContact clientContact = clientContacts.get(i);
+					if (clientContact.publicClientOptions.clientName.equals(clientName)) {
+						try {
+							clientContact.connectionStub.sendMessage(Client.Commands.MESSAGE.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING
+							        + SERVER_CHAT_NAME + "You have been kicked.");
+							clientContact.connectionStub.sendMessage(Client.Commands.SHUTDOWN.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING);
+						} catch (final IOException ie) {
+							ie.printStackTrace();
+						}
+						handleClientLeaving(clientContact);
+						broadcastMessage(SERVER_CHAT_NAME + clientName + " has been kicked.");
+						break;
+					}
+				}
+			}
+			clientNamesToKick.clear();
+		}
+	}
+
+	/**
+	 * Method to be called when the iteration timer ticks. Signs that new
+	 * iteration may begin now, and wakes up the server thread.
+	 */
+	public void signalingNextIteration() {
+		iterationTimerTickTime = System.nanoTime();
+		super.signalingNextIteration();
+		wakeUp();
+	}
+
+	/**
+	 * Wakes up the server thread (or schedules the next step in case of a
+	 * room). Package-private because RoomServer calls it periodically.
+	 */
+	void wakeUp() {
+		wakeUpSignal.signal();
+	}
+
+	/**
+	 * Requests to cancel, and wakes up the server thread so it can notice it.
+	 */
+	protected void requestToCancel() {
+		super.requestToCancel();
+		wakeUp();
+	}
+
 	/**
 	 * Starts next round of the game.
 	 */
@@ -432,12 +1566,320 @@ public class Server extends TimedIterableControlledThread implements OptionsChan
 	 *            client contact of client who is about to leave
 	 */
 	private void handleClientLeaving(final ClientContact clientContact) {
-		clientContacts.remove(clientContact);
+		final int clientIndex = clientContacts.indexOf(clientContact);
+		final boolean ghostController = clientIndex == getGhostControllerIndex();
+		synchronized (clientContacts) {
+			clientContacts.remove(clientIndex);
+		}
+		if (resumingClientContacts.remove(clientContact)) {
+			clientContact.resumingConnectionStub.close();
+			clientContact.resumingConnectionStub = null;
+		}
+		try {
+			clientContact.connectionStub.flush(); // For example the kicking
+		} catch (final IOException ie) {
+			// The client has gone already
+		}
 		clientContact.connectionStub.close();
+		System.out.println("Server.handleClientLeaving() " + getClientStatistics(clientContact));
+		synchronized (joiningClientContacts) {
+			clientsCount--;
+		}
 
-		broadcastCommand(Client.Commands.A_CLIENT_HAS_LEFT_THE_GAME.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING + clientContact.ownIndex
+		broadcastCommand(Client.Commands.A_CLIENT_HAS_LEFT_THE_GAME.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING + clientIndex
 		        + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING);
 		broadcastMessage(SERVER_CHAT_NAME + clientContact.publicClientOptions.clientName + " has left the game.");
+		if (ghostController) {
+			// Another client takes over the players of the ghosts
+			for (int i = 0; i < clientContacts.size(); i++) {
+				if (clientContacts.get(i).ghost) {
+					broadcastGhost(i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tells whether the sessions of the clients can be resumed: during a game,
+	 * except in rollback network mode (the clients time themselves, there is
+	 * no point where the state of a client is known to be complete).
+	 * 
+	 * @return true if the sessions can be resumed; false otherwise
+	 */
+	private boolean isResumable() {
+		return (gameState == GameStates.PLAYING) && !rollbackMode;
+	}
+
+	/**
+	 * Handles a client whose connection has been lost during the game: its
+	 * slot is kept for RESUMING_GRACE_PERIOD, and robots of the ghost
+	 * controller take over its players until it resumes its session.
+	 * 
+	 * @param clientContact
+	 *            client contact of the client
+	 */
+	private void handleClientDisconnection(final ClientContact clientContact) {
+		final int clientIndex = clientContacts.indexOf(clientContact);
+		final boolean ghostController = clientIndex == getGhostControllerIndex();
+		clientContact.connectionStub.close();
+		clientContact.disconnected = true;
+		clientContact.disconnectionTime = System.nanoTime();
+		clientContact.catchingUp = false;
+		System.out.println("Server.handleClientDisconnection() " + getClientStatistics(clientContact));
+
+		broadcastMessage(SERVER_CHAT_NAME + clientContact.publicClientOptions.clientName + " has lost the connection, robots have taken over the players.");
+		if (!clientContact.ghost) {
+			clientContact.ghost = true;
+			broadcastGhost(clientIndex);
+			if (ghostController) {
+				// Another client takes over the players of the ghosts
+				for (int i = 0; i < clientContacts.size(); i++) {
+					if ((i != clientIndex) && clientContacts.get(i).ghost) {
+						broadcastGhost(i);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Resumes the session of a client through a new connection (see the
+	 * resuming protocol at the PlayerCollector javadoc). A snapshot of the
+	 * game is requested from the ghost controller (unless it is already
+	 * requested for another resuming client), the client waits for it.
+	 * 
+	 * @param connectionStub
+	 *            the new connection stub to the client
+	 * @param sessionKey
+	 *            the session key sent by the client
+	 */
+	private void resumeSession(final ConnectionStub connectionStub, final long sessionKey) {
+		ClientContact resumingClientContact = null;
+		for (final ClientContact clientContact : clientContacts) {
+			if (clientContact.sessionKey == sessionKey) {
+				resumingClientContact = clientContact;
+				break;
+			}
+		}
+		if ((resumingClientContact == null) || (sessionKey == 0l) || !isResumable()) {
+			try {
+				connectionStub.sendMessage(PlayerCollector.SESSION_REJECTED);
+				connectionStub.flush();
+			} catch (final IOException ie) {
+				// The client has gone already
+			}
+			connectionStub.close();
+			return;
+		}
+
+		if (!resumingClientContact.disconnected) {
+			if (!resumingClientContact.connectionStub.isEndOfStream()) {
+				// The old connection is still alive: the session key alone
+				// doesn't prove that it is the same client. The client will
+				// try again when we have noticed the loss of its connection.
+				connectionStub.close();
+				return;
+			}
+			// The client noticed the loss of its connection before us
+			handleClientDisconnection(resumingClientContact);
+		} else if (resumingClientContacts.remove(resumingClientContact)) {
+			// An earlier attempt of the client
+			resumingClientContact.resumingConnectionStub.close();
+		}
+
+		if (snapshotClientContact == null) {
+			final int ghostControllerIndex = getGhostControllerIndex();
+			if (ghostControllerIndex < 0) {
+				// Nobody can send the snapshot, the client will try again
+				connectionStub.close();
+				return;
+			}
+			requestSnapshot(clientContacts.get(ghostControllerIndex));
+		}
+		resumingClientContact.resumingConnectionStub = connectionStub;
+		resumingClientContacts.add(resumingClientContact);
+	}
+
+	/**
+	 * Requests a snapshot of the game from a client. The commands and frames
+	 * broadcasted after the request are logged for the resuming clients.
+	 * 
+	 * @param clientContact
+	 *            client contact of the client to send the snapshot
+	 */
+	private void requestSnapshot(final ClientContact clientContact) {
+		try {
+			clientContact.connectionStub.sendMessage(Client.Commands.REQUESTING_GAME_SNAPSHOT.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING
+			        + ++snapshotRequestId + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING);
+		} catch (final IOException ie) {
+			ie.printStackTrace(); // The request times out
+		}
+		snapshotClientContact = clientContact;
+		snapshotRequestTime = System.nanoTime();
+		snapshotClientContacts.clear();
+		snapshotClientContacts.addAll(clientContacts);
+		actionLog.clear();
+	}
+
+	/**
+	 * Sends the snapshot of the game to the resuming clients, followed by the
+	 * action log. The resuming clients are connected again, but remain ghosts
+	 * until they catch up.
+	 * 
+	 * @param snapshot
+	 *            the encoded snapshot of the game
+	 */
+	private void sendGameSnapshot(final String snapshot) {
+		final long transferTime = System.nanoTime() - snapshotRequestTime;
+		if (snapshot.length() > MAX_SNAPSHOT_LENGTH) {
+			dropResumingClients();
+			broadcastMessage(SERVER_CHAT_NAME + "The snapshot of the game is too big (" + snapshot.length() + " bytes), the sessions can't be resumed.");
+			return;
+		}
+
+		for (final ClientContact clientContact : resumingClientContacts) {
+			final ConnectionStub connectionStub = clientContact.resumingConnectionStub;
+			clientContact.resumingConnectionStub = null;
+			try {
+				connectionStub.sendMessage(PlayerCollector.SESSION_RESUMED);
+				connectionStub.sendMessage("" + snapshotClientContacts.size());
+				for (final ClientContact snapshotContact : snapshotClientContacts) {
+					connectionStub.sendMessage(snapshotContact.publicClientOptions.packToString());
+				}
+				connectionStub.sendMessage("" + snapshotClientContacts.indexOf(clientContact));
+				connectionStub.sendMessage(gameServerOptions);
+				if (gameLevel != null) {
+					connectionStub.sendMessage(gameLevel);
+				}
+				connectionStub.sendMessage("" + nextFrameTick);
+				connectionStub.sendMessage(snapshot);
+				for (final Object action : actionLog) {
+					if (action instanceof IterationFrame) {
+						connectionStub.sendFrame((IterationFrame) action);
+					} else {
+						connectionStub.sendMessage((String) action);
+					}
+				}
+				connectionStub.flush();
+			} catch (final IOException ie) {
+				ie.printStackTrace();
+				connectionStub.close(); // The client will try again
+				continue;
+			}
+			clientContact.connectionStub = connectionStub;
+			clientContact.disconnected = false;
+			clientContact.catchingUp = true;
+			clientContact.catchUpTick = nextFrameTick;
+			clientContact.readyForNextIteration = false;
+			clientContact.successiveMissedDeadlinesCount = 0;
+		}
+
+		final int loggedActionsCount = actionLog.size();
+		resumingClientContacts.clear();
+		snapshotClientContact = null;
+		snapshotClientContacts.clear();
+		actionLog.clear();
+		broadcastMessage(SERVER_CHAT_NAME + "Game snapshot of " + snapshot.length() + " bytes and " + loggedActionsCount + " logged actions sent in "
+		        + transferTime / 1000000l + " ms.");
+	}
+
+	/**
+	 * Checks whether a catching up client has caught up: whether it answered
+	 * the first frame broadcasted after its snapshot.
+	 * 
+	 * @param clientIndex
+	 *            index of the catching up client
+	 */
+	private void checkCatchingUp(final int clientIndex) {
+		final ClientContact clientContact = clientContacts.get(clientIndex);
+		if (clientContact.newClientActions.getTick() < clientContact.catchUpTick) {
+			return;
+		}
+
+		final int ghostControllerIndex = getGhostControllerIndex();
+		clientContact.catchingUp = false;
+		clientContact.ghost = false;
+		clientContact.resumedTick = nextFrameTick;
+		broadcastCommand(Client.Commands.A_CLIENT_HAS_RESUMED_THE_GAME.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING + clientIndex
+		        + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING);
+		broadcastMessage(SERVER_CHAT_NAME + clientContact.publicClientOptions.clientName + " has resumed the game.");
+		if (getGhostControllerIndex() != ghostControllerIndex) {
+			// The resumed client takes over the players of the ghosts
+			for (int i = 0; i < clientContacts.size(); i++) {
+				if (clientContacts.get(i).ghost) {
+					broadcastGhost(i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks the resuming sessions: drops the resuming clients if the
+	 * requested snapshot is not coming, and the clients who haven't resumed
+	 * their sessions in RESUMING_GRACE_PERIOD leave the game.
+	 */
+	private void checkResumingSessions() {
+		if ((snapshotClientContact != null)
+		        && ((System.nanoTime() - snapshotRequestTime > SNAPSHOT_TIMEOUT) || snapshotClientContact.disconnected || !clientContacts
+		                .contains(snapshotClientContact))) {
+			dropResumingClients();
+		}
+
+		for (int i = clientContacts.size() - 1; i >= 0; i--) {
+			final ClientContact clientContact = clientContacts.get(i);
+			if (clientContact.disconnected && (clientContact.resumingConnectionStub == null)
+			        && (System.nanoTime() - clientContact.disconnectionTime > RESUMING_GRACE_PERIOD)) {
+				handleClientLeaving(clientContact);
+			}
+		}
+	}
+
+	/**
+	 * Drops the resuming clients: closes their new connections (they will try
+	 * again), and cancels the snapshot request.
+	 */
+	private void dropResumingClients() {
+		for (final ClientContact clientContact : resumingClientContacts) {
+			clientContact.resumingConnectionStub.close();
+			clientContact.resumingConnectionStub = null;
+		}
+		resumingClientContacts.clear();
+		snapshotClientContact = null;
+		snapshotClientContacts.clear();
+		actionLog.clear();
+	}
+
+	/**
+	 * Returns the statistics of a client: the sent bytes, the maximum depth of
+	 * its output queue, the dropped messages, the missed ready deadlines and
+	 * the time the game waited for it.
+	 * 
+	 * @param clientContact
+	 *            client contact of the client
+	 * @return the statistics of the client in one line
+	 */
+	private String getClientStatistics(final ClientContact clientContact) {
+		final ConnectionStub connectionStub = clientContact.connectionStub;
+		return clientContact.publicClientOptions.clientName + ": sent=" + connectionStub.getSentBytesCount() + "B maxQueued="
+		        + connectionStub.getMaxQueuedBytesCount() + "B dropped=" + connectionStub.getDroppedMessagesCount() + " missed="
+		        + clientContact.missedDeadlinesCount + " stall=" + clientContact.stallTime / 1000000l + "ms" + (clientContact.ghost ? " ghost" : "")
+		        + (clientContact.disconnected ? " disconnected" : "");
+	}
+
+	/**
+	 * Returns the statistics of the joined clients (see
+	 * getClientStatistics()).
+	 * 
+	 * @return the statistics of the joined clients, one line for each
+	 */
+	public List<String> getClientDescriptions() {
+		final List<String> clientDescriptions = new ArrayList<String>();
+		synchronized (clientContacts) {
+			for (final ClientContact clientContact : clientContacts) {
+				clientDescriptions.add(getClientStatistics(clientContact));
+			}
+		}
+		return clientDescriptions;
 	}
 
 	/**
@@ -454,18 +1896,46 @@ public class Server extends TimedIterableControlledThread implements OptionsChan
 	 */
 	public void optionsChanged(final ServerOptions oldOptions, ServerOptions newOptions) {}
 
+	/**
+	 * Shuts down the server. In case of a room the running step (if any) is
+	 * waited for, and the steps are finished by the calling thread.
+	 */
+	public void shutDown() {
+		if (stepTask == null) {
+			super.shutDown();
+			return;
+		}
+		requestToCancel();
+		stepTask.cancel();
+		stopSteps();
+		close();
+	}
+
 	/**
 	 * Closes the server. Invoked at the end of shutdown. Must not (not needed
 	 * to) be invoked at the end of the run() method.
 	 */
 	protected void close() {
 		iterationTimer.shutDown();
-		serverOptionsManager.unregisterOptionsChangeListener(this);
+		serverOptionsHolder.unregisterOptionsChangeListener(this);
 		broadcastMessage(SERVER_CHAT_NAME + "Server is going for a shutdown...");
-		broadcastCommand(Client.Commands.SHUTDOWN + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING);
+		broadcastCommand(Client.Commands.SHUTDOWN.ordinal() + GeneralStringTokenizer.GENERAL_SEPARATOR_STRING);
+		flushClients();
 		for (final ClientContact clientContact : clientContacts) {
 			clientContact.connectionStub.close();
 		}
+		dropResumingClients();
+		for (final ClientContact clientContact : waitingClientContacts) {
+			clientContact.connectionStub.close();
+		}
+		synchronized (joiningClientContacts) {
+			for (final ClientContact clientContact : joiningClientContacts) {
+				clientContact.connectionStub.close();
+			}
+		}
+		if (stepTask == null) {
+			connectionSelector.shutDown();
+		}
 	}
 
 }
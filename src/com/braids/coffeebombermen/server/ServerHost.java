@@ -0,0 +1,51 @@
+package com.braids.coffeebombermen.server;
+
+import com.braids.coffeebombermen.client.gamecore.model.level.LevelModel;
+
+/**
+ * The host of the server: provides the services the server needs from its
+ * environment. It is the game manager in case of the game, and the dedicated
+ * server in case of a server running without GUI.
+ */
+public interface ServerHost {
+
+	/**
+	 * Returns the selected level where game will be played on. null is returned
+	 * if randomly generated level is selected.
+	 * 
+	 * @return the selected level where game will be played on; null if randomly
+	 *         generated level is selected
+	 */
+	LevelModel getLevel();
+
+	/**
+	 * Shows an error of the server. Must not block the server thread.
+	 * 
+	 * @param messageLines
+	 *            lines of the error message
+	 */
+	void showServerError(String[] messageLines);
+
+	/**
+	 * Method to be called when the server has broadcasted a chat message.
+	 * 
+	 * @param message
+	 *            the broadcasted message
+	 */
+	void messageBroadcasted(String message);
+
+	/**
+	 * Method to be called when the server has detected that the game states
+	 * of the clients diverged. Called only once per game (at the first
+	 * divergent tick). Must not block the server thread.
+	 * 
+	 * @param tick
+	 *            the first tick whose state hashes differ
+	 * @param clientName
+	 *            name of the client whose state hash differs
+	 * @param referenceClientName
+	 *            name of the client whose state hash it differs from
+	 */
+	void gameDesynchronized(int tick, String clientName, String referenceClientName);
+
+}
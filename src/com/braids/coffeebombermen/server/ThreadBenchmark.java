@@ -0,0 +1,346 @@
+package com.braids.coffeebombermen.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import com.braids.coffeebombermen.Consts;
+import com.braids.coffeebombermen.client.gamecore.model.level.LevelModel;
+import com.braids.coffeebombermen.options.OptConsts.NetworkLatencies;
+import com.braids.coffeebombermen.options.OptionsHolder;
+import com.braids.coffeebombermen.options.ServerComponentOptions;
+import com.braids.coffeebombermen.options.model.ServerOptions;
+import com.braids.coffeebombermen.utils.ControlledThread;
+import com.braids.coffeebombermen.utils.IterationFrame;
+import com.braids.coffeebombermen.utils.SocketConnectionStub;
+
+/**
+ * A headless benchmark of the threads of a loopback game. It runs a server and
+ * a game of bot clients connected through the loopback interface, first with
+ * platform threads, then with virtual threads (if the Java runtime supports
+ * them, see ControlledThread). The bots are controlled threads blocking on
+ * their connections, and answer the STARTING_NEXT_ITERATION frames, so the
+ * server and the bots together are like a multi-bot deployment.<br>
+ * Reported for each thread mode:
+ * <ul>
+ * <li>the number of the live platform threads (the OS threads) during the
+ * game, and its peak
+ * <li>the context switches per second of the process (summed from the
+ * /proc/self/task/*&#47;status files, on Linux only)
+ * <li>the effective ticks per second
+ * </ul>
+ */
+public class ThreadBenchmark implements ServerHost {
+
+	/** Usage of the command line arguments. */
+	private static final String[] USAGE           = { "Usage: ThreadBenchmark [options]", "  -config <file>     options file to read the server options from",
+	        "  -port <port>       first port to use (a run uses one)", "  -clients <n>       number of the bot clients",
+	        "  -seconds <n>       measuring time of a thread mode", "  -frequency <n>     game cycle frequency" };
+	/** Time between starting the game and starting the measuring in ms. */
+	private static final long     WARM_UP_TIME    = 2000l;
+	/** Directory of the status files of the threads of our process. */
+	private static final File     TASKS_DIRECTORY = new File("/proc/self/task");
+
+	/**
+	 * A bot client: joins the game, and answers the STARTING_NEXT_ITERATION
+	 * frames. Blocks on the connection until the next message arrives.
+	 */
+	private class BenchmarkClient extends ControlledThread {
+
+		/** Connection stub to the server. */
+		private final SocketConnectionStub connectionStub;
+		/** The frame of the STARTING_NEXT_ITERATION commands (reused). */
+		private final IterationFrame       startingFrame = new IterationFrame(IterationFrame.STARTING_NEXT_ITERATION_MARKER);
+		/** The frame of the READY_FOR_NEXT_ITERATION commands (reused). */
+		private final IterationFrame       readyFrame    = new IterationFrame(IterationFrame.READY_FOR_NEXT_ITERATION_MARKER);
+		/** The tick of the last received frame, -1 if there is no such. */
+		private volatile int               lastFrameTick = -1;
+		/** The tick of the last received frame when measuring started. */
+		private volatile int               measuringStartTick;
+		/** The tick of the last received frame when measuring ended. */
+		private volatile int               measuringEndTick;
+
+		/**
+		 * Creates a new BenchmarkClient: connects to the server and performs
+		 * the joining protocol.
+		 * 
+		 * @param port
+		 *            the port to connect to
+		 * @param name
+		 *            name of the client
+		 * @throws IOException
+		 *             if I/O error occurs or the server rejects us
+		 */
+		private BenchmarkClient(final int port, final String name) throws IOException {
+			setName(name);
+			setDaemon(true);
+			connectionStub = new SocketConnectionStub(new Socket("localhost", port));
+			NetworkBenchmark.joinBot(connectionStub, serverOptions.getPassword(), name);
+		}
+
+		/**
+		 * Runs the bot until the connection is closed.
+		 */
+		public void run() {
+			try {
+				while (!requestedToCancel) {
+					if (connectionStub.isNextMessageFrame()) {
+						connectionStub.receiveFrame(startingFrame);
+						lastFrameTick = startingFrame.getTick();
+						readyFrame.clear(lastFrameTick);
+						connectionStub.sendFrame(readyFrame);
+					} else if (connectionStub.receiveMessage() == null) {
+						break; // The server has been shut down
+					}
+				}
+			} catch (final IOException ie) {
+				// The server has been shut down
+			} finally {
+				connectionStub.close();
+			}
+		}
+
+	}
+
+	/** The server options of the runs. */
+	private final ServerOptions serverOptions;
+	/** The level of the games, null means randomly generated level. */
+	private final LevelModel    level;
+	/** The thread management bean of the JVM. */
+	private final ThreadMXBean  threadMXBean = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Creates a new ThreadBenchmark.
+	 * 
+	 * @param serverOptions
+	 *            the server options of the runs
+	 * @param level
+	 *            the level of the games, null means randomly generated level
+	 */
+	public ThreadBenchmark(final ServerOptions serverOptions, final LevelModel level) {
+		this.serverOptions = serverOptions;
+		this.level = level;
+	}
+
+	/**
+	 * Returns the level where game will be played on.
+	 * 
+	 * @return the level where game will be played on; null if randomly
+	 *         generated level is selected
+	 */
+	public LevelModel getLevel() {
+		return level;
+	}
+
+	/**
+	 * Logs an error of the server to the standard output.
+	 * 
+	 * @param messageLines
+	 *            lines of the error message
+	 */
+	public void showServerError(final String[] messageLines) {
+		for (final String messageLine : messageLines) {
+			System.out.println("Error: " + messageLine);
+		}
+	}
+
+	/**
+	 * Method to be called when the server has broadcasted a chat message.
+	 * Nothing to do.
+	 * 
+	 * @param message
+	 *            the broadcasted message
+	 */
+	public void messageBroadcasted(final String message) {}
+
+	/**
+	 * Method to be called when the server has detected a desynchronization.
+	 * The bots don't send state hashes, nothing to do.
+	 * 
+	 * @param tick
+	 *            the first tick whose state hashes differ
+	 * @param clientName
+	 *            name of the client whose state hash differs
+	 * @param referenceClientName
+	 *            name of the client whose state hash it differs from
+	 */
+	public void gameDesynchronized(final int tick, final String clientName, final String referenceClientName) {}
+
+	/**
+	 * Returns the number of the context switches of the threads of our
+	 * process. Threads died meanwhile are not counted.
+	 * 
+	 * @return the number of the context switches; -1 if it can't be read (not
+	 *         on Linux)
+	 */
+	private static long getContextSwitchesCount() {
+		final File[] taskDirectories = TASKS_DIRECTORY.listFiles();
+		if (taskDirectories == null) {
+			return -1l;
+		}
+		long contextSwitchesCount = 0l;
+		for (final File taskDirectory : taskDirectories) {
+			try {
+				for (final String line : Files.readAllLines(new File(taskDirectory, "status").toPath(), StandardCharsets.US_ASCII)) {
+					if (line.startsWith("voluntary_ctxt_switches:") || line.startsWith("nonvoluntary_ctxt_switches:")) {
+						contextSwitchesCount += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+					}
+				}
+			} catch (final IOException ie) {
+				// The thread has died meanwhile
+			}
+		}
+		return contextSwitchesCount;
+	}
+
+	/**
+	 * Runs the benchmark of a thread mode, and prints its results.
+	 * 
+	 * @param virtualThreadsUsed
+	 *            tells whether virtual threads are used
+	 * @param port
+	 *            port of the server
+	 * @param clientsCount
+	 *            number of the bot clients
+	 * @param seconds
+	 *            measuring time in seconds
+	 * @throws IOException
+	 *             if the server or a bot can't be created
+	 * @throws InterruptedException
+	 *             if we're interrupted during the measuring
+	 */
+	private void run(final boolean virtualThreadsUsed, final int port, final int clientsCount, final int seconds) throws IOException,
+	        InterruptedException {
+		ControlledThread.setVirtualThreadsUsed(virtualThreadsUsed);
+		serverOptions.setGamePort(port);
+		final Server server = new Server(new OptionsHolder<ServerOptions>(serverOptions), this);
+		server.start();
+		if (!server.waitForAndCheckServerSocket()) {
+			server.shutDown();
+			throw new IOException("Can't create server socket on port " + port + "!");
+		}
+
+		final BenchmarkClient[] clients = new BenchmarkClient[clientsCount];
+		final int threadsCount;
+		final int peakThreadsCount;
+		final long contextSwitchesCount;
+		try {
+			for (int i = 0; i < clientsCount; i++) {
+				clients[i] = new BenchmarkClient(port, "bot" + i);
+				clients[i].start();
+			}
+			while (server.getClientsCount() < clientsCount) {
+				Thread.sleep(10l);
+			}
+
+			server.startCurrentGame();
+			Thread.sleep(WARM_UP_TIME);
+			threadMXBean.resetPeakThreadCount();
+			final long measuringStartContextSwitchesCount = getContextSwitchesCount();
+			for (final BenchmarkClient client : clients) {
+				client.measuringStartTick = client.lastFrameTick;
+			}
+			Thread.sleep(seconds * 1000l);
+			for (final BenchmarkClient client : clients) {
+				client.measuringEndTick = client.lastFrameTick;
+			}
+			final long measuringEndContextSwitchesCount = getContextSwitchesCount();
+			contextSwitchesCount = measuringStartContextSwitchesCount < 0 ? -1l : measuringEndContextSwitchesCount
+			        - measuringStartContextSwitchesCount;
+			threadsCount = threadMXBean.getThreadCount();
+			peakThreadsCount = threadMXBean.getPeakThreadCount();
+			server.endCurrentGame();
+		} finally {
+			server.shutDown();
+			for (final BenchmarkClient client : clients) {
+				if (client != null) {
+					client.shutDown();
+				}
+			}
+		}
+
+		long ticks = 0;
+		for (final BenchmarkClient client : clients) {
+			ticks += client.measuringEndTick - client.measuringStartTick;
+		}
+		System.out.println((virtualThreadsUsed ? "Virtual" : "Platform") + " threads: " + threadsCount + " live platform threads (peak "
+		        + peakThreadsCount + "), " + (contextSwitchesCount < 0 ? "n/a" : String.valueOf((float) contextSwitchesCount / seconds))
+		        + " context switches/s, " + (float) ticks / clientsCount / seconds + " ticks/s");
+	}
+
+	/**
+	 * The entry point of the benchmark.
+	 * 
+	 * @param arguments
+	 *            the command line arguments
+	 */
+	public static void main(final String[] arguments) {
+		String optionsFileName = Consts.OPTIONS_FILE_NAME;
+		for (int i = 0; i < arguments.length - 1; i++) {
+			if (arguments[i].equals("-config")) {
+				optionsFileName = arguments[i + 1];
+			}
+		}
+
+		final ServerOptions serverOptions;
+		LevelModel level = null;
+		int port = 53100;
+		int clientsCount = 32;
+		int seconds = 10;
+		try {
+			serverOptions = DedicatedServer.loadServerOptions(optionsFileName);
+
+			for (int i = 0; i < arguments.length; i += 2) {
+				if (i + 1 >= arguments.length) {
+					throw new IllegalArgumentException("Missing value of " + arguments[i]);
+				}
+				final String option = arguments[i];
+				final int value = option.equals("-config") ? 0 : Integer.parseInt(arguments[i + 1]);
+				if (option.equals("-config")) {
+					// Already processed
+				} else if (option.equals("-port")) {
+					port = value;
+				} else if (option.equals("-clients")) {
+					clientsCount = value;
+				} else if (option.equals("-seconds")) {
+					seconds = value;
+				} else if (option.equals("-frequency")) {
+					serverOptions.setGameCycleFrequency(value);
+				} else {
+					throw new IllegalArgumentException("Unknown option: " + option);
+				}
+			}
+
+			if (!serverOptions.getLevelName().equals(ServerComponentOptions.RANDOMLY_GENERATED_LEVEL_NAME)) {
+				level = DedicatedServer.loadLevel(serverOptions.getLevelName());
+			}
+		} catch (final Exception e) {
+			System.out.println("Error: " + e.getMessage());
+			DedicatedServer.printLines(USAGE);
+			System.exit(1);
+			return;
+		}
+		// The bots answer every STARTING_NEXT_ITERATION frame
+		serverOptions.setNetworkLatency(NetworkLatencies.LOW);
+
+		System.out.println(clientsCount + " clients at " + serverOptions.getGameCycleFrequency() + " Hz through the loopback interface:");
+		final ThreadBenchmark threadBenchmark = new ThreadBenchmark(serverOptions, level);
+		try {
+			threadBenchmark.run(false, port, clientsCount, seconds);
+			if (ControlledThread.isVirtualThreadsSupported()) {
+				threadBenchmark.run(true, port + 1, clientsCount, seconds);
+			} else {
+				System.out.println("Virtual threads: not supported by this Java runtime (Java 21+ is required)");
+			}
+		} catch (final Exception e) {
+			System.out.println("Error: " + e.getMessage());
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+
+}
@@ -0,0 +1,246 @@
+package com.braids.coffeebombermen.utils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Controlled thread which multiplexes all the connections of a server (and the
+ * server socket accepting the new connections) with a single selector.<br>
+ * Incoming data is read as soon as it arrives, and every complete message
+ * (line) is stored in the receiving queue of its SelectorConnectionStub.
+ * Arrival of a new message raises the message signal (or the own signal of the
+ * connection stub if it has one), so the thread processing the messages does
+ * not have to poll the connections.
+ */
+public class ConnectionSelector extends ControlledThread {
+
+	/** The selector multiplexing the channels. */
+	private final Selector                           selector;
+	/** Signal to be raised when new message arrives. */
+	private final WakeUpSignal                       messageSignal;
+	/**
+	 * Tasks to be executed by the selector thread (registrations and interest
+	 * changes must be done by the selector thread).
+	 */
+	private final LinkedList<Runnable>               pendingTasks            = new LinkedList<Runnable>();
+	/** Accepted connection stubs waiting to be taken. */
+	private final LinkedList<SelectorConnectionStub> acceptedConnectionStubs = new LinkedList<SelectorConnectionStub>();
+
+	/**
+	 * Creates a new ConnectionSelector.
+	 * 
+	 * @param messageSignal
+	 *            signal to be raised when new message arrives
+	 * @throws IOException
+	 *             if the selector cannot be opened
+	 */
+	public ConnectionSelector(final WakeUpSignal messageSignal) throws IOException {
+		this.messageSignal = messageSignal;
+		selector = Selector.open();
+	}
+
+	/**
+	 * The run() method of the selector thread. Dispatches the ready channels
+	 * until cancel is requested.
+	 */
+	public void run() {
+		while (!requestedToCancel) {
+			try {
+				selector.select();
+			} catch (final IOException ie) {
+				ie.printStackTrace();
+				break;
+			}
+			executePendingTasks();
+
+			final Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+			while (selectedKeys.hasNext()) {
+				final SelectionKey selectionKey = selectedKeys.next();
+				selectedKeys.remove();
+				if (!selectionKey.isValid()) {
+					continue;
+				}
+				if (selectionKey.isAcceptable()) {
+					acceptConnection((ServerSocketChannel) selectionKey.channel());
+				} else {
+					final SelectorConnectionStub connectionStub = (SelectorConnectionStub) selectionKey.attachment();
+					if (selectionKey.isReadable() && connectionStub.readAvailableData()) {
+						final WakeUpSignal connectionMessageSignal = connectionStub.getMessageSignal();
+						(connectionMessageSignal == null ? messageSignal : connectionMessageSignal).signal();
+					}
+					if (selectionKey.isValid() && selectionKey.isWritable()) {
+						connectionStub.writePendingData();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Executes the tasks which has been passed to the selector thread.
+	 */
+	private void executePendingTasks() {
+		while (true) {
+			final Runnable task;
+			synchronized (pendingTasks) {
+				if (pendingTasks.isEmpty()) {
+					return;
+				}
+				task = pendingTasks.removeFirst();
+			}
+			task.run();
+		}
+	}
+
+	/**
+	 * Passes a task to the selector thread to be executed before the next
+	 * selection.
+	 * 
+	 * @param task
+	 *            task to be executed
+	 */
+	void invokeLater(final Runnable task) {
+		synchronized (pendingTasks) {
+			pendingTasks.add(task);
+		}
+		selector.wakeup();
+	}
+
+	/**
+	 * Accepts a new connection from a server socket channel.
+	 * 
+	 * @param serverSocketChannel
+	 *            server socket channel which has a connection to be accepted
+	 */
+	private void acceptConnection(final ServerSocketChannel serverSocketChannel) {
+		try {
+			final SocketChannel socketChannel = serverSocketChannel.accept();
+			if (socketChannel == null) {
+				return;
+			}
+			socketChannel.configureBlocking(false);
+			// The messages are small and must be delivered at once
+			socketChannel.socket().setTcpNoDelay(true);
+			final SelectorConnectionStub connectionStub = new SelectorConnectionStub(this, socketChannel);
+			connectionStub.setSelectionKey(socketChannel.register(selector, SelectionKey.OP_READ, connectionStub));
+			synchronized (acceptedConnectionStubs) {
+				acceptedConnectionStubs.add(connectionStub);
+				acceptedConnectionStubs.notifyAll();
+			}
+		} catch (final IOException ie) {
+			ie.printStackTrace();
+		}
+	}
+
+	/**
+	 * Opens a server socket channel on a port and starts accepting connections
+	 * through it.
+	 * 
+	 * @param port
+	 *            port to listen on
+	 * @return the opened server socket channel
+	 * @throws IOException
+	 *             if the server socket channel cannot be opened
+	 */
+	public ServerSocketChannel openServerSocket(final int port) throws IOException {
+		final ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+		try {
+			serverSocketChannel.socket().bind(new InetSocketAddress(port));
+			serverSocketChannel.configureBlocking(false);
+		} catch (final IOException ie) {
+			serverSocketChannel.close();
+			throw ie;
+		}
+
+		invokeLater(new Runnable() {
+
+			public void run() {
+				try {
+					serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+				} catch (final ClosedChannelException ce) {
+					// Closed before registration, nothing to do
+				}
+			}
+		});
+
+		return serverSocketChannel;
+	}
+
+	/**
+	 * Closes a server socket channel opened by openServerSocket(). Threads
+	 * waiting for a connection of this server socket channel will be woken up.
+	 * 
+	 * @param serverSocketChannel
+	 *            server socket channel to be closed
+	 */
+	public void closeServerSocket(final ServerSocketChannel serverSocketChannel) {
+		try {
+			serverSocketChannel.close();
+		} catch (final IOException ie) {
+			ie.printStackTrace();
+		}
+		selector.wakeup(); // To deregister the channel
+		synchronized (acceptedConnectionStubs) {
+			acceptedConnectionStubs.notifyAll();
+		}
+	}
+
+	/**
+	 * Waits for and returns the next accepted connection stub.
+	 * 
+	 * @param serverSocketChannel
+	 *            server socket channel whose connections are waited for
+	 * @return the next accepted connection stub; null if the server socket
+	 *         channel has been closed
+	 * @throws InterruptedException
+	 *             if the waiting thread is interrupted
+	 */
+	public SelectorConnectionStub acceptConnectionStub(final ServerSocketChannel serverSocketChannel) throws InterruptedException {
+		synchronized (acceptedConnectionStubs) {
+			while (acceptedConnectionStubs.isEmpty()) {
+				if (!serverSocketChannel.isOpen()) {
+					return null;
+				}
+				acceptedConnectionStubs.wait();
+			}
+			return acceptedConnectionStubs.removeFirst();
+		}
+	}
+
+	/**
+	 * Requests to cancel, and wakes up the selector so it can notice it.
+	 */
+	protected void requestToCancel() {
+		super.requestToCancel();
+		selector.wakeup();
+	}
+
+	/**
+	 * Closes the selector and all the channels registered to it.
+	 */
+	protected void close() {
+		for (final SelectionKey selectionKey : selector.keys()) {
+			try {
+				selectionKey.channel().close();
+			} catch (final IOException ie) {
+				ie.printStackTrace();
+			}
+		}
+		try {
+			selector.close();
+		} catch (final IOException ie) {
+			ie.printStackTrace();
+		}
+		synchronized (acceptedConnectionStubs) {
+			acceptedConnectionStubs.notifyAll();
+		}
+	}
+
+}
@@ -1,89 +1,138 @@
 package com.braids.coffeebombermen.utils;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.net.Socket;
-import java.nio.charset.Charset;
 
 /**
- * Represents a stub which is used to communicate with another computer.
+ * Represents a stub which is used to communicate with another computer.<br>
+ * The communication is message oriented. A message is either a text message
+ * terminated by the new line character '\n', or a binary iteration frame (see
+ * IterationFrame). The two kinds can be mixed, the order of the messages is
+ * kept.
  */
-public class ConnectionStub {
-
-	/** Socket representing the communication end point of the connection. */
-	private final Socket         socket;
-	/** Buffered reader used to read/receive messages from the connection. */
-	private final BufferedReader input;
-	/** Print writer used to write/send messages to the connection. */
-	private final PrintWriter    output;
+public interface ConnectionStub {
 
 	/**
-	 * Creates a new ConnectionStub.
+	 * Sends a message through this connection.
 	 * 
-	 * @param socket
-	 *            socket representing the communication end point of the
-	 *            connection
+	 * @param message
+	 *            message to be sent
 	 * @throws IOException
-	 *             if I/O error occurs during the connection initialization
+	 *             if I/O error occurs during sending the message
 	 */
-	public ConnectionStub(final Socket socket) throws IOException {
-		this.socket = socket;
-		input = new BufferedReader(new InputStreamReader(this.socket.getInputStream(), Charset.forName("utf-8")));
-		output = new PrintWriter(new BufferedWriter(new OutputStreamWriter(this.socket.getOutputStream(), Charset.forName("utf-8"))), true);
-	}
+	void sendMessage(String message) throws IOException;
 
 	/**
-	 * Sends a message through this connection.
+	 * Sends a message which can be dropped (for example a chat message): it is
+	 * dropped if the other side is behind reading our messages.
 	 * 
 	 * @param message
 	 *            message to be sent
 	 * @throws IOException
 	 *             if I/O error occurs during sending the message
 	 */
-	public void sendMessage(final String message) throws IOException {
-		output.println(message);
-	}
+	void sendDroppableMessage(String message) throws IOException;
+
+	/**
+	 * Sends an iteration frame through this connection.
+	 * 
+	 * @param frame
+	 *            frame to be sent
+	 * @throws IOException
+	 *             if I/O error occurs during sending the frame
+	 */
+	void sendFrame(IterationFrame frame) throws IOException;
+
+	/**
+	 * Writes the sent messages which are not written yet (if the
+	 * implementation coalesces the messages).
+	 * 
+	 * @throws IOException
+	 *             if I/O error occurs during writing
+	 */
+	void flush() throws IOException;
 
 	/**
 	 * Checks whether new message is ready to be read/received.
 	 * 
 	 * @return true if new message is ready to be read/received; false otherwise
 	 */
-	public boolean hasNewMessage() {
-		try {
-			return input.ready(); // Well... this would return true if we don't
-			// have a new line just a few characters
-			// without '\n'... but this implementation is
-			// the simpliest
-		} catch (final IOException ie) {
-			return false;
-		}
-	}
+	boolean hasNewMessage();
 
 	/**
-	 * Receives and returns the next message from this connection.
+	 * Tells whether the next message is an iteration frame. Blocks until the
+	 * next message is available.
 	 * 
-	 * @return the received message
+	 * @return true if the next message is an iteration frame; false if it is a
+	 *         text message
 	 * @throws IOException
-	 *             if I/O error occurs during sending the message
+	 *             if I/O error occurs during receiving
+	 */
+	boolean isNextMessageFrame() throws IOException;
+
+	/**
+	 * Receives and returns the next message from this connection. Blocks until
+	 * a message is available.
+	 * 
+	 * @return the received message; null if the end of the stream has been
+	 *         reached
+	 * @throws IOException
+	 *             if I/O error occurs during receiving the message
+	 */
+	String receiveMessage() throws IOException;
+
+	/**
+	 * Receives the next message which must be an iteration frame. Blocks until
+	 * a message is available.
+	 * 
+	 * @param frame
+	 *            frame to decode the received frame into (frames are reused)
+	 * @throws IOException
+	 *             if I/O error occurs during receiving the frame or the next
+	 *             message is not an iteration frame
+	 */
+	void receiveFrame(IterationFrame frame) throws IOException;
+
+	/**
+	 * Tells whether the connection has ended: the end of the stream has been
+	 * reached (the other side has closed the connection or it has been lost)
+	 * and all the received messages have been processed.
+	 * 
+	 * @return true if the connection has ended; false otherwise
+	 */
+	boolean isEndOfStream();
+
+	/**
+	 * Returns the number of the queued bytes: sent but not yet written to the
+	 * connection.
+	 * 
+	 * @return the number of the queued bytes
+	 */
+	int getQueuedBytesCount();
+
+	/**
+	 * Returns the maximum number of the queued bytes.
+	 * 
+	 * @return the maximum number of the queued bytes
+	 */
+	int getMaxQueuedBytesCount();
+
+	/**
+	 * Returns the number of the bytes written to the connection.
+	 * 
+	 * @return the number of the bytes written to the connection
+	 */
+	long getSentBytesCount();
+
+	/**
+	 * Returns the number of the dropped messages.
+	 * 
+	 * @return the number of the dropped messages
 	 */
-	public String receiveMessage() throws IOException {
-		return input.readLine();
-	}
+	int getDroppedMessagesCount();
 
 	/**
 	 * Closes this connection stub.
 	 */
-	public void close() {
-		try {
-			socket.close();
-		} catch (final IOException ie) {
-			ie.printStackTrace();
-		}
-	}
+	void close();
 
 }
@@ -1,20 +1,183 @@
 package com.braids.coffeebombermen.utils;
 
+import java.lang.reflect.Method;
+
 /**
  * Controlled thread which provides more service-thread services/methods and
  * assumes/requires that the run() method is based on a sign (attribute) telling
  * whether cancel has been requested.<br>
  * The run method of the inharitar classes must be constructed to listen to the
  * requestedToCancel attribute, and when it's true, must terminate running as
- * soon as possible.
+ * soon as possible.<br>
+ * The controlled thread is run by a thread created at start(): a platform
+ * thread, or a virtual thread if virtual threads are used (see
+ * setVirtualThreadsUsed()). The run methods must block (on I/O, by parking or
+ * waiting) instead of polling, else the virtual threads don't spare anything.
  */
-public abstract class ControlledThread extends Thread {
+public abstract class ControlledThread implements Runnable {
+
+	/**
+	 * The Thread.ofVirtual() method, null if virtual threads are not supported
+	 * (before Java 21). Called by reflection, so we run on older Javas too.
+	 */
+	private static final Method     OF_VIRTUAL_METHOD;
+	/** The name() method of the thread builders. */
+	private static final Method     NAME_METHOD;
+	/** The unstarted() method of the thread builders. */
+	private static final Method     UNSTARTED_METHOD;
+
+	static {
+		Method ofVirtualMethod = null;
+		Method nameMethod = null;
+		Method unstartedMethod = null;
+		try {
+			ofVirtualMethod = Thread.class.getMethod("ofVirtual");
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			nameMethod = builderClass.getMethod("name", String.class);
+			unstartedMethod = builderClass.getMethod("unstarted", Runnable.class);
+		} catch (final Exception e) {
+			// Virtual threads are not supported
+			ofVirtualMethod = null;
+		}
+		OF_VIRTUAL_METHOD = ofVirtualMethod;
+		NAME_METHOD = nameMethod;
+		UNSTARTED_METHOD = unstartedMethod;
+	}
+
+	/** Tells whether the new threads are virtual threads. */
+	private static volatile boolean virtualThreadsUsed;
 
 	/**
 	 * Tells whether cancel of running has been requested (whether we have to
 	 * terminate running).
 	 */
-	protected volatile boolean requestedToCancel = false;
+	protected volatile boolean      requestedToCancel = false;
+	/** Name of the thread. */
+	private String                  name              = getClass().getName();
+	/** Tells whether the platform thread is a daemon thread. */
+	private boolean                 daemon;
+	/** The thread running the controlled thread, null before start(). */
+	private volatile Thread         thread;
+
+	/**
+	 * Tells whether virtual threads are supported by the Java runtime.
+	 * 
+	 * @return true if virtual threads are supported; false otherwise
+	 */
+	public static boolean isVirtualThreadsSupported() {
+		return OF_VIRTUAL_METHOD != null;
+	}
+
+	/**
+	 * Sets whether the threads created from now on (the controlled threads
+	 * and the threads of newThread()) are virtual threads. If virtual threads
+	 * are not supported, platform threads are created anyway.
+	 * 
+	 * @param virtualThreadsUsed
+	 *            tells whether the new threads are virtual threads
+	 */
+	public static void setVirtualThreadsUsed(final boolean virtualThreadsUsed) {
+		ControlledThread.virtualThreadsUsed = virtualThreadsUsed;
+	}
+
+	/**
+	 * Tells whether the new threads are virtual threads.
+	 * 
+	 * @return true if the new threads are virtual threads; false otherwise
+	 */
+	public static boolean isVirtualThreadsUsed() {
+		return virtualThreadsUsed && isVirtualThreadsSupported();
+	}
+
+	/**
+	 * Creates a new, unstarted thread: a virtual thread if virtual threads are
+	 * used, else a platform thread.
+	 * 
+	 * @param runnable
+	 *            the runnable to be run by the thread
+	 * @param name
+	 *            name of the thread
+	 * @param daemon
+	 *            tells whether the platform thread is a daemon thread (virtual
+	 *            threads are always daemon threads)
+	 * @return the new thread
+	 */
+	public static Thread newThread(final Runnable runnable, final String name, final boolean daemon) {
+		if (isVirtualThreadsUsed()) {
+			try {
+				return (Thread) UNSTARTED_METHOD.invoke(NAME_METHOD.invoke(OF_VIRTUAL_METHOD.invoke(null), name), runnable);
+			} catch (final Exception e) {
+				e.printStackTrace();
+			}
+		}
+		final Thread thread = new Thread(runnable, name);
+		thread.setDaemon(daemon);
+		return thread;
+	}
+
+	/**
+	 * Sets the name of the thread. Must be called before start().
+	 * 
+	 * @param name
+	 *            name of the thread
+	 */
+	public void setName(final String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Sets whether the platform thread is a daemon thread. Must be called
+	 * before start().
+	 * 
+	 * @param daemon
+	 *            tells whether the platform thread is a daemon thread
+	 */
+	public void setDaemon(final boolean daemon) {
+		this.daemon = daemon;
+	}
+
+	/**
+	 * Returns the thread running the controlled thread.
+	 * 
+	 * @return the thread running the controlled thread; null before start()
+	 */
+	public Thread getThread() {
+		return thread;
+	}
+
+	/**
+	 * Starts the controlled thread in a new thread.
+	 */
+	public synchronized void start() {
+		if (thread != null) {
+			throw new IllegalStateException("Controlled thread already started!");
+		}
+		thread = newThread(this, name, daemon);
+		thread.start();
+	}
+
+	/**
+	 * Waits until the thread of the controlled thread dies.
+	 * 
+	 * @throws InterruptedException
+	 *             if the waiting thread is interrupted
+	 */
+	public void join() throws InterruptedException {
+		final Thread thread = this.thread;
+		if (thread != null) {
+			thread.join();
+		}
+	}
+
+	/**
+	 * Tells whether the thread of the controlled thread is alive.
+	 * 
+	 * @return true if the thread has been started and has not died yet
+	 */
+	public boolean isAlive() {
+		final Thread thread = this.thread;
+		return (thread != null) && thread.isAlive();
+	}
 
 	/**
 	 * Closes the controlled thread, frees/disposes consumed resources. Invoked
@@ -43,11 +43,12 @@ public class ControlledTimer extends ControlledThread {
 	public void run() {
 		try {
 			while (!requestedToCancel) {
-				final long timeToWaitBeforeNextCheck = periodTime / 25l + 1l;
-				while (!requestedToCancel && !readyForNextIteration) {
-					sleep(timeToWaitBeforeNextCheck);
+				synchronized (this) {
+					while (!requestedToCancel && !readyForNextIteration) {
+						wait();
+					}
 				}
-				sleep(periodTime);
+				Thread.sleep(periodTime);
 				if (!requestedToCancel) {
 					readyForNextIteration = false;
 					timeable.signalingNextIteration();
@@ -71,8 +72,18 @@ public class ControlledTimer extends ControlledThread {
 	/**
 	 * Sets that timeable object is ready for next iteration.
 	 */
-	public void setReadyForNextIteration() {
+	public synchronized void setReadyForNextIteration() {
 		readyForNextIteration = true;
+		notifyAll();
+	}
+
+	/**
+	 * Requests to cancel, and wakes up the timer if it is waiting for the
+	 * timeable object.
+	 */
+	protected synchronized void requestToCancel() {
+		super.requestToCancel();
+		notifyAll();
 	}
 
 }
@@ -0,0 +1,101 @@
+package com.braids.coffeebombermen.utils;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Deadline timer.<br>
+ * A confirmable timer like the ControlledTimer, but the ticks are timed by
+ * absolute deadlines (see TickDeadlines): the time between the tick and the
+ * ready confirmation of the timeable object is not added to the period, and a
+ * late tick is caught up. The timer thread parks until the deadline (instead
+ * of sleeping in ms steps), and it is unparked directly by the ready
+ * confirmation.
+ */
+public class DeadlineTimer extends ControlledThread implements IterationTimer {
+
+	/** Object to be timed. */
+	private final Timeable      timeable;
+	/** The deadlines of the ticks. */
+	private final TickDeadlines tickDeadlines;
+	/** Tells whether the timeable object is ready for the next iteration. */
+	private volatile boolean    readyForNextIteration = false;
+
+	/**
+	 * Creates a new DeadlineTimer.
+	 * 
+	 * @param timeable
+	 *            object to be timed
+	 * @param frequency
+	 *            the desirabled timing frequency
+	 */
+	public DeadlineTimer(final Timeable timeable, final int frequency) {
+		this.timeable = timeable;
+		tickDeadlines = new TickDeadlines(frequency);
+	}
+
+	/**
+	 * The run method of the timer: this will time the timeable object.
+	 */
+	public void run() {
+		while (!requestedToCancel) {
+			if (!readyForNextIteration) {
+				LockSupport.park(this);
+				continue;
+			}
+			final long deadline = tickDeadlines.scheduleNext(System.nanoTime());
+			long remainingTime;
+			while (!requestedToCancel && ((remainingTime = deadline - System.nanoTime()) > 0)) {
+				LockSupport.parkNanos(this, remainingTime);
+			}
+			if (!requestedToCancel) {
+				readyForNextIteration = false;
+				tickDeadlines.ticked(System.nanoTime());
+				timeable.signalingNextIteration();
+			}
+		}
+	}
+
+	/**
+	 * Sets the desireabled timing frequency.
+	 * 
+	 * @param frequency
+	 *            the desirabled timing frequency
+	 */
+	public void setFrequency(final int frequency) {
+		tickDeadlines.setFrequency(frequency);
+	}
+
+	/**
+	 * Sets that timeable object is ready for next iteration, and wakes up the
+	 * timer.
+	 */
+	public void setReadyForNextIteration() {
+		readyForNextIteration = true;
+		LockSupport.unpark(getThread());
+	}
+
+	/**
+	 * Returns a summary of the tick intervals and jitters.
+	 * 
+	 * @return a summary of the tick intervals and jitters
+	 */
+	public String getStatistics() {
+		return tickDeadlines.toString();
+	}
+
+	/**
+	 * Clears the statistics, and restarts the deadlines.
+	 */
+	public void resetStatistics() {
+		tickDeadlines.reset();
+	}
+
+	/**
+	 * Requests to cancel, and wakes up the timer.
+	 */
+	protected void requestToCancel() {
+		super.requestToCancel();
+		LockSupport.unpark(getThread());
+	}
+
+}
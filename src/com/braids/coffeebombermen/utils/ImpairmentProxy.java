@@ -0,0 +1,322 @@
+package com.braids.coffeebombermen.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.LinkedList;
+import java.util.Random;
+
+/**
+ * A local TCP proxy impairing the connections passing through it, to
+ * reproduce WAN conditions without real networks. It can be placed between
+ * any connection stubs: the clients connect to the proxy instead of the
+ * server, and the proxy connects to the server for each of them.<br>
+ * The data of both directions is delivered in chunks (of at most
+ * CHUNK_SIZE bytes, like TCP segments) with the following impairments:
+ * <ul>
+ * <li>latency: constant delay of each chunk
+ * <li>jitter: extra random delay (uniform between 0 and the jitter) of each
+ * chunk
+ * <li>bandwidth: the chunks of a direction are sent one after the other at
+ * the given rate
+ * <li>reordering: the given percent of the chunks arrive after the chunks
+ * sent after them on the network. Since TCP delivers the data in order, this
+ * delays the reordered chunk by an extra latency and jitter, and the
+ * following chunks wait for it (head of line blocking), which is what the
+ * endpoints experience.
+ * </ul>
+ * A proxy has a thread accepting the connections, and two threads for each
+ * direction of each connection (one reading and one delivering the chunks).
+ */
+public class ImpairmentProxy {
+
+	/** Maximum size of a chunk. */
+	private static final int   CHUNK_SIZE = 1460;
+
+	/** The server socket accepting the connections. */
+	private final ServerSocket serverSocket;
+	/** Host of the target of the connections. */
+	private final String       targetHost;
+	/** Port of the target of the connections. */
+	private final int          targetPort;
+	/** Latency of the chunks in ns. */
+	private final long         latency;
+	/** Maximum jitter of the chunks in ns. */
+	private final long         jitter;
+	/** Bandwidth of a direction in bytes per second, 0 means unlimited. */
+	private final int          bandwidth;
+	/** Percent of the reordered chunks. */
+	private final int          reorderPercent;
+	/** Random generator of the jitters and the reorderings. */
+	private final Random       random     = new Random();
+
+	/**
+	 * A direction of a connection: forwards the data read from an input to an
+	 * output with the impairments.
+	 */
+	private class Direction {
+
+		/** Input to read the data from. */
+		private final InputStream       input;
+		/** Output to deliver the data to. */
+		private final OutputStream      output;
+		/** Socket of the output, its output is shut down at the end. */
+		private final Socket            outputSocket;
+		/** Sockets of the connection, closed if an error occurs. */
+		private final Socket[]          sockets;
+		/** The chunks waiting to be delivered, in order. */
+		private final LinkedList<Chunk> chunks = new LinkedList<Chunk>();
+		/** The time when the last chunk has left the link (System.nanoTime()). */
+		private long                    linkFreeTime;
+		/** The delivery time of the last chunk (System.nanoTime()). */
+		private long                    lastDeliveryTime;
+		/** Tells whether the end of the input has been reached. */
+		private boolean                 endOfInput;
+
+		/**
+		 * Creates a new Direction.
+		 * 
+		 * @param inputSocket
+		 *            socket to read the data from
+		 * @param outputSocket
+		 *            socket to deliver the data to
+		 * @throws IOException
+		 *             if the streams of the sockets can't be get
+		 */
+		private Direction(final Socket inputSocket, final Socket outputSocket) throws IOException {
+			input = inputSocket.getInputStream();
+			output = outputSocket.getOutputStream();
+			this.outputSocket = outputSocket;
+			sockets = new Socket[] { inputSocket, outputSocket };
+		}
+
+		/**
+		 * Starts the threads of the direction.
+		 */
+		private void start() {
+			new Thread() {
+
+				public void run() {
+					readChunks();
+				}
+			}.start();
+			new Thread() {
+
+				public void run() {
+					deliverChunks();
+				}
+			}.start();
+		}
+
+		/**
+		 * Reads the chunks from the input until its end, and schedules their
+		 * delivery.
+		 */
+		private void readChunks() {
+			try {
+				while (true) {
+					final byte[] data = new byte[CHUNK_SIZE];
+					final int length = input.read(data);
+					if (length < 0) {
+						break;
+					}
+					scheduleChunk(new Chunk(data, length));
+				}
+			} catch (final IOException ie) {
+				// The connection has been closed
+			}
+			synchronized (this) {
+				endOfInput = true;
+				notifyAll();
+			}
+		}
+
+		/**
+		 * Schedules the delivery of a chunk.
+		 * 
+		 * @param chunk
+		 *            chunk to be scheduled
+		 */
+		private synchronized void scheduleChunk(final Chunk chunk) {
+			final long now = System.nanoTime();
+			if (linkFreeTime - now < 0) {
+				linkFreeTime = now;
+			}
+			if (bandwidth > 0) {
+				linkFreeTime += chunk.length * 1000000000l / bandwidth;
+			}
+			long deliveryTime = linkFreeTime + latency + nextJitter();
+			if (random.nextInt(100) < reorderPercent) {
+				deliveryTime += latency + nextJitter();
+			}
+			// TCP delivers the data in order
+			if (deliveryTime - lastDeliveryTime < 0) {
+				deliveryTime = lastDeliveryTime;
+			}
+			chunk.deliveryTime = deliveryTime;
+			lastDeliveryTime = deliveryTime;
+			chunks.add(chunk);
+			notifyAll();
+		}
+
+		/**
+		 * Returns a random jitter.
+		 * 
+		 * @return a random jitter in ns
+		 */
+		private long nextJitter() {
+			return jitter == 0 ? 0 : (long) (random.nextDouble() * jitter);
+		}
+
+		/**
+		 * Delivers the chunks at their delivery times. Shuts down the output
+		 * when all the chunks have been delivered after the end of the input.
+		 */
+		private void deliverChunks() {
+			try {
+				while (true) {
+					final Chunk chunk;
+					synchronized (this) {
+						while (chunks.isEmpty() && !endOfInput) {
+							wait();
+						}
+						if (chunks.isEmpty()) {
+							break;
+						}
+						final long waitingTime = chunks.getFirst().deliveryTime - System.nanoTime();
+						if (waitingTime > 0) {
+							wait(waitingTime / 1000000l, (int) (waitingTime % 1000000l));
+							continue;
+						}
+						chunk = chunks.removeFirst();
+					}
+					output.write(chunk.data, 0, chunk.length);
+					output.flush();
+				}
+				outputSocket.shutdownOutput();
+			} catch (final IOException ie) {
+				closeSockets();
+			} catch (final InterruptedException ie) {
+				closeSockets();
+			}
+		}
+
+		/**
+		 * Closes the sockets of the connection.
+		 */
+		private void closeSockets() {
+			for (final Socket socket : sockets) {
+				try {
+					socket.close();
+				} catch (final IOException ie) {
+					ie.printStackTrace();
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * A chunk of data waiting to be delivered.
+	 */
+	private static class Chunk {
+
+		/** The data of the chunk. */
+		private final byte[] data;
+		/** Length of the data. */
+		private final int    length;
+		/** The time when the chunk has to be delivered (System.nanoTime()). */
+		private long         deliveryTime;
+
+		/**
+		 * Creates a new Chunk.
+		 * 
+		 * @param data
+		 *            the data of the chunk
+		 * @param length
+		 *            length of the data
+		 */
+		private Chunk(final byte[] data, final int length) {
+			this.data = data;
+			this.length = length;
+		}
+
+	}
+
+	/**
+	 * Creates a new ImpairmentProxy, and starts accepting the connections.
+	 * 
+	 * @param port
+	 *            port of the proxy
+	 * @param targetHost
+	 *            host of the target of the connections
+	 * @param targetPort
+	 *            port of the target of the connections
+	 * @param latency
+	 *            latency in ms
+	 * @param jitter
+	 *            maximum jitter in ms
+	 * @param bandwidth
+	 *            bandwidth of a direction in bytes per second, 0 means
+	 *            unlimited
+	 * @param reorderPercent
+	 *            percent of the reordered chunks
+	 * @throws IOException
+	 *             if the server socket can't be created
+	 */
+	public ImpairmentProxy(final int port, final String targetHost, final int targetPort, final int latency, final int jitter, final int bandwidth,
+	        final int reorderPercent) throws IOException {
+		this.targetHost = targetHost;
+		this.targetPort = targetPort;
+		this.latency = latency * 1000000l;
+		this.jitter = jitter * 1000000l;
+		this.bandwidth = bandwidth;
+		this.reorderPercent = reorderPercent;
+		serverSocket = new ServerSocket(port);
+		new Thread() {
+
+			public void run() {
+				acceptConnections();
+			}
+		}.start();
+	}
+
+	/**
+	 * Accepts the connections until the proxy is shut down.
+	 */
+	private void acceptConnections() {
+		while (!serverSocket.isClosed()) {
+			try {
+				final Socket socket = serverSocket.accept();
+				final Socket targetSocket;
+				try {
+					targetSocket = new Socket(targetHost, targetPort);
+				} catch (final IOException ie) {
+					socket.close();
+					continue;
+				}
+				socket.setTcpNoDelay(true);
+				targetSocket.setTcpNoDelay(true);
+				new Direction(socket, targetSocket).start();
+				new Direction(targetSocket, socket).start();
+			} catch (final IOException ie) {
+				// The server socket has been closed
+			}
+		}
+	}
+
+	/**
+	 * Shuts down the proxy: stops accepting connections. The accepted
+	 * connections are closed by their endpoints.
+	 */
+	public void shutDown() {
+		try {
+			serverSocket.close();
+		} catch (final IOException ie) {
+			ie.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,672 @@
+package com.braids.coffeebombermen.utils;
+
+import java.util.Arrays;
+import java.util.StringTokenizer;
+
+import com.braids.coffeebombermen.options.OptConsts.PlayerControlKeys;
+
+/**
+ * A binary frame of the iteration protocol. Carries the
+ * Client.Commands.STARTING_NEXT_ITERATION and the
+ * Server.Commands.READY_FOR_NEXT_ITERATION commands, which are sent in every
+ * (server timed) iteration, so these are not sent as text.<br>
+ * A frame consists of a tick (the number of the iteration), a hold time and
+ * sections, each
+ * section holds the new actions of the players of a client. The hold time is
+ * used by the READY_FOR_NEXT_ITERATION frames: it tells how long the client
+ * held the answered STARTING_NEXT_ITERATION frame before processing it (the
+ * server can measure the round trip time of the connection by this). The
+ * READY_FOR_NEXT_ITERATION frames also carry the state hash of the client: the
+ * hash of its game state after the answered iteration (0 if it is not sent),
+ * the server compares them to detect desynchronized clients. An action
+ * is a transition of a control key of a player packed into one byte: bits 0-1 hold
+ * the player index (at the client), bits 2-4 hold the ordinal of the control
+ * key and bit 5 is set if the key has been pressed (cleared if it has been
+ * released).<br>
+ * <br>
+ * The encoded form of a frame is:
+ * <ol>
+ * <li>the type marker of the frame (one byte, STARTING_NEXT_ITERATION_MARKER
+ * or READY_FOR_NEXT_ITERATION_MARKER); these values never start a text
+ * command, so frames and text commands can be mixed on the same connection
+ * <li>the length of the rest of the frame (variable length integer)
+ * <li>the tick (variable length integer)
+ * <li>the hold time (variable length integer)
+ * <li>the state hash (4 bytes, big endian), only in READY_FOR_NEXT_ITERATION
+ * frames
+ * <li>the sections: the client index (one byte), the number of actions (one
+ * byte) and the actions (one byte each).
+ * </ol>
+ * Frame objects are designed to be reused: clear() prepares a frame for
+ * building a new one, and decoding overwrites the previous content.
+ */
+public class IterationFrame {
+
+	/** Type marker of a STARTING_NEXT_ITERATION frame. */
+	public static final byte  STARTING_NEXT_ITERATION_MARKER  = 1;
+	/** Type marker of a READY_FOR_NEXT_ITERATION frame. */
+	public static final byte  READY_FOR_NEXT_ITERATION_MARKER = 2;
+	/** Maximum length of the head of an encoded frame (marker and length). */
+	private static final int  MAX_HEAD_LENGTH                 = 6;
+	/** Maximum length of a variable length integer. */
+	private static final int  MAX_VAR_INT_LENGTH              = 5;
+	/** Length of the encoded state hash. */
+	private static final int  STATE_HASH_LENGTH               = 4;
+
+	/** Mask of the player index in an action byte. */
+	private static final int  PLAYER_INDEX_MASK               = 0x03;
+	/** Shift of the control key ordinal in an action byte. */
+	private static final int  CONTROL_KEY_SHIFT               = 2;
+	/** Mask of the control key ordinal in an action byte (after shift). */
+	private static final int  CONTROL_KEY_MASK                = 0x07;
+	/** Bit of the pressed flag in an action byte. */
+	private static final int  PRESSED_BIT                     = 0x20;
+	/** Maximum number of actions in an encoded section. */
+	private static final int  MAX_SECTION_ACTIONS             = 255;
+	/**
+	 * Maximum length of an encoded frame (with the marker and the length).
+	 * Far above the frames of real games (a few actions of a client in an
+	 * iteration), longer frames are rejected by the receivers.
+	 */
+	public static final int   MAX_ENCODED_LENGTH              = 64 * 1024;
+
+	/** Cached values of the control keys. */
+	private static final PlayerControlKeys[] CONTROL_KEYS     = PlayerControlKeys.values();
+
+	/** Type marker of the frame. */
+	private byte              marker;
+	/** The tick (number of the iteration) of the frame. */
+	private int               tick;
+	/** The hold time of the frame in microseconds. */
+	private int               holdTime;
+	/** The state hash of the frame, 0 if it is not sent. */
+	private int               stateHash;
+	/** Number of sections. */
+	private int               sectionsCount;
+	/** Client indices of the sections. */
+	private int[]             sectionClientIndices            = new int[8];
+	/** End index (exclusive) of the actions of the sections. */
+	private int[]             sectionActionsEnds              = new int[8];
+	/** The packed actions of all sections. */
+	private byte[]            actions                         = new byte[32];
+	/** Number of the actions of all sections. */
+	private int               actionsCount;
+	/**
+	 * The time when the frame has been received (System.nanoTime()), 0 if it
+	 * is not a received frame.
+	 */
+	private long              receivedTime;
+
+	/**
+	 * Creates a new, empty IterationFrame.
+	 * 
+	 * @param marker
+	 *            type marker of the frame
+	 */
+	public IterationFrame(final byte marker) {
+		this.marker = marker;
+	}
+
+	/**
+	 * Checks whether a byte is a frame type marker.
+	 * 
+	 * @param b
+	 *            byte to be checked
+	 * @return true if the byte is a frame type marker; false otherwise
+	 */
+	public static boolean isMarker(final int b) {
+		return (b == STARTING_NEXT_ITERATION_MARKER) || (b == READY_FOR_NEXT_ITERATION_MARKER);
+	}
+
+	/**
+	 * Clears the frame: removes all the sections and actions.
+	 * 
+	 * @param tick
+	 *            the tick of the frame to be built
+	 */
+	public void clear(final int tick) {
+		this.tick = tick;
+		holdTime = 0;
+		stateHash = 0;
+		sectionsCount = 0;
+		actionsCount = 0;
+	}
+
+	/**
+	 * Returns the type marker of the frame.
+	 * 
+	 * @return the type marker of the frame
+	 */
+	public byte getMarker() {
+		return marker;
+	}
+
+	/**
+	 * Returns the tick of the frame.
+	 * 
+	 * @return the tick of the frame
+	 */
+	public int getTick() {
+		return tick;
+	}
+
+	/**
+	 * Sets the tick of the frame.
+	 * 
+	 * @param tick
+	 *            the tick to be set
+	 */
+	public void setTick(final int tick) {
+		this.tick = tick;
+	}
+
+	/**
+	 * Returns the hold time of the frame.
+	 * 
+	 * @return the hold time of the frame in microseconds
+	 */
+	public int getHoldTime() {
+		return holdTime;
+	}
+
+	/**
+	 * Sets the hold time of the frame.
+	 * 
+	 * @param holdTime
+	 *            the hold time to be set in microseconds
+	 */
+	public void setHoldTime(final int holdTime) {
+		this.holdTime = holdTime;
+	}
+
+	/**
+	 * Returns the state hash of the frame.
+	 * 
+	 * @return the state hash of the frame; 0 if it is not sent
+	 */
+	public int getStateHash() {
+		return stateHash;
+	}
+
+	/**
+	 * Sets the state hash of the frame. Only the READY_FOR_NEXT_ITERATION
+	 * frames carry it.
+	 * 
+	 * @param stateHash
+	 *            the state hash to be set; 0 means it is not sent
+	 */
+	public void setStateHash(final int stateHash) {
+		this.stateHash = stateHash;
+	}
+
+	/**
+	 * Returns the time when the frame has been received.
+	 * 
+	 * @return the time when the frame has been received (System.nanoTime())
+	 */
+	public long getReceivedTime() {
+		return receivedTime;
+	}
+
+	/**
+	 * Sets the time when the frame has been received.
+	 * 
+	 * @param receivedTime
+	 *            the time when the frame has been received
+	 *            (System.nanoTime())
+	 */
+	public void setReceivedTime(final long receivedTime) {
+		this.receivedTime = receivedTime;
+	}
+
+	/**
+	 * Begins a new section. The actions added after this belong to this
+	 * section.
+	 * 
+	 * @param clientIndex
+	 *            index of the client whose actions the section holds
+	 */
+	public void beginSection(final int clientIndex) {
+		if (sectionsCount == sectionClientIndices.length) {
+			sectionClientIndices = Arrays.copyOf(sectionClientIndices, sectionsCount * 2);
+			sectionActionsEnds = Arrays.copyOf(sectionActionsEnds, sectionsCount * 2);
+		}
+		sectionClientIndices[sectionsCount] = clientIndex;
+		sectionActionsEnds[sectionsCount] = actionsCount;
+		sectionsCount++;
+	}
+
+	/**
+	 * Adds an action to the last section.
+	 * 
+	 * @param playerIndex
+	 *            index of the player at its client
+	 * @param playerControlKey
+	 *            the control key
+	 * @param pressed
+	 *            true if the key has been pressed; false if it has been
+	 *            released
+	 */
+	public void addAction(final int playerIndex, final PlayerControlKeys playerControlKey, final boolean pressed) {
+		addPackedAction((playerIndex & PLAYER_INDEX_MASK) | (playerControlKey.ordinal() << CONTROL_KEY_SHIFT) | (pressed ? PRESSED_BIT : 0));
+	}
+
+	/**
+	 * Adds a packed action to the last section.
+	 * 
+	 * @param packedAction
+	 *            the packed action
+	 */
+	private void addPackedAction(final int packedAction) {
+		if (actionsCount == actions.length) {
+			actions = Arrays.copyOf(actions, actionsCount * 2);
+		}
+		actions[actionsCount++] = (byte) packedAction;
+		sectionActionsEnds[sectionsCount - 1] = actionsCount;
+	}
+
+	/**
+	 * Adds the actions of all sections of another frame to the last section.
+	 * 
+	 * @param frame
+	 *            frame whose actions to be added
+	 */
+	public void addActionsOf(final IterationFrame frame) {
+		for (int i = 0; i < frame.actionsCount; i++) {
+			addPackedAction(frame.actions[i]);
+		}
+	}
+
+	/**
+	 * Adds the actions of a section of another frame to the last section.
+	 * 
+	 * @param frame
+	 *            frame whose actions to be added
+	 * @param section
+	 *            index of the section of the other frame
+	 */
+	public void addSectionActionsOf(final IterationFrame frame, final int section) {
+		for (int i = frame.getSectionActionsStart(section); i < frame.getSectionActionsEnd(section); i++) {
+			addPackedAction(frame.actions[i]);
+		}
+	}
+
+	/**
+	 * Appends the sections of another frame (keeping their client indices).
+	 * 
+	 * @param frame
+	 *            frame whose sections to be appended
+	 */
+	public void addSectionsOf(final IterationFrame frame) {
+		for (int section = 0; section < frame.sectionsCount; section++) {
+			beginSection(frame.sectionClientIndices[section]);
+			addSectionActionsOf(frame, section);
+		}
+	}
+
+	/**
+	 * Adds actions given in the text form to the last section. The text form
+	 * is a space separated sequence of action triplets: player index, control
+	 * key ordinal and 'p' or 'r' for pressed or released (for example
+	 * "0 2 p 1 4 r"). Robots give their actions in this form.
+	 * 
+	 * @param actionsText
+	 *            the actions in text form
+	 */
+	public void addActions(final String actionsText) {
+		final StringTokenizer actionsTokenizer = new StringTokenizer(actionsText, " ");
+		while (actionsTokenizer.hasMoreTokens()) {
+			final int playerIndex = Integer.parseInt(actionsTokenizer.nextToken());
+			final PlayerControlKeys playerControlKey = CONTROL_KEYS[Integer.parseInt(actionsTokenizer.nextToken())];
+			addAction(playerIndex, playerControlKey, actionsTokenizer.nextToken().charAt(0) == 'p');
+		}
+	}
+
+	/**
+	 * Tells whether the actions of a section refer to existing players only.
+	 * 
+	 * @param section
+	 *            index of the section
+	 * @param playersCount
+	 *            number of the players of the client of the section
+	 * @return true if all the player indices of the section are below
+	 *         playersCount; false otherwise
+	 */
+	public boolean hasValidPlayerIndices(final int section, final int playersCount) {
+		for (int i = getSectionActionsStart(section); i < getSectionActionsEnd(section); i++) {
+			if (getActionPlayerIndex(i) >= playersCount) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tells whether the actions of all sections refer to existing players
+	 * only.
+	 * 
+	 * @param playersCount
+	 *            number of the players of the client of the actions
+	 * @return true if all the player indices are below playersCount; false
+	 *         otherwise
+	 */
+	public boolean hasValidPlayerIndices(final int playersCount) {
+		for (int i = 0; i < actionsCount; i++) {
+			if (getActionPlayerIndex(i) >= playersCount) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of actions of all sections.
+	 * 
+	 * @return the number of actions of all sections
+	 */
+	public int getActionsCount() {
+		return actionsCount;
+	}
+
+	/**
+	 * Returns the number of sections.
+	 * 
+	 * @return the number of sections
+	 */
+	public int getSectionsCount() {
+		return sectionsCount;
+	}
+
+	/**
+	 * Returns the client index of a section.
+	 * 
+	 * @param section
+	 *            index of the section
+	 * @return the client index of the section
+	 */
+	public int getSectionClientIndex(final int section) {
+		return sectionClientIndices[section];
+	}
+
+	/**
+	 * Sets the client index of a section (used when the index of the client
+	 * changes because a client with lower index has left).
+	 * 
+	 * @param section
+	 *            index of the section
+	 * @param clientIndex
+	 *            the new client index of the section
+	 */
+	public void setSectionClientIndex(final int section, final int clientIndex) {
+		sectionClientIndices[section] = clientIndex;
+	}
+
+	/**
+	 * Returns the index of the first action of a section.
+	 * 
+	 * @param section
+	 *            index of the section
+	 * @return the index of the first action of the section
+	 */
+	public int getSectionActionsStart(final int section) {
+		return section == 0 ? 0 : sectionActionsEnds[section - 1];
+	}
+
+	/**
+	 * Returns the end index (exclusive) of the actions of a section.
+	 * 
+	 * @param section
+	 *            index of the section
+	 * @return the end index of the actions of the section
+	 */
+	public int getSectionActionsEnd(final int section) {
+		return sectionActionsEnds[section];
+	}
+
+	/**
+	 * Returns the player index of an action.
+	 * 
+	 * @param action
+	 *            index of the action
+	 * @return the player index of the action
+	 */
+	public int getActionPlayerIndex(final int action) {
+		return actions[action] & PLAYER_INDEX_MASK;
+	}
+
+	/**
+	 * Returns the control key of an action.
+	 * 
+	 * @param action
+	 *            index of the action
+	 * @return the control key of the action
+	 */
+	public PlayerControlKeys getActionControlKey(final int action) {
+		return CONTROL_KEYS[(actions[action] >> CONTROL_KEY_SHIFT) & CONTROL_KEY_MASK];
+	}
+
+	/**
+	 * Tells whether the key of an action has been pressed.
+	 * 
+	 * @param action
+	 *            index of the action
+	 * @return true if the key has been pressed; false if it has been released
+	 */
+	public boolean isActionKeyPressed(final int action) {
+		return (actions[action] & PRESSED_BIT) != 0;
+	}
+
+	/**
+	 * Copies the content of another frame into this frame.
+	 * 
+	 * @param frame
+	 *            frame to be copied
+	 */
+	public void copyFrom(final IterationFrame frame) {
+		marker = frame.marker;
+		receivedTime = frame.receivedTime;
+		clear(frame.tick);
+		holdTime = frame.holdTime;
+		stateHash = frame.stateHash;
+		for (int i = 0; i < frame.sectionsCount; i++) {
+			beginSection(frame.sectionClientIndices[i]);
+			for (int j = frame.getSectionActionsStart(i); j < frame.sectionActionsEnds[i]; j++) {
+				addPackedAction(frame.actions[j]);
+			}
+		}
+	}
+
+	/**
+	 * Tells whether another frame holds the same actions as this frame. The
+	 * ticks, the hold times, the state hashes and the empty sections are not
+	 * compared.
+	 * 
+	 * @param frame
+	 *            frame to be compared to
+	 * @return true if the frames hold the same actions for the same clients;
+	 *         false otherwise
+	 */
+	public boolean hasSameActions(final IterationFrame frame) {
+		if (actionsCount != frame.actionsCount) {
+			return false;
+		}
+		int otherSection = 0;
+		for (int i = 0; i < sectionsCount; i++) {
+			final int start = getSectionActionsStart(i);
+			if (start == sectionActionsEnds[i]) {
+				continue;
+			}
+			while (frame.getSectionActionsStart(otherSection) == frame.sectionActionsEnds[otherSection]) {
+				otherSection++; // Can't run out: the actions counts are equal
+			}
+			if ((sectionClientIndices[i] != frame.sectionClientIndices[otherSection])
+			        || (sectionActionsEnds[i] != frame.sectionActionsEnds[otherSection]) || (start != frame.getSectionActionsStart(otherSection))) {
+				return false;
+			}
+			otherSection++;
+		}
+		for (int i = 0; i < actionsCount; i++) {
+			if (actions[i] != frame.actions[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the maximum length of the encoded form of this frame.
+	 * 
+	 * @return the maximum length of the encoded form of this frame
+	 */
+	public int getMaxEncodedLength() {
+		return MAX_HEAD_LENGTH + 2 * MAX_VAR_INT_LENGTH + STATE_HASH_LENGTH + 2 * (sectionsCount + actionsCount / MAX_SECTION_ACTIONS + 1) + actionsCount;
+	}
+
+	/**
+	 * Encodes this frame into a buffer.
+	 * 
+	 * @param buffer
+	 *            buffer to encode to, its length must be at least
+	 *            getMaxEncodedLength()
+	 * @return the length of the encoded frame
+	 */
+	public int encode(final byte[] buffer) {
+		// First we encode the body after the place of the head, the length of
+		// the body is known only after that.
+		int position = MAX_HEAD_LENGTH;
+		position = writeVarInt(buffer, position, tick);
+		position = writeVarInt(buffer, position, holdTime);
+		if (marker == READY_FOR_NEXT_ITERATION_MARKER) {
+			for (int shift = 24; shift >= 0; shift -= 8) {
+				buffer[position++] = (byte) (stateHash >> shift);
+			}
+		}
+		for (int i = 0; i < sectionsCount; i++) {
+			int start = getSectionActionsStart(i);
+			final int end = sectionActionsEnds[i];
+			do {
+				// Sections with too many actions are split
+				final int count = Math.min(end - start, MAX_SECTION_ACTIONS);
+				buffer[position++] = (byte) sectionClientIndices[i];
+				buffer[position++] = (byte) count;
+				System.arraycopy(actions, start, buffer, position, count);
+				position += count;
+				start += count;
+			} while (start < end);
+		}
+
+		final int bodyLength = position - MAX_HEAD_LENGTH;
+		int headLength = 1;
+		for (int length = bodyLength; length >= 0x80; length >>>= 7) {
+			headLength++;
+		}
+		final int frameStart = MAX_HEAD_LENGTH - headLength - 1;
+		buffer[frameStart] = marker;
+		writeVarInt(buffer, frameStart + 1, bodyLength);
+		System.arraycopy(buffer, frameStart, buffer, 0, headLength + 1 + bodyLength);
+
+		return headLength + 1 + bodyLength;
+	}
+
+	/**
+	 * Decodes the body of an encoded frame (the part after the length) into
+	 * this frame.
+	 * 
+	 * @param marker
+	 *            the type marker of the frame
+	 * @param buffer
+	 *            buffer holding the body
+	 * @param offset
+	 *            offset of the body in the buffer
+	 * @param length
+	 *            length of the body
+	 * @throws IllegalArgumentException
+	 *             if the body is malformed (it doesn't end where its parts
+	 *             end, or an action has an unknown control key)
+	 */
+	public void decode(final byte marker, final byte[] buffer, final int offset, final int length) {
+		this.marker = marker;
+		final int end = offset + length;
+		int position = offset;
+
+		int tick = 0;
+		int shift = 0;
+		byte b;
+		do {
+			checkBody(position + 1, end, shift);
+			b = buffer[position++];
+			tick |= (b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+		clear(tick);
+
+		shift = 0;
+		do {
+			checkBody(position + 1, end, shift);
+			b = buffer[position++];
+			holdTime |= (b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+
+		if (marker == READY_FOR_NEXT_ITERATION_MARKER) {
+			checkBody(position + STATE_HASH_LENGTH, end, 0);
+			for (int i = 0; i < STATE_HASH_LENGTH; i++) {
+				stateHash = (stateHash << 8) | (buffer[position++] & 0xff);
+			}
+		}
+
+		while (position < end) {
+			checkBody(position + 2, end, 0);
+			beginSection(buffer[position++] & 0xff);
+			final int count = buffer[position++] & 0xff;
+			checkBody(position + count, end, 0);
+			for (int i = 0; i < count; i++) {
+				if (((buffer[position] >> CONTROL_KEY_SHIFT) & CONTROL_KEY_MASK) >= CONTROL_KEYS.length) {
+					throw new IllegalArgumentException("Malformed iteration frame!");
+				}
+				addPackedAction(buffer[position++]);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a part of a body being decoded fits in the body.
+	 * 
+	 * @param partEnd
+	 *            end position of the part
+	 * @param end
+	 *            end position of the body
+	 * @param shift
+	 *            shift of the next byte of the variable length integer being
+	 *            read
+	 * @throws IllegalArgumentException
+	 *             if the part doesn't fit in the body, or the variable length
+	 *             integer is too long
+	 */
+	private static void checkBody(final int partEnd, final int end, final int shift) {
+		if ((partEnd > end) || (shift >= 7 * MAX_VAR_INT_LENGTH)) {
+			throw new IllegalArgumentException("Malformed iteration frame!");
+		}
+	}
+
+	/**
+	 * Writes a non-negative variable length integer into a buffer.
+	 * 
+	 * @param buffer
+	 *            buffer to write to
+	 * @param position
+	 *            position to write at
+	 * @param value
+	 *            value to be written
+	 * @return the position after the written integer
+	 */
+	private static int writeVarInt(final byte[] buffer, int position, int value) {
+		while (value >= 0x80) {
+			buffer[position++] = (byte) (value | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte) value;
+		return position;
+	}
+
+}
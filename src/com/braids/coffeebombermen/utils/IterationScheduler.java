@@ -0,0 +1,297 @@
+package com.braids.coffeebombermen.utils;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of threads which runs the iterations of many timed objects
+ * (for example the games of the rooms of a server). Instead of a thread and a
+ * controlled timer of its own, each timed object gets a task and a timer of
+ * the scheduler, so the threads needed don't grow with the number of the
+ * timed objects.<br>
+ * A task is run by one of the threads when it is scheduled; it is never run
+ * by two threads at the same time, and scheduling it while it is running makes
+ * it run again when it has finished.
+ */
+public class IterationScheduler {
+
+	/**
+	 * A task of the scheduler.
+	 */
+	public class Task implements Runnable {
+
+		/** The runnable to be run by the task. */
+		private final Runnable runnable;
+		/** Tells whether the task is waiting to be run. */
+		private boolean        scheduled;
+		/** Tells whether the task is running. */
+		private boolean        running;
+		/** Tells whether the task has been scheduled while it was running. */
+		private boolean        rescheduled;
+		/** Tells whether the task has been cancelled. */
+		private boolean        cancelled;
+
+		/**
+		 * Creates a new Task.
+		 * 
+		 * @param runnable
+		 *            the runnable to be run by the task
+		 */
+		private Task(final Runnable runnable) {
+			this.runnable = runnable;
+		}
+
+		/**
+		 * Schedules the task to be run. Does nothing if the task is already
+		 * waiting to be run.
+		 */
+		public void schedule() {
+			synchronized (this) {
+				if (cancelled || scheduled) {
+					return;
+				}
+				if (running) {
+					rescheduled = true;
+					return;
+				}
+				scheduled = true;
+			}
+			executor.execute(this);
+		}
+
+		/**
+		 * Schedules the task to be run after a delay.
+		 * 
+		 * @param delay
+		 *            the delay in ns
+		 */
+		public void scheduleAfter(final long delay) {
+			synchronized (this) {
+				if (cancelled) {
+					return;
+				}
+			}
+			executor.schedule(new Runnable() {
+
+				public void run() {
+					schedule();
+				}
+			}, delay, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * Runs the runnable of the task. Called by a thread of the scheduler.
+		 */
+		public void run() {
+			synchronized (this) {
+				scheduled = false;
+				if (cancelled) {
+					return;
+				}
+				running = true;
+			}
+			try {
+				runnable.run();
+			} catch (final RuntimeException re) {
+				re.printStackTrace();
+			}
+			synchronized (this) {
+				running = false;
+				notifyAll();
+				if (!rescheduled || cancelled) {
+					return;
+				}
+				rescheduled = false;
+				scheduled = true;
+			}
+			executor.execute(this);
+		}
+
+		/**
+		 * Cancels the task: it will not be run again. Waits for the task if it
+		 * is running (so must not be called by the task itself).
+		 */
+		public synchronized void cancel() {
+			cancelled = true;
+			try {
+				while (running) {
+					wait();
+				}
+			} catch (final InterruptedException ie) {
+				ie.printStackTrace();
+			}
+		}
+
+	}
+
+	/**
+	 * Timer of the scheduler. Unlike the DeadlineTimer it is not a thread, the
+	 * next iteration is signed by a thread of the scheduler at its deadline.
+	 */
+	private class Timer implements IterationTimer, Runnable {
+
+		/** Object to be timed. */
+		private final Timeable      timeable;
+		/** The deadlines of the ticks. */
+		private final TickDeadlines tickDeadlines;
+		/** The scheduled signing of the next iteration. */
+		private ScheduledFuture<?>  scheduledSigning;
+		/** Tells whether the timer has been shut down. */
+		private boolean             shutDown;
+
+		/**
+		 * Creates a new Timer.
+		 * 
+		 * @param timeable
+		 *            object to be timed
+		 * @param frequency
+		 *            the desirabled timing frequency
+		 */
+		private Timer(final Timeable timeable, final int frequency) {
+			this.timeable = timeable;
+			tickDeadlines = new TickDeadlines(frequency);
+		}
+
+		/**
+		 * Starts the timer. Nothing to do, the threads of the scheduler are
+		 * running.
+		 */
+		public void start() {}
+
+		/**
+		 * Sets the desireabled timing frequency.
+		 * 
+		 * @param frequency
+		 *            the desirabled timing frequency
+		 */
+		public void setFrequency(final int frequency) {
+			tickDeadlines.setFrequency(frequency);
+		}
+
+		/**
+		 * Sets that timeable object is ready for next iteration: schedules the
+		 * signing of the next iteration at its deadline (if it hasn't been
+		 * scheduled yet).
+		 */
+		public synchronized void setReadyForNextIteration() {
+			if (!shutDown && (scheduledSigning == null)) {
+				final long now = System.nanoTime();
+				scheduledSigning = executor.schedule(this, tickDeadlines.scheduleNext(now) - now, TimeUnit.NANOSECONDS);
+			}
+		}
+
+		/**
+		 * Returns a summary of the tick intervals and jitters.
+		 * 
+		 * @return a summary of the tick intervals and jitters
+		 */
+		public String getStatistics() {
+			return tickDeadlines.toString();
+		}
+
+		/**
+		 * Clears the statistics, and restarts the deadlines.
+		 */
+		public void resetStatistics() {
+			tickDeadlines.reset();
+		}
+
+		/**
+		 * Signs the next iteration. Called by a thread of the scheduler.
+		 */
+		public void run() {
+			synchronized (this) {
+				if (shutDown) {
+					return;
+				}
+				scheduledSigning = null;
+			}
+			tickDeadlines.ticked(System.nanoTime());
+			timeable.signalingNextIteration();
+		}
+
+		/**
+		 * Shuts down the timer, cancels the scheduled signing.
+		 */
+		public synchronized void shutDown() {
+			shutDown = true;
+			if (scheduledSigning != null) {
+				scheduledSigning.cancel(false);
+				scheduledSigning = null;
+			}
+		}
+
+	}
+
+	/** The executor running the tasks and the timers. */
+	private final ScheduledThreadPoolExecutor executor;
+
+	/**
+	 * Creates a new IterationScheduler.
+	 * 
+	 * @param threadsCount
+	 *            number of the threads of the scheduler
+	 */
+	public IterationScheduler(final int threadsCount) {
+		executor = new ScheduledThreadPoolExecutor(threadsCount, new ThreadFactory() {
+
+			/** Number of the created threads. */
+			private int createdThreadsCount;
+
+			public synchronized Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "Iteration scheduler " + ++createdThreadsCount);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		// The cancelled timer signings must not fill the queue
+		executor.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Creates a new task of the scheduler.
+	 * 
+	 * @param runnable
+	 *            the runnable to be run by the task
+	 * @return the new task
+	 */
+	public Task createTask(final Runnable runnable) {
+		return new Task(runnable);
+	}
+
+	/**
+	 * Creates a new timer of the scheduler.
+	 * 
+	 * @param timeable
+	 *            object to be timed
+	 * @param frequency
+	 *            the desirabled timing frequency
+	 * @return the new timer
+	 */
+	public IterationTimer createTimer(final Timeable timeable, final int frequency) {
+		return new Timer(timeable, frequency);
+	}
+
+	/**
+	 * Runs a runnable periodically until the scheduler is shut down.
+	 * 
+	 * @param runnable
+	 *            the runnable to be run
+	 * @param periodTime
+	 *            period time in ms
+	 */
+	public void runPeriodically(final Runnable runnable, final long periodTime) {
+		executor.scheduleWithFixedDelay(runnable, periodTime, periodTime, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Shuts down the scheduler, the scheduled tasks and timers will not be
+	 * run.
+	 */
+	public void shutDown() {
+		executor.shutdownNow();
+	}
+
+}
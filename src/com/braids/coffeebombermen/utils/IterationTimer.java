@@ -0,0 +1,49 @@
+package com.braids.coffeebombermen.utils;
+
+/**
+ * A confirmable timer of iterations: signalingNextIteration() of the timed
+ * object is called one period time after the timed object has signed that it
+ * is ready for the next iteration.<br>
+ * The ticks are timed by absolute deadlines (see TickDeadlines). Implemented
+ * by the DeadlineTimer (which is a thread of its own) and by the timers of the
+ * IterationScheduler (which share the threads of the scheduler).
+ */
+public interface IterationTimer {
+
+	/**
+	 * Starts the timer.
+	 */
+	void start();
+
+	/**
+	 * Sets the desireabled timing frequency.
+	 * 
+	 * @param frequency
+	 *            the desirabled timing frequency
+	 */
+	void setFrequency(int frequency);
+
+	/**
+	 * Sets that timeable object is ready for next iteration.
+	 */
+	void setReadyForNextIteration();
+
+	/**
+	 * Returns a summary of the tick intervals and jitters.
+	 * 
+	 * @return a summary of the tick intervals and jitters
+	 */
+	String getStatistics();
+
+	/**
+	 * Clears the statistics, and restarts the deadlines (for example at the
+	 * start of a game).
+	 */
+	void resetStatistics();
+
+	/**
+	 * Shuts down the timer, the timeable object will not be timed any more.
+	 */
+	void shutDown();
+
+}
@@ -0,0 +1,114 @@
+package com.braids.coffeebombermen.utils;
+
+/**
+ * A histogram of latencies. The latencies are recorded in nanoseconds into
+ * buckets of power of 2 bounds, so recording is cheap and needs no memory
+ * allocation. Percentiles are estimated by the upper bound of the bucket they
+ * fall into.
+ */
+public class LatencyHistogram {
+
+	/** Number of buckets: bucket i holds the values less than 2^i ns. */
+	private static final int BUCKETS_COUNT = 40;
+
+	/** Name of the measured latency, used in the summary. */
+	private final String     name;
+	/** Counters of the buckets. */
+	private final long[]     buckets       = new long[BUCKETS_COUNT];
+	/** Number of the recorded values. */
+	private long             count;
+	/** Sum of the recorded values. */
+	private long             sum;
+	/** Minimum of the recorded values. */
+	private long             min;
+	/** Maximum of the recorded values. */
+	private long             max;
+
+	/**
+	 * Creates a new LatencyHistogram.
+	 * 
+	 * @param name
+	 *            name of the measured latency
+	 */
+	public LatencyHistogram(final String name) {
+		this.name = name;
+		reset();
+	}
+
+	/**
+	 * Clears all the recorded values.
+	 */
+	public synchronized void reset() {
+		for (int i = 0; i < BUCKETS_COUNT; i++) {
+			buckets[i] = 0;
+		}
+		count = 0;
+		sum = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+	}
+
+	/**
+	 * Records a latency.
+	 * 
+	 * @param latency
+	 *            the latency in ns
+	 */
+	public synchronized void record(long latency) {
+		if (latency < 0) {
+			latency = 0;
+		}
+		buckets[Math.min(64 - Long.numberOfLeadingZeros(latency), BUCKETS_COUNT - 1)]++;
+		count++;
+		sum += latency;
+		if (latency < min) {
+			min = latency;
+		}
+		if (latency > max) {
+			max = latency;
+		}
+	}
+
+	/**
+	 * Returns the number of the recorded values.
+	 * 
+	 * @return the number of the recorded values
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the estimated value of a percentile.
+	 * 
+	 * @param percentile
+	 *            the percentile (between 0 and 100)
+	 * @return the estimated value of the percentile in ns (the upper bound of
+	 *         its bucket, but not more than the maximum)
+	 */
+	public synchronized long getPercentile(final double percentile) {
+		final long rank = (long) Math.ceil(count * percentile / 100.0);
+		long accumulated = 0;
+		for (int i = 0; i < BUCKETS_COUNT; i++) {
+			accumulated += buckets[i];
+			if ((accumulated >= rank) && (accumulated > 0)) {
+				return Math.min((1l << i) - 1, max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Returns a one line summary of the recorded values in microseconds.
+	 * 
+	 * @return a one line summary of the recorded values
+	 */
+	public synchronized String toString() {
+		if (count == 0) {
+			return name + ": no data";
+		}
+		return name + ": count=" + count + " min=" + min / 1000 + "us avg=" + sum / count / 1000 + "us p50<=" + getPercentile(50) / 1000 + "us p99<="
+		        + getPercentile(99) / 1000 + "us max=" + max / 1000 + "us";
+	}
+
+}
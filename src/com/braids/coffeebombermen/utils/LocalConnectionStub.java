@@ -0,0 +1,326 @@
+package com.braids.coffeebombermen.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-process connection stub: one end of a connection between a client and
+ * a server running in the same JVM (the client of the host joining its own
+ * game). Local connection stubs are created in pairs, each end is the peer of
+ * the other.<br>
+ * The messages are not encoded: the text messages are passed as they are, and
+ * the frames are copied into frame objects of the receiving end, which are
+ * reused after they have been received. The messages are passed through
+ * lock-free queues, a blocking receive parks the receiving thread until the
+ * peer sends something. The protocol is the same as on the other connections,
+ * but there is no network latency and no loopback I/O.
+ */
+public class LocalConnectionStub implements ConnectionStub {
+
+	/**
+	 * Estimated number of the queued bytes above which the droppable messages
+	 * (chat messages) are dropped.
+	 */
+	private static final int                            DROPPING_LIMIT   = 64 * 1024;
+
+	/** The other end of the connection. */
+	private final LocalConnectionStub                   peer;
+	/**
+	 * Queue of the received messages. Elements are Strings (text messages) and
+	 * IterationFrames.
+	 */
+	private final ConcurrentLinkedQueue<Object>         receivedMessages = new ConcurrentLinkedQueue<Object>();
+	/** Received frames already processed, which can be reused by the peer. */
+	private final ConcurrentLinkedQueue<IterationFrame> freeFrames       = new ConcurrentLinkedQueue<IterationFrame>();
+	/** Estimated number of the bytes of the received, unprocessed messages. */
+	private final AtomicInteger                         queuedBytesCount = new AtomicInteger();
+	/** The thread waiting for a message to arrive, null if there is no such. */
+	private volatile Thread                             waitingThread;
+	/** OPTIONAL signal to be raised when a new message arrives. */
+	private volatile WakeUpSignal                       messageSignal;
+	/** Tells whether this end has been closed. */
+	private volatile boolean                            closed;
+	/** Maximum of the estimated number of the queued bytes at the peer. */
+	private int                                         maxQueuedBytesCount;
+	/** Estimated number of the bytes sent. */
+	private long                                        sentBytesCount;
+	/** Number of the dropped droppable messages. */
+	private int                                         droppedMessagesCount;
+
+	/**
+	 * Creates a new pair of LocalConnectionStubs. This is one end of the
+	 * connection, getPeer() returns the other end.
+	 */
+	public LocalConnectionStub() {
+		peer = new LocalConnectionStub(this);
+	}
+
+	/**
+	 * Creates the other end of a pair of LocalConnectionStubs.
+	 * 
+	 * @param peer
+	 *            the end which creates this end
+	 */
+	private LocalConnectionStub(final LocalConnectionStub peer) {
+		this.peer = peer;
+	}
+
+	/**
+	 * Returns the other end of the connection.
+	 * 
+	 * @return the other end of the connection
+	 */
+	public LocalConnectionStub getPeer() {
+		return peer;
+	}
+
+	/**
+	 * Sets the signal to be raised when a new message arrives.
+	 * 
+	 * @param messageSignal
+	 *            signal to be raised when a new message arrives
+	 */
+	public void setMessageSignal(final WakeUpSignal messageSignal) {
+		this.messageSignal = messageSignal;
+	}
+
+	/**
+	 * Sends a message to the peer.
+	 * 
+	 * @param message
+	 *            message to be sent
+	 * @throws IOException
+	 *             if the connection has been closed
+	 */
+	public void sendMessage(final String message) throws IOException {
+		send(message, message.length() + 1);
+	}
+
+	/**
+	 * Sends a droppable message: if the peer has too many unprocessed
+	 * messages, the message is dropped.
+	 * 
+	 * @param message
+	 *            message to be sent
+	 * @throws IOException
+	 *             if the connection has been closed
+	 */
+	public void sendDroppableMessage(final String message) throws IOException {
+		if (peer.queuedBytesCount.get() > DROPPING_LIMIT) {
+			droppedMessagesCount++;
+			return;
+		}
+		sendMessage(message);
+	}
+
+	/**
+	 * Sends an iteration frame to the peer: copies it into a free frame of the
+	 * peer.
+	 * 
+	 * @param frame
+	 *            frame to be sent
+	 * @throws IOException
+	 *             if the connection has been closed
+	 */
+	public void sendFrame(final IterationFrame frame) throws IOException {
+		IterationFrame sentFrame = peer.freeFrames.poll();
+		if (sentFrame == null) {
+			sentFrame = new IterationFrame(frame.getMarker());
+		}
+		sentFrame.copyFrom(frame);
+		send(sentFrame, frame.getMaxEncodedLength());
+	}
+
+	/**
+	 * Passes a message to the peer, and wakes it up.
+	 * 
+	 * @param message
+	 *            the message (a String or an IterationFrame)
+	 * @param estimatedLength
+	 *            estimated length of the message if it was encoded
+	 * @throws IOException
+	 *             if the connection has been closed
+	 */
+	private void send(final Object message, final int estimatedLength) throws IOException {
+		if (closed || peer.closed) {
+			throw new IOException("Connection closed!");
+		}
+		final int queuedBytesCount = peer.queuedBytesCount.addAndGet(estimatedLength);
+		if (queuedBytesCount > maxQueuedBytesCount) {
+			maxQueuedBytesCount = queuedBytesCount;
+		}
+		sentBytesCount += estimatedLength;
+		peer.receivedMessages.add(message);
+		peer.messageArrived();
+	}
+
+	/**
+	 * Wakes up the thread waiting for a message and raises the message signal.
+	 */
+	private void messageArrived() {
+		final Thread thread = waitingThread;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+		final WakeUpSignal signal = messageSignal;
+		if (signal != null) {
+			signal.signal();
+		}
+	}
+
+	/**
+	 * Flushes the sent messages. Nothing to do, the messages are passed
+	 * immediately.
+	 */
+	public void flush() {}
+
+	/**
+	 * Checks whether new message is ready to be received.
+	 * 
+	 * @return true if new message is ready to be received; false otherwise
+	 */
+	public boolean hasNewMessage() {
+		return !receivedMessages.isEmpty();
+	}
+
+	/**
+	 * Tells whether the next message is an iteration frame. Blocks until the
+	 * next message arrives.
+	 * 
+	 * @return true if the next message is an iteration frame; false if it is
+	 *         a text message or the connection has ended
+	 */
+	public boolean isNextMessageFrame() {
+		return waitForMessage() instanceof IterationFrame;
+	}
+
+	/**
+	 * Receives and returns the next message. Blocks until it arrives.
+	 * 
+	 * @return the received message; null if the connection has ended
+	 * @throws IOException
+	 *             if the next message is an iteration frame
+	 */
+	public String receiveMessage() throws IOException {
+		final Object message = waitForMessage();
+		if (message == null) {
+			return null;
+		}
+		if (message instanceof IterationFrame) {
+			throw new IOException("Iteration frame received instead of a text message!");
+		}
+		receivedMessages.poll();
+		queuedBytesCount.addAndGet(-((String) message).length() - 1);
+		return (String) message;
+	}
+
+	/**
+	 * Receives the next message which must be an iteration frame. Blocks
+	 * until it arrives.
+	 * 
+	 * @param frame
+	 *            frame to copy the received frame into
+	 * @throws IOException
+	 *             if the connection has ended or the next message is a text
+	 *             message
+	 */
+	public void receiveFrame(final IterationFrame frame) throws IOException {
+		final Object message = waitForMessage();
+		if (message == null) {
+			throw new EOFException();
+		}
+		if (!(message instanceof IterationFrame)) {
+			throw new IOException("Text message received instead of an iteration frame!");
+		}
+		receivedMessages.poll();
+		final IterationFrame receivedFrame = (IterationFrame) message;
+		queuedBytesCount.addAndGet(-receivedFrame.getMaxEncodedLength());
+		frame.copyFrom(receivedFrame);
+		frame.setReceivedTime(System.nanoTime());
+		freeFrames.add(receivedFrame);
+	}
+
+	/**
+	 * Returns the next message without removing it. Blocks until it arrives
+	 * (by parking the thread, it is unparked by the sending peer).
+	 * 
+	 * @return the next message; null if the connection has ended
+	 */
+	private Object waitForMessage() {
+		Object message;
+		while ((message = receivedMessages.peek()) == null) {
+			if (closed || peer.closed) {
+				return null;
+			}
+			waitingThread = Thread.currentThread();
+			// Checked again after publishing the waiting thread, else the
+			// unpark of a message sent meanwhile could be missed
+			if (receivedMessages.isEmpty() && !closed && !peer.closed) {
+				LockSupport.park(this);
+			}
+			waitingThread = null;
+		}
+		return message;
+	}
+
+	/**
+	 * Tells whether the connection has ended: it has been closed, and all the
+	 * received messages have been processed.
+	 * 
+	 * @return true if the connection has ended; false otherwise
+	 */
+	public boolean isEndOfStream() {
+		return (closed || peer.closed) && receivedMessages.isEmpty();
+	}
+
+	/**
+	 * Returns the estimated number of the bytes sent but not yet processed by
+	 * the peer.
+	 * 
+	 * @return the estimated number of the queued bytes
+	 */
+	public int getQueuedBytesCount() {
+		return peer.queuedBytesCount.get();
+	}
+
+	/**
+	 * Returns the maximum of the estimated number of the queued bytes.
+	 * 
+	 * @return the maximum of the estimated number of the queued bytes
+	 */
+	public int getMaxQueuedBytesCount() {
+		return maxQueuedBytesCount;
+	}
+
+	/**
+	 * Returns the estimated number of the bytes sent.
+	 * 
+	 * @return the estimated number of the bytes sent
+	 */
+	public long getSentBytesCount() {
+		return sentBytesCount;
+	}
+
+	/**
+	 * Returns the number of the dropped droppable messages.
+	 * 
+	 * @return the number of the dropped droppable messages
+	 */
+	public int getDroppedMessagesCount() {
+		return droppedMessagesCount;
+	}
+
+	/**
+	 * Closes the connection. The peer receives the messages sent before, and
+	 * then the end of the connection.
+	 */
+	public void close() {
+		closed = true;
+		messageArrived();
+		peer.messageArrived();
+	}
+
+}
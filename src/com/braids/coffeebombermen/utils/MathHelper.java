@@ -1,13 +1,11 @@
 package com.braids.coffeebombermen.utils;
 
-import java.util.Random;
-
 import com.braids.coffeebombermen.client.gamecore.Directions;
 
 public class MathHelper {
 
-	private static final float HALF = 0.5f;
-	private static Random      random;
+	private static final float      HALF = 0.5f;
+	private static RestorableRandom random;
 
 	public static int nextInt(int max) {
 		return random.nextInt(max);
@@ -43,10 +41,14 @@ public class MathHelper {
 		return Directions.get(random.nextInt(Directions.values().length));
 	}
 
-	public static void setRandom(Random random) {
+	public static void setRandom(RestorableRandom random) {
 		MathHelper.random = random;
 	}
 
+	public static RestorableRandom getRandom() {
+		return random;
+	}
+
 	public static int getWeightedRandom(int[] arWeights) {
 		int allWeight = 0;
 		for (int w : arWeights) {
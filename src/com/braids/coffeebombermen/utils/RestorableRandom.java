@@ -0,0 +1,68 @@
+package com.braids.coffeebombermen.utils;
+
+import java.util.Random;
+
+/**
+ * A random generator whose state can be saved and restored, so it can be part
+ * of a saved game state.<br>
+ * Implements the same linear congruential generator as java.util.Random, so
+ * it produces the same numbers for the same seed. The state of
+ * nextGaussian() is not part of the saved state (the game doesn't use it).
+ */
+public class RestorableRandom extends Random {
+
+	private static final long serialVersionUID = 1l;
+
+	/** Multiplier of the generator (same as of java.util.Random). */
+	private static final long MULTIPLIER       = 0x5DEECE66Dl;
+	/** Addend of the generator (same as of java.util.Random). */
+	private static final long ADDEND           = 0xBl;
+	/** Mask of the 48 bits of the state. */
+	private static final long MASK             = (1l << 48) - 1;
+
+	/**
+	 * The state of the generator. Not initialized here: the constructor of
+	 * Random sets it through setSeed().
+	 */
+	private long              state;
+
+	/**
+	 * Creates a new RestorableRandom.
+	 * 
+	 * @param seed
+	 *            the initial seed
+	 */
+	public RestorableRandom(final long seed) {
+		super(seed);
+	}
+
+	public synchronized void setSeed(final long seed) {
+		super.setSeed(seed);
+		state = (seed ^ MULTIPLIER) & MASK;
+	}
+
+	protected int next(final int bits) {
+		state = (state * MULTIPLIER + ADDEND) & MASK;
+		return (int) (state >>> (48 - bits));
+	}
+
+	/**
+	 * Returns the state of the generator.
+	 * 
+	 * @return the state of the generator
+	 */
+	public long getState() {
+		return state;
+	}
+
+	/**
+	 * Restores a state of the generator returned by getState().
+	 * 
+	 * @param state
+	 *            the state to be restored
+	 */
+	public void setState(final long state) {
+		this.state = state & MASK;
+	}
+
+}
@@ -0,0 +1,638 @@
+package com.braids.coffeebombermen.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * Connection stub based on a non-blocking socket channel multiplexed by a
+ * ConnectionSelector. Used by the server to communicate with the clients.<br>
+ * Reading is done by the selector thread which stores the complete messages
+ * (text messages and decoded iteration frames) in a queue, so checking and
+ * receiving messages never touches the socket. Sending writes the socket
+ * directly if it can take the whole message, else the rest is written by the
+ * selector thread when the socket becomes writable.
+ */
+public class SelectorConnectionStub implements ConnectionStub {
+
+	/** Charset of the messages. */
+	private static final Charset             CHARSET          = Charset.forName("utf-8");
+	/** Initial size of the input buffer. */
+	private static final int                 READ_BUFFER_SIZE = 8192;
+	/**
+	 * Number of the queued output bytes above which the droppable messages
+	 * (chat messages) are dropped.
+	 */
+	private static final int                 DROPPING_LIMIT   = 64 * 1024;
+	/**
+	 * Number of the queued output bytes above which the connection is closed:
+	 * the other side doesn't read what we send.
+	 */
+	private static final int                 OVERFLOW_LIMIT   = 1024 * 1024;
+	/**
+	 * Maximum length of a received text message. A longer message (or one
+	 * without end) closes the connection, like the output overflow.
+	 */
+	static final int                         MAX_TEXT_LENGTH  = OVERFLOW_LIMIT;
+	/** Returned by the message processors if the protocol is violated. */
+	private static final int                 VIOLATION        = -2;
+
+	/** Reference to the connection selector multiplexing our channel. */
+	private final ConnectionSelector         connectionSelector;
+	/** Socket channel representing the communication end point. */
+	private final SocketChannel              socketChannel;
+	/** Selection key of our channel. */
+	private volatile SelectionKey            selectionKey;
+	/**
+	 * OPTIONAL signal to be raised when a new message arrives, overrides the
+	 * message signal of the connection selector.
+	 */
+	private volatile WakeUpSignal            messageSignal;
+
+	/** Buffer of the read, not yet processed bytes. */
+	private byte[]                           inputBuffer      = new byte[READ_BUFFER_SIZE];
+	/** Byte buffer wrapping the input buffer to read into. */
+	private ByteBuffer                       readBuffer       = ByteBuffer.wrap(inputBuffer);
+	/**
+	 * Queue of the received messages. Elements are Strings (text messages) and
+	 * IterationFrames.
+	 */
+	private final LinkedList<Object>         receivedMessages = new LinkedList<Object>();
+	/** Received frames already processed, which can be reused. */
+	private final LinkedList<IterationFrame> freeFrames       = new LinkedList<IterationFrame>();
+	/** Tells whether the end of the stream has been reached. */
+	private boolean                          endOfStream      = false;
+	/**
+	 * Maximum time of waiting for a message in ms, 0 means waiting without
+	 * limit.
+	 */
+	private volatile long                    receiveTimeout;
+
+	/**
+	 * Tells whether the sent messages are written at once. If false, they are
+	 * coalesced until flush() is called.
+	 */
+	private boolean                          autoFlush        = true;
+	/** Reusable buffer of a frame being sent. */
+	private byte[]                           frameBuffer      = new byte[256];
+	/** Buffer of the sent, not yet flushed bytes. */
+	private byte[]                           outputBuffer     = new byte[1024];
+	/** Number of the sent, not yet flushed bytes in the output buffer. */
+	private int                              outputLength;
+	/** Queue of the buffers which couldn't be written to the socket yet. */
+	private final LinkedList<ByteBuffer>     pendingOutput    = new LinkedList<ByteBuffer>();
+	/** Number of the bytes in the pending output buffers. */
+	private int                              pendingBytesCount;
+	/** Maximum number of the queued (not yet written) output bytes. */
+	private int                              maxQueuedBytesCount;
+	/** Number of the bytes written to the socket. */
+	private long                             sentBytesCount;
+	/** Number of the dropped messages. */
+	private int                              droppedMessagesCount;
+
+	/**
+	 * Creates a new SelectorConnectionStub.
+	 * 
+	 * @param connectionSelector
+	 *            reference to the connection selector multiplexing the channel
+	 * @param socketChannel
+	 *            non-blocking socket channel of the connection
+	 */
+	SelectorConnectionStub(final ConnectionSelector connectionSelector, final SocketChannel socketChannel) {
+		this.connectionSelector = connectionSelector;
+		this.socketChannel = socketChannel;
+	}
+
+	/**
+	 * Sets the selection key of our channel.
+	 * 
+	 * @param selectionKey
+	 *            selection key of our channel
+	 */
+	void setSelectionKey(final SelectionKey selectionKey) {
+		this.selectionKey = selectionKey;
+	}
+
+	/**
+	 * Sets the signal to be raised when a new message arrives. Used when the
+	 * connection selector is shared, and the messages of this connection are
+	 * processed by someone else than the messages of the other connections.
+	 * 
+	 * @param messageSignal
+	 *            signal to be raised when a new message arrives; null means the
+	 *            message signal of the connection selector
+	 */
+	public void setMessageSignal(final WakeUpSignal messageSignal) {
+		this.messageSignal = messageSignal;
+	}
+
+	/**
+	 * Returns the signal to be raised when a new message arrives.
+	 * 
+	 * @return the signal to be raised when a new message arrives; null if it
+	 *         is the message signal of the connection selector
+	 */
+	WakeUpSignal getMessageSignal() {
+		return messageSignal;
+	}
+
+	/**
+	 * Reads the available data from the channel and queues the completed
+	 * messages. Called by the selector thread.
+	 * 
+	 * @return true if at least one message has been completed (or the end of
+	 *         stream has been reached); false otherwise
+	 */
+	boolean readAvailableData() {
+		if (!readBuffer.hasRemaining()) {
+			// A message longer than our buffer
+			inputBuffer = Arrays.copyOf(inputBuffer, inputBuffer.length * 2);
+			final int position = readBuffer.position();
+			readBuffer = ByteBuffer.wrap(inputBuffer);
+			readBuffer.position(position);
+		}
+
+		int readBytes;
+		try {
+			readBytes = socketChannel.read(readBuffer);
+		} catch (final IOException ie) {
+			readBytes = -1;
+		}
+
+		if (readBytes < 0) {
+			selectionKey.cancel();
+			synchronized (receivedMessages) {
+				endOfStream = true;
+				receivedMessages.notifyAll();
+			}
+			return true;
+		}
+
+		final int inputLength = readBuffer.position();
+		int position = 0;
+		boolean messageCompleted = false;
+		while (position < inputLength) {
+			final int nextPosition = IterationFrame.isMarker(inputBuffer[position]) ? processFrame(position, inputLength) : processTextMessage(position,
+			        inputLength);
+			if (nextPosition == VIOLATION) {
+				// Too long or malformed message, we don't buffer it
+				selectionKey.cancel();
+				close();
+				return true;
+			}
+			if (nextPosition < 0) {
+				break; // The message is not complete yet
+			}
+			position = nextPosition;
+			messageCompleted = true;
+		}
+
+		// Moving the incomplete message to the beginning of the buffer
+		System.arraycopy(inputBuffer, position, inputBuffer, 0, inputLength - position);
+		readBuffer.position(inputLength - position);
+
+		return messageCompleted;
+	}
+
+	/**
+	 * Processes a text message in the input buffer if it is complete.
+	 * 
+	 * @param start
+	 *            start position of the message
+	 * @param inputLength
+	 *            length of the valid data in the input buffer
+	 * @return the position after the message; -1 if the message is not
+	 *         complete; VIOLATION if the message is too long
+	 */
+	private int processTextMessage(final int start, final int inputLength) {
+		for (int i = start; i < inputLength; i++) {
+			if (inputBuffer[i] == '\n') {
+				// Clients may send "\r\n" line terminators
+				final int end = (i > start) && (inputBuffer[i - 1] == '\r') ? i - 1 : i;
+				if (end - start > MAX_TEXT_LENGTH) {
+					return VIOLATION;
+				}
+				queueMessage(new String(inputBuffer, start, end - start, CHARSET));
+				return i + 1;
+			}
+		}
+		return inputLength - start > MAX_TEXT_LENGTH ? VIOLATION : -1;
+	}
+
+	/**
+	 * Processes an iteration frame in the input buffer if it is complete.
+	 * 
+	 * @param start
+	 *            start position of the frame
+	 * @param inputLength
+	 *            length of the valid data in the input buffer
+	 * @return the position after the frame; -1 if the frame is not complete;
+	 *         VIOLATION if the frame is too long or malformed
+	 */
+	private int processFrame(final int start, final int inputLength) {
+		int position = start + 1;
+		int length = 0;
+		int shift = 0;
+		byte b;
+		do {
+			if (position == inputLength) {
+				return -1;
+			}
+			b = inputBuffer[position++];
+			length |= (b & 0x7f) << shift;
+			shift += 7;
+			if ((length > IterationFrame.MAX_ENCODED_LENGTH) || ((b < 0) && (shift > 21))) {
+				return VIOLATION;
+			}
+		} while (b < 0);
+
+		if (position + length > inputLength) {
+			return -1;
+		}
+
+		IterationFrame frame;
+		synchronized (receivedMessages) {
+			frame = freeFrames.isEmpty() ? null : freeFrames.removeFirst();
+		}
+		if (frame == null) {
+			frame = new IterationFrame(inputBuffer[start]);
+		}
+		try {
+			frame.decode(inputBuffer[start], inputBuffer, position, length);
+		} catch (final IllegalArgumentException ie) {
+			return VIOLATION;
+		}
+		frame.setReceivedTime(System.nanoTime());
+		queueMessage(frame);
+
+		return position + length;
+	}
+
+	/**
+	 * Queues a received message.
+	 * 
+	 * @param message
+	 *            received message (String or IterationFrame)
+	 */
+	private void queueMessage(final Object message) {
+		synchronized (receivedMessages) {
+			receivedMessages.add(message);
+			receivedMessages.notifyAll();
+		}
+	}
+
+	/**
+	 * Writes the pending output data to the channel. Called by the selector
+	 * thread when the channel is writable.
+	 */
+	void writePendingData() {
+		synchronized (pendingOutput) {
+			try {
+				while (!pendingOutput.isEmpty()) {
+					final ByteBuffer buffer = pendingOutput.getFirst();
+					final int writtenBytesCount = socketChannel.write(buffer);
+					pendingBytesCount -= writtenBytesCount;
+					sentBytesCount += writtenBytesCount;
+					if (buffer.hasRemaining()) {
+						return; // Socket buffer is full, we will be called again
+					}
+					pendingOutput.removeFirst();
+				}
+				selectionKey.interestOps(SelectionKey.OP_READ);
+			} catch (final IOException ie) {
+				pendingOutput.clear();
+				pendingBytesCount = 0;
+				close();
+			}
+		}
+	}
+
+	/**
+	 * Sets whether the sent messages are written at once. If not, the messages
+	 * are coalesced, and written by one write when flush() is called (for
+	 * example all the messages of an iteration).
+	 * 
+	 * @param autoFlush
+	 *            tells whether the sent messages are written at once
+	 */
+	public void setAutoFlush(final boolean autoFlush) {
+		synchronized (pendingOutput) {
+			this.autoFlush = autoFlush;
+		}
+	}
+
+	/**
+	 * Sends a message through this connection.
+	 * 
+	 * @param message
+	 *            message to be sent
+	 * @throws IOException
+	 *             if I/O error occurs during sending the message
+	 */
+	public void sendMessage(final String message) throws IOException {
+		final byte[] bytes = (message + '\n').getBytes(CHARSET);
+		synchronized (pendingOutput) {
+			ensureOutputCapacity(bytes.length);
+			System.arraycopy(bytes, 0, outputBuffer, outputLength, bytes.length);
+			outputLength += bytes.length;
+			if (autoFlush) {
+				flush();
+			}
+		}
+	}
+
+	/**
+	 * Sends a message which can be dropped: it is dropped if the other side
+	 * is behind reading our messages.
+	 * 
+	 * @param message
+	 *            message to be sent
+	 * @throws IOException
+	 *             if I/O error occurs during sending the message
+	 */
+	public void sendDroppableMessage(final String message) throws IOException {
+		synchronized (pendingOutput) {
+			if (pendingBytesCount + outputLength > DROPPING_LIMIT) {
+				droppedMessagesCount++;
+				return;
+			}
+			sendMessage(message);
+		}
+	}
+
+	/**
+	 * Sends an iteration frame through this connection.
+	 * 
+	 * @param frame
+	 *            frame to be sent
+	 * @throws IOException
+	 *             if I/O error occurs during sending the frame
+	 */
+	public void sendFrame(final IterationFrame frame) throws IOException {
+		synchronized (pendingOutput) {
+			final int maxLength = frame.getMaxEncodedLength();
+			if (frameBuffer.length < maxLength) {
+				frameBuffer = new byte[maxLength];
+			}
+			final int frameLength = frame.encode(frameBuffer);
+			ensureOutputCapacity(frameLength);
+			System.arraycopy(frameBuffer, 0, outputBuffer, outputLength, frameLength);
+			outputLength += frameLength;
+			if (autoFlush) {
+				flush();
+			}
+		}
+	}
+
+	/**
+	 * Ensures that the output buffer can take more bytes. Closes the
+	 * connection if too many bytes are queued. Must be called holding the lock
+	 * of pendingOutput.
+	 * 
+	 * @param length
+	 *            number of the bytes to be added to the output buffer
+	 * @throws IOException
+	 *             if too many bytes are queued
+	 */
+	private void ensureOutputCapacity(final int length) throws IOException {
+		if (pendingBytesCount + outputLength + length > OVERFLOW_LIMIT) {
+			close();
+			throw new IOException("Output queue overflow, the connection has been closed!");
+		}
+		if (outputBuffer.length < outputLength + length) {
+			outputBuffer = Arrays.copyOf(outputBuffer, Math.max(outputBuffer.length * 2, outputLength + length));
+		}
+	}
+
+	/**
+	 * Writes the sent, not yet flushed bytes by one write if nothing is
+	 * pending, and queues the rest which can't be written now.
+	 * 
+	 * @throws IOException
+	 *             if I/O error occurs during writing
+	 */
+	public void flush() throws IOException {
+		synchronized (pendingOutput) {
+			if (outputLength == 0) {
+				return;
+			}
+			final ByteBuffer buffer = ByteBuffer.wrap(outputBuffer, 0, outputLength);
+			outputLength = 0;
+			if (pendingOutput.isEmpty()) {
+				sentBytesCount += socketChannel.write(buffer);
+				if (!buffer.hasRemaining()) {
+					return;
+				}
+				connectionSelector.invokeLater(new Runnable() {
+
+					public void run() {
+						if (selectionKey.isValid()) {
+							selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+						}
+					}
+				});
+			}
+			// The output buffer is reused, the rest must be copied
+			final ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+			copy.put(buffer);
+			copy.flip();
+			pendingOutput.add(copy);
+			pendingBytesCount += copy.remaining();
+			maxQueuedBytesCount = Math.max(maxQueuedBytesCount, pendingBytesCount);
+		}
+	}
+
+	/**
+	 * Returns the number of the queued bytes: sent but not yet written to the
+	 * socket.
+	 * 
+	 * @return the number of the queued bytes
+	 */
+	public int getQueuedBytesCount() {
+		synchronized (pendingOutput) {
+			return pendingBytesCount + outputLength;
+		}
+	}
+
+	/**
+	 * Returns the maximum number of the queued bytes (not counting the bytes
+	 * waiting for a flush).
+	 * 
+	 * @return the maximum number of the queued bytes
+	 */
+	public int getMaxQueuedBytesCount() {
+		synchronized (pendingOutput) {
+			return maxQueuedBytesCount;
+		}
+	}
+
+	/**
+	 * Returns the number of the bytes written to the socket.
+	 * 
+	 * @return the number of the bytes written to the socket
+	 */
+	public long getSentBytesCount() {
+		synchronized (pendingOutput) {
+			return sentBytesCount;
+		}
+	}
+
+	/**
+	 * Returns the number of the dropped messages.
+	 * 
+	 * @return the number of the dropped messages
+	 */
+	public int getDroppedMessagesCount() {
+		synchronized (pendingOutput) {
+			return droppedMessagesCount;
+		}
+	}
+
+	/**
+	 * Sets the maximum time of waiting for a message. Receiving a message
+	 * fails with an IOException if no message arrives in time.
+	 * 
+	 * @param receiveTimeout
+	 *            maximum time of waiting for a message in ms, 0 means waiting
+	 *            without limit
+	 */
+	public void setReceiveTimeout(final long receiveTimeout) {
+		this.receiveTimeout = receiveTimeout;
+	}
+
+	/**
+	 * Checks whether new message is ready to be read/received.
+	 * 
+	 * @return true if new message is ready to be read/received; false otherwise
+	 */
+	public boolean hasNewMessage() {
+		synchronized (receivedMessages) {
+			return !receivedMessages.isEmpty();
+		}
+	}
+
+	/**
+	 * Waits for the next message and returns it without removing it from the
+	 * queue. Must be called holding the lock of receivedMessages.
+	 * 
+	 * @return the next message; null if the end of the stream has been
+	 *         reached
+	 * @throws IOException
+	 *             if the waiting is interrupted or timed out
+	 */
+	private Object waitForNextMessage() throws IOException {
+		try {
+			final long timeout = receiveTimeout;
+			final long deadline = System.nanoTime() + timeout * 1000000l;
+			while (receivedMessages.isEmpty() && !endOfStream) {
+				if (timeout == 0l) {
+					receivedMessages.wait();
+				} else {
+					final long remainingTime = deadline - System.nanoTime();
+					if (remainingTime <= 0l) {
+						throw new IOException("Timed out while receiving message!");
+					}
+					receivedMessages.wait(remainingTime / 1000000l + 1);
+				}
+			}
+		} catch (final InterruptedException ie) {
+			throw new IOException("Interrupted while receiving message!");
+		}
+		return receivedMessages.isEmpty() ? null : receivedMessages.getFirst();
+	}
+
+	/**
+	 * Tells whether the next message is an iteration frame. Blocks until the
+	 * next message arrives.
+	 * 
+	 * @return true if the next message is an iteration frame; false if it is
+	 *         a text message
+	 * @throws IOException
+	 *             if the waiting is interrupted
+	 */
+	public boolean isNextMessageFrame() throws IOException {
+		synchronized (receivedMessages) {
+			return waitForNextMessage() instanceof IterationFrame;
+		}
+	}
+
+	/**
+	 * Receives and returns the next message from this connection. Blocks until
+	 * a message is available.
+	 * 
+	 * @return the received message; null if the end of the stream has been
+	 *         reached
+	 * @throws IOException
+	 *             if the waiting is interrupted or the next message is an
+	 *             iteration frame
+	 */
+	public String receiveMessage() throws IOException {
+		synchronized (receivedMessages) {
+			final Object message = waitForNextMessage();
+			if (message instanceof IterationFrame) {
+				throw new IOException("Iteration frame received instead of a text message!");
+			}
+			if (message != null) {
+				receivedMessages.removeFirst();
+			}
+			return (String) message;
+		}
+	}
+
+	/**
+	 * Receives the next message which must be an iteration frame. Blocks until
+	 * a message is available.
+	 * 
+	 * @param frame
+	 *            frame to copy the received frame into
+	 * @throws IOException
+	 *             if the waiting is interrupted, the end of the stream has been
+	 *             reached or the next message is a text message
+	 */
+	public void receiveFrame(final IterationFrame frame) throws IOException {
+		synchronized (receivedMessages) {
+			final Object message = waitForNextMessage();
+			if (message == null) {
+				throw new IOException("End of stream!");
+			}
+			if (!(message instanceof IterationFrame)) {
+				throw new IOException("Text message received instead of an iteration frame!");
+			}
+			receivedMessages.removeFirst();
+			frame.copyFrom((IterationFrame) message);
+			freeFrames.add((IterationFrame) message);
+		}
+	}
+
+	/**
+	 * Tells whether the connection has ended: the end of the stream has been
+	 * reached and all the received messages have been processed.
+	 * 
+	 * @return true if the connection has ended; false otherwise
+	 */
+	public boolean isEndOfStream() {
+		synchronized (receivedMessages) {
+			return endOfStream && receivedMessages.isEmpty();
+		}
+	}
+
+	/**
+	 * Closes this connection stub.
+	 */
+	public void close() {
+		try {
+			socketChannel.close();
+		} catch (final IOException ie) {
+			ie.printStackTrace();
+		}
+		synchronized (receivedMessages) {
+			endOfStream = true;
+			receivedMessages.notifyAll();
+		}
+	}
+
+}
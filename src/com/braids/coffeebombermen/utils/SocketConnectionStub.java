@@ -0,0 +1,296 @@
+package com.braids.coffeebombermen.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Connection stub based on a blocking socket. Used by the clients to
+ * communicate with the server.
+ */
+public class SocketConnectionStub implements ConnectionStub {
+
+	/** Charset of the messages. */
+	private static final Charset       CHARSET      = Charset.forName("utf-8");
+
+	/** Socket representing the communication end point of the connection. */
+	private final Socket               socket;
+	/** Buffered input stream used to read/receive messages. */
+	private final BufferedInputStream  input;
+	/** Buffered output stream used to write/send messages. */
+	private final BufferedOutputStream output;
+	/** Reusable buffer of a message being received. */
+	private byte[]                     inputBuffer  = new byte[256];
+	/** Reusable buffer of a frame being sent. */
+	private byte[]                     outputBuffer = new byte[256];
+	/** Tells whether the end of the stream has been reached. */
+	private volatile boolean           endOfStream;
+	/** Number of the bytes written to the socket. */
+	private volatile long              sentBytesCount;
+
+	/**
+	 * Creates a new SocketConnectionStub.
+	 * 
+	 * @param socket
+	 *            socket representing the communication end point of the
+	 *            connection
+	 * @throws IOException
+	 *             if I/O error occurs during the connection initialization
+	 */
+	public SocketConnectionStub(final Socket socket) throws IOException {
+		this.socket = socket;
+		// The messages are small and must be delivered at once
+		this.socket.setTcpNoDelay(true);
+		input = new BufferedInputStream(this.socket.getInputStream());
+		output = new BufferedOutputStream(this.socket.getOutputStream());
+	}
+
+	/**
+	 * Sends a message through this connection.
+	 * 
+	 * @param message
+	 *            message to be sent
+	 * @throws IOException
+	 *             if I/O error occurs during sending the message
+	 */
+	public synchronized void sendMessage(final String message) throws IOException {
+		final byte[] bytes = message.getBytes(CHARSET);
+		output.write(bytes);
+		output.write('\n');
+		output.flush();
+		sentBytesCount += bytes.length + 1;
+	}
+
+	/**
+	 * Sends a message which can be dropped. The messages are written at once
+	 * by blocking writes, so it is never dropped.
+	 * 
+	 * @param message
+	 *            message to be sent
+	 * @throws IOException
+	 *             if I/O error occurs during sending the message
+	 */
+	public void sendDroppableMessage(final String message) throws IOException {
+		sendMessage(message);
+	}
+
+	/**
+	 * Sends an iteration frame through this connection.
+	 * 
+	 * @param frame
+	 *            frame to be sent
+	 * @throws IOException
+	 *             if I/O error occurs during sending the frame
+	 */
+	public synchronized void sendFrame(final IterationFrame frame) throws IOException {
+		final int maxLength = frame.getMaxEncodedLength();
+		if (outputBuffer.length < maxLength) {
+			outputBuffer = new byte[maxLength];
+		}
+		final int length = frame.encode(outputBuffer);
+		output.write(outputBuffer, 0, length);
+		output.flush();
+		sentBytesCount += length;
+	}
+
+	/**
+	 * Writes the sent messages which are not written yet. Nothing to do, the
+	 * messages are written at once.
+	 */
+	public void flush() {}
+
+	/**
+	 * Checks whether new message is ready to be read/received.
+	 * 
+	 * @return true if new message is ready to be read/received; false otherwise
+	 */
+	public boolean hasNewMessage() {
+		try {
+			return input.available() > 0; // Well... this would return true if
+			// we don't have a whole message just a few bytes... but this
+			// implementation is the simpliest
+		} catch (final IOException ie) {
+			return false;
+		}
+	}
+
+	/**
+	 * Tells whether the next message is an iteration frame. Blocks until the
+	 * next message starts to arrive.
+	 * 
+	 * @return true if the next message is an iteration frame; false if it is
+	 *         a text message
+	 * @throws IOException
+	 *             if I/O error occurs during receiving
+	 */
+	public boolean isNextMessageFrame() throws IOException {
+		input.mark(1);
+		final int firstByte = input.read();
+		input.reset();
+		return IterationFrame.isMarker(firstByte);
+	}
+
+	/**
+	 * Receives and returns the next message from this connection.
+	 * 
+	 * @return the received message; null if the end of the stream has been
+	 *         reached
+	 * @throws IOException
+	 *             if I/O error occurs during receiving the message or the next
+	 *             message is an iteration frame
+	 */
+	public String receiveMessage() throws IOException {
+		int length = 0;
+		int b = input.read();
+		if (b < 0) {
+			endOfStream = true;
+			return null;
+		}
+		if (IterationFrame.isMarker(b)) {
+			throw new IOException("Iteration frame received instead of a text message!");
+		}
+		while ((b >= 0) && (b != '\n')) {
+			if (length > SelectorConnectionStub.MAX_TEXT_LENGTH) {
+				throw new IOException("Too long text message received!");
+			}
+			if (length == inputBuffer.length) {
+				inputBuffer = Arrays.copyOf(inputBuffer, length * 2);
+			}
+			inputBuffer[length++] = (byte) b;
+			b = input.read();
+		}
+		if ((length > 0) && (inputBuffer[length - 1] == '\r')) {
+			length--;
+		}
+		return new String(inputBuffer, 0, length, CHARSET);
+	}
+
+	/**
+	 * Receives the next message which must be an iteration frame.
+	 * 
+	 * @param frame
+	 *            frame to decode the received frame into
+	 * @throws IOException
+	 *             if I/O error occurs during receiving the frame or the next
+	 *             message is a text message
+	 */
+	public void receiveFrame(final IterationFrame frame) throws IOException {
+		final int marker = input.read();
+		if (marker < 0) {
+			throw new EOFException();
+		}
+		if (!IterationFrame.isMarker(marker)) {
+			throw new IOException("Text message received instead of an iteration frame!");
+		}
+		int length = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = readByte();
+			length |= (b & 0x7f) << shift;
+			shift += 7;
+			if ((length > IterationFrame.MAX_ENCODED_LENGTH) || (((b & 0x80) != 0) && (shift > 21))) {
+				throw new IOException("Too long iteration frame received!");
+			}
+		} while ((b & 0x80) != 0);
+
+		if (inputBuffer.length < length) {
+			inputBuffer = new byte[length];
+		}
+		for (int position = 0; position < length;) {
+			final int readBytes = input.read(inputBuffer, position, length - position);
+			if (readBytes < 0) {
+				throw new EOFException();
+			}
+			position += readBytes;
+		}
+		try {
+			frame.decode((byte) marker, inputBuffer, 0, length);
+		} catch (final IllegalArgumentException ie) {
+			throw new IOException(ie.getMessage());
+		}
+		frame.setReceivedTime(System.nanoTime());
+	}
+
+	/**
+	 * Reads a byte from the input, and throws EOFException if the end of the
+	 * stream has been reached.
+	 * 
+	 * @return the read byte
+	 * @throws IOException
+	 *             if I/O error occurs or the end of the stream has been reached
+	 */
+	private int readByte() throws IOException {
+		final int b = input.read();
+		if (b < 0) {
+			endOfStream = true;
+			throw new EOFException();
+		}
+		return b;
+	}
+
+	/**
+	 * Tells whether the connection has ended. The end of the stream is only
+	 * noticed by receiving, because the input is read by blocking reads.
+	 * 
+	 * @return true if the connection has ended; false otherwise
+	 */
+	public boolean isEndOfStream() {
+		return endOfStream;
+	}
+
+	/**
+	 * Returns the number of the queued bytes. The messages are written at once,
+	 * nothing is queued.
+	 * 
+	 * @return 0
+	 */
+	public int getQueuedBytesCount() {
+		return 0;
+	}
+
+	/**
+	 * Returns the maximum number of the queued bytes. The messages are written
+	 * at once, nothing is queued.
+	 * 
+	 * @return 0
+	 */
+	public int getMaxQueuedBytesCount() {
+		return 0;
+	}
+
+	/**
+	 * Returns the number of the bytes written to the socket.
+	 * 
+	 * @return the number of the bytes written to the socket
+	 */
+	public long getSentBytesCount() {
+		return sentBytesCount;
+	}
+
+	/**
+	 * Returns the number of the dropped messages. Messages are never dropped.
+	 * 
+	 * @return 0
+	 */
+	public int getDroppedMessagesCount() {
+		return 0;
+	}
+
+	/**
+	 * Closes this connection stub.
+	 */
+	public void close() {
+		endOfStream = true;
+		try {
+			socket.close();
+		} catch (final IOException ie) {
+			ie.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+package com.braids.coffeebombermen.utils;
+
+/**
+ * The deadlines of the ticks of a confirmable timer. The ticks are due at
+ * absolute times one period apart (in ns), so the time the timed object
+ * spends between its ticks is not added to the periods, and the tick rate
+ * doesn't drift below the frequency.<br>
+ * If the timed object gets ready for the next tick after its deadline, the
+ * tick is due immediately, and the following ticks keep their deadlines (the
+ * timer catches up). If it gets ready more than MAX_CATCH_UP_PERIODS periods
+ * late (for example at the start of a game), the deadlines restart one
+ * period later.<br>
+ * The intervals between the ticks and the lateness of the ticks to their
+ * deadlines (the jitter) are recorded into histograms.
+ */
+public class TickDeadlines {
+
+	/** Maximum number of periods the timer catches up. */
+	private static final int       MAX_CATCH_UP_PERIODS = 2;
+
+	/** Period time of the ticks in ns. */
+	private volatile long          periodTime;
+	/** Deadline of the last tick (System.nanoTime()). */
+	private long                   lastDeadline;
+	/** The time of the last tick (System.nanoTime()). */
+	private long                   lastTickTime;
+	/** Deadline of the next tick (System.nanoTime()). */
+	private long                   nextDeadline;
+	/** Tells whether the deadlines (re)start with the next tick. */
+	private boolean                restarting           = true;
+	/** Histogram of the intervals between the ticks. */
+	private final LatencyHistogram intervalHistogram    = new LatencyHistogram("Tick interval");
+	/** Histogram of the lateness of the ticks to their deadlines. */
+	private final LatencyHistogram jitterHistogram      = new LatencyHistogram("Tick jitter");
+
+	/**
+	 * Creates a new TickDeadlines.
+	 * 
+	 * @param frequency
+	 *            the desirabled tick frequency
+	 */
+	public TickDeadlines(final int frequency) {
+		setFrequency(frequency);
+	}
+
+	/**
+	 * Sets the desireabled tick frequency. Effective from the next tick.
+	 * 
+	 * @param frequency
+	 *            the desirabled tick frequency
+	 */
+	public void setFrequency(final int frequency) {
+		periodTime = 1000000000l / frequency;
+	}
+
+	/**
+	 * Schedules the next tick: called when the timed object is ready for it.
+	 * 
+	 * @param now
+	 *            the current time (System.nanoTime())
+	 * @return the deadline of the next tick (System.nanoTime()), may be in the
+	 *         past
+	 */
+	public synchronized long scheduleNext(final long now) {
+		final long periodTime = this.periodTime;
+		nextDeadline = lastDeadline + periodTime;
+		if (restarting || (now - nextDeadline > MAX_CATCH_UP_PERIODS * periodTime)) {
+			restarting = true;
+			nextDeadline = now + periodTime;
+		}
+		return nextDeadline;
+	}
+
+	/**
+	 * Records a tick of the scheduled deadline.
+	 * 
+	 * @param now
+	 *            the time of the tick (System.nanoTime())
+	 */
+	public synchronized void ticked(final long now) {
+		if (!restarting) {
+			intervalHistogram.record(now - lastTickTime);
+		}
+		jitterHistogram.record(Math.max(0l, now - nextDeadline));
+		restarting = false;
+		lastDeadline = nextDeadline;
+		lastTickTime = now;
+	}
+
+	/**
+	 * Clears the histograms, and restarts the deadlines with the next tick.
+	 */
+	public synchronized void reset() {
+		restarting = true;
+		intervalHistogram.reset();
+		jitterHistogram.reset();
+	}
+
+	/**
+	 * Returns a one line summary of the tick intervals and jitters.
+	 * 
+	 * @return a one line summary of the tick intervals and jitters
+	 */
+	public String toString() {
+		return intervalHistogram + ", " + jitterHistogram;
+	}
+
+}
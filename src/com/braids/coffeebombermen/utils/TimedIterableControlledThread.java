@@ -1,16 +1,15 @@
 package com.braids.coffeebombermen.utils;
 
 /**
- * This class is a controlled thread which has iterations timed by a controlled
- * timer.
+ * This class is a controlled thread which has iterations timed by a deadline
+ * timer, or by a timer of an iteration scheduler.
  */
-public class TimedIterableControlledThread extends ControlledThread implements Timeable {
+public abstract class TimedIterableControlledThread extends ControlledThread implements Timeable {
 
 	/**
-	 * A controlled timer which will time the iterations of this controlled
-	 * thread.
+	 * A timer which will time the iterations of this controlled thread.
 	 */
-	protected final ControlledTimer iterationTimer;
+	protected final IterationTimer  iterationTimer;
 	/** Tells whether next iteration may begin. */
 	protected volatile boolean      nextIterationMayBegin = false;
 
@@ -22,7 +21,21 @@ public class TimedIterableControlledThread extends ControlledThread implements T
 	 *            controlled thread
 	 */
 	public TimedIterableControlledThread(final int frequency) {
-		iterationTimer = new ControlledTimer(this, frequency);
+		this(frequency, null);
+	}
+
+	/**
+	 * Creates a new TimedIterableControlledThread.
+	 * 
+	 * @param frequency
+	 *            the desirabled timing frequency of the timer of this iterable
+	 *            controlled thread
+	 * @param iterationScheduler
+	 *            OPTIONAL iteration scheduler to create the timer with<br>
+	 *            null means a deadline timer (a thread of its own) is used
+	 */
+	public TimedIterableControlledThread(final int frequency, final IterationScheduler iterationScheduler) {
+		iterationTimer = iterationScheduler == null ? new DeadlineTimer(this, frequency) : iterationScheduler.createTimer(this, frequency);
 	}
 
 	/**
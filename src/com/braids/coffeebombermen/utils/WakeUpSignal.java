@@ -0,0 +1,82 @@
+package com.braids.coffeebombermen.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A simple signal which a thread can wait for. If the signal has been raised
+ * before the waiting started, the waiting returns immediately, so signals
+ * raised between two waits are not lost.<br>
+ * A signal handler can be given too, which is run when the signal is raised
+ * (for example to schedule a task instead of waking up a waiting thread).<br>
+ * A lock is used instead of a monitor, so a waiting virtual thread doesn't pin
+ * its carrier thread.
+ */
+public class WakeUpSignal {
+
+	/** OPTIONAL handler to be run when the signal is raised. */
+	private final Runnable      signalHandler;
+	/** Lock guarding the signal. */
+	private final ReentrantLock lock              = new ReentrantLock();
+	/** Condition of the raised signal. */
+	private final Condition     signaledCondition = lock.newCondition();
+	/** Tells whether the signal has been raised since the last waiting. */
+	private boolean             signaled          = false;
+
+	/**
+	 * Creates a new WakeUpSignal.
+	 */
+	public WakeUpSignal() {
+		this(null);
+	}
+
+	/**
+	 * Creates a new WakeUpSignal.
+	 * 
+	 * @param signalHandler
+	 *            OPTIONAL handler to be run when the signal is raised
+	 */
+	public WakeUpSignal(final Runnable signalHandler) {
+		this.signalHandler = signalHandler;
+	}
+
+	/**
+	 * Raises the signal, wakes up the waiting thread, and runs the signal
+	 * handler if there is one.
+	 */
+	public void signal() {
+		lock.lock();
+		try {
+			signaled = true;
+			signaledCondition.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		if (signalHandler != null) {
+			signalHandler.run();
+		}
+	}
+
+	/**
+	 * Waits until the signal is raised or the timeout elapses, then clears the
+	 * signal.
+	 * 
+	 * @param timeout
+	 *            maximum time to wait in ms
+	 * @throws InterruptedException
+	 *             if the waiting thread is interrupted
+	 */
+	public void await(final long timeout) throws InterruptedException {
+		lock.lock();
+		try {
+			if (!signaled) {
+				signaledCondition.await(timeout, TimeUnit.MILLISECONDS);
+			}
+			signaled = false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+}